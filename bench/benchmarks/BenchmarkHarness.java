@@ -0,0 +1,64 @@
+package benchmarks;
+
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * Minimal benchmark harness (JMH isn't available to the build): runs a workload for a number of
+ * warmup iterations, then times the measured iterations and reports the median and the best time.
+ * The workload returns a value that is accumulated into a sink so the JIT can't discard it.
+ */
+public class BenchmarkHarness {
+
+  private final int warmupIterations;
+  private final int measuredIterations;
+  private long sink;
+
+  public BenchmarkHarness(int warmupIterations, int measuredIterations) {
+    this.warmupIterations = warmupIterations;
+    this.measuredIterations = measuredIterations;
+    this.sink = 0;
+  }
+
+  /** Returns the sorted running times, in nanoseconds, of the measured iterations. */
+  public long[] run(LongSupplier workload) {
+    for (int i = 0; i < warmupIterations; ++i) {
+      sink += workload.getAsLong();
+    }
+    long[] times = new long[measuredIterations];
+    for (int i = 0; i < measuredIterations; ++i) {
+      long start = System.nanoTime();
+      sink += workload.getAsLong();
+      times[i] = System.nanoTime() - start;
+    }
+    Arrays.sort(times);
+    return times;
+  }
+
+  /**
+   * Runs the workload and prints its median and best time together with the throughput for the
+   * given amount of work per iteration (e.g. bytes or tokens).
+   */
+  public void report(String name, long unitsPerIteration, String unit, LongSupplier workload) {
+    long[] times = run(workload);
+    long median = times[times.length / 2];
+    long best = times[0];
+    System.out.println(
+        String.format(
+            "%-32s median %9.3f ms  best %9.3f ms  %12.0f %s/s",
+            name,
+            median / 1e6,
+            best / 1e6,
+            unitsPerIteration / (median / 1e9),
+            unit));
+  }
+
+  /** Value accumulated from the workloads, print it so it's observably used. */
+  public long getSink() {
+    return sink;
+  }
+
+  static int intArgument(String[] args, int index, int defaultValue) {
+    return args.length > index ? Integer.parseInt(args[index]) : defaultValue;
+  }
+}
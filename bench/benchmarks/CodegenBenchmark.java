@@ -0,0 +1,184 @@
+package benchmarks;
+
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+
+import codegen_common.AssemblyWriter;
+import codegen_common.CodegenOptions;
+import codegen_common.Instruction;
+import codegen_common.InstructionEncoder;
+import codegen_common.Label;
+import codegen_common.Memory;
+import codegen_common.Opcode;
+import codegen_common.Register;
+import codegen_regalloc.RegAllocCodegenVisitor;
+import codegen_simple.SimpleCodegenVisitor;
+import lexer.MJScanner;
+import parser.MJParser;
+import parser.ast.GoalNode;
+import semantics.BuilderVisitor;
+import semantics.TypesVisitor;
+
+/**
+ * Code generation throughput of both backends on a generated multi-megabyte program, on a program
+ * with a single wide class (many fields and methods) and on a program of deeply chained calls,
+ * parsed and type checked beforehand. The generated program is also compiled with the classes
+ * spread over a pool of threads.
+ * The assembly is written to a writer that only counts characters, so the measurement doesn't
+ * include I/O. The instruction encoder is also compared on its own with the String.format based
+ * emission it replaced, on a typical mix of a frame load, a push and a jump.
+ *
+ * <p>Usage: CodegenBenchmark [classes] [warmup iterations] [measured iterations] [fields]
+ * [chain depth] [threads]
+ */
+public class CodegenBenchmark {
+
+  // groups of three lines emitted by the encoder comparison
+  private static final int EMITTED_GROUPS = 200000;
+
+  /** Discards everything written to it, counting the characters. */
+  private static class CountingWriter extends Writer {
+
+    private long count;
+
+    @Override
+    public void write(char[] buffer, int offset, int length) {
+      count += length;
+    }
+
+    @Override
+    public void write(int c) {
+      ++count;
+    }
+
+    @Override
+    public void write(String text, int offset, int length) {
+      count += length;
+    }
+
+    @Override
+    public Writer append(CharSequence text) {
+      count += text.length();
+      return this;
+    }
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void close() {}
+  }
+
+  public static void main(String[] args) {
+    int classes = BenchmarkHarness.intArgument(args, 0, 20000);
+    BenchmarkHarness harness =
+        new BenchmarkHarness(
+            BenchmarkHarness.intArgument(args, 1, 5), BenchmarkHarness.intArgument(args, 2, 10));
+    byte[] bytes = SourceGenerator.generate(classes).getBytes(StandardCharsets.US_ASCII);
+    GoalNode goal = new MJParser(new MJScanner(bytes)).parseGoal();
+    BuilderVisitor builderVis = new BuilderVisitor();
+    goal.accept(builderVis);
+    TypesVisitor typesVis = new TypesVisitor(builderVis);
+    goal.accept(typesVis);
+    long characters = simpleCodegen(goal, typesVis);
+    System.out.println(
+        String.format(
+            "%d classes, %d bytes, %d characters of assembly (simple backend)",
+            classes, bytes.length, characters));
+    harness.report("simple backend", characters, "chars", () -> simpleCodegen(goal, typesVis));
+    harness.report(
+        "regalloc backend",
+        regAllocCodegen(goal, typesVis),
+        "chars",
+        () -> regAllocCodegen(goal, typesVis));
+    int threads =
+        BenchmarkHarness.intArgument(args, 5, Runtime.getRuntime().availableProcessors());
+    Optional<ForkJoinPool> pool = Optional.of(new ForkJoinPool(threads));
+    harness.report(
+        String.format("simple backend (%d threads)", threads),
+        characters,
+        "chars",
+        () -> simpleCodegen(goal, typesVis, pool));
+    int fields = BenchmarkHarness.intArgument(args, 3, 4000);
+    reportBackends(
+        harness,
+        String.format("(%d fields)", fields),
+        SourceGenerator.generateWide(fields, fields / 4));
+    int depth = BenchmarkHarness.intArgument(args, 4, 500);
+    reportBackends(
+        harness,
+        String.format("(%d chained calls)", depth),
+        SourceGenerator.generateChained(depth, 40));
+    int lines = 3 * EMITTED_GROUPS;
+    harness.report("String.format emitter", lines, "lines", CodegenBenchmark::formatEmitter);
+    harness.report("instruction encoder", lines, "lines", CodegenBenchmark::instructionEncoder);
+    System.out.println("sink " + harness.getSink());
+  }
+
+  private static void reportBackends(BenchmarkHarness harness, String label, String source) {
+    GoalNode goal =
+        new MJParser(new MJScanner(source.getBytes(StandardCharsets.US_ASCII))).parseGoal();
+    BuilderVisitor builderVis = new BuilderVisitor();
+    goal.accept(builderVis);
+    TypesVisitor typesVis = new TypesVisitor(builderVis);
+    goal.accept(typesVis);
+    harness.report(
+        "simple backend " + label,
+        simpleCodegen(goal, typesVis),
+        "chars",
+        () -> simpleCodegen(goal, typesVis));
+    harness.report(
+        "regalloc backend " + label,
+        regAllocCodegen(goal, typesVis),
+        "chars",
+        () -> regAllocCodegen(goal, typesVis));
+  }
+
+  private static long formatEmitter() {
+    StringBuilder out = new StringBuilder();
+    for (int i = 0; i < EMITTED_GROUPS; ++i) {
+      out.append("\n\t" + String.format("movq -%d(%%rbp), %%rax", 8 * (2 + i % 8)));
+      out.append("\n\t" + "pushq %rax");
+      out.append("\n\t" + String.format("jz block$%d", i));
+    }
+    return out.length();
+  }
+
+  private static long instructionEncoder() {
+    List<Instruction> instructions = new ArrayList<>();
+    for (int i = 0; i < EMITTED_GROUPS; ++i) {
+      instructions.add(
+          new Instruction(
+              Opcode.MOVQ, new Memory(-8 * (2 + i % 8), Register.RBP), Register.RAX));
+      instructions.add(new Instruction(Opcode.PUSHQ, Register.RAX));
+      instructions.add(new Instruction(Opcode.JZ, Label.block("block", i)));
+    }
+    StringBuilder out = new StringBuilder();
+    InstructionEncoder.encode(instructions, out);
+    return out.length();
+  }
+
+  private static long simpleCodegen(GoalNode goal, TypesVisitor typesVis) {
+    return simpleCodegen(goal, typesVis, Optional.empty());
+  }
+
+  private static long simpleCodegen(
+      GoalNode goal, TypesVisitor typesVis, Optional<ForkJoinPool> pool) {
+    CountingWriter writer = new CountingWriter();
+    goal.accept(
+        new SimpleCodegenVisitor(
+            typesVis, new AssemblyWriter(writer), CodegenOptions.DEFAULTS.withPool(pool)));
+    return writer.count;
+  }
+
+  private static long regAllocCodegen(GoalNode goal, TypesVisitor typesVis) {
+    CountingWriter writer = new CountingWriter();
+    goal.accept(
+        new RegAllocCodegenVisitor(typesVis, new AssemblyWriter(writer), CodegenOptions.DEFAULTS));
+    return writer.count;
+  }
+}
@@ -0,0 +1,61 @@
+package benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.Token;
+
+import antlr_lexer.MJLexer;
+import lexer.MJScanner;
+
+/**
+ * Tokens per second of the ANTLR generated MJLexer against the hand-written MJScanner, on a
+ * generated multi-megabyte program. Both include setting up the lexer on the source.
+ *
+ * <p>Usage: LexerBenchmark [classes] [warmup iterations] [measured iterations]
+ */
+public class LexerBenchmark {
+
+  public static void main(String[] args) {
+    int classes = BenchmarkHarness.intArgument(args, 0, 20000);
+    BenchmarkHarness harness =
+        new BenchmarkHarness(
+            BenchmarkHarness.intArgument(args, 1, 5), BenchmarkHarness.intArgument(args, 2, 10));
+    String source = SourceGenerator.generate(classes);
+    byte[] bytes = source.getBytes(StandardCharsets.US_ASCII);
+    ByteBuffer directBytes = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+    int tokens = new MJScanner(bytes).scanAll().size();
+    System.out.println(
+        String.format("%d classes, %d bytes, %d tokens", classes, bytes.length, tokens));
+    harness.report(
+        "antlr MJLexer",
+        tokens,
+        "tokens",
+        () -> {
+          MJLexer mjLexer = new MJLexer(CharStreams.fromString(source));
+          long count = 0;
+          while (mjLexer.nextToken().getType() != Token.EOF) {
+            ++count;
+          }
+          return count;
+        });
+    harness.report("MJScanner (byte[])", tokens, "tokens", () -> scan(new MJScanner(bytes)));
+    harness.report(
+        "MJScanner (direct buffer)", tokens, "tokens", () -> scan(new MJScanner(directBytes)));
+    harness.report(
+        "MJScanner.scanAll (byte[])",
+        tokens,
+        "tokens",
+        () -> new MJScanner(bytes).scanAll().size());
+    System.out.println("sink " + harness.getSink());
+  }
+
+  private static long scan(MJScanner scanner) {
+    long count = 0;
+    while (scanner.nextToken() != MJLexer.EOF) {
+      count += scanner.getEnd();
+    }
+    return count;
+  }
+}
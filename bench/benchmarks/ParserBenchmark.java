@@ -0,0 +1,53 @@
+package benchmarks;
+
+import java.nio.charset.StandardCharsets;
+
+import org.antlr.v4.runtime.CharStreams;
+
+import antlr_lexer.MJLexer;
+import lexer.MJScanner;
+import lexer.Tokens;
+import parser.MJParser;
+
+/**
+ * Parse throughput on a generated multi-megabyte program. Lexing dominates the end to end time, so
+ * the parser is also timed on its own, replaying tokens that were lexed beforehand.
+ *
+ * <p>Usage: ParserBenchmark [classes] [warmup iterations] [measured iterations]
+ */
+public class ParserBenchmark {
+
+  public static void main(String[] args) {
+    int classes = BenchmarkHarness.intArgument(args, 0, 20000);
+    BenchmarkHarness harness =
+        new BenchmarkHarness(
+            BenchmarkHarness.intArgument(args, 1, 5), BenchmarkHarness.intArgument(args, 2, 10));
+    String source = SourceGenerator.generate(classes);
+    byte[] bytes = source.getBytes(StandardCharsets.US_ASCII);
+    Tokens tokens = new MJScanner(bytes).scanAll();
+    System.out.println(
+        String.format("%d classes, %d bytes, %d tokens", classes, bytes.length, tokens.size()));
+    harness.report(
+        "parse (pre-lexed tokens)",
+        tokens.size(),
+        "tokens",
+        () -> {
+          tokens.rewind();
+          return new MJParser(tokens).parseGoal().getClasses().size();
+        });
+    harness.report(
+        "antlr lex + parse",
+        bytes.length,
+        "bytes",
+        () -> {
+          MJLexer mjLexer = new MJLexer(CharStreams.fromString(source));
+          return new MJParser(mjLexer).parseGoal().getClasses().size();
+        });
+    harness.report(
+        "dfa lex + parse",
+        bytes.length,
+        "bytes",
+        () -> new MJParser(new MJScanner(bytes)).parseGoal().getClasses().size());
+    System.out.println("sink " + harness.getSink());
+  }
+}
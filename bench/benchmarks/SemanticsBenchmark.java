@@ -0,0 +1,50 @@
+package benchmarks;
+
+import java.nio.charset.StandardCharsets;
+
+import lexer.MJScanner;
+import parser.MJParser;
+import parser.ast.GoalNode;
+import semantics.BuilderVisitor;
+import semantics.TypesVisitor;
+
+/**
+ * Symbol table construction and type checking throughput on a generated multi-megabyte program,
+ * and on a program with a single deep class hierarchy, parsed beforehand.
+ *
+ * <p>Usage: SemanticsBenchmark [classes] [warmup iterations] [measured iterations] [depth]
+ */
+public class SemanticsBenchmark {
+
+  public static void main(String[] args) {
+    int classes = BenchmarkHarness.intArgument(args, 0, 20000);
+    BenchmarkHarness harness =
+        new BenchmarkHarness(
+            BenchmarkHarness.intArgument(args, 1, 5), BenchmarkHarness.intArgument(args, 2, 10));
+    byte[] bytes = SourceGenerator.generate(classes).getBytes(StandardCharsets.US_ASCII);
+    System.out.println(String.format("%d classes, %d bytes", classes, bytes.length));
+    report(harness, String.format("(%d classes)", classes), bytes);
+    int depth = BenchmarkHarness.intArgument(args, 3, 4000);
+    report(
+        harness,
+        String.format("(%d deep hierarchy)", depth),
+        SourceGenerator.generateDeep(depth).getBytes(StandardCharsets.US_ASCII));
+    System.out.println("sink " + harness.getSink());
+  }
+
+  private static void report(BenchmarkHarness harness, String label, byte[] bytes) {
+    // the visitors don't modify the tree, so it's parsed once
+    GoalNode goal = new MJParser(new MJScanner(bytes)).parseGoal();
+    int classes = goal.getClasses().size();
+    harness.report(
+        "build + type check " + label,
+        classes,
+        "classes",
+        () -> {
+          BuilderVisitor builderVis = new BuilderVisitor();
+          goal.accept(builderVis);
+          goal.accept(new TypesVisitor(builderVis));
+          return builderVis.getClassSymbolTable().size();
+        });
+  }
+}
@@ -0,0 +1,168 @@
+package benchmarks;
+
+/**
+ * Generates large, valid MiniJava programs resembling machine-generated sources: a chain of
+ * classes, each with fields, arithmetic, loops, conditionals, array accesses and calls.
+ */
+public class SourceGenerator {
+
+  private SourceGenerator() {}
+
+  public static String generate(int classes) {
+    StringBuilder source = new StringBuilder();
+    source.append("class Main {\n");
+    source.append("  public static void main(String[] a) {\n");
+    source.append("    System.out.println(new C0().run(10));\n");
+    source.append("  }\n");
+    source.append("}\n");
+    for (int i = 0; i < classes; ++i) {
+      source.append("\nclass C").append(i).append(" {\n");
+      source.append("  int count;\n");
+      source.append("  int[] values;\n");
+      source.append("  boolean done;\n");
+      source.append("\n  public int run(int n) {\n");
+      source.append("    int i;\n");
+      source.append("    int sum;\n");
+      source.append("    values = new int[n + 1];\n");
+      source.append("    i = 0;\n");
+      source.append("    sum = 0;\n");
+      source.append("    while (i < n) {\n");
+      source.append("      values[i] = (i * 3 + ").append(i).append(") - (sum * 2);\n");
+      source.append("      if ((sum < 1000) && !done) {\n");
+      source.append("        sum = sum + this.step(values[i], i);\n");
+      source.append("      } else {\n");
+      source.append("        done = true;\n");
+      source.append("      }\n");
+      source.append("      i = i + 1;\n");
+      source.append("    }\n");
+      source.append("    count = count + values.length;\n");
+      if (i + 1 < classes) {
+        source.append("    sum = sum + new C").append(i + 1).append("().run(n - 1);\n");
+      }
+      source.append("    return sum;\n");
+      source.append("  }\n");
+      source.append("\n  public int step(int value, int index) {\n");
+      source.append("    int result;\n");
+      source.append("    result = value * 2 - index + ").append(i % 97).append(";\n");
+      source.append("    if (result < 0) {\n");
+      source.append("      result = 0 - result;\n");
+      source.append("    } else {\n");
+      source.append("      System.out.println(result);\n");
+      source.append("    }\n");
+      source.append("    return result;\n");
+      source.append("  }\n");
+      source.append("}\n");
+    }
+    return source.toString();
+  }
+
+  /**
+   * Generates a program with a single class of many fields and methods, where every method reads
+   * and writes fields from all over the object layout and calls methods from all over the vtable.
+   */
+  public static String generateWide(int fields, int methods) {
+    StringBuilder source = new StringBuilder();
+    source.append("class Main {\n");
+    source.append("  public static void main(String[] a) {\n");
+    source.append("    System.out.println(new Wide().m0(1, 2));\n");
+    source.append("  }\n");
+    source.append("}\n");
+    source.append("\nclass Wide {\n");
+    for (int i = 0; i < fields; ++i) {
+      source.append("  int f").append(i).append(";\n");
+    }
+    for (int i = 0; i < methods; ++i) {
+      source.append("\n  public int m").append(i).append("(int x, int y) {\n");
+      source.append("    int sum;\n");
+      source.append("    sum = x + y;\n");
+      for (int j = 0; j < 8; ++j) {
+        int field = (i * 31 + j * (fields / 8 + 1)) % fields;
+        source.append("    f").append(field).append(" = f").append(field).append(" + sum;\n");
+      }
+      source.append("    if (x < 0) {\n");
+      source
+          .append("      sum = sum + this.m")
+          .append((i * 17 + 1) % methods)
+          .append("(x, sum);\n");
+      source.append("    } else {\n");
+      source.append("      sum = sum - this.m").append((i * 7 + 3) % methods).append("(x, y);\n");
+      source.append("    }\n");
+      source.append("    return sum;\n");
+      source.append("  }\n");
+    }
+    source.append("}\n");
+    return source.toString();
+  }
+
+  /**
+   * Generates a program whose methods return long chains of calls (((this).next()).next()...),
+   * where every receiver is itself a call.
+   */
+  public static String generateChained(int depth, int methods) {
+    StringBuilder source = new StringBuilder();
+    source.append("class Main {\n");
+    source.append("  public static void main(String[] a) {\n");
+    source.append("    System.out.println(new Chain().run0());\n");
+    source.append("  }\n");
+    source.append("}\n");
+    source.append("\nclass Chain {\n");
+    source.append("  int value;\n");
+    source.append("\n  public Chain next() {\n");
+    source.append("    value = value + 1;\n");
+    source.append("    return this;\n");
+    source.append("  }\n");
+    source.append("\n  public int get() {\n");
+    source.append("    return value;\n");
+    source.append("  }\n");
+    for (int i = 0; i < methods; ++i) {
+      source.append("\n  public int run").append(i).append("() {\n");
+      // the grammar only takes one call per factor, so each receiver is parenthesized
+      source.append("    return ");
+      for (int j = 0; j <= depth; ++j) {
+        source.append('(');
+      }
+      source.append("this)");
+      for (int j = 0; j < depth; ++j) {
+        source.append(".next())");
+      }
+      source.append(".get();\n");
+      source.append("  }\n");
+    }
+    source.append("}\n");
+    return source.toString();
+  }
+
+  /**
+   * Generates a program with a single chain of classes, each extending the previous one, overriding
+   * a method of the root and reading a field of the root through a variable of the root type.
+   */
+  public static String generateDeep(int depth) {
+    StringBuilder source = new StringBuilder();
+    source.append("class Main {\n");
+    source.append("  public static void main(String[] a) {\n");
+    source.append("    System.out.println(new K").append(depth - 1).append("().get());\n");
+    source.append("  }\n");
+    source.append("}\n");
+    source.append("\nclass K0 {\n");
+    source.append("  int f0;\n");
+    source.append("\n  public int get() {\n");
+    source.append("    return f0;\n");
+    source.append("  }\n");
+    source.append("}\n");
+    for (int i = 1; i < depth; ++i) {
+      source.append("\nclass K").append(i).append(" extends K").append(i - 1).append(" {\n");
+      source.append("  int f").append(i).append(";\n");
+      source.append("\n  public int get() {\n");
+      source.append("    K0 root;\n");
+      source.append("    root = this;\n");
+      source.append("    f").append(i).append(" = f0 + f").append(i - 1).append(";\n");
+      source.append("    return f").append(i).append(" + this.step(root);\n");
+      source.append("  }\n");
+      source.append("\n  public int step(K0 other) {\n");
+      source.append("    return f0;\n");
+      source.append("  }\n");
+      source.append("}\n");
+    }
+    return source.toString();
+  }
+}
@@ -1,6 +1,19 @@
 #!/bin/bash
-touch tmp.s
-java -cp "lib/antlr-4.9.2-complete.jar:bin/src" "Main" "$1" "tmp.s"
-gcc -no-pie -O0 tmp.s -o tmp
-./tmp
-rm tmp tmp.s
\ No newline at end of file
+# Compiles through the compile server listening on $MINIJAVA_SOCKET (started with
+# java -cp "lib/antlr-4.9.2-complete.jar:bin/src" Main --server=<socket>) if there's one,
+# else runs the compiler directly. Scratch files live in a directory of their own, so that
+# concurrent runs don't clobber each other.
+SOCKET="${MINIJAVA_SOCKET:-/tmp/minijava.sock}"
+SCRATCH="$(mktemp -d "${TMPDIR:-/tmp}/minijava.XXXXXX")" || exit 1
+trap 'rm -rf "$SCRATCH"' EXIT
+touch "$SCRATCH/program.s"
+java -XX:TieredStopAtLevel=1 -cp "bin/src" "driver.CompileClient" "$SOCKET" "$1" "$SCRATCH/program.s"
+STATUS=$?
+if [ $STATUS -eq 2 ]; then
+  java -cp "lib/antlr-4.9.2-complete.jar:bin/src" "Main" "$1" "$SCRATCH/program.s"
+  STATUS=$?
+fi
+[ $STATUS -eq 0 ] || exit $STATUS
+as -o "$SCRATCH/program.o" "$SCRATCH/program.s" || exit 1
+cc -no-pie "$SCRATCH/program.o" -o "$SCRATCH/program" || exit 1
+"$SCRATCH/program"
@@ -1,34 +1,169 @@
-import java.io.ByteArrayInputStream;
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
-import org.antlr.v4.runtime.CharStreams;
-
-import antlr_lexer.MJLexer;
-import codegen_simple.SimpleCodegenVisitor;
-import parser.MJParser;
-import parser.ast.GoalNode;
-import semantics.BuilderVisitor;
-import semantics.TypesVisitor;
+import driver.BatchCompiler;
+import driver.CompileCache;
+import driver.CompileOptions;
+import driver.CompileServer;
+import driver.Compiler;
+import driver.NativeBuilder;
+import utils.Pair;
 
 public class Main {
 
+  private static final String SERVER_USAGE =
+      "       Main --daemon (compile requests on stdin, see driver.CompileServer)\n"
+          + "       Main --server=<socket> (compile requests on a Unix domain socket)\n"
+          + "       Main --batch [--batch-jobs=<threads>] [options...]"
+          + " <directory | glob | @manifest> (compiles every x.mjava to x.s)\n"
+          + "       Main --build [--build-jobs=<threads>] [--as=<assembler>] [--cc=<linker>]"
+          + " [--link-flags=<flags>] [options...] <directory | glob | @manifest>"
+          + " (builds every x.mjava into the executable x)";
+
   public static void main(String args[]) throws IOException {
-    String program = new String(Files.readAllBytes(Paths.get(args[0])));
-    InputStream targetStream = new ByteArrayInputStream(program.getBytes());
-    MJLexer mjLexer = new MJLexer(CharStreams.fromStream(targetStream));
-    MJParser mjParser = new MJParser(mjLexer);
-    GoalNode goal = mjParser.parseGoal();
-    BuilderVisitor builderVis = new BuilderVisitor();
-    goal.accept(builderVis);
-    TypesVisitor typesVis = new TypesVisitor(builderVis);
-    goal.accept(typesVis);
-    SimpleCodegenVisitor codegenVis = new SimpleCodegenVisitor(typesVis);
-    goal.accept(codegenVis);
-    String assemblyStr = codegenVis.getDataRegion() + codegenVis.getTextRegion() + "\n";
-    byte[] strToBytes = assemblyStr.getBytes();
-    Files.write(Paths.get(args[1]), strToBytes);
+    Compiler compiler = new Compiler();
+    if (args.length == 1 && args[0].equals("--daemon")) {
+      new CompileServer(compiler, System.err)
+          .serve(
+              new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)),
+              new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+      printCaches(compiler);
+      return;
+    }
+    if (args.length == 1 && args[0].startsWith("--server=")) {
+      new CompileServer(compiler, System.err)
+          .serve(Paths.get(args[0].substring("--server=".length())));
+      printCaches(compiler);
+      return;
+    }
+    if (args.length > 0 && args[0].equals("--batch")) {
+      batch(Arrays.asList(args).subList(1, args.length), compiler);
+      return;
+    }
+    if (args.length > 0 && args[0].equals("--build")) {
+      build(Arrays.asList(args).subList(1, args.length), compiler);
+      return;
+    }
+    CompileOptions options = null;
+    try {
+      options = CompileOptions.parse(Arrays.asList(args), Paths.get(""));
+    } catch (IllegalArgumentException e) {
+      System.err.println(e.getMessage());
+      System.err.println(SERVER_USAGE);
+      System.exit(1);
+    }
+    compiler.compile(options, System.err);
+  }
+
+  private static void printCaches(Compiler compiler) {
+    for (CompileCache cache : compiler.getCaches()) {
+      System.err.println(cache);
+    }
+  }
+
+  private static void batch(List<String> args, Compiler compiler) throws IOException {
+    int threads = Runtime.getRuntime().availableProcessors();
+    List<String> flags = new ArrayList<>();
+    String inputs = null;
+    try {
+      for (String arg : args) {
+        if (arg.startsWith("--batch-jobs=")) {
+          threads = Integer.parseInt(arg.substring("--batch-jobs=".length()));
+        } else if (arg.startsWith("-")) {
+          flags.add(arg);
+        } else if (inputs == null) {
+          inputs = arg;
+        } else {
+          throw new IllegalArgumentException();
+        }
+      }
+      // checks the flags once rather than failing every file
+      List<String> sample = new ArrayList<>(flags);
+      sample.addAll(List.of("input.mjava", "output.s"));
+      if (inputs == null
+          || threads < 1
+          || CompileOptions.parse(sample, Paths.get("")).getIrFile() != null) {
+        throw new IllegalArgumentException();
+      }
+    } catch (IllegalArgumentException e) {
+      // also a NumberFormatException
+      System.err.println(CompileOptions.USAGE);
+      System.err.println(SERVER_USAGE);
+      System.exit(1);
+    }
+    BatchCompiler.Summary summary;
+    try {
+      summary =
+          new BatchCompiler(compiler, flags, threads)
+              .compile(BatchCompiler.collectInputs(inputs), System.err);
+    } catch (InterruptedException e) {
+      throw new AssertionError(e);
+    }
+    summary.print(System.err);
+    printCaches(compiler);
+    if (!summary.getFailures().isEmpty()) {
+      System.exit(1);
+    }
+  }
+
+  private static void build(List<String> args, Compiler compiler) throws IOException {
+    int threads = Runtime.getRuntime().availableProcessors();
+    String assembler = NativeBuilder.DEFAULT_ASSEMBLER;
+    String linker = NativeBuilder.DEFAULT_LINKER;
+    List<String> linkFlags = NativeBuilder.DEFAULT_LINK_FLAGS;
+    List<String> flags = new ArrayList<>();
+    String inputs = null;
+    try {
+      for (String arg : args) {
+        if (arg.startsWith("--build-jobs=")) {
+          threads = Integer.parseInt(arg.substring("--build-jobs=".length()));
+        } else if (arg.startsWith("--as=")) {
+          assembler = arg.substring("--as=".length());
+        } else if (arg.startsWith("--cc=")) {
+          linker = arg.substring("--cc=".length());
+        } else if (arg.startsWith("--link-flags=")) {
+          String value = arg.substring("--link-flags=".length()).strip();
+          linkFlags = value.isEmpty() ? List.of() : Arrays.asList(value.split("\\s+"));
+        } else if (arg.startsWith("-")) {
+          flags.add(arg);
+        } else if (inputs == null) {
+          inputs = arg;
+        } else {
+          throw new IllegalArgumentException();
+        }
+      }
+      List<String> sample = new ArrayList<>(flags);
+      sample.addAll(List.of("input.mjava", "output.s"));
+      CompileOptions.parse(sample, Paths.get(""));
+      if (inputs == null || threads < 1) {
+        throw new IllegalArgumentException();
+      }
+    } catch (IllegalArgumentException e) {
+      System.err.println(CompileOptions.USAGE);
+      System.err.println(SERVER_USAGE);
+      System.exit(1);
+    }
+    List<Pair<Path, String>> failures;
+    try {
+      failures =
+          new NativeBuilder(compiler, flags, assembler, linker, linkFlags, threads)
+              .build(BatchCompiler.collectInputs(inputs), System.err);
+    } catch (InterruptedException e) {
+      throw new AssertionError(e);
+    }
+    for (Pair<Path, String> failure : failures) {
+      System.err.println(String.format("%s: %s", failure.first(), failure.second()));
+    }
+    if (!failures.isEmpty()) {
+      System.exit(1);
+    }
   }
 }
@@ -0,0 +1,32 @@
+package codegen_common;
+
+/** Address of a symbol as a constant operand, "$symbol" in AT&T syntax. */
+public final class Address implements Operand {
+
+  private final Label label;
+
+  public Address(Label label) {
+    this.label = label;
+  }
+
+  @Override
+  public void appendTo(StringBuilder out) {
+    out.append('$');
+    label.appendTo(out);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof Address && ((Address) other).label.equals(label);
+  }
+
+  @Override
+  public int hashCode() {
+    return label.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return "$" + label;
+  }
+}
@@ -0,0 +1,470 @@
+package codegen_common;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Allocation sites of a method, when the program is compiled with the heap profiler: every new
+ * expression counts the allocations it makes and their bytes (header included) into a record of
+ * its own, which names the method, the line and the type allocated.
+ *
+ * <p>The records are appended to the minijava_sites section, which the linker concatenates, so
+ * that the profiler finds every record between its __start_ and __stop_ symbols however the
+ * classes were generated (in parallel, or reused by an incremental compilation). On exit (also
+ * the exit of a failed allocation) and on SIGUSR1, the profiler prints the sites that allocated,
+ * most bytes first, to stderr, and writes them as tab separated values to the file named by
+ * MINIJAVA_HEAP_PROFILE (DEFAULT_PROFILE_FILE if unset, read once at startup). The report is
+ * async-signal-safe: it sorts and formats the sites itself and only calls write, open and close.
+ * Without the profiler, none of this is generated.
+ */
+public class AllocationSites {
+
+  /** Called by main after NativeRuntime.START: registers the report, on exit and on SIGUSR1. */
+  public static final Label START = Label.symbol("minijava_heap_profile_start");
+  public static final String PROFILE_VARIABLE = "MINIJAVA_HEAP_PROFILE";
+  public static final String DEFAULT_PROFILE_FILE = "minijava-heap-profile.tsv";
+
+  private static final String SECTION = "minijava_sites";
+  // the allocations, the bytes, the line, the method and the type
+  private static final int RECORD_SIZE = 40;
+  private static final int SIGUSR1 = 10;
+  private static final int EINTR = 4;
+  // O_WRONLY | O_CREAT | O_TRUNC
+  private static final int OPEN_FLAGS = 0x1 | 0x40 | 0x200;
+  private static final int OPEN_MODE = 0644;
+  // a writer: the file descriptor, the length of the buffer, then the buffer
+  private static final int BUFFER_SIZE = 4096;
+  private static final int WRITER_SIZE = 16 + BUFFER_SIZE;
+  // room for the digits of a number, right aligned, and a NUL
+  private static final int NUMBER_SIZE = 32;
+  // the report is formatted by the profiler: these are the strings between the numbers
+  private static final String REPORT_HEADER = "minijava: heap profile, ";
+  private static final String REPORT_HEADER_BYTES = " bytes in ";
+  private static final String REPORT_HEADER_ALLOCATIONS = " allocations\\n";
+  private static final String TABLE_HEADER = "bytes\\tallocations\\tmethod\\tline\\ttype\\n";
+  // after the bytes, the allocations, the method, the line and the type of a row
+  private static final String[] REPORT_SEPARATORS = {
+    " bytes ", " allocations  ", ":", "  new ", "\\n"
+  };
+  private static final String[] TABLE_SEPARATORS = {"\\t", "\\t", "\\t", "\\t", "\\n"};
+
+  private final String methodSymbol;
+  private final String methodName;
+  // the line and the label of the type name of every site, the sites (and type names) before the
+  // appended ones being in the segment already
+  private final List<Integer> lines;
+  private final List<Label> types;
+  private final Map<String, Label> typeNames;
+  private int appendedSites;
+  private int appendedTypeNames;
+
+  /** Sites of the method whose symbol prefixes their labels, reported as methodName. */
+  public AllocationSites(String methodSymbol, String methodName) {
+    this.methodSymbol = methodSymbol;
+    this.methodName = methodName;
+    this.lines = new ArrayList<>();
+    this.types = new ArrayList<>();
+    this.typeNames = new LinkedHashMap<>();
+    this.appendedSites = 0;
+    this.appendedTypeNames = 0;
+  }
+
+  /** Adds the site of an allocation of type on line, returning the label of its record. */
+  public Label add(int line, String type) {
+    Label typeName = typeNames.get(type);
+    if (typeName == null) {
+      typeName = Label.symbol(methodSymbol + "$type" + typeNames.size());
+      typeNames.put(type, typeName);
+    }
+    lines.add(line);
+    types.add(typeName);
+    return site(lines.size() - 1);
+  }
+
+  /** The number of allocations of a site, to increment. */
+  public static Label allocations(Label site) {
+    return site;
+  }
+
+  /** The number of bytes allocated by a site, to add the size of every allocation to. */
+  public static Label bytes(Label site) {
+    return Label.symbol(site + "$bytes");
+  }
+
+  private Label site(int index) {
+    return Label.symbol(methodSymbol + "$site" + index);
+  }
+
+  /**
+   * Appends the sites added since the last call: their names (read only, so they can follow the
+   * method), then their records, to the minijava_sites section.
+   */
+  public void appendTo(AssemblyWriter.Segment segment) {
+    if (appendedSites == lines.size()) {
+      return;
+    }
+    Label name = Label.symbol(methodSymbol + "$name");
+    if (appendedSites == 0) {
+      segment.append('\n').append(name.toString()).append(':');
+      segment.append("\n\t.string \"").append(methodName).append('"');
+    }
+    int typeNameIndex = 0;
+    for (Map.Entry<String, Label> typeName : typeNames.entrySet()) {
+      if (typeNameIndex++ >= appendedTypeNames) {
+        segment.append('\n').append(typeName.getValue().toString()).append(':');
+        segment.append("\n\t.string \"").append(typeName.getKey()).append('"');
+      }
+    }
+    appendedTypeNames = typeNames.size();
+    segment.append("\n\t.pushsection " + SECTION + ", \"aw\"");
+    for (; appendedSites < lines.size(); ++appendedSites) {
+      Label site = site(appendedSites);
+      segment.append('\n').append(allocations(site).toString()).append(':');
+      segment.append("\n\t.quad 0");
+      segment.append('\n').append(bytes(site).toString()).append(':');
+      segment.append("\n\t.quad 0");
+      segment.append("\n\t.quad ").append(lines.get(appendedSites));
+      segment.append("\n\t.quad ").append(name.toString());
+      segment.append("\n\t.quad ").append(types.get(appendedSites).toString());
+    }
+    segment.append("\n\t.popsection");
+  }
+
+  /** Appends the data and the routines of the profiler to output. */
+  public static void emit(AssemblyWriter output) {
+    AssemblyWriter.Segment data = output.getData();
+    // no sites, if the program never allocates
+    data.append("\n\t.weak __start_" + SECTION)
+        .append("\n\t.weak __stop_" + SECTION)
+        .append("\nminijava_heap_profile_variable:")
+        .append("\n\t.string \"" + PROFILE_VARIABLE + "\"")
+        .append("\nminijava_heap_profile_file:")
+        .append("\n\t.string \"" + DEFAULT_PROFILE_FILE + "\"")
+        .append("\nminijava_heap_profile_header:")
+        .append("\n\t.string \"" + REPORT_HEADER + "\"")
+        .append("\nminijava_heap_profile_header_bytes:")
+        .append("\n\t.string \"" + REPORT_HEADER_BYTES + "\"")
+        .append("\nminijava_heap_profile_header_allocations:")
+        .append("\n\t.string \"" + REPORT_HEADER_ALLOCATIONS + "\"")
+        .append("\nminijava_heap_profile_table_header:")
+        .append("\n\t.string \"" + TABLE_HEADER + "\"");
+    for (int i = 0; i < REPORT_SEPARATORS.length; ++i) {
+      data.append("\nminijava_heap_profile_report_separator" + i + ":")
+          .append("\n\t.string \"" + REPORT_SEPARATORS[i] + "\"")
+          .append("\nminijava_heap_profile_table_separator" + i + ":")
+          .append("\n\t.string \"" + TABLE_SEPARATORS[i] + "\"");
+    }
+    // the table's file, looked up once so that the report needn't call getenv
+    data.append("\n\t.lcomm minijava_heap_profile_path, 8").flush();
+    AssemblyWriter.Segment text = output.getText();
+    text.append("\n\n" + START + ":")
+        .append("\n\tpushq %rbp")
+        .append("\n\tmovq %rsp, %rbp")
+        .append("\n\tleaq minijava_heap_profile_variable, %rdi")
+        .append("\n\tcall getenv")
+        .append("\n\ttestq %rax, %rax")
+        .append("\n\tjnz 1f")
+        .append("\n\tleaq minijava_heap_profile_file, %rax")
+        .append("\n1:")
+        .append("\n\tmovq %rax, minijava_heap_profile_path")
+        .append("\n\tleaq minijava_heap_profile, %rdi")
+        .append("\n\tcall atexit")
+        .append("\n\tmovq $" + SIGUSR1 + ", %rdi")
+        .append("\n\tleaq minijava_heap_profile, %rsi")
+        .append("\n\tcall signal")
+        .append("\n\tpopq %rbp")
+        .append("\n\tret");
+    // the report, also a signal handler: it only reads the records and calls the async-signal-safe
+    // write, open and close (buffering, sorting and formatting itself), so it can interrupt
+    // anything, the C library included, and it leaves errno as it found it
+    text.append("\n\nminijava_heap_profile:")
+        .append("\n\tpushq %rbp")
+        .append("\n\tmovq %rsp, %rbp")
+        .append("\n\tpushq %rbx")
+        .append("\n\tpushq %r12")
+        .append("\n\tpushq %r13")
+        .append("\n\tpushq %r14")
+        .append("\n\tpushq %r15")
+        // %r15: the writer, then the saved errno (kept 16 aligned)
+        .append("\n\tsubq $" + (WRITER_SIZE + 8) + ", %rsp")
+        .append("\n\tmovq %rsp, %r15")
+        .append("\n\tcall __errno_location")
+        .append("\n\tmovl 0(%rax), %eax")
+        .append("\n\tmovl %eax, " + WRITER_SIZE + "(%r15)")
+        // room for a pointer to every record, on the stack (kept 16 aligned)
+        .append("\n\tleaq __start_" + SECTION + ", %rcx")
+        .append("\n\tleaq __stop_" + SECTION + ", %rax")
+        .append("\n\tsubq %rcx, %rax")
+        .append("\n\txorq %rdx, %rdx")
+        .append("\n\tmovq $" + RECORD_SIZE + ", %r8")
+        .append("\n\tdivq %r8")
+        .append("\n\tleaq 8(,%rax,8), %rax")
+        .append("\n\tandq $-16, %rax")
+        .append("\n\tsubq %rax, %rsp")
+        // %r12 to %r14: the records that allocated (%rbx allocations and %r13 bytes in total)
+        .append("\n\tmovq %rsp, %r12")
+        .append("\n\tmovq %rsp, %rdi")
+        .append("\n\txorq %rbx, %rbx")
+        .append("\n\txorq %r13, %r13")
+        .append("\n\tleaq __stop_" + SECTION + ", %rdx")
+        .append("\n1:")
+        .append("\n\tcmpq %rdx, %rcx")
+        .append("\n\tjae 3f")
+        .append("\n\tmovq 0(%rcx), %rax")
+        .append("\n\ttestq %rax, %rax")
+        .append("\n\tjz 2f")
+        .append("\n\taddq %rax, %rbx")
+        .append("\n\taddq 8(%rcx), %r13")
+        .append("\n\tmovq %rcx, 0(%rdi)")
+        .append("\n\taddq $8, %rdi")
+        .append("\n2:")
+        .append("\n\taddq $" + RECORD_SIZE + ", %rcx")
+        .append("\n\tjmp 1b")
+        .append("\n3:")
+        .append("\n\tmovq %rdi, %r14")
+        .append("\n\tmovq %r12, %rdi")
+        .append("\n\tmovq %r14, %rsi")
+        .append("\n\tcall minijava_heap_profile_sort")
+        .append("\n\tmovq $2, 0(%r15)")
+        .append("\n\tmovq $0, 8(%r15)");
+    appendLabel(text, "%r15", "minijava_heap_profile_header");
+    appendNumber(text, "%r15", "%r13", 0);
+    appendLabel(text, "%r15", "minijava_heap_profile_header_bytes");
+    appendNumber(text, "%r15", "%rbx", 0);
+    appendLabel(text, "%r15", "minijava_heap_profile_header_allocations");
+    text.append("\n\tmovq %r15, %rdi")
+        .append("\n\tmovq %r12, %rsi")
+        .append("\n\tmovq %r14, %rdx")
+        .append("\n\tcall minijava_heap_profile_report_rows")
+        .append("\n\tmovq %r15, %rdi")
+        .append("\n\tcall minijava_heap_profile_flush")
+        // the table, rewritten by every report
+        .append("\n\tmovq minijava_heap_profile_path, %rdi")
+        .append("\n\tmovq $" + OPEN_FLAGS + ", %rsi")
+        .append("\n\tmovq $" + OPEN_MODE + ", %rdx")
+        .append("\n\txorq %rax, %rax")
+        .append("\n\tcall open")
+        .append("\n\ttestl %eax, %eax")
+        .append("\n\tjs 4f")
+        .append("\n\tmovslq %eax, %rax")
+        .append("\n\tmovq %rax, 0(%r15)");
+    appendLabel(text, "%r15", "minijava_heap_profile_table_header");
+    text.append("\n\tmovq %r15, %rdi")
+        .append("\n\tmovq %r12, %rsi")
+        .append("\n\tmovq %r14, %rdx")
+        .append("\n\tcall minijava_heap_profile_table_rows")
+        .append("\n\tmovq %r15, %rdi")
+        .append("\n\tcall minijava_heap_profile_flush")
+        .append("\n\tmovq 0(%r15), %rdi")
+        .append("\n\tcall close")
+        .append("\n4:")
+        .append("\n\tcall __errno_location")
+        .append("\n\tmovl " + WRITER_SIZE + "(%r15), %ecx")
+        .append("\n\tmovl %ecx, 0(%rax)")
+        .append("\n\tleaq -40(%rbp), %rsp")
+        .append("\n\tpopq %r15")
+        .append("\n\tpopq %r14")
+        .append("\n\tpopq %r13")
+        .append("\n\tpopq %r12")
+        .append("\n\tpopq %rbx")
+        .append("\n\tpopq %rbp")
+        .append("\n\tret");
+    emitRows(text, "minijava_heap_profile_report", 14, 10);
+    emitRows(text, "minijava_heap_profile_table", 0, 0);
+    // sorts the pointers to records from %rdi to %rsi in place, most bytes then most allocations
+    // first: an insertion sort, stable so that ties stay in the order of the program
+    text.append("\n\nminijava_heap_profile_sort:")
+        .append("\n\tleaq 8(%rdi), %r8")
+        .append("\n1:")
+        .append("\n\tcmpq %rsi, %r8")
+        .append("\n\tjae 5f")
+        // %rax: the record to insert, %r9: where, shifting the records it goes before
+        .append("\n\tmovq 0(%r8), %rax")
+        .append("\n\tmovq %r8, %r9")
+        .append("\n2:")
+        .append("\n\tcmpq %rdi, %r9")
+        .append("\n\tjbe 4f")
+        .append("\n\tmovq -8(%r9), %rcx")
+        .append("\n\tmovq 8(%rax), %rdx")
+        .append("\n\tcmpq 8(%rcx), %rdx")
+        .append("\n\tja 3f")
+        .append("\n\tjb 4f")
+        .append("\n\tmovq 0(%rax), %rdx")
+        .append("\n\tcmpq 0(%rcx), %rdx")
+        .append("\n\tjbe 4f")
+        .append("\n3:")
+        .append("\n\tmovq %rcx, 0(%r9)")
+        .append("\n\tsubq $8, %r9")
+        .append("\n\tjmp 2b")
+        .append("\n4:")
+        .append("\n\tmovq %rax, 0(%r9)")
+        .append("\n\taddq $8, %r8")
+        .append("\n\tjmp 1b")
+        .append("\n5:")
+        .append("\n\tret");
+    // appends the string %rsi to the writer %rdi, writing the buffer out whenever it's full
+    text.append("\n\nminijava_heap_profile_string:")
+        .append("\n\tpushq %rbp")
+        .append("\n\tmovq %rsp, %rbp")
+        .append("\n\tpushq %rbx")
+        .append("\n\tpushq %r12")
+        .append("\n\tmovq %rdi, %rbx")
+        .append("\n\tmovq %rsi, %r12")
+        .append("\n1:")
+        .append("\n\tmovzbl 0(%r12), %eax")
+        .append("\n\ttestl %eax, %eax")
+        .append("\n\tjz 3f")
+        .append("\n\tcmpq $" + BUFFER_SIZE + ", 8(%rbx)")
+        .append("\n\tjb 2f")
+        .append("\n\tmovq %rbx, %rdi")
+        .append("\n\tcall minijava_heap_profile_flush")
+        .append("\n\tmovzbl 0(%r12), %eax")
+        .append("\n2:")
+        .append("\n\tmovq 8(%rbx), %rcx")
+        .append("\n\tmovb %al, 16(%rbx,%rcx)")
+        .append("\n\tincq %rcx")
+        .append("\n\tmovq %rcx, 8(%rbx)")
+        .append("\n\tincq %r12")
+        .append("\n\tjmp 1b")
+        .append("\n3:")
+        .append("\n\tpopq %r12")
+        .append("\n\tpopq %rbx")
+        .append("\n\tpopq %rbp")
+        .append("\n\tret");
+    // appends the unsigned number %rsi to the writer %rdi, right aligned in %rdx columns
+    text.append("\n\nminijava_heap_profile_number:")
+        .append("\n\tpushq %rbp")
+        .append("\n\tmovq %rsp, %rbp")
+        .append("\n\tsubq $" + NUMBER_SIZE + ", %rsp")
+        .append("\n\tmovq %rdi, %r9")
+        .append("\n\tmovq %rdx, %r8")
+        // the digits, last first, before the NUL that ends the room
+        .append("\n\tmovb $0, -1(%rbp)")
+        .append("\n\tleaq -1(%rbp), %rcx")
+        .append("\n\tmovq %rsi, %rax")
+        .append("\n\tmovq $10, %r10")
+        .append("\n1:")
+        .append("\n\txorq %rdx, %rdx")
+        .append("\n\tdivq %r10")
+        .append("\n\taddb $48, %dl")
+        .append("\n\tdecq %rcx")
+        .append("\n\tmovb %dl, 0(%rcx)")
+        .append("\n\ttestq %rax, %rax")
+        .append("\n\tjnz 1b")
+        .append("\n\tleaq -1(%rbp), %rax")
+        .append("\n\tsubq %r8, %rax")
+        .append("\n2:")
+        .append("\n\tcmpq %rax, %rcx")
+        .append("\n\tjbe 3f")
+        .append("\n\tdecq %rcx")
+        .append("\n\tmovb $32, 0(%rcx)")
+        .append("\n\tjmp 2b")
+        .append("\n3:")
+        .append("\n\tmovq %r9, %rdi")
+        .append("\n\tmovq %rcx, %rsi")
+        .append("\n\tcall minijava_heap_profile_string")
+        .append("\n\tmovq %rbp, %rsp")
+        .append("\n\tpopq %rbp")
+        .append("\n\tret");
+    // writes the buffer of the writer %rdi to its file descriptor, retrying short and interrupted
+    // writes (and dropping the rest on an error), like minijava_flush
+    text.append("\n\nminijava_heap_profile_flush:")
+        .append("\n\tpushq %rbp")
+        .append("\n\tmovq %rsp, %rbp")
+        .append("\n\tpushq %rbx")
+        .append("\n\tpushq %r12")
+        .append("\n\tmovq %rdi, %rbx")
+        .append("\n\txorq %r12, %r12")
+        .append("\n1:")
+        .append("\n\tmovq 8(%rbx), %rdx")
+        .append("\n\tsubq %r12, %rdx")
+        .append("\n\tjz 3f")
+        .append("\n\tmovq 0(%rbx), %rdi")
+        .append("\n\tleaq 16(%rbx,%r12), %rsi")
+        .append("\n\tcall write")
+        .append("\n\ttestq %rax, %rax")
+        .append("\n\tjg 2f")
+        .append("\n\tjz 3f")
+        .append("\n\tcall __errno_location")
+        .append("\n\tcmpl $" + EINTR + ", 0(%rax)")
+        .append("\n\tje 1b")
+        .append("\n\tjmp 3f")
+        .append("\n2:")
+        .append("\n\taddq %rax, %r12")
+        .append("\n\tjmp 1b")
+        .append("\n3:")
+        .append("\n\tmovq $0, 8(%rbx)")
+        .append("\n\tpopq %r12")
+        .append("\n\tpopq %rbx")
+        .append("\n\tpopq %rbp")
+        .append("\n\tret");
+    text.flush();
+  }
+
+  /**
+   * Emits the routine (named prefix_rows) appending the records from %rsi to %rdx to the writer
+   * %rdi, a row each: the bytes and the allocations, right aligned in their widths, the method,
+   * the line and the type, each followed by its separator (prefix_separatorN).
+   */
+  private static void emitRows(
+      AssemblyWriter.Segment text, String prefix, int bytesWidth, int allocationsWidth) {
+    text.append("\n\n" + prefix + "_rows:")
+        .append("\n\tpushq %rbp")
+        .append("\n\tmovq %rsp, %rbp")
+        .append("\n\tpushq %rbx")
+        .append("\n\tpushq %r12")
+        .append("\n\tpushq %r13")
+        .append("\n\tpushq %r14")
+        .append("\n\tmovq %rdi, %r12")
+        .append("\n\tmovq %rsi, %rbx")
+        .append("\n\tmovq %rdx, %r14")
+        .append("\n1:")
+        .append("\n\tcmpq %r14, %rbx")
+        .append("\n\tjae 2f")
+        .append("\n\tmovq 0(%rbx), %r13");
+    appendNumber(text, "%r12", "8(%r13)", bytesWidth);
+    appendLabel(text, "%r12", prefix + "_separator0");
+    appendNumber(text, "%r12", "0(%r13)", allocationsWidth);
+    appendLabel(text, "%r12", prefix + "_separator1");
+    appendString(text, "%r12", "24(%r13)");
+    appendLabel(text, "%r12", prefix + "_separator2");
+    appendNumber(text, "%r12", "16(%r13)", 0);
+    appendLabel(text, "%r12", prefix + "_separator3");
+    appendString(text, "%r12", "32(%r13)");
+    appendLabel(text, "%r12", prefix + "_separator4");
+    text.append("\n\taddq $8, %rbx")
+        .append("\n\tjmp 1b")
+        .append("\n2:")
+        .append("\n\tpopq %r14")
+        .append("\n\tpopq %r13")
+        .append("\n\tpopq %r12")
+        .append("\n\tpopq %rbx")
+        .append("\n\tpopq %rbp")
+        .append("\n\tret");
+  }
+
+  /** Appends the string at label to the writer (a register). */
+  private static void appendLabel(AssemblyWriter.Segment text, String writer, String label) {
+    text.append("\n\tmovq " + writer + ", %rdi")
+        .append("\n\tleaq " + label + ", %rsi")
+        .append("\n\tcall minijava_heap_profile_string");
+  }
+
+  /** Appends the string that string (an operand) points to to the writer (a register). */
+  private static void appendString(AssemblyWriter.Segment text, String writer, String string) {
+    text.append("\n\tmovq " + writer + ", %rdi")
+        .append("\n\tmovq " + string + ", %rsi")
+        .append("\n\tcall minijava_heap_profile_string");
+  }
+
+  /** Appends number (an operand) to the writer (a register), right aligned in width columns. */
+  private static void appendNumber(
+      AssemblyWriter.Segment text, String writer, String number, int width) {
+    text.append("\n\tmovq " + writer + ", %rdi")
+        .append("\n\tmovq " + number + ", %rsi")
+        .append("\n\tmovq $" + width + ", %rdx")
+        .append("\n\tcall minijava_heap_profile_number");
+  }
+}
@@ -0,0 +1,152 @@
+package codegen_common;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Streams generated assembly to an output. The text and the data section are collected in
+ * separate segments that the backends flush once a method or a vtable is complete, so only the
+ * unit being generated is held in memory. Each flush is written under the segment's section
+ * directive (only repeated when the previous flush was of the other segment).
+ */
+public class AssemblyWriter implements Closeable {
+
+  private static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+  /** Buffer of the assembly of one section, written to the output on flush. */
+  public class Segment {
+
+    private final String directive;
+    private final StringBuilder buffer;
+
+    private Segment(String directive) {
+      this.directive = directive;
+      this.buffer = new StringBuilder();
+    }
+
+    public Segment append(String assembly) {
+      buffer.append(assembly);
+      return this;
+    }
+
+    public Segment append(char c) {
+      buffer.append(c);
+      return this;
+    }
+
+    public Segment append(int value) {
+      buffer.append(value);
+      return this;
+    }
+
+    /** Appends the encoding of the instructions. */
+    public Segment append(List<Instruction> instructions) {
+      InstructionEncoder.encode(instructions, buffer);
+      return this;
+    }
+
+    /** The assembly buffered since the last flush. */
+    @Override
+    public String toString() {
+      return buffer.toString();
+    }
+
+    /** Writes the buffered assembly to the output (unless the writer is a buffered one). */
+    public void flush() {
+      if (buffer.length() == 0 || out == null) {
+        return;
+      }
+      try {
+        if (lastFlushed != this) {
+          if (lastFlushed != null) {
+            out.write('\n');
+          }
+          out.write(directive);
+          lastFlushed = this;
+        }
+        out.append(buffer);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      buffer.setLength(0);
+    }
+  }
+
+  private final Writer out;
+  private final Segment text;
+  private final Segment data;
+  private Segment lastFlushed;
+
+  public AssemblyWriter(Writer out) {
+    this.out = out;
+    this.text = new Segment(".text");
+    this.data = new Segment(".data");
+    this.lastFlushed = null;
+  }
+
+  /**
+   * A writer without an output, whose segments keep everything until the writer is appended to
+   * another one: e.g. a class generated on another thread.
+   */
+  public static AssemblyWriter buffered() {
+    return new AssemblyWriter((Writer) null);
+  }
+
+  /** A buffered writer holding the given assembly, e.g. kept from an earlier compilation. */
+  public static AssemblyWriter buffered(String data, String text) {
+    AssemblyWriter writer = buffered();
+    writer.data.append(data);
+    writer.text.append(text);
+    return writer;
+  }
+
+  public AssemblyWriter(OutputStream out) {
+    this(
+        new BufferedWriter(
+            new OutputStreamWriter(out, StandardCharsets.US_ASCII), OUTPUT_BUFFER_SIZE));
+  }
+
+  public Segment getText() {
+    return text;
+  }
+
+  public Segment getData() {
+    return data;
+  }
+
+  /** Writes the segments of a buffered writer, data first, as if they had been flushed here. */
+  public void append(AssemblyWriter buffered) {
+    data.buffer.append(buffered.data.buffer);
+    data.flush();
+    text.buffer.append(buffered.text.buffer);
+    text.flush();
+  }
+
+  /** Flushes both segments and the output. */
+  public void flush() {
+    data.flush();
+    text.flush();
+    if (out == null) {
+      return;
+    }
+    try {
+      out.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    flush();
+    out.write('\n');
+    out.close();
+  }
+}
@@ -0,0 +1,18 @@
+package codegen_common;
+
+import java.util.Optional;
+
+import parser.ast.ClassNode;
+
+/**
+ * Assembly of classes (vtable and methods) generated by an earlier compilation, which a backend
+ * reuses instead of generating the classes again: see driver.IncrementalCompilation.
+ */
+public interface ClassFragments {
+
+  /** The assembly of the class, if nothing it was generated from has changed since. */
+  Optional<AssemblyWriter> fetch(ClassNode node);
+
+  /** Keeps the assembly of a class that had to be generated (concurrently, with a pool). */
+  void store(ClassNode node, AssemblyWriter assembly);
+}
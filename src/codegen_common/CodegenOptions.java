@@ -0,0 +1,75 @@
+package codegen_common;
+
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+
+import optimization.ClassHierarchyAnalysis;
+
+/**
+ * The options shared by both code generators (SimpleCodegenVisitor and RegAllocCodegenVisitor),
+ * all off in DEFAULTS. Options are immutable: every with method returns a copy with one option
+ * changed.
+ */
+public class CodegenOptions {
+
+  public static final CodegenOptions DEFAULTS =
+      new CodegenOptions(Optional.empty(), Optional.empty(), Optional.empty(), false);
+
+  private final Optional<ClassHierarchyAnalysis> hierarchyAnalysis;
+  private final Optional<ForkJoinPool> pool;
+  private final Optional<ClassFragments> fragments;
+  private final boolean heapProfile;
+
+  private CodegenOptions(
+      Optional<ClassHierarchyAnalysis> hierarchyAnalysis,
+      Optional<ForkJoinPool> pool,
+      Optional<ClassFragments> fragments,
+      boolean heapProfile) {
+    this.hierarchyAnalysis = hierarchyAnalysis;
+    this.pool = pool;
+    this.fragments = fragments;
+    this.heapProfile = heapProfile;
+  }
+
+  /** Call sites that the class hierarchy analysis proves monomorphic are called directly. */
+  public CodegenOptions withHierarchyAnalysis(Optional<ClassHierarchyAnalysis> hierarchyAnalysis) {
+    return new CodegenOptions(hierarchyAnalysis, pool, fragments, heapProfile);
+  }
+
+  /**
+   * With a pool, the classes are generated in parallel, each by its own visitor into a buffered
+   * writer, and written to the output in the order of the program.
+   */
+  public CodegenOptions withPool(Optional<ForkJoinPool> pool) {
+    return new CodegenOptions(hierarchyAnalysis, pool, fragments, heapProfile);
+  }
+
+  /**
+   * With fragments, the classes whose assembly was kept by an earlier compilation aren't
+   * generated again, and the assembly of the others is stored in fragments.
+   */
+  public CodegenOptions withFragments(Optional<ClassFragments> fragments) {
+    return new CodegenOptions(hierarchyAnalysis, pool, fragments, heapProfile);
+  }
+
+  /** With heapProfile, every allocation site counts its allocations (see AllocationSites). */
+  public CodegenOptions withHeapProfile(boolean heapProfile) {
+    return new CodegenOptions(hierarchyAnalysis, pool, fragments, heapProfile);
+  }
+
+  public Optional<ClassHierarchyAnalysis> getHierarchyAnalysis() {
+    return hierarchyAnalysis;
+  }
+
+  public Optional<ForkJoinPool> getPool() {
+    return pool;
+  }
+
+  public Optional<ClassFragments> getFragments() {
+    return fragments;
+  }
+
+  public boolean isHeapProfile() {
+    return heapProfile;
+  }
+}
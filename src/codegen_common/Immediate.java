@@ -0,0 +1,53 @@
+package codegen_common;
+
+/** Integer constant operand, "$value" in AT&T syntax. */
+public final class Immediate implements Operand {
+
+  private static final int CACHE_LOW = -1;
+  private static final int CACHE_HIGH = 64;
+  private static final Immediate[] cache = new Immediate[CACHE_HIGH - CACHE_LOW + 1];
+
+  static {
+    for (int value = CACHE_LOW; value <= CACHE_HIGH; ++value) {
+      cache[value - CACHE_LOW] = new Immediate(value);
+    }
+  }
+
+  private final int value;
+
+  private Immediate(int value) {
+    this.value = value;
+  }
+
+  /** Returns the immediate of the given value, shared for small values such as sizes and -1. */
+  public static Immediate of(int value) {
+    if (value >= CACHE_LOW && value <= CACHE_HIGH) {
+      return cache[value - CACHE_LOW];
+    }
+    return new Immediate(value);
+  }
+
+  public int getValue() {
+    return value;
+  }
+
+  @Override
+  public void appendTo(StringBuilder out) {
+    out.append('$').append(value);
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof Immediate && ((Immediate) other).value == value;
+  }
+
+  @Override
+  public int hashCode() {
+    return value;
+  }
+
+  @Override
+  public String toString() {
+    return "$" + value;
+  }
+}
@@ -0,0 +1,53 @@
+package codegen_common;
+
+/**
+ * Instruction with up to two operands in AT&T order (source first, then destination). The
+ * backends buffer a method's instructions before encoding them, so passes over the instruction
+ * stream can inspect and rewrite them.
+ */
+public final class Instruction {
+
+  private final Opcode opcode;
+  private final Operand source;
+  private final Operand destination;
+
+  public Instruction(Opcode opcode) {
+    this(opcode, null, null);
+  }
+
+  /** Instruction with a single operand, which is its destination (e.g. "pushq" or "jmp"). */
+  public Instruction(Opcode opcode, Operand destination) {
+    this(opcode, null, destination);
+  }
+
+  public Instruction(Opcode opcode, Operand source, Operand destination) {
+    this.opcode = opcode;
+    this.source = source;
+    this.destination = destination;
+  }
+
+  public static Instruction label(Label label) {
+    return new Instruction(Opcode.LABEL, label);
+  }
+
+  public Opcode getOpcode() {
+    return opcode;
+  }
+
+  /** The source operand, null for instructions with less than two operands. */
+  public Operand getSource() {
+    return source;
+  }
+
+  /** The destination (or only) operand, null for instructions without operands. */
+  public Operand getDestination() {
+    return destination;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder out = new StringBuilder();
+    InstructionEncoder.encode(this, out);
+    return out.toString().trim();
+  }
+}
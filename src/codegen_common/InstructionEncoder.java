@@ -0,0 +1,44 @@
+package codegen_common;
+
+import java.util.List;
+
+/**
+ * Encodes instructions as AT&T assembly text, one per line. Mnemonics and register names are
+ * constants and integers are appended directly, so encoding doesn't create intermediate strings.
+ */
+public class InstructionEncoder {
+
+  private InstructionEncoder() {}
+
+  public static void encode(Instruction instruction, StringBuilder out) {
+    Opcode opcode = instruction.getOpcode();
+    if (opcode == Opcode.LABEL) {
+      out.append('\n');
+      instruction.getDestination().appendTo(out);
+      out.append(':');
+      return;
+    }
+    out.append("\n\t").append(opcode.getMnemonic());
+    Operand source = instruction.getSource();
+    Operand destination = instruction.getDestination();
+    if (source != null) {
+      out.append(' ');
+      source.appendTo(out);
+      out.append(", ");
+      destination.appendTo(out);
+    } else if (destination != null) {
+      out.append(' ');
+      if (opcode.isControlTransfer() && !(destination instanceof Label)) {
+        // indirect call or jump
+        out.append('*');
+      }
+      destination.appendTo(out);
+    }
+  }
+
+  public static void encode(List<Instruction> instructions, StringBuilder out) {
+    for (Instruction instruction : instructions) {
+      encode(instruction, out);
+    }
+  }
+}
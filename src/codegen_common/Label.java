@@ -0,0 +1,58 @@
+package codegen_common;
+
+/**
+ * Label operand: either a basic block numbered within the method (or main) it belongs to
+ * ("Class$method$N"), so that methods can be generated independently, or a symbol such as a
+ * method, a vtable or a runtime function.
+ */
+public final class Label implements Operand {
+
+  // the symbol, or for a block the symbol of its method
+  private final String symbol;
+  // -1 for a symbol
+  private final int blockNumber;
+
+  private Label(String symbol, int blockNumber) {
+    this.symbol = symbol;
+    this.blockNumber = blockNumber;
+  }
+
+  public static Label block(String method, int blockNumber) {
+    return new Label(method, blockNumber);
+  }
+
+  public static Label symbol(String symbol) {
+    return new Label(symbol, -1);
+  }
+
+  public boolean isBlock() {
+    return blockNumber != -1;
+  }
+
+  @Override
+  public void appendTo(StringBuilder out) {
+    out.append(symbol);
+    if (blockNumber != -1) {
+      out.append('$').append(blockNumber);
+    }
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof Label)) {
+      return false;
+    }
+    Label label = (Label) other;
+    return label.blockNumber == blockNumber && symbol.equals(label.symbol);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * symbol.hashCode() + blockNumber;
+  }
+
+  @Override
+  public String toString() {
+    return blockNumber == -1 ? symbol : symbol + "$" + blockNumber;
+  }
+}
@@ -0,0 +1,69 @@
+package codegen_common;
+
+import java.util.Objects;
+
+/** Memory reference "displacement(base, index, scale)", the index being optional. */
+public final class Memory implements Operand {
+
+  private final int displacement;
+  private final Register base;
+  private final Register index;
+  private final int scale;
+
+  public Memory(int displacement, Register base) {
+    this(displacement, base, null, 1);
+  }
+
+  public Memory(int displacement, Register base, Register index, int scale) {
+    this.displacement = displacement;
+    this.base = base;
+    this.index = index;
+    this.scale = scale;
+  }
+
+  public int getDisplacement() {
+    return displacement;
+  }
+
+  public Register getBase() {
+    return base;
+  }
+
+  /** Returns whether the address is computed from the given register. */
+  public boolean uses(Register register) {
+    return base == register || index == register;
+  }
+
+  @Override
+  public void appendTo(StringBuilder out) {
+    out.append(displacement).append('(').append(base.getName());
+    if (index != null) {
+      out.append(", ").append(index.getName()).append(", ").append(scale);
+    }
+    out.append(')');
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (!(other instanceof Memory)) {
+      return false;
+    }
+    Memory memory = (Memory) other;
+    return memory.displacement == displacement
+        && memory.base == base
+        && memory.index == index
+        && memory.scale == scale;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(displacement, base, index, scale);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder out = new StringBuilder();
+    appendTo(out);
+    return out.toString();
+  }
+}
@@ -0,0 +1,567 @@
+package codegen_common;
+
+import semantics.types.Type;
+
+/**
+ * Runtime support emitted into every program (so that its assembly still links on its own, with
+ * the C library only): the garbage collected heap the backends allocate objects and arrays from.
+ *
+ * <p>Every object and array is preceded by a header word: 0 for an object, 1 for an array, and
+ * its new address plus 2 once the collector has copied it. Generated code allocates inline by
+ * bumping HEAP_POINTER up to HEAP_LIMIT, and calls ALLOCATE when the heap is full.
+ *
+ * <p>The collector is a copying (Cheney) one between two semispaces, reserved with mmap so that
+ * the kernel only backs the pages touched, zeroed. Its roots are exact: every generated frame
+ * stores at -8(%rbp) the address of the {@link StackMaps stack map} of its current call, listing
+ * the slots that hold references (which the backends derive from the types of the locals,
+ * arguments and temporaries), and every class is preceded by the offsets of its reference fields
+ * (see appendDescriptor). Integers are never mistaken for references, and nothing else (e.g. a
+ * callee-saved register) may hold a reference across a call.
+ *
+ * <p>The heap starts at MINIJAVA_HEAP_SIZE megabytes, or kilobytes or gigabytes with a K or G
+ * suffix (DEFAULT_HEAP_MEGABYTES if unset). After a collection it grows to twice the live data if
+ * that's larger. If MINIJAVA_GC_STATS is set, the number of collections, the bytes copied and the
+ * final heap size are printed to stderr on exit.
+ *
+ * <p>Integers are printed by PRINT into an output buffer, written to stdout when it's full, on
+ * exit (also the exit of a failed allocation) and on the signals that terminate the program. If
+ * stdout is a terminal, every line is written at once, like the C library would.
+ */
+public class NativeRuntime {
+
+  /** Next free byte of the heap. */
+  public static final Label HEAP_POINTER = Label.symbol("minijava_heap_pointer");
+  /** End of the part of the semispace HEAP_POINTER allocates from. */
+  public static final Label HEAP_LIMIT = Label.symbol("minijava_heap_limit");
+  /**
+   * Slow path: collects, then allocates %rax bytes (a multiple of 8, including the header) of
+   * zeroed memory, returning them in %rax, or exits with an error if the size is too small (a
+   * negative length) or the live data doesn't fit. Every other register is preserved, and the
+   * stack doesn't need to be aligned, so that the call can be made from the middle of any
+   * instruction sequence; the stack map of the caller must be set.
+   */
+  public static final Label ALLOCATE = Label.symbol("minijava_allocate");
+  /**
+   * Prints the int in %eax (the low half of %rax, like "%d" would) and a newline to the output
+   * buffer. Every register is preserved, and the stack doesn't need to be aligned.
+   */
+  public static final Label PRINT = Label.symbol("minijava_print");
+  /** Called by main before anything else, with its frame set up: initializes the heap. */
+  public static final Label START = Label.symbol("minijava_start");
+  /** Size of the header word preceding every object and array. */
+  public static final int HEADER_SIZE = 8;
+  /** Header of an array (an object's is 0, which fresh memory already holds). */
+  public static final Immediate ARRAY_HEADER = Immediate.of(1);
+  /** Bytes of address space reserved for each semispace (only the pages touched use memory). */
+  public static final long HEAP_RESERVATION = 1L << 32;
+  public static final int DEFAULT_HEAP_MEGABYTES = 64;
+  public static final String HEAP_SIZE_VARIABLE = "MINIJAVA_HEAP_SIZE";
+  public static final String GC_STATS_VARIABLE = "MINIJAVA_GC_STATS";
+  public static final int OUTPUT_BUFFER_SIZE = 1 << 16;
+
+  // MAP_PRIVATE | MAP_ANONYMOUS | MAP_NORESERVE
+  private static final int MAP_FLAGS = 0x02 | 0x20 | 0x4000;
+  // PROT_READ | PROT_WRITE
+  private static final int PROT_FLAGS = 0x1 | 0x2;
+  // the pages are zeroed again when next touched
+  private static final int MADV_DONTNEED = 4;
+  // the longest line printed: "-2147483648\n"
+  private static final int MAX_LINE_LENGTH = 12;
+  // 2^67 / 10, rounded up: the high half of x times it, shifted right by 3, is x / 10 (unsigned)
+  private static final long DIVIDE_BY_TEN = 0xCCCCCCCCCCCCCCCDL;
+  // flushing the output before the default action: SIGHUP, SIGINT, SIGBUS, SIGSEGV and SIGTERM
+  private static final int[] TERMINATING_SIGNALS = {1, 2, 7, 11, 15};
+  private static final int EINTR = 4;
+  private static final String ALLOCATION_FAILED_MESSAGE = "minijava: allocation failed\\n";
+  private static final String GC_STATS_FORMAT =
+      "minijava: %ld collections, %ld bytes copied, heap of %ld bytes\\n";
+
+  private NativeRuntime() {}
+
+  /** Whether values of the type are references (to an object or an array), which are traced. */
+  public static boolean isReference(Type type) {
+    return type.isClassType() || type.isIntArrayType();
+  }
+
+  /**
+   * Appends the descriptor of a class, which has to be immediately followed by its vtable: the
+   * offsets of its reference fields, last first, their number, then the number of fields. The
+   * collector finds them below the vtable pointer of an object.
+   */
+  public static void appendDescriptor(AssemblyWriter.Segment data, ObjectLayout layout) {
+    for (int i = layout.getReferenceFields().size() - 1; i >= 0; --i) {
+      data.append("\n\t.quad ").append(8 * (1 + layout.getReferenceFields().get(i)));
+    }
+    data.append("\n\t.quad ").append(layout.getReferenceFields().size());
+    data.append("\n\t.quad ").append(layout.getFields().size());
+  }
+
+  /** Appends the data and the routines of the runtime to output. */
+  public static void emit(AssemblyWriter output) {
+    output
+        .getData()
+        .append("\n" + HEAP_POINTER + ":")
+        .append("\n\t.quad 0")
+        .append("\n" + HEAP_LIMIT + ":")
+        .append("\n\t.quad 0")
+        .append("\nminijava_from_space:")
+        .append("\n\t.quad 0")
+        .append("\nminijava_to_space:")
+        .append("\n\t.quad 0")
+        .append("\nminijava_heap_size:")
+        .append("\n\t.quad 0")
+        // %rbp of main, the last frame the collector walks
+        .append("\nminijava_stack_bottom:")
+        .append("\n\t.quad 0")
+        .append("\nminijava_collections:")
+        .append("\n\t.quad 0")
+        .append("\nminijava_bytes_copied:")
+        .append("\n\t.quad 0")
+        .append("\nminijava_heap_size_variable:")
+        .append("\n\t.string \"" + HEAP_SIZE_VARIABLE + "\"")
+        .append("\nminijava_gc_stats_variable:")
+        .append("\n\t.string \"" + GC_STATS_VARIABLE + "\"")
+        .append("\nminijava_gc_stats_format:")
+        .append("\n\t.string \"" + GC_STATS_FORMAT + "\"")
+        .append("\nminijava_allocation_failed_message:")
+        .append("\n\t.ascii \"" + ALLOCATION_FAILED_MESSAGE + "\"")
+        .append("\nminijava_output_length:")
+        .append("\n\t.quad 0")
+        // whether every line is flushed
+        .append("\nminijava_output_interactive:")
+        .append("\n\t.quad 0")
+        // zeroed at load time, without taking room in the executable
+        .append("\n\t.lcomm minijava_output_buffer, " + OUTPUT_BUFFER_SIZE)
+        .flush();
+    emitStart(output.getText());
+    emitAllocate(output.getText());
+    emitCollect(output.getText());
+    emitPrint(output.getText());
+    output.getText().flush();
+  }
+
+  private static void emitStart(AssemblyWriter.Segment text) {
+    text.append("\n\n" + START + ":")
+        .append("\n\tpushq %rbp")
+        .append("\n\tmovq %rsp, %rbp")
+        .append("\n\tpushq %rbx")
+        .append("\n\tpushq %r12")
+        .append("\n\tmovq 0(%rbp), %rax")
+        .append("\n\tmovq %rax, minijava_stack_bottom")
+        // the initial heap size, in megabytes unless suffixed with K or G (at most the
+        // reservation)
+        .append("\n\tmovq $" + ((long) DEFAULT_HEAP_MEGABYTES << 20) + ", %rbx")
+        .append("\n\tleaq minijava_heap_size_variable, %rdi")
+        .append("\n\tcall getenv")
+        .append("\n\ttestq %rax, %rax")
+        .append("\n\tjz 1f")
+        .append("\n\tsubq $16, %rsp")
+        .append("\n\tmovq %rax, %rdi")
+        .append("\n\tmovq %rsp, %rsi")
+        .append("\n\tmovq $10, %rdx")
+        .append("\n\tcall strtol")
+        .append("\n\tmovq 0(%rsp), %rcx")
+        .append("\n\taddq $16, %rsp")
+        .append("\n\ttestq %rax, %rax")
+        .append("\n\tjle 1f")
+        .append("\n\tmovq $" + HEAP_RESERVATION + ", %rdx")
+        .append("\n\tcmpq %rdx, %rax")
+        .append("\n\tcmovaq %rdx, %rax")
+        // the suffix, in lower case
+        .append("\n\tmovzbq 0(%rcx), %rcx")
+        .append("\n\torq $32, %rcx")
+        .append("\n\tcmpq $" + (int) 'k' + ", %rcx")
+        .append("\n\tje 2f")
+        .append("\n\tcmpq $" + (int) 'g' + ", %rcx")
+        .append("\n\tje 3f")
+        .append("\n\tsalq $20, %rax")
+        .append("\n\tjmp 4f")
+        .append("\n2:")
+        .append("\n\tsalq $10, %rax")
+        .append("\n\tjmp 4f")
+        .append("\n3:")
+        .append("\n\tsalq $30, %rax")
+        .append("\n4:")
+        .append("\n\tmovq %rax, %rbx")
+        .append("\n1:")
+        .append("\n\tmovq $" + HEAP_RESERVATION + ", %rax")
+        .append("\n\tcmpq %rax, %rbx")
+        .append("\n\tcmovaq %rax, %rbx")
+        .append("\n\tmovq %rbx, minijava_heap_size")
+        .append("\n\tcall minijava_reserve")
+        .append("\n\tmovq %rax, minijava_from_space")
+        .append("\n\tmovq %rax, " + HEAP_POINTER)
+        .append("\n\taddq %rbx, %rax")
+        .append("\n\tmovq %rax, " + HEAP_LIMIT)
+        .append("\n\tcall minijava_reserve")
+        .append("\n\tmovq %rax, minijava_to_space")
+        // registered first, so that it runs after the other handlers
+        .append("\n\tleaq minijava_flush, %rdi")
+        .append("\n\tcall atexit")
+        .append("\n\tmovq $1, %rdi")
+        .append("\n\tcall isatty")
+        .append("\n\tmovl %eax, minijava_output_interactive");
+    for (int signal : TERMINATING_SIGNALS) {
+      text.append("\n\tmovq $" + signal + ", %rdi")
+          .append("\n\tleaq minijava_terminate, %rsi")
+          .append("\n\tcall signal");
+    }
+    text.append("\n\tleaq minijava_gc_stats_variable, %rdi")
+        .append("\n\tcall getenv")
+        .append("\n\ttestq %rax, %rax")
+        .append("\n\tjz 5f")
+        .append("\n\tleaq minijava_gc_stats, %rdi")
+        .append("\n\tcall atexit")
+        .append("\n5:")
+        .append("\n\tpopq %r12")
+        .append("\n\tpopq %rbx")
+        .append("\n\tpopq %rbp")
+        .append("\n\tret")
+        // a semispace in %rax
+        .append("\n\nminijava_reserve:")
+        .append("\n\tpushq %rbp")
+        .append("\n\tmovq %rsp, %rbp")
+        .append("\n\txorq %rdi, %rdi")
+        .append("\n\tmovq $" + HEAP_RESERVATION + ", %rsi")
+        .append("\n\tmovq $" + PROT_FLAGS + ", %rdx")
+        .append("\n\tmovq $" + MAP_FLAGS + ", %rcx")
+        .append("\n\tmovq $-1, %r8")
+        .append("\n\txorq %r9, %r9")
+        .append("\n\tcall mmap")
+        // MAP_FAILED
+        .append("\n\tcmpq $-1, %rax")
+        .append("\n\tje minijava_allocation_failed")
+        .append("\n\tpopq %rbp")
+        .append("\n\tret")
+        .append("\n\nminijava_gc_stats:")
+        .append("\n\tpushq %rbp")
+        .append("\n\tmovq %rsp, %rbp")
+        .append("\n\tmovq $2, %rdi")
+        .append("\n\tleaq minijava_gc_stats_format, %rsi")
+        .append("\n\tmovq minijava_collections, %rdx")
+        .append("\n\tmovq minijava_bytes_copied, %rcx")
+        .append("\n\tmovq " + HEAP_LIMIT + ", %r8")
+        .append("\n\tsubq minijava_from_space, %r8")
+        .append("\n\txorq %rax, %rax")
+        .append("\n\tcall dprintf")
+        .append("\n\tpopq %rbp")
+        .append("\n\tret");
+  }
+
+  private static void emitAllocate(AssemblyWriter.Segment text) {
+    text.append("\n\n" + ALLOCATE + ":")
+        .append("\n\tpushq %rbp")
+        .append("\n\tmovq %rsp, %rbp")
+        .append("\n\tandq $-16, %rsp")
+        // the caller-saved registers, except %rax (8 of them keep the stack aligned)
+        .append("\n\tpushq %rdi")
+        .append("\n\tpushq %rsi")
+        .append("\n\tpushq %rdx")
+        .append("\n\tpushq %rcx")
+        .append("\n\tpushq %r8")
+        .append("\n\tpushq %r9")
+        .append("\n\tpushq %r10")
+        .append("\n\tpushq %r11")
+        // an array of negative length (anything smaller than a header and a word), or larger
+        // than a semispace
+        .append("\n\tcmpq $" + (HEADER_SIZE + 8) + ", %rax")
+        .append("\n\tjl minijava_allocation_failed")
+        .append("\n\tmovq $" + HEAP_RESERVATION + ", %rsi")
+        .append("\n\tcmpq %rsi, %rax")
+        .append("\n\tja minijava_allocation_failed")
+        .append("\n\tsubq $16, %rsp")
+        .append("\n\tmovq %rax, 0(%rsp)")
+        // from the frame of the caller, which has to be a generated one
+        .append("\n\tmovq 0(%rbp), %rdi")
+        .append("\n\tmovq %rax, %rsi")
+        .append("\n\tcall minijava_collect")
+        .append("\n\tmovq " + HEAP_POINTER + ", %rax")
+        .append("\n\tmovq 0(%rsp), %rsi")
+        .append("\n\taddq %rax, %rsi")
+        .append("\n\tmovq %rsi, " + HEAP_POINTER)
+        .append("\n\taddq $16, %rsp")
+        .append("\n\tpopq %r11")
+        .append("\n\tpopq %r10")
+        .append("\n\tpopq %r9")
+        .append("\n\tpopq %r8")
+        .append("\n\tpopq %rcx")
+        .append("\n\tpopq %rdx")
+        .append("\n\tpopq %rsi")
+        .append("\n\tpopq %rdi")
+        .append("\n\tmovq %rbp, %rsp")
+        .append("\n\tpopq %rbp")
+        .append("\n\tret")
+        .append("\n\nminijava_allocation_failed:")
+        .append("\n\tandq $-16, %rsp")
+        // the output first, so that the message follows it
+        .append("\n\tcall minijava_flush")
+        .append("\n\tmovq $2, %rdi")
+        .append("\n\tleaq minijava_allocation_failed_message, %rsi")
+        .append("\n\tmovq $" + (ALLOCATION_FAILED_MESSAGE.length() - 1) + ", %rdx")
+        .append("\n\tcall write")
+        .append("\n\tmovq $1, %rdi")
+        .append("\n\tcall exit");
+  }
+
+  private static void emitPrint(AssemblyWriter.Segment text) {
+    text.append("\n\n" + PRINT + ":")
+        .append("\n\tpushq %rbp")
+        .append("\n\tmovq %rsp, %rbp")
+        .append("\n\tpushq %rax")
+        .append("\n\tpushq %rcx")
+        .append("\n\tpushq %rdx")
+        .append("\n\tpushq %rsi")
+        .append("\n\tpushq %rdi")
+        .append("\n\tpushq %r8")
+        .append("\n\tpushq %r9")
+        .append("\n\tpushq %r10")
+        .append("\n\tpushq %r11")
+        .append("\n\tcmpq $" + (OUTPUT_BUFFER_SIZE - MAX_LINE_LENGTH) + ", minijava_output_length")
+        .append("\n\tjbe 1f")
+        .append("\n\tandq $-16, %rsp")
+        .append("\n\tcall minijava_flush")
+        .append("\n\tleaq -72(%rbp), %rsp")
+        .append("\n\tmovq -8(%rbp), %rax")
+        .append("\n1:")
+        // the digits, last first, below the newline, then the sign (%r8), on the stack
+        .append("\n\tsubq $32, %rsp")
+        .append("\n\tleaq 31(%rsp), %rsi")
+        .append("\n\tmovb $10, 0(%rsi)")
+        .append("\n\tmovslq %eax, %rax")
+        .append("\n\tmovq %rax, %r8")
+        .append("\n\ttestq %rax, %rax")
+        .append("\n\tjns 2f")
+        .append("\n\tnegq %rax")
+        .append("\n2:")
+        .append("\n\tmovq $" + DIVIDE_BY_TEN + ", %rdi")
+        .append("\n3:")
+        .append("\n\tmovq %rax, %rcx")
+        .append("\n\tmulq %rdi")
+        .append("\n\tshrq $3, %rdx")
+        .append("\n\tmovq %rdx, %rax")
+        .append("\n\tleaq 0(%rdx,%rdx,4), %rdx")
+        .append("\n\taddq %rdx, %rdx")
+        .append("\n\tsubq %rdx, %rcx")
+        .append("\n\taddq $" + (int) '0' + ", %rcx")
+        .append("\n\tdecq %rsi")
+        .append("\n\tmovb %cl, 0(%rsi)")
+        .append("\n\ttestq %rax, %rax")
+        .append("\n\tjnz 3b")
+        .append("\n\ttestq %r8, %r8")
+        .append("\n\tjns 4f")
+        .append("\n\tdecq %rsi")
+        .append("\n\tmovb $" + (int) '-' + ", 0(%rsi)")
+        .append("\n4:")
+        .append("\n\tleaq 32(%rsp), %rcx")
+        .append("\n\tsubq %rsi, %rcx")
+        .append("\n\tmovq minijava_output_length, %rdi")
+        .append("\n\tleaq 0(%rdi,%rcx), %r9")
+        .append("\n\tleaq minijava_output_buffer(%rdi), %rdi")
+        .append("\n\trep movsb")
+        // only once the line is in the buffer, which a signal may flush at any point
+        .append("\n\tmovq %r9, minijava_output_length")
+        .append("\n\tcmpq $0, minijava_output_interactive")
+        .append("\n\tje 5f")
+        .append("\n\tandq $-16, %rsp")
+        .append("\n\tcall minijava_flush")
+        .append("\n5:")
+        .append("\n\tleaq -72(%rbp), %rsp")
+        .append("\n\tpopq %r11")
+        .append("\n\tpopq %r10")
+        .append("\n\tpopq %r9")
+        .append("\n\tpopq %r8")
+        .append("\n\tpopq %rdi")
+        .append("\n\tpopq %rsi")
+        .append("\n\tpopq %rdx")
+        .append("\n\tpopq %rcx")
+        .append("\n\tpopq %rax")
+        .append("\n\tpopq %rbp")
+        .append("\n\tret");
+    // writes the output buffer to stdout, retrying short and interrupted writes (and dropping
+    // the output on an error): only calls write, so it can run in a signal handler
+    text.append("\n\nminijava_flush:")
+        .append("\n\tpushq %rbp")
+        .append("\n\tmovq %rsp, %rbp")
+        .append("\n\tpushq %rbx")
+        .append("\n\tpushq %r12")
+        .append("\n\tleaq minijava_output_buffer, %rbx")
+        .append("\n\tmovq minijava_output_length, %r12")
+        .append("\n1:")
+        .append("\n\ttestq %r12, %r12")
+        .append("\n\tjz 3f")
+        .append("\n\tmovq $1, %rdi")
+        .append("\n\tmovq %rbx, %rsi")
+        .append("\n\tmovq %r12, %rdx")
+        .append("\n\tcall write")
+        .append("\n\ttestq %rax, %rax")
+        .append("\n\tjg 2f")
+        .append("\n\tjz 3f")
+        .append("\n\tcall __errno_location")
+        .append("\n\tcmpl $" + EINTR + ", 0(%rax)")
+        .append("\n\tje 1b")
+        .append("\n\tjmp 3f")
+        .append("\n2:")
+        .append("\n\taddq %rax, %rbx")
+        .append("\n\tsubq %rax, %r12")
+        .append("\n\tjmp 1b")
+        .append("\n3:")
+        .append("\n\tmovq $0, minijava_output_length")
+        .append("\n\tpopq %r12")
+        .append("\n\tpopq %rbx")
+        .append("\n\tpopq %rbp")
+        .append("\n\tret");
+    // handler of the terminating signals: flushes, then dies of the signal (%rdi) all the same
+    text.append("\n\nminijava_terminate:")
+        .append("\n\tpushq %rbp")
+        .append("\n\tmovq %rsp, %rbp")
+        .append("\n\tpushq %rbx")
+        .append("\n\tpushq %r12")
+        .append("\n\tmovq %rdi, %rbx")
+        .append("\n\tcall minijava_flush")
+        .append("\n\tmovq %rbx, %rdi")
+        // SIG_DFL
+        .append("\n\txorq %rsi, %rsi")
+        .append("\n\tcall signal")
+        .append("\n\tmovq %rbx, %rdi")
+        .append("\n\tcall raise")
+        .append("\n\tpopq %r12")
+        .append("\n\tpopq %rbx")
+        .append("\n\tpopq %rbp")
+        .append("\n\tret");
+  }
+
+  private static void emitCollect(AssemblyWriter.Segment text) {
+    // minijava_collect(frame in %rdi, size to allocate in %rsi) copies the live data to the
+    // other semispace, with %r13 pointing past the last copy, and swaps the semispaces
+    text.append("\n\nminijava_collect:")
+        .append("\n\tpushq %rbp")
+        .append("\n\tmovq %rsp, %rbp")
+        .append("\n\tpushq %rbx")
+        .append("\n\tpushq %r12")
+        .append("\n\tpushq %r13")
+        .append("\n\tpushq %r14")
+        .append("\n\tpushq %r15")
+        .append("\n\tpushq %rsi")
+        .append("\n\tmovq %rdi, %r12")
+        .append("\n\tmovq minijava_to_space, %r13")
+        // the roots: the slots in the stack map of every frame, up to main's
+        .append("\n1:")
+        .append("\n\tmovq -8(%r12), %rbx")
+        .append("\n\ttestq %rbx, %rbx")
+        .append("\n\tjz 3f")
+        .append("\n\tmovq 0(%rbx), %r14")
+        .append("\n2:")
+        .append("\n\ttestq %r14, %r14")
+        .append("\n\tjz 3f")
+        .append("\n\tmovq 0(%rbx,%r14,8), %rax")
+        .append("\n\tleaq 0(%r12,%rax), %rdi")
+        .append("\n\tcall minijava_forward")
+        .append("\n\tdecq %r14")
+        .append("\n\tjmp 2b")
+        .append("\n3:")
+        .append("\n\tcmpq minijava_stack_bottom, %r12")
+        .append("\n\tje 4f")
+        .append("\n\tmovq 0(%r12), %r12")
+        .append("\n\tjmp 1b")
+        // then the reference fields of every copy (%rbx), which may be copied in turn
+        .append("\n4:")
+        .append("\n\tmovq minijava_to_space, %rbx")
+        .append("\n5:")
+        .append("\n\tcmpq %r13, %rbx")
+        .append("\n\tjae 9f")
+        .append("\n\tleaq 8(%rbx), %r12")
+        .append("\n\ttestq $1, 0(%rbx)")
+        .append("\n\tjnz 8f")
+        // an object: the descriptor is below its vtable
+        .append("\n\tmovq 0(%r12), %r14")
+        .append("\n\tmovq -16(%r14), %r15")
+        .append("\n6:")
+        .append("\n\ttestq %r15, %r15")
+        .append("\n\tjz 7f")
+        .append("\n\tmovq %r15, %rax")
+        .append("\n\tnegq %rax")
+        .append("\n\tmovq -16(%r14,%rax,8), %rax")
+        .append("\n\tleaq 0(%r12,%rax), %rdi")
+        .append("\n\tcall minijava_forward")
+        .append("\n\tdecq %r15")
+        .append("\n\tjmp 6b")
+        .append("\n7:")
+        .append("\n\tmovq -8(%r14), %rax")
+        .append("\n\tleaq 16(%rbx,%rax,8), %rbx")
+        .append("\n\tjmp 5b")
+        // an array of integers
+        .append("\n8:")
+        .append("\n\tmovq 0(%r12), %rax")
+        .append("\n\tleaq 16(%rbx,%rax,8), %rbx")
+        .append("\n\tjmp 5b")
+        // the pages of the old semispace are zeroed by the time it is allocated from again
+        .append("\n9:")
+        .append("\n\tmovq minijava_from_space, %rdi")
+        .append("\n\tmovq " + HEAP_POINTER + ", %rsi")
+        .append("\n\tsubq %rdi, %rsi")
+        .append("\n\tmovq $" + MADV_DONTNEED + ", %rdx")
+        .append("\n\tcall madvise")
+        .append("\n\tmovq minijava_from_space, %rax")
+        .append("\n\tmovq minijava_to_space, %rcx")
+        .append("\n\tmovq %rcx, minijava_from_space")
+        .append("\n\tmovq %rax, minijava_to_space")
+        .append("\n\tincq minijava_collections")
+        .append("\n\tmovq %r13, " + HEAP_POINTER)
+        .append("\n\tmovq %r13, %rax")
+        .append("\n\tsubq %rcx, %rax")
+        .append("\n\taddq %rax, minijava_bytes_copied")
+        // the new limit: twice the live data and the allocation, if larger than the heap size
+        .append("\n\taddq -48(%rbp), %rax")
+        .append("\n\tmovq $" + HEAP_RESERVATION + ", %rdx")
+        .append("\n\tcmpq %rdx, %rax")
+        .append("\n\tja minijava_allocation_failed")
+        .append("\n\taddq %rax, %rax")
+        .append("\n\tcmpq minijava_heap_size, %rax")
+        .append("\n\tcmovbq minijava_heap_size, %rax")
+        .append("\n\tcmpq %rdx, %rax")
+        .append("\n\tcmovaq %rdx, %rax")
+        .append("\n\taddq %rcx, %rax")
+        .append("\n\tmovq %rax, " + HEAP_LIMIT)
+        .append("\n\tpopq %rsi")
+        .append("\n\tpopq %r15")
+        .append("\n\tpopq %r14")
+        .append("\n\tpopq %r13")
+        .append("\n\tpopq %r12")
+        .append("\n\tpopq %rbx")
+        .append("\n\tpopq %rbp")
+        .append("\n\tret")
+        // minijava_forward(slot in %rdi) replaces the reference in the slot by the address of
+        // its copy, copying it to %r13 first if needed; %rbx, %r12, %r14 and %r15 are preserved
+        .append("\n\nminijava_forward:")
+        .append("\n\tmovq 0(%rdi), %rax")
+        .append("\n\ttestq %rax, %rax")
+        .append("\n\tjz 3f")
+        .append("\n\tmovq -8(%rax), %rcx")
+        .append("\n\ttestq $2, %rcx")
+        .append("\n\tjz 1f")
+        .append("\n\tsubq $2, %rcx")
+        .append("\n\tmovq %rcx, 0(%rdi)")
+        .append("\n\tret")
+        .append("\n1:")
+        .append("\n\tmovq %rdi, %r8")
+        .append("\n\tmovq %rax, %r9")
+        // the size in words after the header: the vtable pointer and the fields, or the
+        // length and the elements
+        .append("\n\tmovq 0(%rax), %rcx")
+        .append("\n\ttestq $1, -8(%rax)")
+        .append("\n\tjnz 2f")
+        .append("\n\tmovq -8(%rcx), %rcx")
+        .append("\n2:")
+        .append("\n\taddq $2, %rcx")
+        .append("\n\tleaq -8(%rax), %rsi")
+        .append("\n\tmovq %r13, %rdi")
+        .append("\n\trep movsq")
+        .append("\n\tleaq 8(%r13), %rax")
+        .append("\n\tmovq %rdi, %r13")
+        .append("\n\tleaq 2(%rax), %rcx")
+        .append("\n\tmovq %rcx, -8(%r9)")
+        .append("\n\tmovq %rax, 0(%r8)")
+        .append("\n3:")
+        .append("\n\tret");
+  }
+}
@@ -0,0 +1,93 @@
+package codegen_common;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import semantics.types.ClassType;
+import semantics.types.MethodType;
+import semantics.types.Type;
+import utils.Pair;
+
+/**
+ * Fields and vtable of the objects of a class, including the inherited ones, with their indices
+ * precomputed so that backends resolve a field or a method in constant time.
+ */
+public class ObjectLayout {
+
+  private List<String> fields;
+  // indices of the fields holding references, which the collector traces
+  private List<Integer> referenceFields;
+  private List<Pair<String, String>> vTable;
+  // index of the field visible by name (a field shadows the fields of its parents)
+  private Map<String, Integer> fieldIndices;
+  private Map<String, Integer> vTableIndices;
+
+  public ObjectLayout(ClassType classType) {
+    fields = new ArrayList<>();
+    referenceFields = new ArrayList<>();
+    vTable = new ArrayList<>();
+    fieldIndices = new HashMap<>();
+    vTableIndices = new HashMap<>();
+    List<ClassType> allParents = classType.getAllParents();
+    Collections.reverse(allParents);
+    for (ClassType parentClass : allParents) {
+      // handles fields in the class hierarchy (NOTE: we can have field in child class
+      // with same name as field in parent class,
+      // and in this case, both show up in the object layout)
+      for (Pair<String, Type> fieldPair : parentClass.getFieldsSorted()) {
+        String fieldName = fieldPair.first();
+        fieldIndices.put(fieldName, fields.size());
+        if (NativeRuntime.isReference(fieldPair.second())) {
+          referenceFields.add(fields.size());
+        }
+        fields.add(fieldName);
+      }
+      // handles methods in the class hierarchy (NOTE: if a method in a child class
+      // overrides a method in a parent class,
+      // it replaces the corresponding entry in the vTable)
+      String parentClassName = parentClass.getClassName();
+      for (Pair<String, MethodType> methodPair : parentClass.getMethodsSorted()) {
+        String methodName = methodPair.first();
+        Integer index = vTableIndices.get(methodName);
+        Pair<String, String> vTableEntry = new Pair<>(methodName, parentClassName);
+        if (index == null) {
+          vTableIndices.put(methodName, vTable.size());
+          vTable.add(vTableEntry);
+        } else {
+          vTable.set(index, vTableEntry);
+        }
+      }
+    }
+  }
+
+  public List<String> getFields() {
+    return fields;
+  }
+
+  /** Indices of the fields that hold objects or arrays, in increasing order. */
+  public List<Integer> getReferenceFields() {
+    return referenceFields;
+  }
+
+  public List<Pair<String, String>> getVTable() {
+    return vTable;
+  }
+
+  /** Index of the field in the object (after the vtable pointer), -1 if there's no such field. */
+  public int getFieldIndex(String fieldName) {
+    return fieldIndices.getOrDefault(fieldName, -1);
+  }
+
+  /** Index of the method in the vtable (after the parent's vtable pointer), -1 if not found. */
+  public int getVTableIndex(String methodName) {
+    return vTableIndices.getOrDefault(methodName, -1);
+  }
+
+  /** The vtable entry (method name, implementing class) of the method. */
+  public Pair<String, String> getVTableEntry(String methodName) {
+    return vTable.get(vTableIndices.get(methodName));
+  }
+}
@@ -0,0 +1,59 @@
+package codegen_common;
+
+/** Mnemonics of the instructions emitted by the backends, with AT&T operand size suffixes. */
+public enum Opcode {
+  ADDQ("addq"),
+  CALL("call"),
+  CMPQ("cmpq"),
+  IMULQ("imulq"),
+  INCQ("incq"),
+  JA("ja"),
+  JGE("jge"),
+  JL("jl"),
+  JMP("jmp"),
+  JNZ("jnz"),
+  JS("js"),
+  JZ("jz"),
+  LEAQ("leaq"),
+  MOVQ("movq"),
+  MOVZBQ("movzbq"),
+  MULQ("mulq"),
+  NEGQ("negq"),
+  NOTQ("notq"),
+  POPQ("popq"),
+  PUSHQ("pushq"),
+  RET("ret"),
+  SALQ("salq"),
+  SETL("setl"),
+  SUBQ("subq"),
+  TEST("test"),
+  /** Pseudo instruction defining a label, its only operand. */
+  LABEL(null);
+
+  private final String mnemonic;
+
+  private Opcode(String mnemonic) {
+    this.mnemonic = mnemonic;
+  }
+
+  public String getMnemonic() {
+    return mnemonic;
+  }
+
+  /** Returns whether the operand is a code address, written with a '*' unless it's a label. */
+  public boolean isControlTransfer() {
+    switch (this) {
+      case CALL:
+      case JA:
+      case JGE:
+      case JL:
+      case JMP:
+      case JNZ:
+      case JS:
+      case JZ:
+        return true;
+      default:
+        return false;
+    }
+  }
+}
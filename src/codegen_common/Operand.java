@@ -0,0 +1,8 @@
+package codegen_common;
+
+/** Operand of an {@link Instruction}: a register, an immediate, a memory reference or a label. */
+public interface Operand {
+
+  /** Appends the AT&T syntax of the operand. */
+  void appendTo(StringBuilder out);
+}
@@ -0,0 +1,55 @@
+package codegen_common;
+
+/** General purpose x86-64 register, either the full 64 bits or the low byte of one. */
+public final class Register implements Operand {
+
+  public static final Register RAX = new Register("%rax", "%al");
+  public static final Register RBX = new Register("%rbx", "%bl");
+  public static final Register RCX = new Register("%rcx", "%cl");
+  public static final Register RDX = new Register("%rdx", "%dl");
+  public static final Register RSI = new Register("%rsi", "%sil");
+  public static final Register RDI = new Register("%rdi", "%dil");
+  public static final Register RBP = new Register("%rbp", "%bpl");
+  public static final Register RSP = new Register("%rsp", "%spl");
+  public static final Register R8 = new Register("%r8", "%r8b");
+  public static final Register R9 = new Register("%r9", "%r9b");
+  public static final Register R10 = new Register("%r10", "%r10b");
+  public static final Register R11 = new Register("%r11", "%r11b");
+  public static final Register R12 = new Register("%r12", "%r12b");
+  public static final Register R13 = new Register("%r13", "%r13b");
+  public static final Register R14 = new Register("%r14", "%r14b");
+  public static final Register R15 = new Register("%r15", "%r15b");
+
+  private final String name;
+  private final Register lowByte;
+
+  private Register(String name, String lowByteName) {
+    this.name = name;
+    this.lowByte = new Register(lowByteName);
+  }
+
+  private Register(String name) {
+    this.name = name;
+    this.lowByte = null;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /** The register naming the low byte of this one (e.g. %al for %rax), used by setcc. */
+  public Register lowByte() {
+    assert lowByte != null : name + " is already a byte register";
+    return lowByte;
+  }
+
+  @Override
+  public void appendTo(StringBuilder out) {
+    out.append(name);
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
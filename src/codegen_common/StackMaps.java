@@ -0,0 +1,55 @@
+package codegen_common;
+
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Stack maps of a method: at every call that may collect (method calls and allocation slow
+ * paths), the frame slots holding references, which the backends store the address of in the
+ * frame's STACK_MAP_SLOT so that the collector finds its roots exactly (see {@link
+ * NativeRuntime}). Slot i of a frame is -8*i(%rbp). Identical maps are emitted once per method.
+ */
+public class StackMaps {
+
+  /** The map of the frame's current call site, at -8(%rbp) in every generated frame. */
+  public static final Memory STACK_MAP_SLOT = new Memory(-8, Register.RBP);
+  /** Slots of a frame used by the frame itself: the map, e.g. before "this" and the arguments. */
+  public static final int HEADER_SLOTS = 1;
+
+  private static final Immediate NO_REFERENCES = Immediate.of(0);
+
+  private final String methodSymbol;
+  // the maps not appended yet
+  private final Map<BitSet, Label> labels;
+  private int numberOfMaps;
+
+  public StackMaps(String methodSymbol) {
+    this.methodSymbol = methodSymbol;
+    this.labels = new LinkedHashMap<>();
+    this.numberOfMaps = 0;
+  }
+
+  /** The operand to store in STACK_MAP_SLOT at a call with references in the given slots. */
+  public Operand of(BitSet referenceSlots) {
+    if (referenceSlots.isEmpty()) {
+      return NO_REFERENCES;
+    }
+    Label label = labels.get(referenceSlots);
+    if (label == null) {
+      label = Label.symbol(methodSymbol + "$map" + numberOfMaps++);
+      labels.put((BitSet) referenceSlots.clone(), label);
+    }
+    return new Address(label);
+  }
+
+  /** Appends the maps used so far: the number of slots, then their %rbp offsets. */
+  public void appendTo(AssemblyWriter.Segment segment) {
+    for (Map.Entry<BitSet, Label> map : labels.entrySet()) {
+      segment.append('\n').append(map.getValue().toString()).append(':');
+      segment.append("\n\t.quad ").append(map.getKey().cardinality());
+      map.getKey().stream().forEach(slot -> segment.append("\n\t.quad ").append(-8 * slot));
+    }
+    labels.clear();
+  }
+}
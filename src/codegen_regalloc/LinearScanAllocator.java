@@ -0,0 +1,91 @@
+package codegen_regalloc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import codegen_common.Register;
+import codegen_regalloc.LiveIntervalVisitor.LiveInterval;
+
+/**
+ * Linear-scan register allocation (Poletto and Sarkar) of a method's variables onto the
+ * callee-saved registers. Variables live across calls, so caller-saved registers are left to
+ * expression temporaries. When no register is free, the interval ending last is spilled to a stack
+ * slot.
+ */
+public class LinearScanAllocator {
+
+  static final List<Register> CALLEE_SAVED_REGISTERS =
+      List.of(Register.RBX, Register.R12, Register.R13, Register.R14, Register.R15);
+
+  private final Map<String, Register> registerOf;
+  private final List<String> spilled;
+  private final Set<Register> usedRegisters;
+
+  public LinearScanAllocator(List<LiveInterval> intervals) {
+    registerOf = new HashMap<>();
+    spilled = new ArrayList<>();
+    usedRegisters = new LinkedHashSet<>();
+    List<LiveInterval> sorted = new ArrayList<>(intervals);
+    sorted.sort(Comparator.comparingInt(LiveInterval::getStart));
+    Deque<Register> freeRegisters = new ArrayDeque<>(CALLEE_SAVED_REGISTERS);
+    // active intervals, sorted by increasing end point
+    List<LiveInterval> active = new ArrayList<>();
+    for (LiveInterval current : sorted) {
+      // expire old intervals
+      while (!active.isEmpty() && active.get(0).getEnd() < current.getStart()) {
+        freeRegisters.push(registerOf.get(active.remove(0).getVarName()));
+      }
+      if (freeRegisters.isEmpty()) {
+        LiveInterval last = active.get(active.size() - 1);
+        if (last.getEnd() > current.getEnd()) {
+          // steal the register of the interval that lives the longest
+          registerOf.put(current.getVarName(), registerOf.remove(last.getVarName()));
+          spilled.add(last.getVarName());
+          active.remove(active.size() - 1);
+          insertByEnd(active, current);
+        } else {
+          spilled.add(current.getVarName());
+        }
+      } else {
+        Register register = freeRegisters.pop();
+        registerOf.put(current.getVarName(), register);
+        usedRegisters.add(register);
+        insertByEnd(active, current);
+      }
+    }
+  }
+
+  private static void insertByEnd(List<LiveInterval> active, LiveInterval interval) {
+    int i = 0;
+    while (i < active.size() && active.get(i).getEnd() <= interval.getEnd()) {
+      ++i;
+    }
+    active.add(i, interval);
+  }
+
+  public Map<String, Register> getRegisterAssignment() {
+    return registerOf;
+  }
+
+  public List<String> getSpilledVariables() {
+    return spilled;
+  }
+
+  /** Callee-saved registers that the method has to preserve, in allocation order. */
+  public List<Register> getUsedRegisters() {
+    List<Register> used = new ArrayList<>();
+    for (Register register : CALLEE_SAVED_REGISTERS) {
+      if (usedRegisters.contains(register)) {
+        used.add(register);
+      }
+    }
+    return used;
+  }
+}
@@ -0,0 +1,286 @@
+package codegen_regalloc;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import parser.ast.MethodDeclNode;
+import parser.ast.base_abs_classes.ExprNode;
+import parser.ast.base_abs_classes.StatementNode;
+import parser.ast.expression.ArrayAccessExpr;
+import parser.ast.expression.LengthExpr;
+import parser.ast.expression.MethodCallExpr;
+import parser.ast.expression.NewArrayDeclExpr;
+import parser.ast.expression.NewObjectDeclExpr;
+import parser.ast.expression.NotExpr;
+import parser.ast.expression.binary_expr.AddExpr;
+import parser.ast.expression.binary_expr.AndExpr;
+import parser.ast.expression.binary_expr.DotExpr;
+import parser.ast.expression.binary_expr.LtExpr;
+import parser.ast.expression.binary_expr.MultExpr;
+import parser.ast.expression.binary_expr.ShiftLeftExpr;
+import parser.ast.expression.binary_expr.SubExpr;
+import parser.ast.expression.literals.IdentifierExpr;
+import parser.ast.expression.literals.IntExpr;
+import parser.ast.expression.singletons.FalseExpr;
+import parser.ast.expression.singletons.ThisExpr;
+import parser.ast.expression.singletons.TrueExpr;
+import parser.ast.statement.BlockStatement;
+import parser.ast.statement.IfStatement;
+import parser.ast.statement.PrintStatement;
+import parser.ast.statement.SetArrayIndexStatement;
+import parser.ast.statement.SetVariableStatement;
+import parser.ast.statement.WhileStatement;
+import semantics.types.MethodType;
+import utils.Pair;
+
+/**
+ * Computes a conservative live interval for "this", every argument and every local of a single
+ * method. Program points are numbered in evaluation order; a variable referenced inside a loop is
+ * kept alive for the whole loop, and a local only starts after its first assignment if that
+ * assignment is unconditional (otherwise its implicit zero-initialization may be observed).
+ */
+public class LiveIntervalVisitor {
+
+  public static final String THIS = "this";
+
+  public static class LiveInterval {
+
+    private final String varName;
+    private int start;
+    private int end;
+
+    private LiveInterval(String varName, int start, int end) {
+      this.varName = varName;
+      this.start = start;
+      this.end = end;
+    }
+
+    public String getVarName() {
+      return varName;
+    }
+
+    public int getStart() {
+      return start;
+    }
+
+    public int getEnd() {
+      return end;
+    }
+
+    private void extend(int from, int to) {
+      start = Math.min(start, from);
+      end = Math.max(end, to);
+    }
+  }
+
+  private final MethodType method;
+  private final Map<String, LiveInterval> intervals;
+  private final Deque<Pair<Integer, Set<String>>> enclosingLoops;
+  private int currentPosition;
+  private int conditionalDepth;
+
+  public LiveIntervalVisitor(MethodType method) {
+    this.method = method;
+    this.intervals = new LinkedHashMap<>();
+    this.enclosingLoops = new ArrayDeque<>();
+    this.currentPosition = 0;
+    this.conditionalDepth = 0;
+    // "this" and the arguments are live on entry
+    intervals.put(THIS, new LiveInterval(THIS, 0, 0));
+    for (Pair<String, ?> argument : method.getArgumentsSorted()) {
+      intervals.put(argument.first(), new LiveInterval(argument.first(), 0, 0));
+    }
+  }
+
+  public List<LiveInterval> getIntervals() {
+    return new ArrayList<>(intervals.values());
+  }
+
+  private boolean isFrameVariable(String name) {
+    return method.getArguments().containsKey(name) || method.getVarsDecl().containsKey(name);
+  }
+
+  private void use(String name) {
+    ++currentPosition;
+    LiveInterval interval = intervals.get(name);
+    if (interval == null) {
+      // local read before any assignment: it is live from the method entry
+      interval = new LiveInterval(name, 0, currentPosition);
+      intervals.put(name, interval);
+    } else {
+      interval.extend(currentPosition, currentPosition);
+    }
+    if (!enclosingLoops.isEmpty()) {
+      enclosingLoops.peek().second().add(name);
+    }
+  }
+
+  private void define(String name) {
+    ++currentPosition;
+    LiveInterval interval = intervals.get(name);
+    if (interval == null) {
+      int start = conditionalDepth == 0 && enclosingLoops.isEmpty() ? currentPosition : 0;
+      intervals.put(name, new LiveInterval(name, start, currentPosition));
+    } else {
+      interval.extend(currentPosition, currentPosition);
+    }
+    if (!enclosingLoops.isEmpty()) {
+      enclosingLoops.peek().second().add(name);
+    }
+  }
+
+  private void useVariable(String name) {
+    if (isFrameVariable(name)) {
+      use(name);
+    } else {
+      // object field: accessed through "this"
+      use(THIS);
+    }
+  }
+
+  public void visit(IdentifierExpr expr) {
+    useVariable(expr.getIdentifierName());
+  }
+
+  public void visit(IntExpr expr) {
+    return;
+  }
+
+  public void visit(FalseExpr expr) {
+    return;
+  }
+
+  public void visit(TrueExpr expr) {
+    return;
+  }
+
+  public void visit(ThisExpr expr) {
+    use(THIS);
+  }
+
+  public void visit(AddExpr expr) {
+    expr.getLeftHandSide().accept(this);
+    expr.getRightHandSide().accept(this);
+  }
+
+  public void visit(AndExpr expr) {
+    expr.getLeftHandSide().accept(this);
+    ++conditionalDepth;
+    expr.getRightHandSide().accept(this);
+    --conditionalDepth;
+  }
+
+  public void visit(DotExpr expr) {
+    expr.getLeftHandSide().accept(this);
+  }
+
+  public void visit(LtExpr expr) {
+    expr.getLeftHandSide().accept(this);
+    expr.getRightHandSide().accept(this);
+  }
+
+  public void visit(MultExpr expr) {
+    expr.getLeftHandSide().accept(this);
+    expr.getRightHandSide().accept(this);
+  }
+
+  public void visit(ShiftLeftExpr expr) {
+    expr.getLeftHandSide().accept(this);
+  }
+
+  public void visit(SubExpr expr) {
+    expr.getLeftHandSide().accept(this);
+    expr.getRightHandSide().accept(this);
+  }
+
+  public void visit(ArrayAccessExpr expr) {
+    expr.getArray().accept(this);
+    expr.getIndex().accept(this);
+  }
+
+  public void visit(LengthExpr expr) {
+    expr.getLenExpr().accept(this);
+  }
+
+  public void visit(MethodCallExpr expr) {
+    expr.getObjectSeqExpr().accept(this);
+    for (ExprNode arg : expr.getArgs()) {
+      arg.accept(this);
+    }
+  }
+
+  public void visit(NewArrayDeclExpr expr) {
+    expr.getSize().accept(this);
+  }
+
+  public void visit(NewObjectDeclExpr expr) {
+    return;
+  }
+
+  public void visit(NotExpr expr) {
+    expr.getArgument().accept(this);
+  }
+
+  public void visit(BlockStatement statement) {
+    for (StatementNode statementNode : statement.getStatements()) {
+      statementNode.accept(this);
+    }
+  }
+
+  public void visit(IfStatement statement) {
+    statement.getIfCondition().accept(this);
+    ++conditionalDepth;
+    statement.getIfBlock().accept(this);
+    statement.getElseBlock().accept(this);
+    --conditionalDepth;
+  }
+
+  public void visit(PrintStatement statement) {
+    statement.getPrintExpr().accept(this);
+  }
+
+  public void visit(SetArrayIndexStatement statement) {
+    statement.getVarAssigned().accept(this);
+    statement.getIndex().accept(this);
+    statement.getRightHandSide().accept(this);
+  }
+
+  public void visit(SetVariableStatement statement) {
+    statement.getRightHandSide().accept(this);
+    String varName = statement.getVarAssigned().getIdentifierName();
+    if (isFrameVariable(varName)) {
+      define(varName);
+    } else {
+      use(THIS);
+    }
+  }
+
+  public void visit(WhileStatement statement) {
+    int loopStart = ++currentPosition;
+    enclosingLoops.push(new Pair<>(loopStart, new HashSet<>()));
+    statement.getWhileCondition().accept(this);
+    statement.getWhileBlock().accept(this);
+    int loopEnd = ++currentPosition;
+    Set<String> usedInLoop = enclosingLoops.pop().second();
+    // values flowing around the back edge must survive the whole loop
+    for (String name : usedInLoop) {
+      intervals.get(name).extend(loopStart, loopEnd);
+    }
+    if (!enclosingLoops.isEmpty()) {
+      enclosingLoops.peek().second().addAll(usedInLoop);
+    }
+  }
+
+  public void visit(MethodDeclNode node) {
+    for (StatementNode statementNode : node.getStatements()) {
+      statementNode.accept(this);
+    }
+    node.getReturnExpr().accept(this);
+  }
+}
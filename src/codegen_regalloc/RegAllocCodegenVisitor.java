@@ -0,0 +1,1047 @@
+package codegen_regalloc;
+
+import java.io.StringWriter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import codegen_common.AllocationSites;
+import codegen_common.AssemblyWriter;
+import codegen_common.ClassFragments;
+import codegen_common.CodegenOptions;
+import codegen_common.Immediate;
+import codegen_common.Instruction;
+import codegen_common.Label;
+import codegen_common.Memory;
+import codegen_common.NativeRuntime;
+import codegen_common.ObjectLayout;
+import codegen_common.Opcode;
+import codegen_common.Operand;
+import codegen_common.Register;
+import codegen_common.StackMaps;
+import codegen_regalloc.LiveIntervalVisitor.LiveInterval;
+import optimization.ClassHierarchyAnalysis;
+import parser.ast.ClassNode;
+import parser.ast.GoalNode;
+import parser.ast.MethodDeclNode;
+import parser.ast.VarDeclNode;
+import parser.ast.base_abs_classes.ExprNode;
+import parser.ast.base_abs_classes.StatementNode;
+import parser.ast.expression.ArrayAccessExpr;
+import parser.ast.expression.LengthExpr;
+import parser.ast.expression.MethodCallExpr;
+import parser.ast.expression.NewArrayDeclExpr;
+import parser.ast.expression.NewObjectDeclExpr;
+import parser.ast.expression.NotExpr;
+import parser.ast.expression.binary_expr.AddExpr;
+import parser.ast.expression.binary_expr.AndExpr;
+import parser.ast.expression.binary_expr.BinaryExpr;
+import parser.ast.expression.binary_expr.DotExpr;
+import parser.ast.expression.binary_expr.LtExpr;
+import parser.ast.expression.binary_expr.MultExpr;
+import parser.ast.expression.binary_expr.ShiftLeftExpr;
+import parser.ast.expression.binary_expr.SubExpr;
+import parser.ast.expression.literals.IdentifierExpr;
+import parser.ast.expression.literals.IntExpr;
+import parser.ast.expression.singletons.FalseExpr;
+import parser.ast.expression.singletons.ThisExpr;
+import parser.ast.expression.singletons.TrueExpr;
+import parser.ast.statement.BlockStatement;
+import parser.ast.statement.IfStatement;
+import parser.ast.statement.PrintStatement;
+import parser.ast.statement.SetArrayIndexStatement;
+import parser.ast.statement.SetVariableStatement;
+import parser.ast.statement.WhileStatement;
+import semantics.TypesVisitor;
+import semantics.types.ClassType;
+import semantics.types.MethodType;
+import semantics.types.Type;
+import utils.OrderedTasks;
+import utils.Pair;
+
+/**
+ * Code generator that keeps "this", arguments and locals in callee-saved registers (see {@link
+ * LinearScanAllocator}) and evaluates expressions into caller-saved scratch registers instead of
+ * going through the stack. Scratch registers that are live across a call are pushed around it.
+ * %rax is never handed out as a scratch register: it holds return values and is used as a
+ * temporary by the instruction sequences below.
+ *
+ * <p>Variables holding references live in the frame instead, so that the collector finds and
+ * updates them through the stack maps (see {@link StackMaps}), as do the scratch registers holding
+ * references, which are pushed around every call that may collect.
+ */
+public class RegAllocCodegenVisitor {
+
+  static final int REGISTER_SIZE = 8;
+  static final List<Register> ARGUMENT_REGISTERS =
+      List.of(Register.RDI, Register.RSI, Register.RDX, Register.RCX, Register.R8, Register.R9);
+  static final List<Register> SCRATCH_REGISTERS =
+      List.of(
+          Register.R10,
+          Register.R11,
+          Register.R8,
+          Register.R9,
+          Register.RCX,
+          Register.RDX,
+          Register.RSI,
+          Register.RDI);
+  static final Immediate TRUE = Immediate.of(-1);
+  static final Immediate FALSE = Immediate.of(0);
+  static final Immediate REGISTER_SIZE_IMMEDIATE = Immediate.of(REGISTER_SIZE);
+  static final String MAIN = "main";
+
+  // blocks are numbered within their method, whose symbol prefixes their labels
+  private String currentMethodSymbol;
+  private int currentBlockNumber;
+  private int currentPushDepth;
+  // slots of the frame before the pushes: the push at depth d is in slot frameSlots + d
+  private int frameSlots;
+  // frame slots (by index) holding references
+  private BitSet referenceSlots;
+  private StackMaps stackMaps;
+  private AssemblyWriter output;
+  private AssemblyWriter.Segment dataRegion;
+  private AssemblyWriter.Segment textRegion;
+  // instructions of the method being generated, encoded into textRegion once it's complete
+  private List<Instruction> instructions;
+  // out of line blocks of the method (allocation slow paths), encoded after it
+  private List<Instruction> slowPaths;
+  private Map<String, ObjectLayout> objsLayout;
+  private TypesVisitor typesVis;
+  private Optional<ClassHierarchyAnalysis> hierarchyAnalysis;
+  private Optional<ForkJoinPool> pool;
+  private Optional<ClassFragments> fragments;
+  private boolean heapProfile;
+  // the allocation sites of the method, with the heap profiler
+  private Optional<AllocationSites> allocationSites;
+  // per method state
+  private Map<String, Operand> varLocations;
+  private List<Register> savedRegisters;
+  private Deque<Register> freeScratchRegisters;
+  private List<Register> liveScratchRegisters;
+  private Set<Register> referenceRegisters;
+  private Register result;
+
+  public RegAllocCodegenVisitor(TypesVisitor typesVis) {
+    this(typesVis, new AssemblyWriter(new StringWriter()), CodegenOptions.DEFAULTS);
+  }
+
+  /**
+   * The generated assembly is streamed to output, which is flushed once the program is done, as
+   * options direct.
+   */
+  public RegAllocCodegenVisitor(
+      TypesVisitor typesVis, AssemblyWriter output, CodegenOptions options) {
+    currentMethodSymbol = MAIN;
+    currentBlockNumber = 0;
+    currentPushDepth = 0;
+    frameSlots = 0;
+    referenceSlots = new BitSet();
+    stackMaps = new StackMaps(MAIN);
+    this.output = output;
+    dataRegion = output.getData();
+    textRegion = output.getText();
+    instructions = new ArrayList<>();
+    slowPaths = new ArrayList<>();
+    objsLayout = new HashMap<>();
+    for (ClassType classType : typesVis.getClassSymbolTable().values()) {
+      objsLayout.put(classType.getClassName(), new ObjectLayout(classType));
+    }
+    this.typesVis = typesVis;
+    hierarchyAnalysis = options.getHierarchyAnalysis();
+    pool = options.getPool();
+    fragments = options.getFragments();
+    heapProfile = options.isHeapProfile();
+    allocationSites = Optional.empty();
+    varLocations = new HashMap<>();
+    savedRegisters = new ArrayList<>();
+    freeScratchRegisters = new ArrayDeque<>(SCRATCH_REGISTERS);
+    liveScratchRegisters = new ArrayList<>();
+    referenceRegisters = new HashSet<>();
+  }
+
+  /** A visitor for a single class, sharing the (read only) layouts of parent. */
+  private RegAllocCodegenVisitor(RegAllocCodegenVisitor parent, AssemblyWriter output) {
+    currentMethodSymbol = MAIN;
+    currentBlockNumber = 0;
+    currentPushDepth = 0;
+    frameSlots = 0;
+    referenceSlots = new BitSet();
+    stackMaps = new StackMaps(MAIN);
+    this.output = output;
+    dataRegion = output.getData();
+    textRegion = output.getText();
+    instructions = new ArrayList<>();
+    slowPaths = new ArrayList<>();
+    objsLayout = parent.objsLayout;
+    typesVis = parent.typesVis.fork();
+    hierarchyAnalysis = parent.hierarchyAnalysis;
+    pool = Optional.empty();
+    fragments = Optional.empty();
+    heapProfile = parent.heapProfile;
+    allocationSites = Optional.empty();
+    varLocations = new HashMap<>();
+    savedRegisters = new ArrayList<>();
+    freeScratchRegisters = new ArrayDeque<>(SCRATCH_REGISTERS);
+    liveScratchRegisters = new ArrayList<>();
+    referenceRegisters = new HashSet<>();
+  }
+
+  private void emit(Opcode opcode) {
+    instructions.add(new Instruction(opcode));
+  }
+
+  private void emit(Opcode opcode, Operand destination) {
+    instructions.add(new Instruction(opcode, destination));
+  }
+
+  private void emit(Opcode opcode, Operand source, Operand destination) {
+    instructions.add(new Instruction(opcode, source, destination));
+  }
+
+  private Label block(int blockNumber) {
+    return Label.block(currentMethodSymbol, blockNumber);
+  }
+
+  private void emitLabel(int blockNumber) {
+    instructions.add(Instruction.label(block(blockNumber)));
+  }
+
+  private void flushInstructions() {
+    instructions.addAll(slowPaths);
+    slowPaths.clear();
+    textRegion.append(instructions);
+    instructions.clear();
+    // read only, so they can follow the method (generated in any order)
+    stackMaps.appendTo(textRegion);
+    if (allocationSites.isPresent()) {
+      allocationSites.get().appendTo(textRegion);
+    }
+    textRegion.flush();
+  }
+
+  /** Starts counting the allocation sites of the method, reported as methodName. */
+  private void startAllocationSites(String methodName) {
+    allocationSites =
+        heapProfile
+            ? Optional.of(new AllocationSites(currentMethodSymbol, methodName))
+            : Optional.empty();
+  }
+
+  private Register allocScratch() {
+    assert !freeScratchRegisters.isEmpty() : "Ran out of scratch registers";
+    Register register = freeScratchRegisters.pop();
+    liveScratchRegisters.add(register);
+    referenceRegisters.remove(register);
+    return register;
+  }
+
+  private void freeScratch(Operand operand) {
+    if (liveScratchRegisters.remove(operand)) {
+      freeScratchRegisters.push((Register) operand);
+      referenceRegisters.remove(operand);
+    }
+  }
+
+  private void push(Register register) {
+    emit(Opcode.PUSHQ, register);
+    ++currentPushDepth;
+    referenceSlots.set(frameSlots + currentPushDepth, referenceRegisters.contains(register));
+  }
+
+  private void pop(Register register) {
+    emit(Opcode.POPQ, register);
+    if (referenceSlots.get(frameSlots + currentPushDepth)) {
+      referenceSlots.clear(frameSlots + currentPushDepth);
+      referenceRegisters.add(register);
+    }
+    --currentPushDepth;
+  }
+
+  private Register evaluate(ExprNode expr) {
+    expr.accept(this);
+    if (NativeRuntime.isReference(typesVis.typeOf(expr))) {
+      referenceRegisters.add(result);
+    } else {
+      referenceRegisters.remove(result);
+    }
+    return result;
+  }
+
+  private boolean isReference(String varName) {
+    MethodType currentMethod = typesVis.getCurrentMethod().get();
+    Type type = currentMethod.getArguments().get(varName);
+    if (type == null) {
+      type = currentMethod.getVarsDecl().get(varName);
+    }
+    // "this" otherwise
+    return type == null || NativeRuntime.isReference(type);
+  }
+
+  private void setStackMap() {
+    emit(Opcode.MOVQ, stackMaps.of(referenceSlots), StackMaps.STACK_MAP_SLOT);
+  }
+
+  /**
+   * Emits the slow path of an allocation (of %rax bytes) into slowPaths, leaving the allocated
+   * memory in destination: the scratch registers holding references are pushed around the call,
+   * as it may collect.
+   */
+  private void emitAllocationSlowPath(Register destination) {
+    List<Register> saved = new ArrayList<>();
+    for (Register register : liveScratchRegisters) {
+      if (referenceRegisters.contains(register)) {
+        saved.add(register);
+      }
+    }
+    int firstSlot = frameSlots + currentPushDepth + 1;
+    for (int i = 0; i < saved.size(); ++i) {
+      slowPaths.add(new Instruction(Opcode.PUSHQ, saved.get(i)));
+      referenceSlots.set(firstSlot + i);
+    }
+    slowPaths.add(
+        new Instruction(Opcode.MOVQ, stackMaps.of(referenceSlots), StackMaps.STACK_MAP_SLOT));
+    referenceSlots.clear(firstSlot, firstSlot + saved.size());
+    // preserves every register but %rax, and aligns the stack itself
+    slowPaths.add(new Instruction(Opcode.CALL, NativeRuntime.ALLOCATE));
+    for (int i = saved.size() - 1; i >= 0; --i) {
+      slowPaths.add(new Instruction(Opcode.POPQ, saved.get(i)));
+    }
+    slowPaths.add(new Instruction(Opcode.MOVQ, Register.RAX, destination));
+  }
+
+  private static boolean isRegister(Operand operand) {
+    return operand instanceof Register;
+  }
+
+  private void move(Operand source, Operand destination) {
+    if (source.equals(destination)) {
+      return;
+    }
+    if (!isRegister(source) && !isRegister(destination) && !(source instanceof Immediate)) {
+      emit(Opcode.MOVQ, source, Register.RAX);
+      source = Register.RAX;
+    }
+    emit(Opcode.MOVQ, source, destination);
+  }
+
+  private boolean isFrameVariable(String name) {
+    Optional<MethodType> currentMethod = typesVis.getCurrentMethod();
+    return typesVis.getCurrentClass().isPresent()
+        && (currentMethod.get().getArguments().containsKey(name)
+            || currentMethod.get().getVarsDecl().containsKey(name));
+  }
+
+  /** Returns a register holding "this", loading it into %rax if it was spilled. */
+  private Register thisRegister() {
+    Operand location = varLocations.get(LiveIntervalVisitor.THIS);
+    if (isRegister(location)) {
+      return (Register) location;
+    }
+    emit(Opcode.MOVQ, location, Register.RAX);
+    return Register.RAX;
+  }
+
+  private int getFieldOffset(String className, String fieldName) {
+    int fieldIndex = objsLayout.get(className).getFieldIndex(fieldName);
+    assert fieldIndex != -1 : "This should have failed semantic checks";
+    return REGISTER_SIZE * (1 + fieldIndex);
+  }
+
+  /**
+   * Returns an operand usable directly as the source of an instruction (immediate, or location of
+   * a frame variable), or null if the expression has to be evaluated into a scratch register.
+   */
+  private Operand simpleOperand(ExprNode expr) {
+    if (expr instanceof IntExpr) {
+      return Immediate.of(Integer.parseInt(((IntExpr) expr).getIntegerVal()));
+    } else if (expr instanceof TrueExpr) {
+      return TRUE;
+    } else if (expr instanceof FalseExpr) {
+      return FALSE;
+    } else if (expr instanceof ThisExpr) {
+      return varLocations.get(LiveIntervalVisitor.THIS);
+    } else if (expr instanceof IdentifierExpr) {
+      String name = ((IdentifierExpr) expr).getIdentifierName();
+      if (isFrameVariable(name)) {
+        return varLocations.get(name);
+      }
+    }
+    return null;
+  }
+
+  /** Pushes the scratch registers that are live across a call, making them available again. */
+  private List<Register> saveLiveScratchRegisters() {
+    List<Register> saved = new ArrayList<>(liveScratchRegisters);
+    for (Register register : saved) {
+      push(register);
+      freeScratch(register);
+    }
+    return saved;
+  }
+
+  private void restoreLiveScratchRegisters(List<Register> saved) {
+    for (int i = saved.size() - 1; i >= 0; --i) {
+      Register register = saved.get(i);
+      pop(register);
+      freeScratchRegisters.remove(register);
+      liveScratchRegisters.add(register);
+    }
+  }
+
+  private void emitCall(Operand target) {
+    // stack needs to be 16 aligned before calling
+    boolean misaligned = currentPushDepth % 2 == 1;
+    if (misaligned) {
+      emit(Opcode.SUBQ, REGISTER_SIZE_IMMEDIATE, Register.RSP);
+    }
+    emit(Opcode.CALL, target);
+    if (misaligned) {
+      emit(Opcode.ADDQ, REGISTER_SIZE_IMMEDIATE, Register.RSP);
+    }
+  }
+
+  /** Moves every source into the matching destination as if all moves happened at once. */
+  private void parallelMove(List<Register> sources, List<Register> destinations) {
+    Map<Register, Register> pending = new LinkedHashMap<>();
+    for (int i = 0; i < sources.size(); ++i) {
+      if (!sources.get(i).equals(destinations.get(i))) {
+        pending.put(destinations.get(i), sources.get(i));
+      }
+    }
+    while (!pending.isEmpty()) {
+      Register ready = null;
+      for (Register destination : pending.keySet()) {
+        if (!pending.containsValue(destination)) {
+          ready = destination;
+          break;
+        }
+      }
+      if (ready != null) {
+        emit(Opcode.MOVQ, pending.remove(ready), ready);
+      } else {
+        // every pending destination is still needed as a source: break the cycle through %rax
+        Register blocked = pending.keySet().iterator().next();
+        emit(Opcode.MOVQ, blocked, Register.RAX);
+        for (Map.Entry<Register, Register> move : pending.entrySet()) {
+          if (move.getValue() == blocked) {
+            move.setValue(Register.RAX);
+          }
+        }
+      }
+    }
+  }
+
+  private void visitArithmetic(BinaryExpr expr, Opcode opcode) {
+    Register leftHandSide = evaluate(expr.getLeftHandSide());
+    Operand rightOperand = simpleOperand(expr.getRightHandSide());
+    if (rightOperand != null) {
+      emit(opcode, rightOperand, leftHandSide);
+      result = leftHandSide;
+    } else if (freeScratchRegisters.isEmpty()) {
+      // no scratch register left for the RHS: fall back to the stack
+      push(leftHandSide);
+      freeScratch(leftHandSide);
+      Register rightHandSide = evaluate(expr.getRightHandSide());
+      pop(Register.RAX);
+      emit(opcode, rightHandSide, Register.RAX);
+      emit(Opcode.MOVQ, Register.RAX, rightHandSide);
+      result = rightHandSide;
+    } else {
+      Register rightHandSide = evaluate(expr.getRightHandSide());
+      emit(opcode, rightHandSide, leftHandSide);
+      freeScratch(rightHandSide);
+      result = leftHandSide;
+    }
+  }
+
+  /** Emits "cmpq RHS, LHS" for a LtExpr, leaving no scratch register live. */
+  private void compare(LtExpr expr) {
+    Operand leftOperand = simpleOperand(expr.getLeftHandSide());
+    Operand rightOperand = simpleOperand(expr.getRightHandSide());
+    if (leftOperand != null && isRegister(leftOperand) && rightOperand != null) {
+      // frame variables can't be modified by the evaluation of the RHS
+      emit(Opcode.CMPQ, rightOperand, leftOperand);
+      return;
+    }
+    Register leftHandSide = evaluate(expr.getLeftHandSide());
+    if (rightOperand != null) {
+      emit(Opcode.CMPQ, rightOperand, leftHandSide);
+    } else if (freeScratchRegisters.isEmpty()) {
+      push(leftHandSide);
+      freeScratch(leftHandSide);
+      Register rightHandSide = evaluate(expr.getRightHandSide());
+      pop(Register.RAX);
+      emit(Opcode.CMPQ, rightHandSide, Register.RAX);
+      leftHandSide = rightHandSide;
+    } else {
+      Register rightHandSide = evaluate(expr.getRightHandSide());
+      emit(Opcode.CMPQ, rightHandSide, leftHandSide);
+      freeScratch(rightHandSide);
+    }
+    freeScratch(leftHandSide);
+  }
+
+  private void branchIfFalse(ExprNode condition, int blockNumber) {
+    if (condition instanceof TrueExpr) {
+      return;
+    } else if (condition instanceof FalseExpr) {
+      emit(Opcode.JMP, block(blockNumber));
+    } else if (condition instanceof NotExpr) {
+      branchIfTrue(((NotExpr) condition).getArgument(), blockNumber);
+    } else if (condition instanceof AndExpr) {
+      branchIfFalse(((AndExpr) condition).getLeftHandSide(), blockNumber);
+      branchIfFalse(((AndExpr) condition).getRightHandSide(), blockNumber);
+    } else if (condition instanceof LtExpr) {
+      compare((LtExpr) condition);
+      emit(Opcode.JGE, block(blockNumber));
+    } else {
+      Register value = evaluate(condition);
+      emit(Opcode.TEST, value, value);
+      freeScratch(value);
+      emit(Opcode.JZ, block(blockNumber));
+    }
+  }
+
+  private void branchIfTrue(ExprNode condition, int blockNumber) {
+    if (condition instanceof TrueExpr) {
+      emit(Opcode.JMP, block(blockNumber));
+    } else if (condition instanceof FalseExpr) {
+      return;
+    } else if (condition instanceof NotExpr) {
+      branchIfFalse(((NotExpr) condition).getArgument(), blockNumber);
+    } else if (condition instanceof AndExpr) {
+      int continuationBlock = ++currentBlockNumber;
+      branchIfFalse(((AndExpr) condition).getLeftHandSide(), continuationBlock);
+      branchIfTrue(((AndExpr) condition).getRightHandSide(), blockNumber);
+      emitLabel(continuationBlock);
+    } else if (condition instanceof LtExpr) {
+      compare((LtExpr) condition);
+      emit(Opcode.JL, block(blockNumber));
+    } else {
+      Register value = evaluate(condition);
+      emit(Opcode.TEST, value, value);
+      freeScratch(value);
+      emit(Opcode.JNZ, block(blockNumber));
+    }
+  }
+
+  public void visit(IdentifierExpr expr) {
+    String idName = expr.getIdentifierName();
+    if (isFrameVariable(idName)) {
+      Operand location = varLocations.get(idName);
+      result = allocScratch();
+      emit(Opcode.MOVQ, location, result);
+      return;
+    }
+    // object field
+    String className = typesVis.getCurrentClass().get().getClassName();
+    int offset = getFieldOffset(className, idName);
+    Register thisRegister = thisRegister();
+    result = allocScratch();
+    emit(Opcode.MOVQ, new Memory(offset, thisRegister), result);
+  }
+
+  public void visit(IntExpr expr) {
+    result = allocScratch();
+    emit(Opcode.MOVQ, Immediate.of(Integer.parseInt(expr.getIntegerVal())), result);
+  }
+
+  public void visit(FalseExpr expr) {
+    result = allocScratch();
+    emit(Opcode.MOVQ, FALSE, result);
+  }
+
+  public void visit(TrueExpr expr) {
+    result = allocScratch();
+    emit(Opcode.MOVQ, TRUE, result);
+  }
+
+  public void visit(ThisExpr expr) {
+    result = allocScratch();
+    emit(Opcode.MOVQ, varLocations.get(LiveIntervalVisitor.THIS), result);
+  }
+
+  public void visit(AddExpr expr) {
+    visitArithmetic(expr, Opcode.ADDQ);
+  }
+
+  public void visit(AndExpr expr) {
+    int falseBlock = ++currentBlockNumber;
+    int continuationBlock = ++currentBlockNumber;
+    branchIfFalse(expr, falseBlock);
+    result = allocScratch();
+    emit(Opcode.MOVQ, TRUE, result);
+    emit(Opcode.JMP, block(continuationBlock));
+    emitLabel(falseBlock);
+    emit(Opcode.MOVQ, FALSE, result);
+    emitLabel(continuationBlock);
+  }
+
+  public void visit(DotExpr expr) {
+    Register object = evaluate(expr.getLeftHandSide());
+    // annotated by the type checking pass; checking it on demand is safe (doesn't change
+    // typesVis' currentClass/Method) because a DotExpr has no ClassNode/MethodDeclNode
+    Type objType = typesVis.typeOf(expr.getLeftHandSide());
+    assert objType.isClassType() : "This should have failed semantic checks";
+    int offset =
+        getFieldOffset(
+            ((ClassType) objType).getClassName(), expr.getRightHandSide().getIdentifierName());
+    emit(Opcode.MOVQ, new Memory(offset, object), object);
+    result = object;
+  }
+
+  public void visit(LtExpr expr) {
+    compare(expr);
+    result = allocScratch();
+    emit(Opcode.SETL, result.lowByte());
+    emit(Opcode.MOVZBQ, result.lowByte(), result);
+    // booleans are represented as 0 (false) or all ones (true)
+    emit(Opcode.NEGQ, result);
+  }
+
+  public void visit(MultExpr expr) {
+    visitArithmetic(expr, Opcode.IMULQ);
+  }
+
+  public void visit(ShiftLeftExpr expr) {
+    visitArithmetic(expr, Opcode.SALQ);
+  }
+
+  public void visit(SubExpr expr) {
+    visitArithmetic(expr, Opcode.SUBQ);
+  }
+
+  public void visit(ArrayAccessExpr expr) {
+    Register array = evaluate(expr.getArray());
+    ExprNode indexExpr = expr.getIndex();
+    if (indexExpr instanceof IntExpr) {
+      // zeroth element of the array stores its length
+      int index = Integer.parseInt(((IntExpr) indexExpr).getIntegerVal());
+      emit(Opcode.MOVQ, new Memory(REGISTER_SIZE * (index + 1), array), array);
+      result = array;
+      return;
+    }
+    Operand indexOperand = simpleOperand(indexExpr);
+    if (indexOperand != null && isRegister(indexOperand)) {
+      emit(
+          Opcode.MOVQ,
+          new Memory(REGISTER_SIZE, array, (Register) indexOperand, REGISTER_SIZE),
+          array);
+      result = array;
+    } else if (freeScratchRegisters.isEmpty()) {
+      push(array);
+      freeScratch(array);
+      Register index = evaluate(indexExpr);
+      pop(Register.RAX);
+      emit(Opcode.MOVQ, new Memory(REGISTER_SIZE, Register.RAX, index, REGISTER_SIZE), index);
+      result = index;
+    } else {
+      Register index = evaluate(indexExpr);
+      emit(Opcode.MOVQ, new Memory(REGISTER_SIZE, array, index, REGISTER_SIZE), array);
+      freeScratch(index);
+      result = array;
+    }
+  }
+
+  public void visit(LengthExpr expr) {
+    Register array = evaluate(expr.getLenExpr());
+    // zeroth element of the array stores its length
+    emit(Opcode.MOVQ, new Memory(0, array), array);
+    result = array;
+  }
+
+  public void visit(MethodCallExpr expr) {
+    List<ExprNode> args = expr.getArgs();
+    assert args.size() + 1 <= ARGUMENT_REGISTERS.size()
+        : "Current implementation doesn't support more than 6 arguments";
+    List<Register> saved = saveLiveScratchRegisters();
+    // evaluate the object and the arguments left to right; frame variables and constants can be
+    // moved straight into their argument register once the others are in place
+    List<Register> sources = new ArrayList<>();
+    List<Register> destinations = new ArrayList<>();
+    List<Operand> lateSources = new ArrayList<>();
+    List<Register> lateDestinations = new ArrayList<>();
+    List<ExprNode> values = new ArrayList<>();
+    values.add(expr.getObjectSeqExpr());
+    values.addAll(args);
+    for (int i = 0; i < values.size(); ++i) {
+      Operand operand = simpleOperand(values.get(i));
+      if (operand != null) {
+        lateSources.add(operand);
+        lateDestinations.add(ARGUMENT_REGISTERS.get(i));
+      } else {
+        sources.add(evaluate(values.get(i)));
+        destinations.add(ARGUMENT_REGISTERS.get(i));
+      }
+    }
+    parallelMove(sources, destinations);
+    for (Register source : sources) {
+      freeScratch(source);
+    }
+    for (int i = 0; i < lateSources.size(); ++i) {
+      move(lateSources.get(i), lateDestinations.get(i));
+    }
+    // annotated by the type checking pass; checking it on demand is safe (doesn't change
+    // typesVis' currentClass/Method) because a MethodCallExpr has no ClassNode/MethodDeclNode
+    Type objType = typesVis.typeOf(expr.getObjectSeqExpr());
+    assert objType.isClassType() : "This should have failed semantic checks";
+    String className = ((ClassType) objType).getClassName();
+    String methodName = expr.getMethodNameExpr().getIdentifierName();
+    Optional<String> directTarget =
+        hierarchyAnalysis.isPresent()
+            ? hierarchyAnalysis.get().devirtualize(className, methodName)
+            : Optional.empty();
+    setStackMap();
+    if (directTarget.isPresent()) {
+      // monomorphic call site: no need to go through the vTable
+      emitCall(Label.symbol(directTarget.get()));
+    } else {
+      int methodIndex = objsLayout.get(className).getVTableIndex(methodName);
+      assert methodIndex != -1 : "This should have failed semantic checks";
+      // dereference pointer to base of vTable and call the method through it
+      emit(Opcode.MOVQ, new Memory(0, Register.RDI), Register.RAX);
+      emitCall(new Memory(REGISTER_SIZE * (methodIndex + 1), Register.RAX));
+    }
+    restoreLiveScratchRegisters(saved);
+    result = allocScratch();
+    emit(Opcode.MOVQ, Register.RAX, result);
+  }
+
+  public void visit(NewArrayDeclExpr expr) {
+    Register size = evaluate(expr.getSize());
+    Register array = allocScratch();
+    int slowPathBlock = ++currentBlockNumber;
+    int allocatedBlock = ++currentBlockNumber;
+    // a negative length is left to the runtime, which fails
+    emit(Opcode.TEST, size, size);
+    emit(Opcode.JS, block(slowPathBlock));
+    // bump the heap pointer past the header, the length and the elements
+    emit(Opcode.MOVQ, NativeRuntime.HEAP_POINTER, array);
+    emit(
+        Opcode.LEAQ,
+        new Memory(NativeRuntime.HEADER_SIZE + REGISTER_SIZE, array, size, REGISTER_SIZE),
+        Register.RAX);
+    emit(Opcode.CMPQ, NativeRuntime.HEAP_LIMIT, Register.RAX);
+    emit(Opcode.JA, block(slowPathBlock));
+    emit(Opcode.MOVQ, Register.RAX, NativeRuntime.HEAP_POINTER);
+    emitLabel(allocatedBlock);
+    emit(Opcode.MOVQ, NativeRuntime.ARRAY_HEADER, new Memory(0, array));
+    emit(Opcode.ADDQ, Immediate.of(NativeRuntime.HEADER_SIZE), array);
+    // zeroth element holds the length
+    emit(Opcode.MOVQ, size, new Memory(0, array));
+    if (allocationSites.isPresent()) {
+      Label site = allocationSites.get().add(expr.getLine(), "int[]");
+      emit(Opcode.INCQ, AllocationSites.allocations(site));
+      emit(Opcode.LEAQ, new Memory(2, size), Register.RAX);
+      emit(Opcode.SALQ, Immediate.of(3), Register.RAX);
+      emit(Opcode.ADDQ, Register.RAX, AllocationSites.bytes(site));
+    }
+    slowPaths.add(Instruction.label(block(slowPathBlock)));
+    // the header and the length first
+    slowPaths.add(new Instruction(Opcode.LEAQ, new Memory(2, size), Register.RAX));
+    slowPaths.add(new Instruction(Opcode.SALQ, Immediate.of(3), Register.RAX));
+    emitAllocationSlowPath(array);
+    slowPaths.add(new Instruction(Opcode.JMP, block(allocatedBlock)));
+    freeScratch(size);
+    result = array;
+  }
+
+  public void visit(NewObjectDeclExpr expr) {
+    String objectName = expr.getObjectName();
+    int numBytes =
+        NativeRuntime.HEADER_SIZE
+            + REGISTER_SIZE * (objsLayout.get(objectName).getFields().size() + 1);
+    Register object = allocScratch();
+    // bump the heap pointer past the header, the vtable pointer and the fields
+    emit(Opcode.MOVQ, NativeRuntime.HEAP_POINTER, object);
+    emit(Opcode.LEAQ, new Memory(numBytes, object), Register.RAX);
+    int slowPathBlock = ++currentBlockNumber;
+    int allocatedBlock = ++currentBlockNumber;
+    emit(Opcode.CMPQ, NativeRuntime.HEAP_LIMIT, Register.RAX);
+    emit(Opcode.JA, block(slowPathBlock));
+    emit(Opcode.MOVQ, Register.RAX, NativeRuntime.HEAP_POINTER);
+    emitLabel(allocatedBlock);
+    // the header of an object is zero, like the memory allocated
+    emit(Opcode.ADDQ, Immediate.of(NativeRuntime.HEADER_SIZE), object);
+    emit(Opcode.LEAQ, Label.symbol(objectName + "$$"), Register.RAX);
+    emit(Opcode.MOVQ, Register.RAX, new Memory(0, object));
+    if (allocationSites.isPresent()) {
+      Label site = allocationSites.get().add(expr.getLine(), objectName);
+      emit(Opcode.INCQ, AllocationSites.allocations(site));
+      emit(Opcode.ADDQ, Immediate.of(numBytes), AllocationSites.bytes(site));
+    }
+    result = object;
+    slowPaths.add(Instruction.label(block(slowPathBlock)));
+    slowPaths.add(new Instruction(Opcode.MOVQ, Immediate.of(numBytes), Register.RAX));
+    emitAllocationSlowPath(object);
+    slowPaths.add(new Instruction(Opcode.JMP, block(allocatedBlock)));
+  }
+
+  public void visit(NotExpr expr) {
+    Register argument = evaluate(expr.getArgument());
+    emit(Opcode.NOTQ, argument);
+    result = argument;
+  }
+
+  public void visit(BlockStatement statement) {
+    for (StatementNode statementNode : statement.getStatements()) {
+      statementNode.accept(this);
+    }
+  }
+
+  public void visit(IfStatement statement) {
+    int elseBlock = ++currentBlockNumber;
+    int continuationBlock = ++currentBlockNumber;
+    branchIfFalse(statement.getIfCondition(), elseBlock);
+    statement.getIfBlock().accept(this);
+    emit(Opcode.JMP, block(continuationBlock));
+    emitLabel(elseBlock);
+    statement.getElseBlock().accept(this);
+    emitLabel(continuationBlock);
+  }
+
+  public void visit(PrintStatement statement) {
+    Register value = evaluate(statement.getPrintExpr());
+    freeScratch(value);
+    // buffered by the runtime, which preserves every register and aligns the stack itself
+    move(value, Register.RAX);
+    emit(Opcode.CALL, NativeRuntime.PRINT);
+  }
+
+  public void visit(SetArrayIndexStatement statement) {
+    Register array = evaluate(statement.getVarAssigned());
+    Register index = evaluate(statement.getIndex());
+    Operand rightOperand = simpleOperand(statement.getRightHandSide());
+    if (rightOperand == null || !(isRegister(rightOperand) || rightOperand instanceof Immediate)) {
+      rightOperand = evaluate(statement.getRightHandSide());
+    }
+    // zeroth element of the array stores its length
+    emit(Opcode.MOVQ, rightOperand, new Memory(REGISTER_SIZE, array, index, REGISTER_SIZE));
+    freeScratch(rightOperand);
+    freeScratch(index);
+    freeScratch(array);
+  }
+
+  public void visit(SetVariableStatement statement) {
+    String varName = statement.getVarAssigned().getIdentifierName();
+    Operand rightOperand = simpleOperand(statement.getRightHandSide());
+    if (isFrameVariable(varName)) {
+      Operand location = varLocations.get(varName);
+      if (rightOperand == null) {
+        rightOperand = evaluate(statement.getRightHandSide());
+      }
+      move(rightOperand, location);
+      freeScratch(rightOperand);
+      return;
+    }
+    // object field
+    if (rightOperand == null || !(isRegister(rightOperand) || rightOperand instanceof Immediate)) {
+      rightOperand = evaluate(statement.getRightHandSide());
+    }
+    String className = typesVis.getCurrentClass().get().getClassName();
+    int offset = getFieldOffset(className, varName);
+    emit(Opcode.MOVQ, rightOperand, new Memory(offset, thisRegister()));
+    freeScratch(rightOperand);
+  }
+
+  public void visit(WhileStatement statement) {
+    int whileConditionBlock = ++currentBlockNumber;
+    int whileLoopBlock = ++currentBlockNumber;
+    // test the condition at the bottom of the loop: one jump per iteration
+    emit(Opcode.JMP, block(whileConditionBlock));
+    emitLabel(whileLoopBlock);
+    statement.getWhileBlock().accept(this);
+    emitLabel(whileConditionBlock);
+    branchIfTrue(statement.getWhileCondition(), whileLoopBlock);
+  }
+
+  public void visit(ClassNode node) {
+    typesVis.setCurrentClass(node);
+    Optional<ClassType> currentClass = typesVis.getCurrentClass();
+    ObjectLayout currentLayout = objsLayout.get(currentClass.get().getClassName());
+    NativeRuntime.appendDescriptor(dataRegion, currentLayout);
+    dataRegion.append('\n').append(node.getClassName()).append("$$:");
+    if (currentClass.get().getExtendsFrom().isPresent()) {
+      dataRegion
+          .append("\n\t.quad ")
+          .append(currentClass.get().getExtendsFrom().get().getClassName())
+          .append("$$");
+    } else {
+      dataRegion.append("\n\t" + ".quad 0");
+    }
+    for (Pair<String, String> methodPair : currentLayout.getVTable()) {
+      dataRegion.append("\n\t.quad ").append(methodPair.toString());
+    }
+    dataRegion.append("\n\t" + ".align 16");
+    dataRegion.flush();
+    for (MethodDeclNode methodDeclNode : node.getMethodDecls()) {
+      Pair<String, String> methodPair =
+          currentLayout.getVTableEntry(methodDeclNode.getMethodName());
+      currentMethodSymbol = methodPair.toString();
+      currentBlockNumber = 0;
+      textRegion.append("\n\n").append(currentMethodSymbol).append(':');
+      methodDeclNode.accept(this);
+      flushInstructions();
+    }
+  }
+
+  public void visit(GoalNode node) {
+    NativeRuntime.emit(output);
+    if (heapProfile) {
+      AllocationSites.emit(output);
+    }
+    textRegion.append("\n" + ".global main");
+    textRegion.append("\n\n").append(MAIN).append(':');
+    emit(Opcode.PUSHQ, Register.RBP);
+    emit(Opcode.MOVQ, Register.RSP, Register.RBP);
+    varLocations = new HashMap<>();
+    currentPushDepth = 0;
+    // the stack map slot, and a slot keeping the stack 16 aligned
+    frameSlots = 2;
+    referenceSlots.clear();
+    referenceRegisters.clear();
+    stackMaps = new StackMaps(MAIN);
+    emit(Opcode.SUBQ, Immediate.of(REGISTER_SIZE * frameSlots), Register.RSP);
+    emit(Opcode.CALL, NativeRuntime.START);
+    if (heapProfile) {
+      emit(Opcode.CALL, AllocationSites.START);
+    }
+    startAllocationSites(node.getMainClassName() + "." + MAIN);
+    node.getStatement().accept(this);
+    emit(Opcode.MOVQ, FALSE, Register.RAX);
+    emit(Opcode.MOVQ, Register.RBP, Register.RSP);
+    emit(Opcode.POPQ, Register.RBP);
+    emit(Opcode.RET);
+    flushInstructions();
+    if (fragments.isPresent()) {
+      OrderedTasks.forEachInOrder(pool, node.getClasses(), this::reuseOrGenerate, output::append);
+    } else if (pool.isPresent()) {
+      OrderedTasks.forEachInOrder(pool, node.getClasses(), this::generateApart, output::append);
+    } else {
+      for (ClassNode classNode : node.getClasses()) {
+        classNode.accept(this);
+      }
+    }
+    output.flush();
+  }
+
+  private AssemblyWriter generateApart(ClassNode node) {
+    RegAllocCodegenVisitor classVis = new RegAllocCodegenVisitor(this, AssemblyWriter.buffered());
+    node.accept(classVis);
+    return classVis.output;
+  }
+
+  private AssemblyWriter reuseOrGenerate(ClassNode node) {
+    Optional<AssemblyWriter> fragment = fragments.get().fetch(node);
+    if (fragment.isPresent()) {
+      return fragment.get();
+    }
+    AssemblyWriter generated = generateApart(node);
+    fragments.get().store(node, generated);
+    return generated;
+  }
+
+  public void visit(MethodDeclNode node) {
+    typesVis.setCurrentMethod(node);
+    MethodType currentMethod = typesVis.getCurrentMethod().get();
+    int numberOfArgs = node.getMethodArgs().size() + 1;
+    assert numberOfArgs <= ARGUMENT_REGISTERS.size()
+        : "Current implementation doesn't support more than 6 arguments";
+    LiveIntervalVisitor liveIntervalVis = new LiveIntervalVisitor(currentMethod);
+    node.accept(liveIntervalVis);
+    List<LiveInterval> intervals = liveIntervalVis.getIntervals();
+    // references are never allocated to registers, see the class comment
+    List<LiveInterval> registerCandidates = new ArrayList<>();
+    List<String> references = new ArrayList<>();
+    for (LiveInterval interval : intervals) {
+      if (isReference(interval.getVarName())) {
+        references.add(interval.getVarName());
+      } else {
+        registerCandidates.add(interval);
+      }
+    }
+    LinearScanAllocator allocator = new LinearScanAllocator(registerCandidates);
+    savedRegisters = allocator.getUsedRegisters();
+    // frame: the stack map slot, saved callee-saved registers, then spilled variables
+    varLocations = new HashMap<>(allocator.getRegisterAssignment());
+    referenceSlots.clear();
+    referenceRegisters.clear();
+    stackMaps = new StackMaps(currentMethodSymbol);
+    startAllocationSites(
+        typesVis.getCurrentClass().get().getClassName() + "." + node.getMethodName());
+    int numSlots = StackMaps.HEADER_SLOTS + savedRegisters.size();
+    for (String spilledVar : allocator.getSpilledVariables()) {
+      varLocations.put(spilledVar, new Memory(-REGISTER_SIZE * ++numSlots, Register.RBP));
+    }
+    for (String reference : references) {
+      varLocations.put(reference, new Memory(-REGISTER_SIZE * ++numSlots, Register.RBP));
+      referenceSlots.set(numSlots);
+    }
+    // stack is kept 16 aligned at calls
+    if (numSlots % 2 == 1) {
+      ++numSlots;
+    }
+    frameSlots = numSlots;
+    currentPushDepth = 0;
+    emit(Opcode.PUSHQ, Register.RBP);
+    emit(Opcode.MOVQ, Register.RSP, Register.RBP);
+    emit(Opcode.SUBQ, Immediate.of(REGISTER_SIZE * numSlots), Register.RSP);
+    for (int i = 0; i < savedRegisters.size(); ++i) {
+      emit(Opcode.MOVQ, savedRegisters.get(i), savedRegisterSlot(i));
+    }
+    // move "this" and the arguments to their assigned locations (never argument registers)
+    List<String> parameterNames = new ArrayList<>();
+    parameterNames.add(LiveIntervalVisitor.THIS);
+    for (Pair<String, Type> argument : currentMethod.getArgumentsSorted()) {
+      parameterNames.add(argument.first());
+    }
+    for (int i = 0; i < parameterNames.size(); ++i) {
+      Operand location = varLocations.get(parameterNames.get(i));
+      if (location != null) {
+        emit(Opcode.MOVQ, ARGUMENT_REGISTERS.get(i), location);
+      }
+    }
+    // locals that may be read before being assigned start as zero, as do references (which
+    // the collector may see before they are assigned)
+    for (LiveInterval interval : intervals) {
+      String varName = interval.getVarName();
+      if ((interval.getStart() == 0 || references.contains(varName))
+          && currentMethod.getVarsDecl().containsKey(varName)) {
+        emit(Opcode.MOVQ, FALSE, varLocations.get(varName));
+      }
+    }
+    for (StatementNode statementNode : node.getStatements()) {
+      statementNode.accept(this);
+    }
+    Operand returnOperand = simpleOperand(node.getReturnExpr());
+    if (returnOperand == null) {
+      returnOperand = evaluate(node.getReturnExpr());
+      freeScratch(returnOperand);
+    }
+    move(returnOperand, Register.RAX);
+    for (int i = 0; i < savedRegisters.size(); ++i) {
+      emit(Opcode.MOVQ, savedRegisterSlot(i), savedRegisters.get(i));
+    }
+    emit(Opcode.MOVQ, Register.RBP, Register.RSP);
+    emit(Opcode.POPQ, Register.RBP);
+    emit(Opcode.RET);
+  }
+
+  private static Memory savedRegisterSlot(int index) {
+    return new Memory(-REGISTER_SIZE * (StackMaps.HEADER_SLOTS + index + 1), Register.RBP);
+  }
+
+  public void visit(VarDeclNode node) {
+    return;
+  }
+}
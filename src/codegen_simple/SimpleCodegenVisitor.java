@@ -1,14 +1,31 @@
 package codegen_simple;
 
+import java.io.StringWriter;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-
+import java.util.concurrent.ForkJoinPool;
+
+import codegen_common.AllocationSites;
+import codegen_common.AssemblyWriter;
+import codegen_common.ClassFragments;
+import codegen_common.CodegenOptions;
+import codegen_common.Immediate;
+import codegen_common.Instruction;
+import codegen_common.Label;
+import codegen_common.Memory;
+import codegen_common.NativeRuntime;
+import codegen_common.ObjectLayout;
+import codegen_common.Opcode;
+import codegen_common.Operand;
+import codegen_common.Register;
+import codegen_common.StackMaps;
+import optimization.ClassHierarchyAnalysis;
 import parser.ast.ClassNode;
 import parser.ast.GoalNode;
 import parser.ast.MethodDeclNode;
@@ -26,6 +43,7 @@ import parser.ast.expression.binary_expr.AndExpr;
 import parser.ast.expression.binary_expr.DotExpr;
 import parser.ast.expression.binary_expr.LtExpr;
 import parser.ast.expression.binary_expr.MultExpr;
+import parser.ast.expression.binary_expr.ShiftLeftExpr;
 import parser.ast.expression.binary_expr.SubExpr;
 import parser.ast.expression.literals.IdentifierExpr;
 import parser.ast.expression.literals.IntExpr;
@@ -42,103 +60,99 @@ import semantics.TypesVisitor;
 import semantics.types.ClassType;
 import semantics.types.MethodType;
 import semantics.types.Type;
+import utils.OrderedTasks;
 import utils.Pair;
 
 public class SimpleCodegenVisitor {
 
   static final int REGISTER_SIZE = 8;
-  static final List<String> ARGUMENT_REGISTERS =
-      List.of("%rdi", "%rsi", "%rdx", "%rcx", "%r8", "%r9");
-
-  private static <T, V> int findFirstIndex(List<Pair<T, V>> searched, String name) {
-    for (int i = 0; i < searched.size(); ++i) {
-      if (searched.get(i).first().equals(name)) {
-        return i;
-      }
-    }
-    return -1;
-  }
-
-  private static <T> int findLastIndex(List<T> searched, String name) {
-    for (int i = searched.size() - 1; i >= 0; --i) {
-      if (searched.get(i).equals(name)) {
-        return i;
-      }
-    }
-    return -1;
-  }
-
-  private class ObjectLayout {
-
-    private List<String> fields;
-    private List<Pair<String, String>> vTable;
-
-    private ObjectLayout(ClassType classType) {
-      fields = new ArrayList<>();
-      vTable = new ArrayList<>();
-      List<ClassType> allParents = classType.getAllParents();
-      Collections.reverse(allParents);
-      for (ClassType parentClass : allParents) {
-        // handles fields in the class hierarchy (NOTE: we can have field in child class
-        // with same name as field in parent class,
-        // and in this case, both show up in the object layout)
-        for (Pair<String, Type> fieldPair : parentClass.getFieldsSorted()) {
-          String fieldName = fieldPair.first();
-          fields.add(fieldName);
-        }
-        // handles methods in the class hierarchy (NOTE: if a method in a child class
-        // overrides a method in a parent class,
-        // it replaces the corresponding entry in the vTable)
-        String parentClassName = parentClass.getClassName();
-        for (Pair<String, MethodType> methodPair : parentClass.getMethodsSorted()) {
-          String methodName = methodPair.first();
-          int firstIndex = findFirstIndex(vTable, methodName);
-          Pair<String, String> vTableEntry = new Pair<>(methodName, parentClassName);
-          if (firstIndex == -1) {
-            vTable.add(vTableEntry);
-          } else {
-            vTable.set(firstIndex, vTableEntry);
-          }
-        }
-      }
-    }
-
-    private List<String> getFields() {
-      return fields;
-    }
-
-    private List<Pair<String, String>> getVTable() {
-      return vTable;
-    }
-  }
-
+  static final List<Register> ARGUMENT_REGISTERS =
+      List.of(Register.RDI, Register.RSI, Register.RDX, Register.RCX, Register.R8, Register.R9);
+  // "this" is stored in -16(%rbp), after the stack map, then the arguments and the locals
+  static final int THIS_SLOT_INDEX = StackMaps.HEADER_SLOTS + 1;
+  static final Memory THIS_SLOT = frameSlot(REGISTER_SIZE * THIS_SLOT_INDEX);
+  static final Immediate TRUE = Immediate.of(-1);
+  static final Immediate FALSE = Immediate.of(0);
+  static final Immediate REGISTER_SIZE_IMMEDIATE = Immediate.of(REGISTER_SIZE);
+  static final String MAIN = "main";
+
+  // blocks are numbered within their method, whose symbol prefixes their labels
+  private String currentMethodSymbol;
   private int currentBlockNumber;
   private int currentStackSize;
-  private StringBuilder dataRegion;
-  private StringBuilder textRegion;
+  // frame slots (by index, the stack slot of a push being currentStackSize) holding references
+  private BitSet referenceSlots;
+  private StackMaps stackMaps;
+  private AssemblyWriter output;
+  private AssemblyWriter.Segment dataRegion;
+  private AssemblyWriter.Segment textRegion;
+  // instructions of the method being generated, encoded into textRegion once it's complete
+  private List<Instruction> instructions;
+  // out of line blocks of the method (allocation slow paths), encoded after it
+  private List<Instruction> slowPaths;
   private Set<Pair<String, String>> methodsAlreadyWritten;
   private Map<String, ObjectLayout> objsLayout;
   private TypesVisitor typesVis;
+  private Optional<ClassHierarchyAnalysis> hierarchyAnalysis;
+  private Optional<ForkJoinPool> pool;
+  private Optional<ClassFragments> fragments;
+  private boolean heapProfile;
+  // the allocation sites of the method, with the heap profiler
+  private Optional<AllocationSites> allocationSites;
 
   public SimpleCodegenVisitor(TypesVisitor typesVis) {
+    this(typesVis, new AssemblyWriter(new StringWriter()), CodegenOptions.DEFAULTS);
+  }
+
+  /**
+   * The generated assembly is streamed to output, which is flushed once the program is done, as
+   * options direct.
+   */
+  public SimpleCodegenVisitor(
+      TypesVisitor typesVis, AssemblyWriter output, CodegenOptions options) {
+    currentMethodSymbol = MAIN;
     currentBlockNumber = 0;
     currentStackSize = 0;
-    dataRegion = new StringBuilder();
-    textRegion = new StringBuilder();
+    referenceSlots = new BitSet();
+    stackMaps = new StackMaps(MAIN);
+    this.output = output;
+    dataRegion = output.getData();
+    textRegion = output.getText();
+    instructions = new ArrayList<>();
+    slowPaths = new ArrayList<>();
     methodsAlreadyWritten = new HashSet<>();
     objsLayout = new HashMap<>();
     for (ClassType classType : typesVis.getClassSymbolTable().values()) {
       objsLayout.put(classType.getClassName(), new ObjectLayout(classType));
     }
     this.typesVis = typesVis;
+    hierarchyAnalysis = options.getHierarchyAnalysis();
+    pool = options.getPool();
+    fragments = options.getFragments();
+    heapProfile = options.isHeapProfile();
+    allocationSites = Optional.empty();
   }
 
-  public String getDataRegion() {
-    return dataRegion.toString();
-  }
-
-  public String getTextRegion() {
-    return textRegion.toString();
+  /** A visitor for a single class, sharing the (read only) layouts of parent. */
+  private SimpleCodegenVisitor(SimpleCodegenVisitor parent, AssemblyWriter output) {
+    currentMethodSymbol = MAIN;
+    currentBlockNumber = 0;
+    currentStackSize = 0;
+    referenceSlots = new BitSet();
+    stackMaps = new StackMaps(MAIN);
+    this.output = output;
+    dataRegion = output.getData();
+    textRegion = output.getText();
+    instructions = new ArrayList<>();
+    slowPaths = new ArrayList<>();
+    methodsAlreadyWritten = new HashSet<>();
+    objsLayout = parent.objsLayout;
+    typesVis = parent.typesVis.fork();
+    hierarchyAnalysis = parent.hierarchyAnalysis;
+    pool = Optional.empty();
+    fragments = Optional.empty();
+    heapProfile = parent.heapProfile;
+    allocationSites = Optional.empty();
   }
 
   private void setCurrentClass(ClassNode node) {
@@ -157,195 +171,230 @@ public class SimpleCodegenVisitor {
     return typesVis.getCurrentMethod();
   }
 
-  private void getVarAddress(String varName) {
-    Optional<ClassType> currentClass = getCurrentClass();
-    Optional<MethodType> currentMethod = getCurrentMethod();
-    if (currentClass.isPresent()) {
-      // case 1: function argument
-      int argumentIndex = findFirstIndex(currentMethod.get().getArgumentsSorted(), varName);
-      if (currentMethod.get().getArguments().containsKey(varName)) {
-        int offset = REGISTER_SIZE * (2 + argumentIndex);
-        textRegion.append("\n\t" + String.format("leaq -%d(%%rbp), %%rax", offset));
-        return;
-      }
-      // case 2: variable declared in function scope
-      int varDeclIndex = findFirstIndex(currentMethod.get().getVarsDeclSorted(), varName);
-      if (varDeclIndex != -1) {
-        int offset =
-            REGISTER_SIZE * (2 + currentMethod.get().getArgumentsSorted().size() + varDeclIndex);
-        textRegion.append("\n\t" + String.format("leaq -%d(%%rbp), %%rax", offset));
-        return;
-      }
-    }
-    // case 3: object field
-    if (currentClass.isPresent()) {
-      List<String> objectFields = objsLayout.get(currentClass.get().getClassName()).getFields();
-      int fieldIndex = findLastIndex(objectFields, varName);
-      if (fieldIndex != -1) {
-        int offset = REGISTER_SIZE * (1 + fieldIndex);
-        // "this" is stored in -8(%rbp) --> move it to %rax
-        textRegion.append("\n\t" + String.format("movq -%d(%%rbp), %%rax", REGISTER_SIZE));
-        // get the corresponding field in "this" and move it to %rax
-        textRegion.append("\n\t" + String.format("leaq %d(%%rax), %%rax", offset));
-        return;
-      }
+  private void emit(Opcode opcode) {
+    instructions.add(new Instruction(opcode));
+  }
+
+  private void emit(Opcode opcode, Operand destination) {
+    instructions.add(new Instruction(opcode, destination));
+  }
+
+  private void emit(Opcode opcode, Operand source, Operand destination) {
+    instructions.add(new Instruction(opcode, source, destination));
+  }
+
+  private Label block(int blockNumber) {
+    return Label.block(currentMethodSymbol, blockNumber);
+  }
+
+  private void emitLabel(int blockNumber) {
+    instructions.add(Instruction.label(block(blockNumber)));
+  }
+
+  private void flushInstructions() {
+    instructions.addAll(slowPaths);
+    slowPaths.clear();
+    textRegion.append(instructions);
+    instructions.clear();
+    // read only, so they can follow the method (generated in any order)
+    stackMaps.appendTo(textRegion);
+    if (allocationSites.isPresent()) {
+      allocationSites.get().appendTo(textRegion);
     }
-    throw new AssertionError("This should have failed semantic checks");
+    textRegion.flush();
   }
 
-  public void visit(IdentifierExpr expr) {
-    String idName = expr.getIdentifierName();
+  private static Memory frameSlot(int offset) {
+    return new Memory(-offset, Register.RBP);
+  }
+
+  /** Index of the frame slot of an argument, or of a local (numbered after the arguments). */
+  private static int argumentSlotIndex(int argumentIndex) {
+    return THIS_SLOT_INDEX + 1 + argumentIndex;
+  }
+
+  /** Pushes %rax, which holds a reference if reference (e.g. an object but not a vtable entry). */
+  private void push(boolean reference) {
+    emit(Opcode.PUSHQ, Register.RAX);
+    ++currentStackSize;
+    referenceSlots.set(currentStackSize, reference);
+  }
+
+  private void pop(Register register) {
+    emit(Opcode.POPQ, register);
+    referenceSlots.clear(currentStackSize);
+    --currentStackSize;
+  }
+
+  private boolean isReference(ExprNode expr) {
+    return NativeRuntime.isReference(typesVis.typeOf(expr));
+  }
+
+  /** The instruction storing the stack map of a call that may collect, made from here. */
+  private Instruction setStackMap() {
+    return new Instruction(Opcode.MOVQ, stackMaps.of(referenceSlots), StackMaps.STACK_MAP_SLOT);
+  }
+
+  /** Starts counting the allocation sites of the method, reported as methodName. */
+  private void startAllocationSites(String methodName) {
+    allocationSites =
+        heapProfile
+            ? Optional.of(new AllocationSites(currentMethodSymbol, methodName))
+            : Optional.empty();
+  }
+
+  /**
+   * Returns the memory operand of a variable: a frame slot for arguments and locals, or a field of
+   * "this" (which is loaded into %rax).
+   */
+  private Memory variableOperand(String varName) {
+    return variableOperand(varName, Register.RAX);
+  }
+
+  /** Same as variableOperand(varName), loading "this" into thisRegister. */
+  private Memory variableOperand(String varName, Register thisRegister) {
     Optional<ClassType> currentClass = getCurrentClass();
-    Optional<MethodType> currentMethod = getCurrentMethod();
     if (currentClass.isPresent()) {
+      MethodType currentMethod = getCurrentMethod().get();
       // case 1: function argument
-      int argumentIndex = findFirstIndex(currentMethod.get().getArgumentsSorted(), idName);
-      if (currentMethod.get().getArguments().containsKey(idName)) {
-        int offset = REGISTER_SIZE * (2 + argumentIndex);
-        textRegion.append("\n\t" + String.format("movq -%d(%%rbp), %%rax", offset));
-        return;
+      int argumentIndex = currentMethod.getArgumentIndex(varName);
+      if (argumentIndex != -1) {
+        return frameSlot(REGISTER_SIZE * argumentSlotIndex(argumentIndex));
       }
       // case 2: variable declared in function scope
-      int varDeclIndex = findFirstIndex(currentMethod.get().getVarsDeclSorted(), idName);
+      int varDeclIndex = currentMethod.getVarDeclIndex(varName);
       if (varDeclIndex != -1) {
-        int offset =
-            REGISTER_SIZE * (2 + currentMethod.get().getArgumentsSorted().size() + varDeclIndex);
-        textRegion.append("\n\t" + String.format("movq -%d(%%rbp), %%rax", offset));
-        return;
+        return frameSlot(
+            REGISTER_SIZE
+                * argumentSlotIndex(currentMethod.getArgumentsSorted().size() + varDeclIndex));
       }
-    }
-    // case 3: object field
-    if (currentClass.isPresent()) {
-      int fieldIndex =
-          findLastIndex(objsLayout.get(currentClass.get().getClassName()).getFields(), idName);
+      // case 3: object field
+      int fieldIndex = objsLayout.get(currentClass.get().getClassName()).getFieldIndex(varName);
       if (fieldIndex != -1) {
-        int offset = REGISTER_SIZE * (1 + fieldIndex);
-        // "this" is stored in -8(%rbp) --> move it to %rax
-        textRegion.append("\n\t" + String.format("movq -%d(%%rbp), %%rax", REGISTER_SIZE));
-        // get the corresponding field in "this" and move it to %rax
-        textRegion.append("\n\t" + String.format("movq %d(%%rax), %%rax", offset));
-        return;
+        // "this" is stored in -16(%rbp) --> move it to thisRegister
+        emit(Opcode.MOVQ, THIS_SLOT, thisRegister);
+        return new Memory(REGISTER_SIZE * (1 + fieldIndex), thisRegister);
       }
     }
     throw new AssertionError("This should have failed semantic checks");
   }
 
+  public void visit(IdentifierExpr expr) {
+    emit(Opcode.MOVQ, variableOperand(expr.getIdentifierName()), Register.RAX);
+  }
+
   public void visit(IntExpr expr) {
-    textRegion.append(
-        "\n\t" + String.format("movq $%d, %%rax", Integer.parseInt(expr.getIntegerVal())));
+    emit(Opcode.MOVQ, Immediate.of(Integer.parseInt(expr.getIntegerVal())), Register.RAX);
   }
 
   public void visit(FalseExpr expr) {
-    textRegion.append("\n\t" + "movq $0, %rax");
+    emit(Opcode.MOVQ, FALSE, Register.RAX);
   }
 
   public void visit(TrueExpr expr) {
-    textRegion.append("\n\t" + "movq $0xFFFFFFFFFFFFFFFF, %rax");
+    emit(Opcode.MOVQ, TRUE, Register.RAX);
   }
 
   public void visit(ThisExpr expr) {
-    textRegion.append("\n\t" + String.format("movq -%d(%%rbp), %%rax", REGISTER_SIZE));
+    emit(Opcode.MOVQ, THIS_SLOT, Register.RAX);
   }
 
   public void visit(AddExpr expr) {
     expr.getLeftHandSide().accept(this);
     // push into the stack
-    textRegion.append("\n\t" + "pushq %rax");
-    ++currentStackSize;
+    push(false);
     expr.getRightHandSide().accept(this);
     // retrieve LHS from stack
-    textRegion.append("\n\t" + "popq %rdx");
-    --currentStackSize;
-    textRegion.append("\n\t" + "addq %rdx, %rax");
+    pop(Register.RDX);
+    emit(Opcode.ADDQ, Register.RDX, Register.RAX);
   }
 
   public void visit(AndExpr expr) {
     expr.getLeftHandSide().accept(this);
-    textRegion.append("\n\t" + "test %rax, %rax");
+    emit(Opcode.TEST, Register.RAX, Register.RAX);
     int continuationBlockCache = ++currentBlockNumber;
-    textRegion.append("\n\t" + String.format("jz block$%d", continuationBlockCache));
+    emit(Opcode.JZ, block(continuationBlockCache));
     expr.getRightHandSide().accept(this);
-    textRegion.append("\n" + String.format("block$%d:", continuationBlockCache));
+    emitLabel(continuationBlockCache);
   }
 
   public void visit(DotExpr expr) {
     expr.getLeftHandSide().accept(this);
-    // the following is safe (doesn't change typesVis' currentClass/Method) because
-    // DotExpr doesn't visit a ClassNode or MethodDeclNode
-    Type objType = expr.getLeftHandSide().accept(typesVis);
+    // annotated by the type checking pass; checking it on demand is safe (doesn't change
+    // typesVis' currentClass/Method) because a DotExpr has no ClassNode/MethodDeclNode
+    Type objType = typesVis.typeOf(expr.getLeftHandSide());
     assert objType.isClassType() : "This should have failed semantic checks";
     int fieldIndex =
-        findLastIndex(
-            objsLayout.get(((ClassType) objType).getClassName()).getFields(),
-            expr.getRightHandSide().getIdentifierName());
+        objsLayout
+            .get(((ClassType) objType).getClassName())
+            .getFieldIndex(expr.getRightHandSide().getIdentifierName());
     assert fieldIndex != -1 : "This should have failed semantic checks";
-    textRegion.append("\n\t" + String.format("movq %d(%%rax), %%rax", REGISTER_SIZE * fieldIndex));
+    int offset = REGISTER_SIZE * (1 + fieldIndex);
+    emit(Opcode.MOVQ, new Memory(offset, Register.RAX), Register.RAX);
   }
 
   public void visit(LtExpr expr) {
     expr.getLeftHandSide().accept(this);
     // push into the stack
-    textRegion.append("\n\t" + "pushq %rax");
-    ++currentStackSize;
+    push(false);
     expr.getRightHandSide().accept(this);
     // retrieve LHS from stack
-    textRegion.append("\n\t" + "popq %rdx");
-    --currentStackSize;
-    textRegion.append("\n\t" + "cmpq %rax, %rdx");
-    textRegion.append("\n\t" + "movq $0, %rax");
+    pop(Register.RDX);
+    emit(Opcode.CMPQ, Register.RAX, Register.RDX);
+    emit(Opcode.MOVQ, FALSE, Register.RAX);
     int continuationBlock = ++currentBlockNumber;
-    textRegion.append("\n\t" + String.format("jge block$%d", continuationBlock));
-    textRegion.append("\n\t" + "movq $0xFFFFFFFFFFFFFFFF, %rax");
-    textRegion.append("\n" + String.format("block$%d:", continuationBlock));
+    emit(Opcode.JGE, block(continuationBlock));
+    emit(Opcode.MOVQ, TRUE, Register.RAX);
+    emitLabel(continuationBlock);
   }
 
   public void visit(MultExpr expr) {
     expr.getLeftHandSide().accept(this);
     // push into the stack
-    textRegion.append("\n\t" + "pushq %rax");
-    ++currentStackSize;
+    push(false);
     expr.getRightHandSide().accept(this);
     // retrieve LHS from stack
-    textRegion.append("\n\t" + "popq %rdx");
-    --currentStackSize;
-    textRegion.append("\n\t" + "mulq %rdx");
+    pop(Register.RDX);
+    emit(Opcode.MULQ, Register.RDX);
+  }
+
+  public void visit(ShiftLeftExpr expr) {
+    expr.getLeftHandSide().accept(this);
+    emit(Opcode.SALQ, Immediate.of(expr.getShiftAmount()), Register.RAX);
   }
 
   public void visit(SubExpr expr) {
     // more efficient to compute in this order...
     expr.getRightHandSide().accept(this);
     // push into the stack
-    textRegion.append("\n\t" + "pushq %rax");
-    ++currentStackSize;
+    push(false);
     // and then store LHS on %rax
     expr.getLeftHandSide().accept(this);
     // retrieve RHS from stack
-    textRegion.append("\n\t" + "popq %rdx");
-    --currentStackSize;
-    textRegion.append("\n\t" + "subq %rdx, %rax");
+    pop(Register.RDX);
+    emit(Opcode.SUBQ, Register.RDX, Register.RAX);
   }
 
   public void visit(ArrayAccessExpr expr) {
     // get the array reference (which will be in %rax)
     expr.getArray().accept(this);
     // push into the stack
-    textRegion.append("\n\t" + "pushq %rax");
-    ++currentStackSize;
+    push(true);
     expr.getIndex().accept(this);
     // zeroth element of the array stores its length, so increment index by one
-    textRegion.append("\n\t" + "incq %rax");
+    emit(Opcode.INCQ, Register.RAX);
     // retrieve array pointer from stack
-    textRegion.append("\n\t" + "popq %rdx");
-    --currentStackSize;
+    pop(Register.RDX);
     // dereference pointer to array element and move it to %rax
-    textRegion.append("\n\t" + String.format("movq (%%rdx, %%rax, %d), %%rax", REGISTER_SIZE));
+    emit(
+        Opcode.MOVQ, new Memory(0, Register.RDX, Register.RAX, REGISTER_SIZE), Register.RAX);
   }
 
   public void visit(LengthExpr expr) {
     // get the array reference (which will be in %rax)
     expr.getLenExpr().accept(this);
     // zeroth element of the array stores its length
-    textRegion.append("\n\t" + "movq 0(%rax), %rax");
+    emit(Opcode.MOVQ, new Memory(0, Register.RAX), Register.RAX);
   }
 
   public void visit(MethodCallExpr expr) {
@@ -353,52 +402,59 @@ public class SimpleCodegenVisitor {
     List<ExprNode> args = expr.getArgs();
     assert args.size() + 1 <= ARGUMENT_REGISTERS.size()
         : "Current implementation doesn't support more than 6 arguments";
+    // annotated by the type checking pass; checking it on demand is safe (doesn't change
+    // typesVis' currentClass/Method) because a MethodCallExpr has no ClassNode/MethodDeclNode
+    Type objType = typesVis.typeOf(expr.getObjectSeqExpr());
+    assert objType.isClassType() : "This should have failed semantic checks";
+    String className = ((ClassType) objType).getClassName();
+    String methodName = expr.getMethodNameExpr().getIdentifierName();
+    Optional<String> directTarget =
+        hierarchyAnalysis.isPresent()
+            ? hierarchyAnalysis.get().devirtualize(className, methodName)
+            : Optional.empty();
     // get pointer to object on which the method is being called
     expr.getObjectSeqExpr().accept(this);
     // push it to stack
-    textRegion.append("\n\t" + "pushq %rax");
-    ++currentStackSize;
-    // dereference pointer to base of vTable and move it to %rax
-    textRegion.append("\n\t" + "movq 0(%rax), %rax");
-    // the following is safe (doesn't change typesVis' currentClass/Method) because
-    // MethodCallExpr doesn't visit a ClassNode or MethodDeclNode
-    Type objType = expr.getObjectSeqExpr().accept(typesVis);
-    assert objType.isClassType() : "This should have failed semantic checks";
-    int methodIndex =
-        findFirstIndex(
-            objsLayout.get(((ClassType) objType).getClassName()).getVTable(),
-            expr.getMethodNameExpr().getIdentifierName());
-    assert methodIndex != -1 : "This should have failed semantic checks";
-    textRegion.append(
-        "\n\t" + String.format("movq %d(%%rax), %%rax", REGISTER_SIZE * (methodIndex + 1)));
-    // %rax now stores function pointer: push it to stack
-    textRegion.append("\n\t" + "pushq %rax");
-    ++currentStackSize;
+    push(true);
+    if (directTarget.isEmpty()) {
+      // dereference pointer to base of vTable and move it to %rax
+      emit(Opcode.MOVQ, new Memory(0, Register.RAX), Register.RAX);
+      int methodIndex = objsLayout.get(className).getVTableIndex(methodName);
+      assert methodIndex != -1 : "This should have failed semantic checks";
+      emit(
+          Opcode.MOVQ, new Memory(REGISTER_SIZE * (methodIndex + 1), Register.RAX), Register.RAX);
+      // %rax now stores function pointer: push it to stack
+      push(false);
+    }
     // push args into the stack
     for (ExprNode arg : args) {
       arg.accept(this);
-      textRegion.append("\n\t" + "pushq %rax");
-      ++currentStackSize;
+      push(isReference(arg));
     }
     // pop arguments
     for (int i = 0; i < args.size(); ++i) {
-      textRegion.append("\n\t" + String.format("popq %s", ARGUMENT_REGISTERS.get(args.size() - i)));
-      --currentStackSize;
+      pop(ARGUMENT_REGISTERS.get(args.size() - i));
+    }
+    if (directTarget.isEmpty()) {
+      // pop pointer to function
+      pop(Register.RAX);
     }
-    // pop pointer to function
-    textRegion.append("\n\t" + "popq %rax");
-    --currentStackSize;
     // pop pointer to object on which the method is being called
-    textRegion.append("\n\t" + "popq %rdi");
-    --currentStackSize;
+    pop(Register.RDI);
+    instructions.add(setStackMap());
     int stackSizeCache = currentStackSize;
     if (currentStackSize % 2 == 1) {
-      textRegion.append("\n\t" + String.format("subq $%s, %%rsp", REGISTER_SIZE));
+      emit(Opcode.SUBQ, REGISTER_SIZE_IMMEDIATE, Register.RSP);
       ++currentStackSize;
     }
-    textRegion.append("\n\t" + "call *%rax");
+    if (directTarget.isPresent()) {
+      // monomorphic call site: no need to go through the vTable
+      emit(Opcode.CALL, Label.symbol(directTarget.get()));
+    } else {
+      emit(Opcode.CALL, Register.RAX);
+    }
     if (stackSizeCache != currentStackSize) {
-      textRegion.append("\n\t" + String.format("addq $%s, %%rsp", REGISTER_SIZE));
+      emit(Opcode.ADDQ, REGISTER_SIZE_IMMEDIATE, Register.RSP);
       --currentStackSize;
     }
   }
@@ -407,50 +463,76 @@ public class SimpleCodegenVisitor {
     // %rax will contain the array size
     expr.getSize().accept(this);
     // callee saved register to hold the length
-    textRegion.append("\n\t" + "movq %rax, %r12");
-    // increment by one because zeroth byte holds size
-    textRegion.append("\n\t" + "incq %rax");
-    // pass number of blocks and block-size to calloc
-    textRegion.append("\n\t" + "movq %rax, %rdi");
-    textRegion.append("\n\t" + "movq $8, %rsi");
-    int stackSizeCache = currentStackSize;
-    // check 16 alignment in stack
-    if (currentStackSize % 2 == 1) {
-      textRegion.append("\n\t" + String.format("subq $%s, %%rsp", REGISTER_SIZE));
-      ++currentStackSize;
-    }
-    textRegion.append("\n\t" + "call calloc");
-    if (stackSizeCache != currentStackSize) {
-      textRegion.append("\n\t" + String.format("addq $%s, %%rsp", REGISTER_SIZE));
-      --currentStackSize;
-    }
+    emit(Opcode.MOVQ, Register.RAX, Register.R12);
+    int slowPathBlock = ++currentBlockNumber;
+    int allocatedBlock = ++currentBlockNumber;
+    // a negative length is left to the runtime, which fails
+    emit(Opcode.TEST, Register.R12, Register.R12);
+    emit(Opcode.JS, block(slowPathBlock));
+    // bump the heap pointer past the header, the length and the elements
+    emit(Opcode.MOVQ, NativeRuntime.HEAP_POINTER, Register.RAX);
+    emit(
+        Opcode.LEAQ,
+        new Memory(
+            NativeRuntime.HEADER_SIZE + REGISTER_SIZE, Register.RAX, Register.R12, REGISTER_SIZE),
+        Register.RDX);
+    emit(Opcode.CMPQ, NativeRuntime.HEAP_LIMIT, Register.RDX);
+    emit(Opcode.JA, block(slowPathBlock));
+    emit(Opcode.MOVQ, Register.RDX, NativeRuntime.HEAP_POINTER);
+    emitLabel(allocatedBlock);
+    emit(Opcode.MOVQ, NativeRuntime.ARRAY_HEADER, new Memory(0, Register.RAX));
+    emit(Opcode.ADDQ, Immediate.of(NativeRuntime.HEADER_SIZE), Register.RAX);
     // store length in the zeroth element
-    textRegion.append("\n\t" + "movq %r12, 0(%rax)");
+    emit(Opcode.MOVQ, Register.R12, new Memory(0, Register.RAX));
+    if (allocationSites.isPresent()) {
+      Label site = allocationSites.get().add(expr.getLine(), "int[]");
+      emit(Opcode.INCQ, AllocationSites.allocations(site));
+      emit(Opcode.LEAQ, new Memory(2, Register.R12), Register.RDX);
+      emit(Opcode.SALQ, Immediate.of(3), Register.RDX);
+      emit(Opcode.ADDQ, Register.RDX, AllocationSites.bytes(site));
+    }
+    slowPaths.add(Instruction.label(block(slowPathBlock)));
+    slowPaths.add(setStackMap());
+    // increment by two because of the header and of the zeroth element holding the length
+    slowPaths.add(new Instruction(Opcode.LEAQ, new Memory(2, Register.R12), Register.RAX));
+    slowPaths.add(new Instruction(Opcode.SALQ, Immediate.of(3), Register.RAX));
+    slowPaths.add(new Instruction(Opcode.CALL, NativeRuntime.ALLOCATE));
+    slowPaths.add(new Instruction(Opcode.JMP, block(allocatedBlock)));
   }
 
   public void visit(NewObjectDeclExpr expr) {
     String objectName = expr.getObjectName();
-    int numBytes = objsLayout.get(objectName).getFields().size() + 1;
-    textRegion.append("\n\t" + String.format("movq $%d, %%rdi", numBytes));
-    textRegion.append("\n\t" + "movq $8, %rsi");
-    // check 16 alignment in stack
-    int stackSizeCache = currentStackSize;
-    if (currentStackSize % 2 == 1) {
-      textRegion.append("\n\t" + String.format("subq $%s, %%rsp", REGISTER_SIZE));
-      ++currentStackSize;
+    int numBytes =
+        NativeRuntime.HEADER_SIZE
+            + REGISTER_SIZE * (objsLayout.get(objectName).getFields().size() + 1);
+    // bump the heap pointer past the header, the vtable pointer and the fields
+    emit(Opcode.MOVQ, NativeRuntime.HEAP_POINTER, Register.RAX);
+    emit(Opcode.LEAQ, new Memory(numBytes, Register.RAX), Register.RDX);
+    int slowPathBlock = ++currentBlockNumber;
+    int allocatedBlock = ++currentBlockNumber;
+    emit(Opcode.CMPQ, NativeRuntime.HEAP_LIMIT, Register.RDX);
+    emit(Opcode.JA, block(slowPathBlock));
+    emit(Opcode.MOVQ, Register.RDX, NativeRuntime.HEAP_POINTER);
+    emitLabel(allocatedBlock);
+    // the header of an object is zero, like the memory allocated
+    emit(Opcode.ADDQ, Immediate.of(NativeRuntime.HEADER_SIZE), Register.RAX);
+    emit(Opcode.LEAQ, Label.symbol(objectName + "$$"), Register.RDX);
+    emit(Opcode.MOVQ, Register.RDX, new Memory(0, Register.RAX));
+    if (allocationSites.isPresent()) {
+      Label site = allocationSites.get().add(expr.getLine(), objectName);
+      emit(Opcode.INCQ, AllocationSites.allocations(site));
+      emit(Opcode.ADDQ, Immediate.of(numBytes), AllocationSites.bytes(site));
     }
-    textRegion.append("\n\t" + "call calloc");
-    if (stackSizeCache != currentStackSize) {
-      textRegion.append("\n\t" + String.format("addq $%s, %%rsp", REGISTER_SIZE));
-      --currentStackSize;
-    }
-    textRegion.append("\n\t" + String.format("leaq %s, %%rdx", objectName + "$$"));
-    textRegion.append("\n\t" + "movq %rdx, 0(%rax)");
+    slowPaths.add(Instruction.label(block(slowPathBlock)));
+    slowPaths.add(setStackMap());
+    slowPaths.add(new Instruction(Opcode.MOVQ, Immediate.of(numBytes), Register.RAX));
+    slowPaths.add(new Instruction(Opcode.CALL, NativeRuntime.ALLOCATE));
+    slowPaths.add(new Instruction(Opcode.JMP, block(allocatedBlock)));
   }
 
   public void visit(NotExpr expr) {
     expr.getArgument().accept(this);
-    textRegion.append("\n\t" + "notq %rax");
+    emit(Opcode.NOTQ, Register.RAX);
   }
 
   public void visit(BlockStatement statement) {
@@ -462,143 +544,164 @@ public class SimpleCodegenVisitor {
   public void visit(IfStatement statement) {
     statement.getIfCondition().accept(this);
     int elseBlockCache = ++currentBlockNumber;
-    textRegion.append("\n\t" + "test %rax, %rax");
-    textRegion.append("\n\t" + String.format("jz block$%d", elseBlockCache));
+    emit(Opcode.TEST, Register.RAX, Register.RAX);
+    emit(Opcode.JZ, block(elseBlockCache));
     statement.getIfBlock().accept(this);
     int loopExitCache = ++currentBlockNumber;
-    textRegion.append("\n\t" + String.format("jmp block$%d", loopExitCache));
-    textRegion.append("\n" + String.format("block$%d:", elseBlockCache));
+    emit(Opcode.JMP, block(loopExitCache));
+    emitLabel(elseBlockCache);
     statement.getElseBlock().accept(this);
-    textRegion.append("\n" + String.format("block$%d:", loopExitCache));
+    emitLabel(loopExitCache);
   }
 
   public void visit(PrintStatement statement) {
     statement.getPrintExpr().accept(this);
-    textRegion.append("\n\t" + "leaq stdout_buffer, %rdi");
-    textRegion.append("\n\t" + "movq %rax, %rsi");
-    int stackSizeCache = currentStackSize;
-    if (currentStackSize % 2 == 1) {
-      textRegion.append("\n\t" + String.format("subq $%s, %%rsp", REGISTER_SIZE));
-      ++currentStackSize;
-    }
-    textRegion.append("\n\t" + "call printf");
-    if (stackSizeCache != currentStackSize) {
-      textRegion.append("\n\t" + String.format("addq $%s, %%rsp", REGISTER_SIZE));
-      --currentStackSize;
-    }
+    // buffered by the runtime, which aligns the stack itself
+    emit(Opcode.CALL, NativeRuntime.PRINT);
   }
 
   public void visit(SetArrayIndexStatement statement) {
     // %rax will contain the address of the array base
     statement.getVarAssigned().accept(this);
     // push pointer to stack
-    textRegion.append("\n\t" + "pushq %rax");
-    ++currentStackSize;
+    push(true);
     // compute index and increment by one (zeroth element stores size)
     statement.getIndex().accept(this);
-    textRegion.append("\n\t" + "incq %rax");
+    emit(Opcode.INCQ, Register.RAX);
     // push it to stack
-    textRegion.append("\n\t" + "pushq %rax");
-    ++currentStackSize;
+    push(false);
     // compute RHS which will be stored in %rax
     statement.getRightHandSide().accept(this);
     // pop index into %r12
-    textRegion.append("\n\t" + "popq %r12");
-    --currentStackSize;
+    pop(Register.R12);
     // pop array pointer into %rdx
-    textRegion.append("\n\t" + "popq %rdx");
-    --currentStackSize;
+    pop(Register.RDX);
     // move RHS into appropriate array slot
-    textRegion.append("\n\t" + String.format("movq %%rax, (%%rdx, %%r12, %d)", REGISTER_SIZE));
+    emit(
+        Opcode.MOVQ, Register.RAX, new Memory(0, Register.RDX, Register.R12, REGISTER_SIZE));
   }
 
   public void visit(SetVariableStatement statement) {
-    // %rax will contain the address of the variable
-    getVarAddress(statement.getVarAssigned().getIdentifierName());
-    // push pointer to stack
-    textRegion.append("\n\t" + "pushq %rax");
-    ++currentStackSize;
-    // compute RHS which will be stored in %rax
+    // compute RHS first (which will be stored in %rax): an allocation in it may move the object
+    // holding the variable
     statement.getRightHandSide().accept(this);
-    // pop pointer to variable into %rdx
-    textRegion.append("\n\t" + "popq %rdx");
-    --currentStackSize;
-    // move RHS into appropriate array slot
-    textRegion.append("\n\t" + "movq %rax, 0(%rdx)");
+    // move RHS into the variable
+    emit(
+        Opcode.MOVQ,
+        Register.RAX,
+        variableOperand(statement.getVarAssigned().getIdentifierName(), Register.RDX));
   }
 
   public void visit(WhileStatement statement) {
     int whileConditionCache = ++currentBlockNumber;
-    textRegion.append("\n" + String.format("block$%d:", whileConditionCache));
+    emitLabel(whileConditionCache);
     statement.getWhileCondition().accept(this);
-    textRegion.append("\n\t" + "test %rax, %rax");
+    emit(Opcode.TEST, Register.RAX, Register.RAX);
     int continuationBlockCache = ++currentBlockNumber;
-    textRegion.append("\n\t" + String.format("jz block$%d", continuationBlockCache));
+    emit(Opcode.JZ, block(continuationBlockCache));
     int whileLoopCache = ++currentBlockNumber;
-    textRegion.append("\n" + String.format("block$%d:", whileLoopCache));
+    emitLabel(whileLoopCache);
     statement.getWhileBlock().accept(this);
-    textRegion.append("\n\t" + String.format("jmp block$%d", whileConditionCache));
-    textRegion.append("\n" + String.format("block$%d:", continuationBlockCache));
+    emit(Opcode.JMP, block(whileConditionCache));
+    emitLabel(continuationBlockCache);
   }
 
   public void visit(ClassNode node) {
     setCurrentClass(node);
     Optional<ClassType> currentClass = getCurrentClass();
-    dataRegion.append("\n" + String.format("%s$$:", node.getClassName()));
+    ObjectLayout currentLayout = objsLayout.get(currentClass.get().getClassName());
+    NativeRuntime.appendDescriptor(dataRegion, currentLayout);
+    dataRegion.append('\n').append(node.getClassName()).append("$$:");
     if (currentClass.get().getExtendsFrom().isPresent()) {
-      dataRegion.append(
-          "\n\t"
-              + String.format(
-                  ".quad %s", currentClass.get().getExtendsFrom().get().getClassName() + "$$"));
+      dataRegion
+          .append("\n\t.quad ")
+          .append(currentClass.get().getExtendsFrom().get().getClassName())
+          .append("$$");
     } else {
       dataRegion.append("\n\t" + ".quad 0");
     }
-    List<Pair<String, String>> currentVTable =
-        objsLayout.get(currentClass.get().getClassName()).getVTable();
-    for (Pair<String, String> methodPair : currentVTable) {
-      dataRegion.append("\n\t" + ".quad " + methodPair.toString());
+    for (Pair<String, String> methodPair : currentLayout.getVTable()) {
+      dataRegion.append("\n\t.quad ").append(methodPair.toString());
     }
     dataRegion.append("\n\t" + ".align 16");
+    dataRegion.flush();
     for (MethodDeclNode methodDeclNode : node.getMethodDecls()) {
       Pair<String, String> methodPair =
-          currentVTable.get(findFirstIndex(currentVTable, methodDeclNode.getMethodName()));
+          currentLayout.getVTableEntry(methodDeclNode.getMethodName());
       if (!(methodsAlreadyWritten.contains(methodPair))) {
-        textRegion.append("\n\n" + methodPair.toString() + ":");
+        currentMethodSymbol = methodPair.toString();
+        currentBlockNumber = 0;
+        textRegion.append("\n\n").append(currentMethodSymbol).append(':');
         methodDeclNode.accept(this);
+        flushInstructions();
         methodsAlreadyWritten.add(methodPair);
       }
     }
   }
 
   public void visit(GoalNode node) {
-    dataRegion.append(".data");
-    dataRegion.append("\n" + "stdout_buffer:");
-    dataRegion.append("\n\t" + ".string \"%d\\n\"");
-    textRegion.append("\n" + ".text");
+    NativeRuntime.emit(output);
+    if (heapProfile) {
+      AllocationSites.emit(output);
+    }
     textRegion.append("\n" + ".global main");
-    textRegion.append("\n\n" + "main:");
-    textRegion.append("\n\t" + "pushq %rbp");
-    textRegion.append("\n\t" + "movq %rsp, %rbp");
+    textRegion.append("\n\n").append(MAIN).append(':');
+    emit(Opcode.PUSHQ, Register.RBP);
+    emit(Opcode.MOVQ, Register.RSP, Register.RBP);
+    // the stack map slot, and a slot keeping the stack 16 aligned
+    currentStackSize = 2;
+    referenceSlots.clear();
+    stackMaps = new StackMaps(MAIN);
+    emit(Opcode.SUBQ, Immediate.of(REGISTER_SIZE * currentStackSize), Register.RSP);
+    emit(Opcode.CALL, NativeRuntime.START);
+    if (heapProfile) {
+      emit(Opcode.CALL, AllocationSites.START);
+    }
+    startAllocationSites(node.getMainClassName() + "." + MAIN);
     node.getStatement().accept(this);
-    textRegion.append("\n\t" + "movq $0, %rax");
-    textRegion.append("\n\t" + "movq %rbp, %rsp");
-    textRegion.append("\n\t" + "popq %rbp");
-    textRegion.append("\n\t" + "ret");
-    for (ClassNode classNode : node.getClasses()) {
-      classNode.accept(this);
+    emit(Opcode.MOVQ, FALSE, Register.RAX);
+    emit(Opcode.MOVQ, Register.RBP, Register.RSP);
+    emit(Opcode.POPQ, Register.RBP);
+    emit(Opcode.RET);
+    flushInstructions();
+    if (fragments.isPresent()) {
+      OrderedTasks.forEachInOrder(pool, node.getClasses(), this::reuseOrGenerate, output::append);
+    } else if (pool.isPresent()) {
+      OrderedTasks.forEachInOrder(pool, node.getClasses(), this::generateApart, output::append);
+    } else {
+      for (ClassNode classNode : node.getClasses()) {
+        classNode.accept(this);
+      }
+    }
+    output.flush();
+  }
+
+  private AssemblyWriter generateApart(ClassNode node) {
+    SimpleCodegenVisitor classVis = new SimpleCodegenVisitor(this, AssemblyWriter.buffered());
+    node.accept(classVis);
+    return classVis.output;
+  }
+
+  private AssemblyWriter reuseOrGenerate(ClassNode node) {
+    Optional<AssemblyWriter> fragment = fragments.get().fetch(node);
+    if (fragment.isPresent()) {
+      return fragment.get();
     }
+    AssemblyWriter generated = generateApart(node);
+    fragments.get().store(node, generated);
+    return generated;
   }
 
   public void visit(MethodDeclNode node) {
     setCurrentMethod(node);
     Optional<MethodType> currentMethod = getCurrentMethod();
-    textRegion.append("\n\t" + "pushq %rbp");
-    textRegion.append("\n\t" + "movq %rsp, %rbp");
+    emit(Opcode.PUSHQ, Register.RBP);
+    emit(Opcode.MOVQ, Register.RSP, Register.RBP);
     int stackAllocBytes =
-        2
+        THIS_SLOT_INDEX
             + currentMethod.get().getArgumentsSorted().size()
             + currentMethod.get().getVarsDeclSorted().size();
-    // stack needs to be 16 aligned before calling printf, calloc, etc.
+    // stack is kept 16 aligned at calls
     if (stackAllocBytes % 2 == 1) {
       stackAllocBytes += 1;
     }
@@ -606,18 +709,31 @@ public class SimpleCodegenVisitor {
     // preamble
     currentStackSize = stackAllocBytes;
     // stack allocation
-    textRegion.append("\n\t" + String.format("subq $%d, %%rsp", REGISTER_SIZE * stackAllocBytes));
+    emit(Opcode.SUBQ, Immediate.of(REGISTER_SIZE * stackAllocBytes), Register.RSP);
     // NOTE: current implementation doesn't support more than
     // 6 arguments (maximum we can fit in register arguments)
     int numberOfArgs = node.getMethodArgs().size() + 1;
     assert numberOfArgs <= ARGUMENT_REGISTERS.size()
         : "Current implementation doesn't support more than 6 arguments";
     for (int i = 0; i < numberOfArgs; ++i) {
-      textRegion.append(
-          "\n\t"
-              + String.format(
-                  "movq %s, -%d(%%rbp)", ARGUMENT_REGISTERS.get(i), REGISTER_SIZE * (i + 1)));
+      emit(
+          Opcode.MOVQ,
+          ARGUMENT_REGISTERS.get(i),
+          frameSlot(REGISTER_SIZE * (THIS_SLOT_INDEX + i)));
+    }
+    // "this", the arguments and the locals holding references are roots at every call
+    referenceSlots.clear();
+    referenceSlots.set(THIS_SLOT_INDEX);
+    List<Pair<String, Type>> frameVariables = new ArrayList<>();
+    frameVariables.addAll(currentMethod.get().getArgumentsSorted());
+    frameVariables.addAll(currentMethod.get().getVarsDeclSorted());
+    for (int i = 0; i < frameVariables.size(); ++i) {
+      if (NativeRuntime.isReference(frameVariables.get(i).second())) {
+        referenceSlots.set(argumentSlotIndex(i));
+      }
     }
+    stackMaps = new StackMaps(currentMethodSymbol);
+    startAllocationSites(getCurrentClass().get().getClassName() + "." + node.getMethodName());
     for (VarDeclNode varDeclNode : node.getVarDecls()) {
       varDeclNode.accept(this);
     }
@@ -625,17 +741,18 @@ public class SimpleCodegenVisitor {
       statementNode.accept(this);
     }
     node.getReturnExpr().accept(this);
-    textRegion.append("\n\t" + "movq %rbp, %rsp");
-    textRegion.append("\n\t" + "popq %rbp");
-    textRegion.append("\n\t" + "ret");
+    emit(Opcode.MOVQ, Register.RBP, Register.RSP);
+    emit(Opcode.POPQ, Register.RBP);
+    emit(Opcode.RET);
   }
 
   public void visit(VarDeclNode node) {
     Optional<MethodType> currentMethod = getCurrentMethod();
-    int varDeclIndex = findFirstIndex(currentMethod.get().getVarsDeclSorted(), node.getVarName());
+    int varDeclIndex = currentMethod.get().getVarDeclIndex(node.getVarName());
     assert varDeclIndex != -1 : "This should have failed semantic checks";
     int offset =
-        REGISTER_SIZE * (2 + currentMethod.get().getArgumentsSorted().size() + varDeclIndex);
-    textRegion.append(String.format("\n\t" + "movq $0, -%d(%%rbp)", offset));
+        REGISTER_SIZE
+            * argumentSlotIndex(currentMethod.get().getArgumentsSorted().size() + varDeclIndex);
+    emit(Opcode.MOVQ, FALSE, frameSlot(offset));
   }
 }
@@ -0,0 +1,233 @@
+package driver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import utils.Pair;
+
+/**
+ * Compiles many files in one invocation: every input is compiled on a fixed pool of threads, with
+ * the same flags, into a ".s" file next to it. A failing file doesn't stop the others; the
+ * failures are collected in the summary together with the latency of every file.
+ */
+public class BatchCompiler {
+
+  public static final String EXTENSION = ".mjava";
+
+  /** Outcome of a batch: the failures and the latencies of all files, in nanoseconds. */
+  public static class Summary {
+
+    private final int files;
+    private final long inputBytes;
+    private final long wallNanos;
+    private final int threads;
+    private final long[] latencies;
+    private final List<Pair<Path, String>> failures;
+
+    private Summary(
+        int files,
+        long inputBytes,
+        long wallNanos,
+        int threads,
+        long[] latencies,
+        List<Pair<Path, String>> failures) {
+      this.files = files;
+      this.inputBytes = inputBytes;
+      this.wallNanos = wallNanos;
+      this.threads = threads;
+      this.latencies = latencies;
+      this.failures = failures;
+    }
+
+    public int getFiles() {
+      return files;
+    }
+
+    /** The files that didn't compile, in input order, with their error. */
+    public List<Pair<Path, String>> getFailures() {
+      return failures;
+    }
+
+    /** Latency, in nanoseconds, of the given percentile (nearest rank) of the files. */
+    public long getLatencyPercentile(double percentile) {
+      if (latencies.length == 0) {
+        return 0;
+      }
+      int rank = (int) Math.ceil(percentile / 100 * latencies.length);
+      return latencies[Math.max(0, rank - 1)];
+    }
+
+    public void print(PrintStream out) {
+      for (Pair<Path, String> failure : failures) {
+        out.println(String.format("%s: %s", failure.first(), failure.second()));
+      }
+      double seconds = wallNanos / 1e9;
+      out.println(
+          String.format(
+              Locale.ROOT,
+              "%d files (%d failed) in %.3f s on %d threads: %.1f files/s, %.1f KB/s",
+              files,
+              failures.size(),
+              seconds,
+              threads,
+              files / seconds,
+              inputBytes / 1024.0 / seconds));
+      out.println(
+          String.format(
+              Locale.ROOT,
+              "latency per file: p50 %.3f ms, p99 %.3f ms, max %.3f ms",
+              getLatencyPercentile(50) / 1e6,
+              getLatencyPercentile(99) / 1e6,
+              getLatencyPercentile(100) / 1e6));
+    }
+  }
+
+  private final Compiler compiler;
+  private final List<String> flags;
+  private final int threads;
+
+  /**
+   * Compiles with the given Main flags (without the files) on threads threads. Each file is
+   * compiled on a single thread unless the flags say otherwise, as the files are already compiled
+   * in parallel.
+   */
+  public BatchCompiler(Compiler compiler, List<String> flags, int threads) {
+    this.compiler = compiler;
+    this.flags = new ArrayList<>();
+    this.flags.add("--jobs=1");
+    this.flags.addAll(flags);
+    this.threads = threads;
+  }
+
+  /**
+   * Expands the inputs of a batch, sorted: the ".mjava" files under a directory, the files
+   * matching a glob (e.g. "generated/**.mjava"), or the files listed in a manifest given as
+   * "@manifest" (one per line, relative to the manifest's directory, blank lines and lines
+   * starting with '#' ignored).
+   */
+  public static List<Path> collectInputs(String spec) throws IOException {
+    if (spec.startsWith("@")) {
+      Path manifest = Paths.get(spec.substring(1));
+      Path directory = manifest.toAbsolutePath().getParent();
+      List<Path> inputs = new ArrayList<>();
+      for (String line : Files.readAllLines(manifest)) {
+        line = line.strip();
+        if (!line.isEmpty() && !line.startsWith("#")) {
+          inputs.add(directory.resolve(line));
+        }
+      }
+      return inputs;
+    }
+    Path directory = Paths.get(spec);
+    PathMatcher matcher = path -> path.toString().endsWith(EXTENSION);
+    if (!Files.isDirectory(directory)) {
+      // walks the longest prefix of the glob without any glob character
+      List<String> elements = Arrays.asList(spec.split("/", -1));
+      int prefix = 0;
+      while (prefix < elements.size() - 1 && !elements.get(prefix).matches(".*[*?\\[{].*")) {
+        ++prefix;
+      }
+      String base = String.join("/", elements.subList(0, prefix));
+      directory = Paths.get(base.isEmpty() && !spec.startsWith("/") ? "." : base + "/");
+      PathMatcher glob = FileSystems.getDefault().getPathMatcher("glob:" + spec);
+      Path root = directory;
+      // the walk yields "./x" for a relative glob without a directory
+      matcher = path -> glob.matches(root.toString().equals(".") ? root.relativize(path) : path);
+    }
+    PathMatcher filter = matcher;
+    try (Stream<Path> paths = Files.walk(directory)) {
+      return paths
+          .filter(path -> Files.isRegularFile(path) && filter.matches(path))
+          .sorted()
+          .collect(Collectors.toList());
+    }
+  }
+
+  /** The assembly file of an input: "x.mjava" is compiled to "x.s". */
+  public static Path outputOf(Path input) {
+    String name = input.getFileName().toString();
+    if (name.endsWith(EXTENSION)) {
+      name = name.substring(0, name.length() - EXTENSION.length());
+    }
+    return input.resolveSibling(name + ".s");
+  }
+
+  /**
+   * Compiles the inputs, printing the optimization reports (if requested) to report, each line
+   * prefixed with its file.
+   */
+  public Summary compile(List<Path> inputs, PrintStream report)
+      throws IOException, InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    long start = System.nanoTime();
+    List<Future<Pair<Long, String>>> results = new ArrayList<>(inputs.size());
+    for (Path input : inputs) {
+      results.add(executor.submit(() -> compile(input, report)));
+    }
+    List<Long> latencies = new ArrayList<>(inputs.size());
+    List<Pair<Path, String>> failures = new ArrayList<>();
+    long inputBytes = 0;
+    try {
+      for (int i = 0; i < inputs.size(); ++i) {
+        Pair<Long, String> result = results.get(i).get();
+        latencies.add(result.first());
+        if (result.second() != null) {
+          failures.add(new Pair<>(inputs.get(i), result.second()));
+        } else {
+          inputBytes += Files.size(inputs.get(i));
+        }
+      }
+    } catch (ExecutionException e) {
+      // compile(Path, PrintStream) catches the errors of the compiler
+      throw new AssertionError(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+    long wallNanos = System.nanoTime() - start;
+    Collections.sort(latencies);
+    long[] sortedLatencies = latencies.stream().mapToLong(Long::longValue).toArray();
+    return new Summary(inputs.size(), inputBytes, wallNanos, threads, sortedLatencies, failures);
+  }
+
+  /** Compiles one input, returning its latency and its error (null if it compiled). */
+  private Pair<Long, String> compile(Path input, PrintStream report) {
+    long start = System.nanoTime();
+    ByteArrayOutputStream fileReport = new ByteArrayOutputStream();
+    String error = null;
+    try {
+      List<String> args = new ArrayList<>(flags);
+      args.add(input.toString());
+      args.add(outputOf(input).toString());
+      compiler.compile(
+          CompileOptions.parse(args, Paths.get("")),
+          new PrintStream(fileReport, true, StandardCharsets.UTF_8));
+    } catch (IOException | RuntimeException | AssertionError | StackOverflowError e) {
+      error = Compiler.describe(e);
+    }
+    long latency = System.nanoTime() - start;
+    for (String line : fileReport.toString(StandardCharsets.UTF_8).split("\n")) {
+      if (!line.isEmpty()) {
+        report.println(input + ": " + line);
+      }
+    }
+    return new Pair<>(latency, error);
+  }
+}
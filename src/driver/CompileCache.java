@@ -0,0 +1,252 @@
+package driver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import utils.Pair;
+
+/**
+ * On-disk cache of the assembly of compiled programs, keyed by a hash of the source, of the flags
+ * that change the output and of the compiler itself (see key), so that a hit skips the whole
+ * pipeline. Entries are plain "<key>.s" files in the cache directory:
+ *
+ * <ul>
+ *   <li>they're written to a temporary file and atomically renamed, so that processes compiling
+ *       the same program concurrently never see a partial entry;
+ *   <li>a hit touches the entry, and once the entries exceed the size limit the least recently
+ *       used ones are evicted.
+ * </ul>
+ *
+ * <p>A cache can be shared between threads, and its hit/miss statistics count the lookups of all
+ * of them.
+ */
+public class CompileCache {
+
+  private static final String ENTRY_EXTENSION = ".s";
+
+  private final Path directory;
+  private final AtomicLong hits;
+  private final AtomicLong misses;
+  private final AtomicLong evictions;
+  // size of the entries when the directory was last listed, plus the size of those stored since
+  // (so that a store doesn't list the directory unless the limit may have been exceeded)
+  private final AtomicLong bytes;
+
+  public CompileCache(Path directory) throws IOException {
+    this.directory = directory;
+    Files.createDirectories(directory);
+    hits = new AtomicLong();
+    misses = new AtomicLong();
+    evictions = new AtomicLong();
+    bytes = new AtomicLong();
+    listEntries();
+  }
+
+  /** Hex SHA-256 of the parts (separated, so that they can't run into each other) and source. */
+  public static String key(List<String> parts, byte[] source) {
+    return key(parts, ByteBuffer.wrap(source));
+  }
+
+  /**
+   * Like key(List, byte[]), hashing the bytes of source between its position and its limit in
+   * place (e.g. a file mapping) without moving its position.
+   */
+  public static String key(List<String> parts, ByteBuffer source) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // every JVM has SHA-256
+      throw new AssertionError(e);
+    }
+    for (String part : parts) {
+      digest.update(part.getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) 0);
+    }
+    digest.update(source.duplicate());
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  /** Copies the entry of key to output, returning false (a miss) if there's none. */
+  public boolean fetch(String key, Path output) throws IOException {
+    Path entry = directory.resolve(key + ENTRY_EXTENSION);
+    try {
+      Files.copy(entry, output, StandardCopyOption.REPLACE_EXISTING);
+    } catch (NoSuchFileException e) {
+      misses.incrementAndGet();
+      return false;
+    }
+    hits.incrementAndGet();
+    touch(entry);
+    return true;
+  }
+
+  /** Writes the entry of key to output, like fetch(String, Path). */
+  public boolean fetch(String key, OutputStream output) throws IOException {
+    Path entry = directory.resolve(key + ENTRY_EXTENSION);
+    try {
+      Files.copy(entry, output);
+    } catch (NoSuchFileException e) {
+      misses.incrementAndGet();
+      return false;
+    }
+    hits.incrementAndGet();
+    touch(entry);
+    return true;
+  }
+
+  /** The content of the entry of key, or empty (a miss) if there's none. */
+  public Optional<String> fetch(String key) throws IOException {
+    Path entry = directory.resolve(key + ENTRY_EXTENSION);
+    String content;
+    try {
+      content = Files.readString(entry, StandardCharsets.UTF_8);
+    } catch (NoSuchFileException e) {
+      misses.incrementAndGet();
+      return Optional.empty();
+    }
+    hits.incrementAndGet();
+    touch(entry);
+    return Optional.of(content);
+  }
+
+  /**
+   * Stores a copy of output as the entry of key, then evicts the least recently used entries
+   * while they're larger than maxBytes.
+   */
+  public void store(String key, Path output, long maxBytes) throws IOException {
+    Path temporary = Files.createTempFile(directory, key, ".tmp");
+    try {
+      Files.copy(output, temporary, StandardCopyOption.REPLACE_EXISTING);
+      install(temporary, key, maxBytes);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  /** Stores content as the entry of key, like store(String, Path, long). */
+  public void store(String key, String content, long maxBytes) throws IOException {
+    Path temporary = Files.createTempFile(directory, key, ".tmp");
+    try {
+      Files.writeString(temporary, content, StandardCharsets.UTF_8);
+      install(temporary, key, maxBytes);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  private void install(Path temporary, String key, long maxBytes) throws IOException {
+    long size = Files.size(temporary);
+    try {
+      Files.move(
+          temporary, directory.resolve(key + ENTRY_EXTENSION), StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      // rename(2) replaces the entry atomically on every local file system
+      throw new AssertionError(e);
+    }
+    if (bytes.addAndGet(size) > maxBytes) {
+      evict(maxBytes);
+    }
+  }
+
+  private static void touch(Path entry) throws IOException {
+    try {
+      Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+    } catch (NoSuchFileException e) {
+      // evicted since it was read
+    }
+  }
+
+  private synchronized void evict(long maxBytes) throws IOException {
+    List<Pair<Path, BasicFileAttributes>> entries = listEntries();
+    long totalBytes = bytes.get();
+    if (totalBytes <= maxBytes) {
+      return;
+    }
+    entries.sort(Comparator.comparing(entry -> entry.second().lastModifiedTime()));
+    for (Pair<Path, BasicFileAttributes> entry : entries) {
+      if (totalBytes <= maxBytes) {
+        break;
+      }
+      if (Files.deleteIfExists(entry.first())) {
+        evictions.incrementAndGet();
+      }
+      totalBytes -= entry.second().size();
+    }
+    bytes.set(totalBytes);
+  }
+
+  /** Lists the entries with their attributes, updating their size. */
+  private List<Pair<Path, BasicFileAttributes>> listEntries() throws IOException {
+    List<Pair<Path, BasicFileAttributes>> entries = new ArrayList<>();
+    long totalBytes = 0;
+    try (Stream<Path> paths = Files.list(directory)) {
+      for (Path path : (Iterable<Path>) paths::iterator) {
+        if (!path.getFileName().toString().endsWith(ENTRY_EXTENSION)) {
+          continue;
+        }
+        try {
+          BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+          entries.add(new Pair<>(path, attributes));
+          totalBytes += attributes.size();
+        } catch (NoSuchFileException e) {
+          // evicted by another compilation
+        }
+      }
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    bytes.set(totalBytes);
+    return entries;
+  }
+
+  public Path getDirectory() {
+    return directory;
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  /** The statistics, on one line. */
+  @Override
+  public String toString() {
+    long lookups = getHits() + getMisses();
+    return String.format(
+        Locale.ROOT,
+        "cache %s: %d hits, %d misses (%.1f%% hit rate), %d evictions",
+        directory,
+        getHits(),
+        getMisses(),
+        lookups == 0 ? 0.0 : 100.0 * getHits() / lookups,
+        getEvictions());
+  }
+}
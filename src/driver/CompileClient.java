@@ -0,0 +1,81 @@
+package driver;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Thin client of a CompileServer listening on a Unix domain socket: sends its arguments (those of
+ * a Main command line) as a compile request and prints the optimization report and the errors to
+ * stderr. It only loads a handful of JDK classes, so it starts much faster than the compiler.
+ *
+ * <p>Usage: CompileClient <socket> [Main arguments...] | --shutdown
+ *
+ * <p>Exits with 0 if the file was compiled, 1 if it wasn't and UNAVAILABLE if there's no server
+ * to ask (so that a script can fall back to running the compiler itself).
+ */
+public class CompileClient {
+
+  public static final int UNAVAILABLE = 2;
+
+  public static void main(String[] args) {
+    if (args.length < 1) {
+      System.err.println("Usage: CompileClient <socket> [Main arguments...] | --shutdown");
+      System.exit(UNAVAILABLE);
+    }
+    List<String> arguments = Arrays.asList(args).subList(1, args.length);
+    System.exit(request(Paths.get(args[0]), arguments, System.err));
+  }
+
+  /** Sends a compile request with the arguments, returning the exit status described above. */
+  public static int request(Path socketPath, List<String> arguments, PrintStream err) {
+    SocketChannel channel;
+    try {
+      channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath));
+    } catch (IOException e) {
+      return UNAVAILABLE;
+    }
+    try (channel) {
+      Writer out = Channels.newWriter(channel, StandardCharsets.UTF_8);
+      if (arguments.equals(List.of("--shutdown"))) {
+        out.write(CompileServer.SHUTDOWN + '\n');
+        out.flush();
+        return 0;
+      }
+      StringBuilder request = new StringBuilder(Paths.get("").toAbsolutePath().toString());
+      for (String argument : arguments) {
+        request.append('\t').append(argument);
+      }
+      out.write(request.append('\n').toString());
+      out.flush();
+      BufferedReader in = new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+      String line;
+      while ((line = in.readLine()) != null) {
+        // the constants are inlined, CompileServer isn't loaded
+        String[] fields = line.split("\t", 3);
+        if (fields[0].equals(CompileServer.REPORT)) {
+          err.println(line.substring(CompileServer.REPORT.length() + 1));
+        } else if (fields[0].equals(CompileServer.OK)) {
+          return 0;
+        } else {
+          err.println(fields.length == 3 ? fields[2] : line);
+          return 1;
+        }
+      }
+      err.println("The compile server closed the connection");
+      return 1;
+    } catch (IOException e) {
+      err.println("The compile server failed: " + e.getMessage());
+      return 1;
+    }
+  }
+}
@@ -0,0 +1,164 @@
+package driver;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import optimization.InliningVisitor;
+
+/** Options of one compilation, parsed from the command line (or from a compile server request). */
+public class CompileOptions {
+
+  public static final String USAGE =
+      "Usage: Main [--backend=simple|regalloc] [--lexer=dfa|antlr] [-O] [--opt-report]"
+          + " [--inline-budget=<nodes>] [--inline-depth=<levels>] [--emit-ir=<output.ir>]"
+          + " [--heap-profile] [--jobs=<threads>]"
+          + " [--cache=<directory> [--cache-size=<megabytes>] [--incremental]]"
+          + " <input.mjava> <output.s>";
+
+  public static final int DEFAULT_CACHE_MEGABYTES = 256;
+
+  private String backend;
+  private String lexer;
+  private Path irFile;
+  private boolean optimize;
+  private boolean optReport;
+  private int inlineBudget;
+  private int inlineDepth;
+  private boolean heapProfile;
+  private int jobs;
+  private Path cacheDirectory;
+  private long cacheBytes;
+  private boolean incremental;
+  private Path input;
+  private Path output;
+
+  private CompileOptions() {
+    backend = "simple";
+    lexer = "dfa";
+    irFile = null;
+    optimize = false;
+    optReport = false;
+    inlineBudget = InliningVisitor.DEFAULT_SIZE_BUDGET;
+    inlineDepth = InliningVisitor.DEFAULT_MAX_DEPTH;
+    heapProfile = false;
+    jobs = Runtime.getRuntime().availableProcessors();
+    cacheDirectory = null;
+    cacheBytes = (long) DEFAULT_CACHE_MEGABYTES << 20;
+    incremental = false;
+  }
+
+  /**
+   * Parses the arguments, resolving the files against directory. Throws an
+   * IllegalArgumentException with the usage if they're not valid.
+   */
+  public static CompileOptions parse(List<String> args, Path directory) {
+    CompileOptions options = new CompileOptions();
+    List<Path> files = new ArrayList<>();
+    try {
+      for (String arg : args) {
+        if (arg.startsWith("--backend=")) {
+          options.backend = arg.substring("--backend=".length());
+        } else if (arg.startsWith("--lexer=")) {
+          options.lexer = arg.substring("--lexer=".length());
+        } else if (arg.equals("-O")) {
+          options.optimize = true;
+        } else if (arg.equals("--opt-report")) {
+          options.optReport = true;
+        } else if (arg.startsWith("--inline-budget=")) {
+          options.inlineBudget = Integer.parseInt(arg.substring("--inline-budget=".length()));
+        } else if (arg.startsWith("--inline-depth=")) {
+          options.inlineDepth = Integer.parseInt(arg.substring("--inline-depth=".length()));
+        } else if (arg.equals("--heap-profile")) {
+          options.heapProfile = true;
+        } else if (arg.startsWith("--jobs=")) {
+          options.jobs = Integer.parseInt(arg.substring("--jobs=".length()));
+        } else if (arg.startsWith("--cache=")) {
+          options.cacheDirectory = directory.resolve(arg.substring("--cache=".length()));
+        } else if (arg.startsWith("--cache-size=")) {
+          options.cacheBytes = Long.parseLong(arg.substring("--cache-size=".length())) << 20;
+        } else if (arg.equals("--incremental")) {
+          options.incremental = true;
+        } else if (arg.startsWith("--emit-ir=")) {
+          options.irFile = directory.resolve(arg.substring("--emit-ir=".length()));
+        } else {
+          files.add(directory.resolve(arg));
+        }
+      }
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException(USAGE);
+    }
+    if (files.size() != 2
+        || !(options.backend.equals("simple") || options.backend.equals("regalloc"))
+        || !(options.lexer.equals("antlr") || options.lexer.equals("dfa"))
+        || options.jobs < 1
+        || options.cacheBytes < 0
+        || (options.incremental && options.cacheDirectory == null)) {
+      throw new IllegalArgumentException(USAGE);
+    }
+    options.input = files.get(0);
+    options.output = files.get(1);
+    return options;
+  }
+
+  public String getBackend() {
+    return backend;
+  }
+
+  public String getLexer() {
+    return lexer;
+  }
+
+  /** File the SSA IR is written to, or null. */
+  public Path getIrFile() {
+    return irFile;
+  }
+
+  public boolean isOptimize() {
+    return optimize;
+  }
+
+  public boolean isOptReport() {
+    return optReport;
+  }
+
+  public int getInlineBudget() {
+    return inlineBudget;
+  }
+
+  public int getInlineDepth() {
+    return inlineDepth;
+  }
+
+  /** Whether the program counts its allocations per site, see AllocationSites. */
+  public boolean isHeapProfile() {
+    return heapProfile;
+  }
+
+  public int getJobs() {
+    return jobs;
+  }
+
+  /** Directory of the CompileCache of the output, or null. */
+  public Path getCacheDirectory() {
+    return cacheDirectory;
+  }
+
+  /** Size limit of the cache, in bytes. */
+  public long getCacheBytes() {
+    return cacheBytes;
+  }
+
+  /** Whether the assembly of the classes is cached too, see IncrementalCompilation. */
+  public boolean isIncremental() {
+    return incremental;
+  }
+
+  public Path getInput() {
+    return input;
+  }
+
+  public Path getOutput() {
+    return output;
+  }
+}
@@ -0,0 +1,159 @@
+package driver;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Long running compiler, so that compilations don't pay for the JVM startup, the class loading
+ * and the JIT warm up. It answers requests over a line protocol, either on stdin/stdout or on the
+ * connections of a Unix domain socket (see CompileClient):
+ *
+ * <ul>
+ *   <li>a request is one line of tab separated fields: the client's working directory (relative
+ *       files are resolved against it), then the arguments of a Main command line;
+ *   <li>the response is the lines of the optimization report, each prefixed with "report\t", then
+ *       "ok\t<milliseconds>" or "error\t<milliseconds>\t<message>";
+ *   <li>the line "shutdown" stops the server.
+ * </ul>
+ *
+ * <p>The latency of every request is also logged.
+ */
+public class CompileServer {
+
+  public static final String SHUTDOWN = "shutdown";
+  public static final String REPORT = "report";
+  public static final String OK = "ok";
+  public static final String ERROR = "error";
+
+  private final Compiler compiler;
+  private final PrintStream log;
+
+  public CompileServer(Compiler compiler, PrintStream log) {
+    this.compiler = compiler;
+    this.log = log;
+  }
+
+  /**
+   * Answers the requests read from in until it's exhausted or a shutdown is requested, which is
+   * returned.
+   */
+  public boolean serve(BufferedReader in, Writer out) throws IOException {
+    String request;
+    while ((request = in.readLine()) != null) {
+      if (request.equals(SHUTDOWN)) {
+        return true;
+      }
+      out.write(handle(request));
+      out.flush();
+    }
+    return false;
+  }
+
+  /**
+   * Serves the connections to a Unix domain socket created at socketPath (each connection on its
+   * own thread, so that clients compile concurrently) until one of them requests a shutdown.
+   */
+  public void serve(Path socketPath) throws IOException {
+    removeStaleSocket(socketPath);
+    ExecutorService connections = Executors.newCachedThreadPool();
+    try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+      server.bind(UnixDomainSocketAddress.of(socketPath));
+      log.println("compile server listening on " + socketPath);
+      while (true) {
+        SocketChannel channel;
+        try {
+          channel = server.accept();
+        } catch (ClosedChannelException e) {
+          // closed by a shutdown request
+          break;
+        }
+        connections.execute(() -> serveConnection(channel, server));
+      }
+    } finally {
+      connections.shutdown();
+      Files.deleteIfExists(socketPath);
+    }
+  }
+
+  private void serveConnection(SocketChannel channel, ServerSocketChannel server) {
+    try (channel) {
+      BufferedReader in =
+          new BufferedReader(Channels.newReader(channel, StandardCharsets.UTF_8));
+      Writer out = Channels.newWriter(channel, StandardCharsets.UTF_8);
+      if (serve(in, out)) {
+        server.close();
+      }
+    } catch (IOException e) {
+      log.println("connection failed: " + e.getMessage());
+    }
+  }
+
+  /** Removes a socket file left by a server that didn't shut down, unless a server answers. */
+  private static void removeStaleSocket(Path socketPath) throws IOException {
+    if (!Files.exists(socketPath)) {
+      return;
+    }
+    boolean answered;
+    try {
+      SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socketPath));
+      channel.close();
+      answered = true;
+    } catch (IOException e) {
+      answered = false;
+    }
+    if (answered) {
+      throw new IOException("A compile server is already listening on " + socketPath);
+    }
+    Files.delete(socketPath);
+  }
+
+  /** Compiles the request, returning the complete response. */
+  String handle(String request) {
+    long start = System.nanoTime();
+    List<String> fields = Arrays.asList(request.split("\t", -1));
+    ByteArrayOutputStream report = new ByteArrayOutputStream();
+    String status;
+    try {
+      if (fields.size() < 2) {
+        throw new IllegalArgumentException(CompileOptions.USAGE);
+      }
+      CompileOptions options =
+          CompileOptions.parse(fields.subList(1, fields.size()), Paths.get(fields.get(0)));
+      compiler.compile(options, new PrintStream(report, true, StandardCharsets.UTF_8));
+      status = OK + '\t' + milliseconds(start);
+    } catch (IOException | RuntimeException | AssertionError | StackOverflowError e) {
+      // the server outlives the programs it fails to compile
+      status = ERROR + '\t' + milliseconds(start) + '\t' + Compiler.describe(e);
+    }
+    log.println(String.format("%s: %s", request.replace('\t', ' '), status.replace('\t', ' ')));
+    StringBuilder response = new StringBuilder();
+    for (String line : report.toString().split("\n")) {
+      if (!line.isEmpty()) {
+        response.append(REPORT).append('\t').append(line).append('\n');
+      }
+    }
+    return response.append(status).append('\n').toString();
+  }
+
+  private static String milliseconds(long start) {
+    return String.format(Locale.ROOT, "%.3f", (System.nanoTime() - start) / 1e6);
+  }
+}
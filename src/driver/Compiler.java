@@ -0,0 +1,305 @@
+package driver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import codegen_common.AssemblyWriter;
+import codegen_common.ClassFragments;
+import codegen_common.CodegenOptions;
+import codegen_regalloc.RegAllocCodegenVisitor;
+import codegen_simple.SimpleCodegenVisitor;
+import ir.IrBuilderVisitor;
+import ir.IrPrinter;
+import ir.IrVerifier;
+import lexer.AntlrTokenSource;
+import lexer.MJScanner;
+import optimization.ClassHierarchyAnalysis;
+import optimization.ConstantFoldingVisitor;
+import optimization.ControlFlowSimplifier;
+import optimization.InliningVisitor;
+import parser.MJParser;
+import parser.ast.ClassNode;
+import parser.ast.GoalNode;
+import semantics.BuilderVisitor;
+import semantics.TypesVisitor;
+
+/**
+ * Compiles a MiniJava file to assembly. A compiler can be reused (and shared between threads):
+ * e.g. the compile server keeps one for its whole life, so every compilation after the first runs
+ * warmed up code, and the thread pools (and caches) are created once per number of jobs (and
+ * cache directory).
+ */
+public class Compiler {
+
+  /** Subdirectory of a cache directory where IncrementalCompilation keeps the classes. */
+  public static final String CLASSES_CACHE = "classes";
+
+  /** Fingerprint of the classes of the compiler, so that cached output doesn't outlive them. */
+  private static class Build {
+    static final String FINGERPRINT = fingerprint();
+  }
+
+  private final Map<Integer, ForkJoinPool> pools;
+  private final Map<Path, CompileCache> caches;
+
+  public Compiler() {
+    pools = new ConcurrentHashMap<>();
+    caches = new ConcurrentHashMap<>();
+  }
+
+  /**
+   * Compiles options' input into its output. The optimization report, if requested, is printed to
+   * report. Semantic errors are thrown as AssertionErrors.
+   *
+   * <p>With a cache, the output is copied from the cache if the same source was compiled with the
+   * same flags, else stored in it once compiled. The report and the IR can't be cached, so either
+   * of them disables the cache. If the compilation is incremental, the classes are cached too (in
+   * the CLASSES_CACHE subdirectory, with the same size limit), unless the program is optimized,
+   * as inlining and devirtualization make a class depend on the bodies of other classes.
+   */
+  public void compile(CompileOptions options, PrintStream report) throws IOException {
+    ByteBuffer source = MJScanner.map(options.getInput());
+    if (options.getCacheDirectory() == null
+        || options.getIrFile() != null
+        || options.isOptReport()) {
+      generate(options, source, report, Optional.empty());
+      return;
+    }
+    CompileCache cache = getCache(options.getCacheDirectory());
+    String key = CompileCache.key(keyParts(options), source);
+    if (!cache.fetch(key, options.getOutput())) {
+      generate(options, source, report, classesCache(options));
+      cache.store(key, options.getOutput(), options.getCacheBytes());
+    }
+  }
+
+  /**
+   * Compiles options' input into output (e.g. the stdin of the assembler) instead of options'
+   * output file, which isn't written. The cache, if any, is used like by compile(CompileOptions,
+   * PrintStream), a miss being generated in memory to be stored. Output is closed once written.
+   */
+  public void compile(CompileOptions options, PrintStream report, OutputStream output)
+      throws IOException {
+    try (output) {
+      ByteBuffer source = MJScanner.map(options.getInput());
+      if (options.getCacheDirectory() == null
+          || options.getIrFile() != null
+          || options.isOptReport()) {
+        generate(options, source, report, Optional.empty(), Optional.of(output));
+        return;
+      }
+      CompileCache cache = getCache(options.getCacheDirectory());
+      String key = CompileCache.key(keyParts(options), source);
+      if (!cache.fetch(key, output)) {
+        ByteArrayOutputStream assembly = new ByteArrayOutputStream();
+        generate(options, source, report, classesCache(options), Optional.of(assembly));
+        cache.store(key, assembly.toString(StandardCharsets.UTF_8), options.getCacheBytes());
+        assembly.writeTo(output);
+      }
+    }
+  }
+
+  /** The caches used so far, with their statistics. */
+  public Collection<CompileCache> getCaches() {
+    return caches.values();
+  }
+
+  private Optional<CompileCache> classesCache(CompileOptions options) throws IOException {
+    return options.isIncremental() && !options.isOptimize()
+        ? Optional.of(getCache(options.getCacheDirectory().resolve(CLASSES_CACHE)))
+        : Optional.empty();
+  }
+
+  private CompileCache getCache(Path directory) throws IOException {
+    CompileCache cache = caches.get(directory);
+    if (cache == null) {
+      CompileCache created = new CompileCache(directory);
+      cache = caches.putIfAbsent(directory, created);
+      if (cache == null) {
+        cache = created;
+      }
+    }
+    return cache;
+  }
+
+  /** Everything but the source that changes the output (not the number of jobs). */
+  private static List<String> keyParts(CompileOptions options) {
+    return List.of(
+        Build.FINGERPRINT,
+        options.getBackend(),
+        options.getLexer(),
+        String.valueOf(options.isOptimize()),
+        String.valueOf(options.getInlineBudget()),
+        String.valueOf(options.getInlineDepth()),
+        String.valueOf(options.isHeapProfile()));
+  }
+
+  private static String fingerprint() {
+    List<String> classes = new ArrayList<>();
+    try {
+      // bin/src, or a jar
+      Path location =
+          Paths.get(Compiler.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+      try (Stream<Path> paths = Files.walk(location)) {
+        for (Path path : paths.sorted().collect(Collectors.toList())) {
+          if (Files.isRegularFile(path)) {
+            classes.add(
+                String.format(
+                    "%s %d %s",
+                    location.relativize(path),
+                    Files.size(path),
+                    Files.getLastModifiedTime(path)));
+          }
+        }
+      }
+    } catch (IOException | URISyntaxException e) {
+      throw new AssertionError(e);
+    }
+    return CompileCache.key(classes, new byte[0]);
+  }
+
+  private void generate(
+      CompileOptions options,
+      ByteBuffer source,
+      PrintStream report,
+      Optional<CompileCache> classesCache)
+      throws IOException {
+    generate(options, source, report, classesCache, Optional.empty());
+  }
+
+  /**
+   * Generates the assembly of source (the mapping of options' input, mapped once for the cache
+   * keys and the lexer) into out, or else into options' output file, which is only opened once
+   * the program checks (so that an error doesn't truncate it).
+   */
+  private void generate(
+      CompileOptions options,
+      ByteBuffer source,
+      PrintStream report,
+      Optional<CompileCache> classesCache,
+      Optional<OutputStream> out)
+      throws IOException {
+    MJParser mjParser;
+    if (options.getLexer().equals("dfa")) {
+      mjParser = new MJParser(new MJScanner(source));
+    } else {
+      mjParser = new MJParser(new AntlrTokenSource(source));
+    }
+    GoalNode goal = mjParser.parseGoal();
+    // classes are type checked and compiled in parallel, their output kept in program order
+    Optional<ForkJoinPool> pool =
+        options.getJobs() > 1
+            ? Optional.of(pools.computeIfAbsent(options.getJobs(), ForkJoinPool::new))
+            : Optional.empty();
+    BuilderVisitor builderVis = new BuilderVisitor();
+    goal.accept(builderVis);
+    Optional<ClassFragments> fragments = Optional.empty();
+    Predicate<ClassNode> unchanged = classNode -> false;
+    if (classesCache.isPresent()) {
+      IncrementalCompilation incremental =
+          new IncrementalCompilation(
+              classesCache.get(),
+              options.getCacheBytes(),
+              keyParts(options),
+              options.isHeapProfile(),
+              source,
+              goal,
+              builderVis.getClassSymbolTable());
+      fragments = Optional.of(incremental);
+      unchanged = incremental::isUnchanged;
+    }
+    TypesVisitor typesVis = new TypesVisitor(builderVis, pool, unchanged);
+    goal.accept(typesVis);
+    if (options.isOptimize()) {
+      ConstantFoldingVisitor foldingVis = new ConstantFoldingVisitor();
+      goal = goal.accept(foldingVis);
+      ControlFlowSimplifier simplifierVis = new ControlFlowSimplifier();
+      goal = goal.accept(simplifierVis);
+      InliningVisitor inliningVis =
+          new InliningVisitor(
+              typesVis,
+              new ClassHierarchyAnalysis(typesVis.getClassSymbolTable()),
+              options.getInlineBudget(),
+              options.getInlineDepth());
+      goal = goal.accept(inliningVis);
+      if (inliningVis.getInlinedCallSites() > 0) {
+        // inlining declares new locals and exposes constants of the callees
+        builderVis = new BuilderVisitor();
+        goal.accept(builderVis);
+        typesVis = new TypesVisitor(builderVis, pool);
+        goal.accept(typesVis);
+        goal = goal.accept(foldingVis);
+        goal = goal.accept(simplifierVis);
+      }
+      if (options.isOptReport()) {
+        report.println(
+            String.format("constant folding: %d nodes rewritten", foldingVis.getRewriteCount()));
+        report.println(
+            String.format(
+                "control flow simplification: %d statements rewritten",
+                simplifierVis.getRewriteCount()));
+        report.println(
+            String.format("inlining: %d call sites inlined", inliningVis.getInlinedCallSites()));
+      }
+    }
+    if (options.getIrFile() != null) {
+      IrBuilderVisitor irBuilderVis = new IrBuilderVisitor(typesVis);
+      goal.accept(irBuilderVis);
+      IrVerifier.verify(irBuilderVis.getProgram());
+      Files.write(options.getIrFile(), IrPrinter.print(irBuilderVis.getProgram()).getBytes());
+    }
+    Optional<ClassHierarchyAnalysis> hierarchyAnalysis =
+        options.isOptimize()
+            ? Optional.of(new ClassHierarchyAnalysis(typesVis.getClassSymbolTable()))
+            : Optional.empty();
+    try (AssemblyWriter output =
+        new AssemblyWriter(
+            out.isPresent() ? out.get() : Files.newOutputStream(options.getOutput()))) {
+      CodegenOptions codegenOptions =
+          CodegenOptions.DEFAULTS
+              .withHierarchyAnalysis(hierarchyAnalysis)
+              .withPool(pool)
+              .withFragments(fragments)
+              .withHeapProfile(options.isHeapProfile());
+      if (options.getBackend().equals("regalloc")) {
+        goal.accept(new RegAllocCodegenVisitor(typesVis, output, codegenOptions));
+      } else {
+        goal.accept(new SimpleCodegenVisitor(typesVis, output, codegenOptions));
+      }
+    }
+    if (options.isOptReport() && hierarchyAnalysis.isPresent()) {
+      report.println(
+          String.format(
+              "devirtualization: %d of %d call sites devirtualized",
+              hierarchyAnalysis.get().getDevirtualizedCallSites(),
+              hierarchyAnalysis.get().getDevirtualizedCallSites()
+                  + hierarchyAnalysis.get().getVirtualCallSites()));
+    }
+  }
+
+  /** One line message of an error thrown by compile, for the user. */
+  public static String describe(Throwable e) {
+    // semantic errors are AssertionErrors with a message for the user
+    String message =
+        e instanceof AssertionError && e.getMessage() != null ? e.getMessage() : e.toString();
+    return message.replaceAll("\\s+", " ");
+  }
+}
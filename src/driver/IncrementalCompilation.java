@@ -0,0 +1,274 @@
+package driver;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import codegen_common.AssemblyWriter;
+import codegen_common.ClassFragments;
+import parser.ast.ClassNode;
+import parser.ast.GoalNode;
+import semantics.types.ClassType;
+import semantics.types.MethodType;
+import semantics.types.Type;
+import utils.Pair;
+
+/**
+ * Per class incremental compilation (--incremental): the assembly of every class (its vtable and
+ * its methods) is kept in a cache, so that a compilation only type checks and generates the
+ * classes that changed since the last one.
+ *
+ * <p>A class's assembly is keyed by its source and by the declarations it depends on:
+ *
+ * <ul>
+ *   <li>its source is the lines from its name to the name of the next class, so that editing a
+ *       method only changes the key of its class;
+ *   <li>it depends on the signatures (superclass, fields, method types) of the classes named in
+ *       its source, and transitively of the classes named in those signatures, which fixes the
+ *       layouts and the types of every expression of the class.
+ * </ul>
+ *
+ * <p>Everything else about the program only matters to the other classes, e.g. editing a method
+ * body, or adding a class nothing refers to, doesn't invalidate any other class. The heap profiler
+ * is the exception: its allocation sites record the line of every new expression, so with it a
+ * class is also keyed by the line it starts at, and moving a class down regenerates it.
+ */
+public class IncrementalCompilation implements ClassFragments {
+
+  private final CompileCache cache;
+  private final long maxBytes;
+  private final Map<String, String> keys;
+  private final Map<String, AssemblyWriter> reused;
+
+  /**
+   * Looks the classes of goal up in cache (whose size is bounded by maxBytes), for a compilation
+   * with options keyParts of source (the whole file from index 0, read in place so that it can be
+   * the file's mapping), once the symbol table (classTypes) is built. heapProfile tells whether
+   * the assembly depends on the lines of the classes.
+   */
+  public IncrementalCompilation(
+      CompileCache cache,
+      long maxBytes,
+      List<String> keyParts,
+      boolean heapProfile,
+      ByteBuffer source,
+      GoalNode goal,
+      Map<String, ClassType> classTypes)
+      throws IOException {
+    this.cache = cache;
+    this.maxBytes = maxBytes;
+    keys = new HashMap<>();
+    reused = new ConcurrentHashMap<>();
+    List<ClassNode> classes = goal.getClasses();
+    Map<String, Integer> indices = new HashMap<>();
+    for (ClassNode classNode : classes) {
+      indices.put(classNode.getClassName(), indices.size());
+    }
+    List<Integer> lineStarts = lineStarts(source);
+    long[] signatureHashes = new long[classes.size()];
+    int[][] references = new int[classes.size()][];
+    for (ClassNode classNode : classes) {
+      ClassType classType = classTypes.get(classNode.getClassName());
+      int index = indices.get(classNode.getClassName());
+      signatureHashes[index] = signatureHash(classType);
+      references[index] = signatureReferences(classType, indices);
+    }
+    BitSet[] reachable = reachable(references);
+    for (int i = 0; i < classes.size(); ++i) {
+      ClassNode classNode = classes.get(i);
+      // the lines from the class's name to the next class's name
+      int start = lineStarts.get(classNode.getLine() - 1);
+      int end =
+          i + 1 < classes.size() && classes.get(i + 1).getLine() < lineStarts.size()
+              ? lineStarts.get(classes.get(i + 1).getLine())
+              : source.limit();
+      BitSet dependencies = (BitSet) reachable[i].clone();
+      int identifierStart = -1;
+      for (int j = start; j <= end; ++j) {
+        boolean identifierPart = j < end && isIdentifierPart(source.get(j));
+        if (identifierPart && identifierStart == -1) {
+          identifierStart = j;
+        } else if (!identifierPart && identifierStart != -1) {
+          byte[] identifier = new byte[j - identifierStart];
+          source.get(identifierStart, identifier);
+          Integer reference = indices.get(new String(identifier, StandardCharsets.US_ASCII));
+          if (reference != null && !dependencies.get(reference)) {
+            dependencies.or(reachable[reference]);
+          }
+          identifierStart = -1;
+        }
+      }
+      // a sum of 64 bit hashes identifies the set of signatures without hashing each of them
+      // again for every class that depends on it
+      long signatures = 0;
+      for (int d = dependencies.nextSetBit(0); d >= 0; d = dependencies.nextSetBit(d + 1)) {
+        signatures += signatureHashes[d];
+      }
+      List<String> parts = new ArrayList<>(keyParts);
+      parts.add(classNode.getClassName());
+      parts.add(dependencies.cardinality() + ":" + Long.toHexString(signatures));
+      if (heapProfile) {
+        parts.add(String.valueOf(classNode.getLine()));
+      }
+      String key = CompileCache.key(parts, source.duplicate().position(start).limit(end));
+      keys.put(classNode.getClassName(), key);
+      Optional<String> fragment = cache.fetch(key);
+      if (fragment.isPresent()) {
+        int separator = fragment.get().indexOf('\n');
+        int dataLength = Integer.parseInt(fragment.get().substring(0, separator));
+        reused.put(
+            classNode.getClassName(),
+            AssemblyWriter.buffered(
+                fragment.get().substring(separator + 1, separator + 1 + dataLength),
+                fragment.get().substring(separator + 1 + dataLength)));
+      }
+    }
+  }
+
+  /** Whether the class's assembly is reused, so that it doesn't need to be checked again. */
+  public boolean isUnchanged(ClassNode node) {
+    return reused.containsKey(node.getClassName());
+  }
+
+  public int getReusedClasses() {
+    return reused.size();
+  }
+
+  @Override
+  public Optional<AssemblyWriter> fetch(ClassNode node) {
+    return Optional.ofNullable(reused.get(node.getClassName()));
+  }
+
+  @Override
+  public void store(ClassNode node, AssemblyWriter assembly) {
+    String data = assembly.getData().toString();
+    String fragment = data.length() + "\n" + data + assembly.getText();
+    try {
+      cache.store(keys.get(node.getClassName()), fragment, maxBytes);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Offsets of the lines of source (the first line is line 1, at index 0). */
+  private static List<Integer> lineStarts(ByteBuffer source) {
+    List<Integer> lineStarts = new ArrayList<>();
+    lineStarts.add(0);
+    for (int i = 0; i < source.limit(); ++i) {
+      if (source.get(i) == '\n') {
+        lineStarts.add(i + 1);
+      }
+    }
+    return lineStarts;
+  }
+
+  /** Whether c can be part of an identifier (or of a number, which never names a class). */
+  private static boolean isIdentifierPart(byte c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+  }
+
+  private static long signatureHash(ClassType classType) {
+    StringBuilder signature = new StringBuilder(classType.getClassName());
+    classType
+        .getExtendsFrom()
+        .ifPresent(parent -> signature.append('<').append(parent.getClassName()));
+    for (Pair<String, Type> field : classType.getFieldsSorted()) {
+      signature.append(';').append(field.first()).append(':').append(typeName(field.second()));
+    }
+    for (Pair<String, MethodType> method : classType.getMethodsSorted()) {
+      signature.append(';').append(method.first()).append('(');
+      for (Pair<String, Type> argument : method.second().getArgumentsSorted()) {
+        signature.append(typeName(argument.second())).append(',');
+      }
+      signature.append(')').append(typeName(method.second().getReturnType()));
+    }
+    String hash =
+        CompileCache.key(List.of(), signature.toString().getBytes(StandardCharsets.UTF_8));
+    return Long.parseUnsignedLong(hash.substring(0, 16), 16);
+  }
+
+  private static String typeName(Type type) {
+    return type.isClassType() ? ((ClassType) type).getClassName() : type.getClass().getSimpleName();
+  }
+
+  /** The classes (indices) named by the signature of classType: its superclass and its types. */
+  private static int[] signatureReferences(ClassType classType, Map<String, Integer> indices) {
+    List<Type> types = new ArrayList<>();
+    classType.getExtendsFrom().ifPresent(types::add);
+    for (Pair<String, Type> field : classType.getFieldsSorted()) {
+      types.add(field.second());
+    }
+    for (Pair<String, MethodType> method : classType.getMethodsSorted()) {
+      for (Pair<String, Type> argument : method.second().getArgumentsSorted()) {
+        types.add(argument.second());
+      }
+      types.add(method.second().getReturnType());
+    }
+    return types.stream()
+        .filter(Type::isClassType)
+        .map(type -> indices.get(((ClassType) type).getClassName()))
+        .filter(index -> index != null)
+        .mapToInt(Integer::intValue)
+        .distinct()
+        .toArray();
+  }
+
+  /**
+   * For every class, the classes reachable through the references of the signatures (including
+   * itself): the union of those of its references, computed in post order so that one pass (and
+   * one more to notice nothing changed) is enough unless signatures refer to each other.
+   */
+  private static BitSet[] reachable(int[][] references) {
+    int n = references.length;
+    BitSet[] reachable = new BitSet[n];
+    for (int i = 0; i < n; ++i) {
+      reachable[i] = new BitSet(n);
+      reachable[i].set(i);
+    }
+    List<Integer> postOrder = new ArrayList<>(n);
+    boolean[] visited = new boolean[n];
+    Deque<int[]> stack = new ArrayDeque<>();
+    for (int root = 0; root < n; ++root) {
+      if (visited[root]) {
+        continue;
+      }
+      visited[root] = true;
+      // class, next reference to visit
+      stack.push(new int[] {root, 0});
+      while (!stack.isEmpty()) {
+        int[] top = stack.peek();
+        if (top[1] < references[top[0]].length) {
+          int reference = references[top[0]][top[1]++];
+          if (!visited[reference]) {
+            visited[reference] = true;
+            stack.push(new int[] {reference, 0});
+          }
+        } else {
+          postOrder.add(stack.pop()[0]);
+        }
+      }
+    }
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int i : postOrder) {
+        int cardinality = reachable[i].cardinality();
+        for (int reference : references[i]) {
+          reachable[i].or(reachable[reference]);
+        }
+        changed |= reachable[i].cardinality() != cardinality;
+      }
+    }
+    return reachable;
+  }
+}
@@ -0,0 +1,182 @@
+package driver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import utils.Pair;
+
+/**
+ * Builds executables: every input is compiled, assembled and linked on a fixed pool of threads.
+ * The assembly is piped into the assembler's stdin as it's generated, and the object file lives in
+ * a temporary directory of its own, so concurrent builds (in this process or not) never share a
+ * scratch file. A failing input doesn't stop the others.
+ */
+public class NativeBuilder {
+
+  public static final String DEFAULT_ASSEMBLER = "as";
+  public static final String DEFAULT_LINKER = "cc";
+  // the generated code addresses its data absolutely
+  public static final List<String> DEFAULT_LINK_FLAGS = List.of("-no-pie");
+
+  private final Compiler compiler;
+  private final List<String> flags;
+  private final String assembler;
+  private final String linker;
+  private final List<String> linkFlags;
+  private final int threads;
+
+  /**
+   * Compiles with the given Main flags (without the files), assembles with assembler and links
+   * with linker (a C compiler driver, which links the C library) given linkFlags, on threads
+   * threads. Each file is compiled on a single thread unless the flags say otherwise.
+   */
+  public NativeBuilder(
+      Compiler compiler,
+      List<String> flags,
+      String assembler,
+      String linker,
+      List<String> linkFlags,
+      int threads) {
+    this.compiler = compiler;
+    this.flags = new ArrayList<>();
+    this.flags.add("--jobs=1");
+    this.flags.addAll(flags);
+    this.assembler = assembler;
+    this.linker = linker;
+    this.linkFlags = linkFlags;
+    this.threads = threads;
+  }
+
+  /** The executable of an input: "x.mjava" is built into "x". */
+  public static Path executableOf(Path input) {
+    String name = input.getFileName().toString();
+    if (name.endsWith(BatchCompiler.EXTENSION)) {
+      name = name.substring(0, name.length() - BatchCompiler.EXTENSION.length());
+    }
+    return input.resolveSibling(name);
+  }
+
+  /**
+   * Builds every input into its executable, printing the optimization reports (if requested) to
+   * report, each line prefixed with its file. Returns the inputs that failed, in input order, with
+   * their error.
+   */
+  public List<Pair<Path, String>> build(List<Path> inputs, PrintStream report)
+      throws InterruptedException {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    List<Future<String>> results = new ArrayList<>(inputs.size());
+    for (Path input : inputs) {
+      results.add(executor.submit(() -> build(input, executableOf(input), report)));
+    }
+    List<Pair<Path, String>> failures = new ArrayList<>();
+    try {
+      for (int i = 0; i < inputs.size(); ++i) {
+        String error = results.get(i).get();
+        if (error != null) {
+          failures.add(new Pair<>(inputs.get(i), error));
+        }
+      }
+    } catch (ExecutionException e) {
+      // build(Path, Path, PrintStream) catches the errors of the compiler and of the tools
+      throw new AssertionError(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+    return failures;
+  }
+
+  /** Builds input into executable, returning the error (null if it was built). */
+  public String build(Path input, Path executable, PrintStream report) {
+    ByteArrayOutputStream fileReport = new ByteArrayOutputStream();
+    String error = null;
+    Path scratch = null;
+    try {
+      scratch = Files.createTempDirectory("minijava");
+      Path object = scratch.resolve("program.o");
+      Path log = scratch.resolve("log");
+      Process assembling =
+          new ProcessBuilder(assembler, "-o", object.toString())
+              .redirectOutput(log.toFile())
+              .redirectErrorStream(true)
+              .start();
+      List<String> args = new ArrayList<>(flags);
+      args.add(input.toString());
+      // not written, the assembly goes to the assembler
+      args.add(scratch.resolve("program.s").toString());
+      try {
+        compiler.compile(
+            CompileOptions.parse(args, Paths.get("")),
+            new PrintStream(fileReport, true, StandardCharsets.UTF_8),
+            assembling.getOutputStream());
+      } catch (IOException | RuntimeException | AssertionError | StackOverflowError e) {
+        // the assembler has a truncated input, which is never linked
+        assembling.destroyForcibly().waitFor();
+        throw e;
+      }
+      error = run(assembler, assembling, log);
+      if (error == null) {
+        List<String> command = new ArrayList<>();
+        command.add(linker);
+        command.addAll(linkFlags);
+        command.addAll(List.of(object.toString(), "-o", executable.toString()));
+        Process linking =
+            new ProcessBuilder(command)
+                .redirectOutput(log.toFile())
+                .redirectErrorStream(true)
+                .start();
+        error = run(linker, linking, log);
+      }
+    } catch (IOException | RuntimeException | AssertionError | StackOverflowError e) {
+      error = Compiler.describe(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      error = Compiler.describe(e);
+    } finally {
+      if (scratch != null) {
+        deleteRecursively(scratch);
+      }
+    }
+    for (String line : fileReport.toString(StandardCharsets.UTF_8).split("\n")) {
+      if (!line.isEmpty()) {
+        report.println(input + ": " + line);
+      }
+    }
+    return error;
+  }
+
+  /** Waits for process, returning its output as an error if it failed. */
+  private static String run(String tool, Process process, Path log)
+      throws IOException, InterruptedException {
+    int status = process.waitFor();
+    if (status == 0) {
+      return null;
+    }
+    String output = Files.readString(log, StandardCharsets.UTF_8).strip();
+    return String.format("%s exited with status %d: %s", tool, status, output)
+        .replaceAll("\\s+", " ");
+  }
+
+  private static void deleteRecursively(Path directory) {
+    try (Stream<Path> paths = Files.walk(directory)) {
+      for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+        Files.deleteIfExists(path);
+      }
+    } catch (IOException | UncheckedIOException e) {
+      // left in the temporary directory
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ir.instructions.Instruction;
+import ir.instructions.PhiInstruction;
+
+public class BasicBlock {
+
+  private final int id;
+  private final List<Instruction> instructions;
+  private final List<BasicBlock> predecessors;
+
+  public BasicBlock(int id) {
+    this.id = id;
+    this.instructions = new ArrayList<>();
+    this.predecessors = new ArrayList<>();
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  public String getName() {
+    return "block" + id;
+  }
+
+  public List<Instruction> getInstructions() {
+    return instructions;
+  }
+
+  public List<BasicBlock> getPredecessors() {
+    return predecessors;
+  }
+
+  public List<BasicBlock> getSuccessors() {
+    Instruction terminator = getTerminator();
+    return terminator == null ? List.of() : terminator.getSuccessors();
+  }
+
+  /** Last instruction of the block if it ends the block, null otherwise. */
+  public Instruction getTerminator() {
+    if (instructions.isEmpty()) {
+      return null;
+    }
+    Instruction last = instructions.get(instructions.size() - 1);
+    return last.isTerminator() ? last : null;
+  }
+
+  public boolean isTerminated() {
+    return getTerminator() != null;
+  }
+
+  public void append(Instruction instruction) {
+    assert !isTerminated() : String.format("%s is already terminated", getName());
+    instructions.add(instruction);
+    instruction.setBlock(this);
+    for (BasicBlock successor : instruction.getSuccessors()) {
+      successor.predecessors.add(this);
+    }
+  }
+
+  /** Phi nodes are always kept at the beginning of the block. */
+  public void prependPhi(PhiInstruction phi) {
+    int i = 0;
+    while (i < instructions.size() && instructions.get(i) instanceof PhiInstruction) {
+      ++i;
+    }
+    instructions.add(i, phi);
+    phi.setBlock(this);
+  }
+
+  public void remove(Instruction instruction) {
+    instructions.remove(instruction);
+  }
+
+  @Override
+  public String toString() {
+    return getName();
+  }
+}
@@ -0,0 +1,45 @@
+package ir;
+
+public class Constant extends Value {
+
+  private final long value;
+
+  public Constant(IrType type, long value) {
+    super(type);
+    this.value = value;
+  }
+
+  public static Constant ofInt(long value) {
+    return new Constant(IrType.INT, value);
+  }
+
+  public static Constant ofBoolean(boolean value) {
+    return new Constant(IrType.BOOLEAN, value ? 1 : 0);
+  }
+
+  /** Default value of a variable of the given type (0, false or null). */
+  public static Constant zero(IrType type) {
+    return new Constant(type, 0);
+  }
+
+  public long getValue() {
+    return value;
+  }
+
+  @Override
+  public boolean isConstant() {
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    switch (getType().getKind()) {
+      case BOOLEAN:
+        return value == 0 ? "false" : "true";
+      case INT:
+        return Long.toString(value);
+      default:
+        return "null";
+    }
+  }
+}
@@ -0,0 +1,487 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import codegen_common.ObjectLayout;
+import ir.instructions.AllocArrayInstruction;
+import ir.instructions.AllocObjectInstruction;
+import ir.instructions.ArrayLengthInstruction;
+import ir.instructions.ArrayLoadInstruction;
+import ir.instructions.ArrayStoreInstruction;
+import ir.instructions.BinaryInstruction;
+import ir.instructions.BinaryInstruction.Operator;
+import ir.instructions.BranchInstruction;
+import ir.instructions.CallInstruction;
+import ir.instructions.Instruction;
+import ir.instructions.JumpInstruction;
+import ir.instructions.LoadFieldInstruction;
+import ir.instructions.MethodLoadInstruction;
+import ir.instructions.NotInstruction;
+import ir.instructions.PhiInstruction;
+import ir.instructions.PrintInstruction;
+import ir.instructions.ReturnInstruction;
+import ir.instructions.StoreFieldInstruction;
+import ir.instructions.VTableLoadInstruction;
+import parser.ast.ClassNode;
+import parser.ast.GoalNode;
+import parser.ast.MethodDeclNode;
+import parser.ast.VarDeclNode;
+import parser.ast.base_abs_classes.ExprNode;
+import parser.ast.base_abs_classes.StatementNode;
+import parser.ast.expression.ArrayAccessExpr;
+import parser.ast.expression.LengthExpr;
+import parser.ast.expression.MethodCallExpr;
+import parser.ast.expression.NewArrayDeclExpr;
+import parser.ast.expression.NewObjectDeclExpr;
+import parser.ast.expression.NotExpr;
+import parser.ast.expression.binary_expr.AddExpr;
+import parser.ast.expression.binary_expr.AndExpr;
+import parser.ast.expression.binary_expr.DotExpr;
+import parser.ast.expression.binary_expr.LtExpr;
+import parser.ast.expression.binary_expr.MultExpr;
+import parser.ast.expression.binary_expr.ShiftLeftExpr;
+import parser.ast.expression.binary_expr.SubExpr;
+import parser.ast.expression.literals.IdentifierExpr;
+import parser.ast.expression.literals.IntExpr;
+import parser.ast.expression.singletons.FalseExpr;
+import parser.ast.expression.singletons.ThisExpr;
+import parser.ast.expression.singletons.TrueExpr;
+import parser.ast.statement.BlockStatement;
+import parser.ast.statement.IfStatement;
+import parser.ast.statement.PrintStatement;
+import parser.ast.statement.SetArrayIndexStatement;
+import parser.ast.statement.SetVariableStatement;
+import parser.ast.statement.WhileStatement;
+import semantics.TypesVisitor;
+import semantics.types.ClassType;
+import semantics.types.MethodType;
+import semantics.types.Type;
+import utils.Pair;
+
+/**
+ * Lowers the type checked AST to SSA form. Arguments and locals become virtual registers and phi
+ * nodes are placed on the fly while the CFG is built, following Braun et al. "Simple and Efficient
+ * Construction of Static Single Assignment Form": a block is sealed once all its predecessors are
+ * known, reads in unsealed blocks create incomplete phis and trivial phis are removed. Fields stay
+ * in memory and are accessed through "this".
+ */
+public class IrBuilderVisitor {
+
+  private static final int REGISTER_SIZE = 8;
+  private static final String THIS = "this";
+
+  private final IrProgram program;
+  private final Map<String, ObjectLayout> objsLayout;
+  private final TypesVisitor typesVis;
+  private IrFunction currentFunction;
+  private BasicBlock currentBlock;
+  private Map<String, IrType> variableTypes;
+  private Map<String, Map<BasicBlock, Value>> currentDefinitions;
+  private Map<BasicBlock, Map<String, PhiInstruction>> incompletePhis;
+  private Set<BasicBlock> sealedBlocks;
+
+  public IrBuilderVisitor(TypesVisitor typesVis) {
+    this.program = new IrProgram();
+    this.objsLayout = new HashMap<>();
+    for (ClassType classType : typesVis.getClassSymbolTable().values()) {
+      objsLayout.put(classType.getClassName(), new ObjectLayout(classType));
+    }
+    this.typesVis = typesVis;
+  }
+
+  public IrProgram getProgram() {
+    return program;
+  }
+
+  private void startFunction(String name, IrType returnType) {
+    currentFunction = new IrFunction(name, returnType);
+    program.getFunctions().add(currentFunction);
+    variableTypes = new HashMap<>();
+    currentDefinitions = new HashMap<>();
+    incompletePhis = new HashMap<>();
+    sealedBlocks = new HashSet<>();
+    currentBlock = currentFunction.newBlock();
+    sealBlock(currentBlock);
+  }
+
+  private void declareVariable(String name, IrType type, Value initialValue) {
+    variableTypes.put(name, type);
+    writeVariable(name, currentBlock, initialValue);
+  }
+
+  private VirtualRegister newRegister(IrType type) {
+    return currentFunction.newRegister(type);
+  }
+
+  private Value emit(Instruction instruction) {
+    currentBlock.append(instruction);
+    return instruction.getResult();
+  }
+
+  private boolean isFrameVariable(String name) {
+    return variableTypes.containsKey(name);
+  }
+
+  private void writeVariable(String name, BasicBlock block, Value value) {
+    currentDefinitions.computeIfAbsent(name, k -> new HashMap<>()).put(block, value);
+  }
+
+  private Value readVariable(String name, BasicBlock block) {
+    Value value = currentDefinitions.get(name).get(block);
+    return value != null ? value : readVariableRecursive(name, block);
+  }
+
+  private Value readVariableRecursive(String name, BasicBlock block) {
+    Value value;
+    if (!sealedBlocks.contains(block)) {
+      PhiInstruction phi = new PhiInstruction(newRegister(variableTypes.get(name)));
+      block.prependPhi(phi);
+      incompletePhis.computeIfAbsent(block, k -> new HashMap<>()).put(name, phi);
+      value = phi.getResult();
+    } else if (block.getPredecessors().size() == 1) {
+      value = readVariable(name, block.getPredecessors().get(0));
+    } else {
+      PhiInstruction phi = new PhiInstruction(newRegister(variableTypes.get(name)));
+      block.prependPhi(phi);
+      // break cycles before looking at the predecessors
+      writeVariable(name, block, phi.getResult());
+      value = addPhiOperands(name, phi);
+    }
+    writeVariable(name, block, value);
+    return value;
+  }
+
+  private Value addPhiOperands(String name, PhiInstruction phi) {
+    for (BasicBlock predecessor : phi.getBlock().getPredecessors()) {
+      phi.addIncoming(readVariable(name, predecessor), predecessor);
+    }
+    return tryRemoveTrivialPhi(phi);
+  }
+
+  private Value tryRemoveTrivialPhi(PhiInstruction phi) {
+    Value same = null;
+    for (Value operand : phi.getOperands()) {
+      if (operand == same || operand == phi.getResult()) {
+        continue;
+      }
+      if (same != null) {
+        // the phi merges at least two values
+        return phi.getResult();
+      }
+      same = operand;
+    }
+    if (same == null) {
+      // unreachable or only self-referencing: variables are zero initialized
+      same = Constant.zero(phi.getResult().getType());
+    }
+    phi.getBlock().remove(phi);
+    List<PhiInstruction> phiUsers = new ArrayList<>();
+    for (BasicBlock block : currentFunction.getBlocks()) {
+      for (Instruction instruction : block.getInstructions()) {
+        if (instruction.getOperands().contains(phi.getResult())) {
+          instruction.replaceUsesOf(phi.getResult(), same);
+          if (instruction instanceof PhiInstruction) {
+            phiUsers.add((PhiInstruction) instruction);
+          }
+        }
+      }
+    }
+    for (Map<BasicBlock, Value> definitions : currentDefinitions.values()) {
+      for (Map.Entry<BasicBlock, Value> definition : definitions.entrySet()) {
+        if (definition.getValue() == phi.getResult()) {
+          definition.setValue(same);
+        }
+      }
+    }
+    for (PhiInstruction user : phiUsers) {
+      if (user.getBlock() != null && user.getBlock().getInstructions().contains(user)) {
+        tryRemoveTrivialPhi(user);
+      }
+    }
+    return same;
+  }
+
+  private void sealBlock(BasicBlock block) {
+    Map<String, PhiInstruction> pending = incompletePhis.remove(block);
+    if (pending != null) {
+      for (Map.Entry<String, PhiInstruction> entry : pending.entrySet()) {
+        addPhiOperands(entry.getKey(), entry.getValue());
+      }
+    }
+    sealedBlocks.add(block);
+  }
+
+  private void jumpTo(BasicBlock target) {
+    if (!currentBlock.isTerminated()) {
+      currentBlock.append(new JumpInstruction(target));
+    }
+  }
+
+  private IrType typeOf(ExprNode expr) {
+    // annotated by the type checking pass; checking it on demand is safe (doesn't change
+    // typesVis' currentClass/Method) because expressions have no ClassNode/MethodDeclNode
+    return IrType.of(typesVis.typeOf(expr));
+  }
+
+  private int getFieldOffset(String className, String fieldName) {
+    int fieldIndex = objsLayout.get(className).getFieldIndex(fieldName);
+    assert fieldIndex != -1 : "This should have failed semantic checks";
+    return REGISTER_SIZE * (1 + fieldIndex);
+  }
+
+  private Value binary(Operator operator, IrType type, ExprNode lhs, ExprNode rhs) {
+    Value leftHandSide = lhs.accept(this);
+    Value rightHandSide = rhs.accept(this);
+    return emit(new BinaryInstruction(newRegister(type), operator, leftHandSide, rightHandSide));
+  }
+
+  public Value visit(IdentifierExpr expr) {
+    String idName = expr.getIdentifierName();
+    if (isFrameVariable(idName)) {
+      return readVariable(idName, currentBlock);
+    }
+    // object field
+    String className = typesVis.getCurrentClass().get().getClassName();
+    return emit(
+        new LoadFieldInstruction(
+            newRegister(typeOf(expr)),
+            readVariable(THIS, currentBlock),
+            idName,
+            getFieldOffset(className, idName)));
+  }
+
+  public Value visit(IntExpr expr) {
+    return Constant.ofInt(Long.parseLong(expr.getIntegerVal()));
+  }
+
+  public Value visit(FalseExpr expr) {
+    return Constant.ofBoolean(false);
+  }
+
+  public Value visit(TrueExpr expr) {
+    return Constant.ofBoolean(true);
+  }
+
+  public Value visit(ThisExpr expr) {
+    return readVariable(THIS, currentBlock);
+  }
+
+  public Value visit(AddExpr expr) {
+    return binary(Operator.ADD, IrType.INT, expr.getLeftHandSide(), expr.getRightHandSide());
+  }
+
+  public Value visit(AndExpr expr) {
+    Value leftHandSide = expr.getLeftHandSide().accept(this);
+    BasicBlock leftEnd = currentBlock;
+    BasicBlock rightBlock = currentFunction.newBlock();
+    BasicBlock joinBlock = currentFunction.newBlock();
+    currentBlock.append(new BranchInstruction(leftHandSide, rightBlock, joinBlock));
+    sealBlock(rightBlock);
+    currentBlock = rightBlock;
+    Value rightHandSide = expr.getRightHandSide().accept(this);
+    jumpTo(joinBlock);
+    sealBlock(joinBlock);
+    currentBlock = joinBlock;
+    PhiInstruction phi = new PhiInstruction(newRegister(IrType.BOOLEAN));
+    for (BasicBlock predecessor : joinBlock.getPredecessors()) {
+      phi.addIncoming(
+          predecessor == leftEnd ? Constant.ofBoolean(false) : rightHandSide, predecessor);
+    }
+    joinBlock.prependPhi(phi);
+    return phi.getResult();
+  }
+
+  public Value visit(DotExpr expr) {
+    Value object = expr.getLeftHandSide().accept(this);
+    String fieldName = expr.getRightHandSide().getIdentifierName();
+    String className = object.getType().getClassName();
+    return emit(
+        new LoadFieldInstruction(
+            newRegister(typeOf(expr)), object, fieldName, getFieldOffset(className, fieldName)));
+  }
+
+  public Value visit(LtExpr expr) {
+    return binary(Operator.LT, IrType.BOOLEAN, expr.getLeftHandSide(), expr.getRightHandSide());
+  }
+
+  public Value visit(MultExpr expr) {
+    return binary(Operator.MUL, IrType.INT, expr.getLeftHandSide(), expr.getRightHandSide());
+  }
+
+  public Value visit(ShiftLeftExpr expr) {
+    return binary(Operator.SHL, IrType.INT, expr.getLeftHandSide(), expr.getRightHandSide());
+  }
+
+  public Value visit(SubExpr expr) {
+    return binary(Operator.SUB, IrType.INT, expr.getLeftHandSide(), expr.getRightHandSide());
+  }
+
+  public Value visit(ArrayAccessExpr expr) {
+    Value array = expr.getArray().accept(this);
+    Value index = expr.getIndex().accept(this);
+    return emit(new ArrayLoadInstruction(newRegister(IrType.INT), array, index));
+  }
+
+  public Value visit(LengthExpr expr) {
+    Value array = expr.getLenExpr().accept(this);
+    return emit(new ArrayLengthInstruction(newRegister(IrType.INT), array));
+  }
+
+  public Value visit(MethodCallExpr expr) {
+    Value object = expr.getObjectSeqExpr().accept(this);
+    List<Value> arguments = new ArrayList<>(List.of(object));
+    for (ExprNode arg : expr.getArgs()) {
+      arguments.add(arg.accept(this));
+    }
+    String methodName = expr.getMethodNameExpr().getIdentifierName();
+    int methodIndex = objsLayout.get(object.getType().getClassName()).getVTableIndex(methodName);
+    assert methodIndex != -1 : "This should have failed semantic checks";
+    Value vTable = emit(new VTableLoadInstruction(newRegister(IrType.VTABLE), object));
+    Value method =
+        emit(
+            new MethodLoadInstruction(
+                newRegister(IrType.FUNCTION_POINTER), vTable, methodName, methodIndex));
+    return emit(new CallInstruction(newRegister(typeOf(expr)), method, arguments));
+  }
+
+  public Value visit(NewArrayDeclExpr expr) {
+    Value size = expr.getSize().accept(this);
+    return emit(new AllocArrayInstruction(newRegister(IrType.INT_ARRAY), size));
+  }
+
+  public Value visit(NewObjectDeclExpr expr) {
+    String className = expr.getObjectName();
+    return emit(
+        new AllocObjectInstruction(
+            newRegister(IrType.object(className)),
+            className,
+            objsLayout.get(className).getFields().size()));
+  }
+
+  public Value visit(NotExpr expr) {
+    Value argument = expr.getArgument().accept(this);
+    return emit(new NotInstruction(newRegister(IrType.BOOLEAN), argument));
+  }
+
+  public void visit(BlockStatement statement) {
+    for (StatementNode statementNode : statement.getStatements()) {
+      statementNode.accept(this);
+    }
+  }
+
+  public void visit(IfStatement statement) {
+    Value condition = statement.getIfCondition().accept(this);
+    BasicBlock thenBlock = currentFunction.newBlock();
+    BasicBlock elseBlock = currentFunction.newBlock();
+    BasicBlock joinBlock = currentFunction.newBlock();
+    currentBlock.append(new BranchInstruction(condition, thenBlock, elseBlock));
+    sealBlock(thenBlock);
+    sealBlock(elseBlock);
+    currentBlock = thenBlock;
+    statement.getIfBlock().accept(this);
+    jumpTo(joinBlock);
+    currentBlock = elseBlock;
+    statement.getElseBlock().accept(this);
+    jumpTo(joinBlock);
+    sealBlock(joinBlock);
+    currentBlock = joinBlock;
+  }
+
+  public void visit(PrintStatement statement) {
+    emit(new PrintInstruction(statement.getPrintExpr().accept(this)));
+  }
+
+  public void visit(SetArrayIndexStatement statement) {
+    Value array = statement.getVarAssigned().accept(this);
+    Value index = statement.getIndex().accept(this);
+    Value value = statement.getRightHandSide().accept(this);
+    emit(new ArrayStoreInstruction(array, index, value));
+  }
+
+  public void visit(SetVariableStatement statement) {
+    Value value = statement.getRightHandSide().accept(this);
+    String varName = statement.getVarAssigned().getIdentifierName();
+    if (isFrameVariable(varName)) {
+      writeVariable(varName, currentBlock, value);
+      return;
+    }
+    // object field
+    String className = typesVis.getCurrentClass().get().getClassName();
+    emit(
+        new StoreFieldInstruction(
+            readVariable(THIS, currentBlock),
+            varName,
+            getFieldOffset(className, varName),
+            value));
+  }
+
+  public void visit(WhileStatement statement) {
+    BasicBlock headerBlock = currentFunction.newBlock();
+    jumpTo(headerBlock);
+    // the header stays unsealed until the back edge is known
+    currentBlock = headerBlock;
+    Value condition = statement.getWhileCondition().accept(this);
+    BasicBlock bodyBlock = currentFunction.newBlock();
+    BasicBlock exitBlock = currentFunction.newBlock();
+    currentBlock.append(new BranchInstruction(condition, bodyBlock, exitBlock));
+    sealBlock(bodyBlock);
+    currentBlock = bodyBlock;
+    statement.getWhileBlock().accept(this);
+    jumpTo(headerBlock);
+    sealBlock(headerBlock);
+    sealBlock(exitBlock);
+    currentBlock = exitBlock;
+  }
+
+  public void visit(ClassNode node) {
+    typesVis.setCurrentClass(node);
+    List<String> vTable = new ArrayList<>();
+    for (Pair<String, String> methodPair : objsLayout.get(node.getClassName()).getVTable()) {
+      vTable.add(methodPair.toString());
+    }
+    program.getVTables().put(node.getClassName(), vTable);
+    for (MethodDeclNode methodDeclNode : node.getMethodDecls()) {
+      methodDeclNode.accept(this);
+    }
+  }
+
+  public void visit(GoalNode node) {
+    startFunction("main", null);
+    node.getStatement().accept(this);
+    currentBlock.append(new ReturnInstruction(null));
+    for (ClassNode classNode : node.getClasses()) {
+      classNode.accept(this);
+    }
+  }
+
+  public void visit(MethodDeclNode node) {
+    typesVis.setCurrentMethod(node);
+    MethodType currentMethod = typesVis.getCurrentMethod().get();
+    String className = typesVis.getCurrentClass().get().getClassName();
+    startFunction(
+        className + "$" + node.getMethodName(), IrType.of(currentMethod.getReturnType()));
+    IrType thisType = IrType.object(className);
+    declareVariable(THIS, thisType, currentFunction.addParameter(thisType));
+    for (Pair<String, Type> argument : currentMethod.getArgumentsSorted()) {
+      IrType argumentType = IrType.of(argument.second());
+      declareVariable(argument.first(), argumentType, currentFunction.addParameter(argumentType));
+    }
+    for (Pair<String, Type> local : currentMethod.getVarsDeclSorted()) {
+      IrType localType = IrType.of(local.second());
+      declareVariable(local.first(), localType, Constant.zero(localType));
+    }
+    for (StatementNode statement : node.getStatements()) {
+      statement.accept(this);
+    }
+    currentBlock.append(new ReturnInstruction(node.getReturnExpr().accept(this)));
+  }
+
+  public void visit(VarDeclNode node) {
+    return;
+  }
+}
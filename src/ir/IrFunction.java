@@ -0,0 +1,58 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class IrFunction {
+
+  private final String name;
+  private final List<VirtualRegister> parameters;
+  private final IrType returnType;
+  private final List<BasicBlock> blocks;
+  private int nextRegisterId;
+
+  public IrFunction(String name, IrType returnType) {
+    this.name = name;
+    this.parameters = new ArrayList<>();
+    this.returnType = returnType;
+    this.blocks = new ArrayList<>();
+    this.nextRegisterId = 0;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public List<VirtualRegister> getParameters() {
+    return parameters;
+  }
+
+  /** Return type of the function, null for the program entry point. */
+  public IrType getReturnType() {
+    return returnType;
+  }
+
+  public List<BasicBlock> getBlocks() {
+    return blocks;
+  }
+
+  public BasicBlock getEntryBlock() {
+    return blocks.get(0);
+  }
+
+  public VirtualRegister addParameter(IrType type) {
+    VirtualRegister parameter = newRegister(type);
+    parameters.add(parameter);
+    return parameter;
+  }
+
+  public VirtualRegister newRegister(IrType type) {
+    return new VirtualRegister(nextRegisterId++, type);
+  }
+
+  public BasicBlock newBlock() {
+    BasicBlock block = new BasicBlock(blocks.size());
+    blocks.add(block);
+    return block;
+  }
+}
@@ -0,0 +1,52 @@
+package ir;
+
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+import ir.instructions.Instruction;
+
+/** Renders an IrProgram in a textual, LLVM-like form. */
+public class IrPrinter {
+
+  public static String print(IrProgram program) {
+    StringBuilder strBuilder = new StringBuilder();
+    for (Map.Entry<String, List<String>> vTable : program.getVTables().entrySet()) {
+      strBuilder.append(
+          String.format("vtable %s [%s]\n", vTable.getKey(), String.join(", ", vTable.getValue())));
+    }
+    for (IrFunction function : program.getFunctions()) {
+      strBuilder.append("\n" + print(function));
+    }
+    return strBuilder.toString();
+  }
+
+  public static String print(IrFunction function) {
+    StringJoiner parameters = new StringJoiner(", ");
+    for (VirtualRegister parameter : function.getParameters()) {
+      parameters.add(parameter + " : " + parameter.getType());
+    }
+    StringBuilder strBuilder = new StringBuilder();
+    strBuilder.append(
+        String.format(
+            "function %s(%s)%s {\n",
+            function.getName(),
+            parameters,
+            function.getReturnType() == null ? "" : " : " + function.getReturnType()));
+    for (BasicBlock block : function.getBlocks()) {
+      strBuilder.append(block.getName() + ":");
+      if (!block.getPredecessors().isEmpty()) {
+        StringJoiner predecessors = new StringJoiner(", ");
+        for (BasicBlock predecessor : block.getPredecessors()) {
+          predecessors.add(predecessor.getName());
+        }
+        strBuilder.append(" ; preds " + predecessors);
+      }
+      strBuilder.append("\n");
+      for (Instruction instruction : block.getInstructions()) {
+        strBuilder.append("\t" + instruction + "\n");
+      }
+    }
+    return strBuilder.append("}\n").toString();
+  }
+}
@@ -0,0 +1,26 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class IrProgram {
+
+  private final List<IrFunction> functions;
+  private final Map<String, List<String>> vTables;
+
+  public IrProgram() {
+    this.functions = new ArrayList<>();
+    this.vTables = new LinkedHashMap<>();
+  }
+
+  public List<IrFunction> getFunctions() {
+    return functions;
+  }
+
+  /** Class name to the labels of the methods in its vTable, in slot order. */
+  public Map<String, List<String>> getVTables() {
+    return vTables;
+  }
+}
@@ -0,0 +1,92 @@
+package ir;
+
+import semantics.types.ClassType;
+import semantics.types.Type;
+
+public class IrType {
+
+  public enum Kind {
+    INT,
+    BOOLEAN,
+    INT_ARRAY,
+    OBJECT,
+    VTABLE,
+    FUNCTION_POINTER
+  }
+
+  public static final IrType INT = new IrType(Kind.INT, null);
+  public static final IrType BOOLEAN = new IrType(Kind.BOOLEAN, null);
+  public static final IrType INT_ARRAY = new IrType(Kind.INT_ARRAY, null);
+  public static final IrType VTABLE = new IrType(Kind.VTABLE, null);
+  public static final IrType FUNCTION_POINTER = new IrType(Kind.FUNCTION_POINTER, null);
+
+  private final Kind kind;
+  private final String className;
+
+  private IrType(Kind kind, String className) {
+    this.kind = kind;
+    this.className = className;
+  }
+
+  public static IrType object(String className) {
+    return new IrType(Kind.OBJECT, className);
+  }
+
+  public static IrType of(Type type) {
+    if (type.isIntType()) {
+      return INT;
+    } else if (type.isBooleanType()) {
+      return BOOLEAN;
+    } else if (type.isIntArrayType()) {
+      return INT_ARRAY;
+    } else if (type.isClassType()) {
+      return object(((ClassType) type).getClassName());
+    }
+    throw new AssertionError("Type has no IR representation");
+  }
+
+  public Kind getKind() {
+    return kind;
+  }
+
+  public String getClassName() {
+    return className;
+  }
+
+  /** True for values that point into the heap. */
+  public boolean isReference() {
+    return kind == Kind.INT_ARRAY || kind == Kind.OBJECT;
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    return other instanceof IrType
+        && ((IrType) other).kind == kind
+        && (className == null
+            ? ((IrType) other).className == null
+            : className.equals(((IrType) other).className));
+  }
+
+  @Override
+  public int hashCode() {
+    return kind.hashCode() + (className == null ? 0 : className.hashCode());
+  }
+
+  @Override
+  public String toString() {
+    switch (kind) {
+      case INT:
+        return "int";
+      case BOOLEAN:
+        return "boolean";
+      case INT_ARRAY:
+        return "int[]";
+      case OBJECT:
+        return className;
+      case VTABLE:
+        return "vtable";
+      default:
+        return "fnptr";
+    }
+  }
+}
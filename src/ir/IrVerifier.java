@@ -0,0 +1,202 @@
+package ir;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ir.instructions.Instruction;
+import ir.instructions.PhiInstruction;
+import ir.instructions.ReturnInstruction;
+
+/**
+ * Checks the structural invariants of the IR: every block ends with its only terminator, phis come
+ * first and have one operand per predecessor, predecessor and successor lists agree, every register
+ * is defined once, definitions dominate their uses and operands have the expected types. All the
+ * problems found are reported together in a single AssertionError.
+ */
+public class IrVerifier {
+
+  private final List<String> errors;
+
+  private IrVerifier() {
+    this.errors = new ArrayList<>();
+  }
+
+  public static void verify(IrProgram program) {
+    IrVerifier verifier = new IrVerifier();
+    for (IrFunction function : program.getFunctions()) {
+      verifier.verifyFunction(function);
+    }
+    if (!verifier.errors.isEmpty()) {
+      throw new AssertionError("Malformed IR:\n" + String.join("\n", verifier.errors));
+    }
+  }
+
+  private void error(IrFunction function, BasicBlock block, String message) {
+    errors.add(String.format("%s, %s: %s", function.getName(), block.getName(), message));
+  }
+
+  private void verifyFunction(IrFunction function) {
+    Map<VirtualRegister, BasicBlock> definingBlock = new HashMap<>();
+    for (VirtualRegister parameter : function.getParameters()) {
+      definingBlock.put(parameter, function.getEntryBlock());
+    }
+    for (BasicBlock block : function.getBlocks()) {
+      verifyStructure(function, block);
+      for (Instruction instruction : block.getInstructions()) {
+        VirtualRegister result = instruction.getResult();
+        if (result == null) {
+          continue;
+        }
+        if (definingBlock.containsKey(result)) {
+          error(function, block, result + " is defined more than once");
+        }
+        definingBlock.put(result, block);
+        if (result.getDefinition() != instruction) {
+          error(function, block, result + " does not point back to its definition");
+        }
+      }
+    }
+    Map<BasicBlock, Set<BasicBlock>> dominators = computeDominators(function);
+    for (BasicBlock block : dominators.keySet()) {
+      for (Instruction instruction : block.getInstructions()) {
+        String typeError = instruction.checkTypes();
+        if (typeError != null) {
+          error(function, block, "\"" + instruction + "\": " + typeError);
+        }
+        verifyReturn(function, block, instruction);
+        for (int i = 0; i < instruction.getOperands().size(); ++i) {
+          Value operand = instruction.getOperand(i);
+          if (!operand.isVirtualRegister()) {
+            continue;
+          }
+          BasicBlock definition = definingBlock.get(operand);
+          if (definition == null) {
+            error(function, block, operand + " is used but never defined");
+          } else if (instruction instanceof PhiInstruction) {
+            // the value has to be available at the end of the incoming edge
+            BasicBlock incoming = ((PhiInstruction) instruction).getIncomingBlocks().get(i);
+            if (dominators.containsKey(incoming)
+                && !dominators.get(incoming).contains(definition)) {
+              error(function, block, operand + " does not dominate its use in a phi");
+            }
+          } else if (!dominators.get(block).contains(definition)
+              || (definition == block && !definedBefore(block, operand, instruction))) {
+            error(function, block, operand + " does not dominate \"" + instruction + "\"");
+          }
+        }
+      }
+    }
+  }
+
+  private void verifyStructure(IrFunction function, BasicBlock block) {
+    List<Instruction> instructions = block.getInstructions();
+    if (!block.isTerminated()) {
+      error(function, block, "block does not end with a terminator");
+    }
+    boolean phisAllowed = true;
+    for (int i = 0; i < instructions.size(); ++i) {
+      Instruction instruction = instructions.get(i);
+      if (instruction.getBlock() != block) {
+        error(function, block, "\"" + instruction + "\" has a wrong parent block");
+      }
+      if (instruction.isTerminator() && i != instructions.size() - 1) {
+        error(function, block, "terminator in the middle of the block");
+      }
+      if (instruction instanceof PhiInstruction) {
+        if (!phisAllowed) {
+          error(function, block, "phi after a non phi instruction");
+        }
+        if (!((PhiInstruction) instruction).getIncomingBlocks().equals(block.getPredecessors())) {
+          error(function, block, "\"" + instruction + "\" does not match the predecessors");
+        }
+      } else {
+        phisAllowed = false;
+      }
+    }
+    for (BasicBlock successor : block.getSuccessors()) {
+      if (!successor.getPredecessors().contains(block)) {
+        error(function, block, successor.getName() + " does not list it as a predecessor");
+      }
+    }
+    for (BasicBlock predecessor : block.getPredecessors()) {
+      if (!predecessor.getSuccessors().contains(block)) {
+        error(function, block, predecessor.getName() + " does not list it as a successor");
+      }
+    }
+  }
+
+  private void verifyReturn(IrFunction function, BasicBlock block, Instruction instruction) {
+    if (!(instruction instanceof ReturnInstruction)) {
+      return;
+    }
+    IrType returnType = function.getReturnType();
+    List<Value> operands = instruction.getOperands();
+    if (returnType == null ? !operands.isEmpty() : operands.size() != 1) {
+      error(function, block, "wrong number of returned values");
+    } else if (returnType != null
+        && !operands.get(0).getType().equals(returnType)
+        && !(returnType.getKind() == IrType.Kind.OBJECT
+            && operands.get(0).getType().getKind() == IrType.Kind.OBJECT)) {
+      error(function, block, "returned value should be " + returnType);
+    }
+  }
+
+  private static boolean definedBefore(BasicBlock block, Value operand, Instruction user) {
+    if (((VirtualRegister) operand).getDefinition() == null) {
+      // parameters are defined on entry
+      return true;
+    }
+    for (Instruction instruction : block.getInstructions()) {
+      if (instruction == user) {
+        return false;
+      }
+      if (instruction.getResult() == operand) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Dominator sets of the blocks reachable from the entry, by the iterative data-flow method. */
+  static Map<BasicBlock, Set<BasicBlock>> computeDominators(IrFunction function) {
+    Set<BasicBlock> reachable = new LinkedHashSet<>();
+    List<BasicBlock> worklist = new ArrayList<>(List.of(function.getEntryBlock()));
+    while (!worklist.isEmpty()) {
+      BasicBlock block = worklist.remove(worklist.size() - 1);
+      if (reachable.add(block)) {
+        worklist.addAll(block.getSuccessors());
+      }
+    }
+    Map<BasicBlock, Set<BasicBlock>> dominators = new HashMap<>();
+    for (BasicBlock block : reachable) {
+      dominators.put(block, new HashSet<>(reachable));
+    }
+    dominators.put(function.getEntryBlock(), new HashSet<>(Set.of(function.getEntryBlock())));
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (BasicBlock block : reachable) {
+        if (block == function.getEntryBlock()) {
+          continue;
+        }
+        Set<BasicBlock> newDominators = new HashSet<>(reachable);
+        for (BasicBlock predecessor : block.getPredecessors()) {
+          if (reachable.contains(predecessor)) {
+            newDominators.retainAll(dominators.get(predecessor));
+          }
+        }
+        newDominators.add(block);
+        if (!newDominators.equals(dominators.get(block))) {
+          dominators.put(block, newDominators);
+          changed = true;
+        }
+      }
+    }
+    return dominators;
+  }
+}
@@ -0,0 +1,22 @@
+package ir;
+
+public abstract class Value {
+
+  private final IrType type;
+
+  public Value(IrType type) {
+    this.type = type;
+  }
+
+  public IrType getType() {
+    return type;
+  }
+
+  public boolean isConstant() {
+    return false;
+  }
+
+  public boolean isVirtualRegister() {
+    return false;
+  }
+}
@@ -0,0 +1,37 @@
+package ir;
+
+import ir.instructions.Instruction;
+
+public class VirtualRegister extends Value {
+
+  private final int id;
+  private Instruction definition;
+
+  public VirtualRegister(int id, IrType type) {
+    super(type);
+    this.id = id;
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  /** Instruction that defines this register, or null for function parameters. */
+  public Instruction getDefinition() {
+    return definition;
+  }
+
+  public void setDefinition(Instruction definition) {
+    this.definition = definition;
+  }
+
+  @Override
+  public boolean isVirtualRegister() {
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "%" + id;
+  }
+}
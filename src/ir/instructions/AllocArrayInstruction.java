@@ -0,0 +1,28 @@
+package ir.instructions;
+
+import java.util.List;
+
+import ir.IrType;
+import ir.Value;
+import ir.VirtualRegister;
+
+/** Allocates a zeroed int array; its length is stored in the zeroth slot. */
+public class AllocArrayInstruction extends Instruction {
+
+  public AllocArrayInstruction(VirtualRegister result, Value length) {
+    super(result, List.of(length));
+  }
+
+  @Override
+  public String checkTypes() {
+    return getOperand(0).getType().equals(IrType.INT)
+            && getResult().getType().equals(IrType.INT_ARRAY)
+        ? null
+        : "newarray expects an int length";
+  }
+
+  @Override
+  public String toString() {
+    return format("newarray");
+  }
+}
@@ -0,0 +1,39 @@
+package ir.instructions;
+
+import java.util.List;
+
+import ir.IrType;
+import ir.VirtualRegister;
+
+/** Allocates a zeroed object and stores the address of its class' vTable in the header. */
+public class AllocObjectInstruction extends Instruction {
+
+  private final String className;
+  private final int numFields;
+
+  public AllocObjectInstruction(VirtualRegister result, String className, int numFields) {
+    super(result, List.of());
+    this.className = className;
+    this.numFields = numFields;
+  }
+
+  public String getClassName() {
+    return className;
+  }
+
+  public int getNumFields() {
+    return numFields;
+  }
+
+  @Override
+  public String checkTypes() {
+    return getResult().getType().equals(IrType.object(className))
+        ? null
+        : "result should be " + className;
+  }
+
+  @Override
+  public String toString() {
+    return format("alloc", className, numFields + " fields");
+  }
+}
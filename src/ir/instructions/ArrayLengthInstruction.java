@@ -0,0 +1,27 @@
+package ir.instructions;
+
+import java.util.List;
+
+import ir.IrType;
+import ir.Value;
+import ir.VirtualRegister;
+
+public class ArrayLengthInstruction extends Instruction {
+
+  public ArrayLengthInstruction(VirtualRegister result, Value array) {
+    super(result, List.of(array));
+  }
+
+  @Override
+  public String checkTypes() {
+    return getOperand(0).getType().equals(IrType.INT_ARRAY)
+            && getResult().getType().equals(IrType.INT)
+        ? null
+        : "length expects an int[]";
+  }
+
+  @Override
+  public String toString() {
+    return format("length");
+  }
+}
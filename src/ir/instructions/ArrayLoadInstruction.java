@@ -0,0 +1,28 @@
+package ir.instructions;
+
+import java.util.List;
+
+import ir.IrType;
+import ir.Value;
+import ir.VirtualRegister;
+
+public class ArrayLoadInstruction extends Instruction {
+
+  public ArrayLoadInstruction(VirtualRegister result, Value array, Value index) {
+    super(result, List.of(array, index));
+  }
+
+  @Override
+  public String checkTypes() {
+    return getOperand(0).getType().equals(IrType.INT_ARRAY)
+            && getOperand(1).getType().equals(IrType.INT)
+            && getResult().getType().equals(IrType.INT)
+        ? null
+        : "aload expects an int[] and an int index";
+  }
+
+  @Override
+  public String toString() {
+    return format("aload");
+  }
+}
@@ -0,0 +1,27 @@
+package ir.instructions;
+
+import java.util.List;
+
+import ir.IrType;
+import ir.Value;
+
+public class ArrayStoreInstruction extends Instruction {
+
+  public ArrayStoreInstruction(Value array, Value index, Value value) {
+    super(null, List.of(array, index, value));
+  }
+
+  @Override
+  public String checkTypes() {
+    return getOperand(0).getType().equals(IrType.INT_ARRAY)
+            && getOperand(1).getType().equals(IrType.INT)
+            && getOperand(2).getType().equals(IrType.INT)
+        ? null
+        : "astore expects an int[], an int index and an int value";
+  }
+
+  @Override
+  public String toString() {
+    return format("astore");
+  }
+}
@@ -0,0 +1,51 @@
+package ir.instructions;
+
+import java.util.List;
+
+import ir.IrType;
+import ir.Value;
+import ir.VirtualRegister;
+
+public class BinaryInstruction extends Instruction {
+
+  public enum Operator {
+    ADD("add"),
+    SUB("sub"),
+    MUL("mul"),
+    SHL("shl"),
+    LT("lt");
+
+    private final String mnemonic;
+
+    Operator(String mnemonic) {
+      this.mnemonic = mnemonic;
+    }
+  }
+
+  private final Operator operator;
+
+  public BinaryInstruction(
+      VirtualRegister result, Operator operator, Value leftHandSide, Value rightHandSide) {
+    super(result, List.of(leftHandSide, rightHandSide));
+    this.operator = operator;
+  }
+
+  public Operator getOperator() {
+    return operator;
+  }
+
+  @Override
+  public String checkTypes() {
+    if (!getOperand(0).getType().equals(IrType.INT)
+        || !getOperand(1).getType().equals(IrType.INT)) {
+      return "operands of " + operator.mnemonic + " must be int";
+    }
+    IrType expected = operator == Operator.LT ? IrType.BOOLEAN : IrType.INT;
+    return getResult().getType().equals(expected) ? null : "result should be " + expected;
+  }
+
+  @Override
+  public String toString() {
+    return format(operator.mnemonic);
+  }
+}
@@ -0,0 +1,47 @@
+package ir.instructions;
+
+import java.util.List;
+
+import ir.BasicBlock;
+import ir.IrType;
+import ir.Value;
+
+public class BranchInstruction extends Instruction {
+
+  private final BasicBlock trueTarget;
+  private final BasicBlock falseTarget;
+
+  public BranchInstruction(Value condition, BasicBlock trueTarget, BasicBlock falseTarget) {
+    super(null, List.of(condition));
+    this.trueTarget = trueTarget;
+    this.falseTarget = falseTarget;
+  }
+
+  public BasicBlock getTrueTarget() {
+    return trueTarget;
+  }
+
+  public BasicBlock getFalseTarget() {
+    return falseTarget;
+  }
+
+  @Override
+  public boolean isTerminator() {
+    return true;
+  }
+
+  @Override
+  public List<BasicBlock> getSuccessors() {
+    return List.of(trueTarget, falseTarget);
+  }
+
+  @Override
+  public String checkTypes() {
+    return getOperand(0).getType().equals(IrType.BOOLEAN) ? null : "condition should be boolean";
+  }
+
+  @Override
+  public String toString() {
+    return format("br", trueTarget.getName(), falseTarget.getName());
+  }
+}
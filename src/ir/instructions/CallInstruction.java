@@ -0,0 +1,41 @@
+package ir.instructions;
+
+import java.util.List;
+
+import ir.IrType;
+import ir.Value;
+import ir.VirtualRegister;
+
+/** Indirect call; the first argument is the object the method is called on. */
+public class CallInstruction extends Instruction {
+
+  public CallInstruction(VirtualRegister result, Value function, List<Value> arguments) {
+    super(result, List.of(function));
+    for (Value argument : arguments) {
+      addOperand(argument);
+    }
+  }
+
+  public Value getFunction() {
+    return getOperand(0);
+  }
+
+  public List<Value> getArguments() {
+    return getOperands().subList(1, getOperands().size());
+  }
+
+  @Override
+  public String checkTypes() {
+    if (!getFunction().getType().equals(IrType.FUNCTION_POINTER)) {
+      return "callee should be a function pointer";
+    }
+    return getOperand(1).getType().getKind() == IrType.Kind.OBJECT
+        ? null
+        : "first argument should be an object";
+  }
+
+  @Override
+  public String toString() {
+    return format("call");
+  }
+}
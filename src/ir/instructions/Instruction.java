@@ -0,0 +1,88 @@
+package ir.instructions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ir.BasicBlock;
+import ir.Value;
+import ir.VirtualRegister;
+
+public abstract class Instruction {
+
+  private final VirtualRegister result;
+  private final List<Value> operands;
+  private BasicBlock block;
+
+  public Instruction(VirtualRegister result, List<Value> operands) {
+    this.result = result;
+    this.operands = new ArrayList<>(operands);
+    if (result != null) {
+      result.setDefinition(this);
+    }
+  }
+
+  /** Register defined by this instruction, or null if it produces no value. */
+  public VirtualRegister getResult() {
+    return result;
+  }
+
+  public List<Value> getOperands() {
+    return operands;
+  }
+
+  public Value getOperand(int index) {
+    return operands.get(index);
+  }
+
+  protected void addOperand(Value operand) {
+    operands.add(operand);
+  }
+
+  public BasicBlock getBlock() {
+    return block;
+  }
+
+  public void setBlock(BasicBlock block) {
+    this.block = block;
+  }
+
+  public void replaceUsesOf(Value oldValue, Value newValue) {
+    for (int i = 0; i < operands.size(); ++i) {
+      if (operands.get(i) == oldValue) {
+        operands.set(i, newValue);
+      }
+    }
+  }
+
+  public boolean isTerminator() {
+    return false;
+  }
+
+  public List<BasicBlock> getSuccessors() {
+    return List.of();
+  }
+
+  /** Checks the operand types, returning a description of the problem or null if well typed. */
+  public abstract String checkTypes();
+
+  protected String format(String opcode, Object... suffix) {
+    StringBuilder strBuilder = new StringBuilder();
+    if (result != null) {
+      strBuilder.append(result + " = ");
+    }
+    strBuilder.append(opcode);
+    String separator = " ";
+    for (Value operand : operands) {
+      strBuilder.append(separator + operand);
+      separator = ", ";
+    }
+    for (Object extra : suffix) {
+      strBuilder.append(separator + extra);
+      separator = ", ";
+    }
+    if (result != null) {
+      strBuilder.append(" : " + result.getType());
+    }
+    return strBuilder.toString();
+  }
+}
@@ -0,0 +1,39 @@
+package ir.instructions;
+
+import java.util.List;
+
+import ir.BasicBlock;
+
+public class JumpInstruction extends Instruction {
+
+  private final BasicBlock target;
+
+  public JumpInstruction(BasicBlock target) {
+    super(null, List.of());
+    this.target = target;
+  }
+
+  public BasicBlock getTarget() {
+    return target;
+  }
+
+  @Override
+  public boolean isTerminator() {
+    return true;
+  }
+
+  @Override
+  public List<BasicBlock> getSuccessors() {
+    return List.of(target);
+  }
+
+  @Override
+  public String checkTypes() {
+    return null;
+  }
+
+  @Override
+  public String toString() {
+    return format("jmp", target.getName());
+  }
+}
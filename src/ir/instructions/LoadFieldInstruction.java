@@ -0,0 +1,40 @@
+package ir.instructions;
+
+import java.util.List;
+
+import ir.IrType;
+import ir.Value;
+import ir.VirtualRegister;
+
+public class LoadFieldInstruction extends Instruction {
+
+  private final String fieldName;
+  private final int offset;
+
+  public LoadFieldInstruction(VirtualRegister result, Value object, String fieldName, int offset) {
+    super(result, List.of(object));
+    this.fieldName = fieldName;
+    this.offset = offset;
+  }
+
+  public String getFieldName() {
+    return fieldName;
+  }
+
+  /** Byte offset of the field from the start of the object. */
+  public int getOffset() {
+    return offset;
+  }
+
+  @Override
+  public String checkTypes() {
+    return getOperand(0).getType().getKind() == IrType.Kind.OBJECT
+        ? null
+        : "fields can only be loaded from objects";
+  }
+
+  @Override
+  public String toString() {
+    return format("loadfield", fieldName + "@" + offset);
+  }
+}
@@ -0,0 +1,43 @@
+package ir.instructions;
+
+import java.util.List;
+
+import ir.IrType;
+import ir.Value;
+import ir.VirtualRegister;
+
+/** Loads the method pointer stored in a vTable slot. */
+public class MethodLoadInstruction extends Instruction {
+
+  private final String methodName;
+  private final int slot;
+
+  public MethodLoadInstruction(
+      VirtualRegister result, Value vTable, String methodName, int slot) {
+    super(result, List.of(vTable));
+    this.methodName = methodName;
+    this.slot = slot;
+  }
+
+  public String getMethodName() {
+    return methodName;
+  }
+
+  /** Index of the method in the vTable (slot 0 is the first method). */
+  public int getSlot() {
+    return slot;
+  }
+
+  @Override
+  public String checkTypes() {
+    return getOperand(0).getType().equals(IrType.VTABLE)
+            && getResult().getType().equals(IrType.FUNCTION_POINTER)
+        ? null
+        : "method expects a vtable";
+  }
+
+  @Override
+  public String toString() {
+    return format("method", methodName + "#" + slot);
+  }
+}
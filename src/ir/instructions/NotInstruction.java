@@ -0,0 +1,27 @@
+package ir.instructions;
+
+import java.util.List;
+
+import ir.IrType;
+import ir.Value;
+import ir.VirtualRegister;
+
+public class NotInstruction extends Instruction {
+
+  public NotInstruction(VirtualRegister result, Value argument) {
+    super(result, List.of(argument));
+  }
+
+  @Override
+  public String checkTypes() {
+    return getOperand(0).getType().equals(IrType.BOOLEAN)
+            && getResult().getType().equals(IrType.BOOLEAN)
+        ? null
+        : "not expects a boolean";
+  }
+
+  @Override
+  public String toString() {
+    return format("not");
+  }
+}
@@ -0,0 +1,50 @@
+package ir.instructions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ir.BasicBlock;
+import ir.Value;
+import ir.VirtualRegister;
+
+/** Operand i flows in from the i-th predecessor of the block the phi belongs to. */
+public class PhiInstruction extends Instruction {
+
+  private final List<BasicBlock> incomingBlocks;
+
+  public PhiInstruction(VirtualRegister result) {
+    super(result, List.of());
+    this.incomingBlocks = new ArrayList<>();
+  }
+
+  public void addIncoming(Value value, BasicBlock block) {
+    addOperand(value);
+    incomingBlocks.add(block);
+  }
+
+  public List<BasicBlock> getIncomingBlocks() {
+    return incomingBlocks;
+  }
+
+  @Override
+  public String checkTypes() {
+    for (Value operand : getOperands()) {
+      if (!operand.getType().equals(getResult().getType())) {
+        return "incoming value " + operand + " should be " + getResult().getType();
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder strBuilder = new StringBuilder(getResult() + " = phi");
+    String separator = " ";
+    for (int i = 0; i < getOperands().size(); ++i) {
+      strBuilder.append(
+          separator + "[" + getOperand(i) + ", " + incomingBlocks.get(i).getName() + "]");
+      separator = ", ";
+    }
+    return strBuilder.append(" : " + getResult().getType()).toString();
+  }
+}
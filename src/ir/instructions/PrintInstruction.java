@@ -0,0 +1,23 @@
+package ir.instructions;
+
+import java.util.List;
+
+import ir.IrType;
+import ir.Value;
+
+public class PrintInstruction extends Instruction {
+
+  public PrintInstruction(Value value) {
+    super(null, List.of(value));
+  }
+
+  @Override
+  public String checkTypes() {
+    return getOperand(0).getType().equals(IrType.INT) ? null : "print expects an int";
+  }
+
+  @Override
+  public String toString() {
+    return format("print");
+  }
+}
@@ -0,0 +1,28 @@
+package ir.instructions;
+
+import java.util.List;
+
+import ir.Value;
+
+/** Returns from the function; the value is absent when returning from the entry point. */
+public class ReturnInstruction extends Instruction {
+
+  public ReturnInstruction(Value value) {
+    super(null, value == null ? List.of() : List.of(value));
+  }
+
+  @Override
+  public boolean isTerminator() {
+    return true;
+  }
+
+  @Override
+  public String checkTypes() {
+    return null;
+  }
+
+  @Override
+  public String toString() {
+    return format("ret");
+  }
+}
@@ -0,0 +1,39 @@
+package ir.instructions;
+
+import java.util.List;
+
+import ir.IrType;
+import ir.Value;
+
+public class StoreFieldInstruction extends Instruction {
+
+  private final String fieldName;
+  private final int offset;
+
+  public StoreFieldInstruction(Value object, String fieldName, int offset, Value value) {
+    super(null, List.of(object, value));
+    this.fieldName = fieldName;
+    this.offset = offset;
+  }
+
+  public String getFieldName() {
+    return fieldName;
+  }
+
+  /** Byte offset of the field from the start of the object. */
+  public int getOffset() {
+    return offset;
+  }
+
+  @Override
+  public String checkTypes() {
+    return getOperand(0).getType().getKind() == IrType.Kind.OBJECT
+        ? null
+        : "fields can only be stored into objects";
+  }
+
+  @Override
+  public String toString() {
+    return format("storefield", fieldName + "@" + offset);
+  }
+}
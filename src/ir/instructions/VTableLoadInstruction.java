@@ -0,0 +1,28 @@
+package ir.instructions;
+
+import java.util.List;
+
+import ir.IrType;
+import ir.Value;
+import ir.VirtualRegister;
+
+/** Loads the vTable pointer stored in the header of an object. */
+public class VTableLoadInstruction extends Instruction {
+
+  public VTableLoadInstruction(VirtualRegister result, Value object) {
+    super(result, List.of(object));
+  }
+
+  @Override
+  public String checkTypes() {
+    return getOperand(0).getType().getKind() == IrType.Kind.OBJECT
+            && getResult().getType().equals(IrType.VTABLE)
+        ? null
+        : "vtable expects an object";
+  }
+
+  @Override
+  public String toString() {
+    return format("vtable");
+  }
+}
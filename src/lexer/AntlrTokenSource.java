@@ -0,0 +1,59 @@
+package lexer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.misc.Interval;
+
+import antlr_lexer.MJLexer;
+
+/** Adapts the ANTLR generated lexer to a TokenSource. */
+public class AntlrTokenSource implements TokenSource {
+
+  private final MJLexer lexer;
+  private Token token;
+
+  public AntlrTokenSource(MJLexer lexer) {
+    this.lexer = lexer;
+    this.token = null;
+  }
+
+  /**
+   * Lexes the bytes of source between its position and its limit, UTF-8 encoded like the files
+   * CharStreams.fromPath reads. Unlike MJScanner, this decodes a copy of source to the heap.
+   */
+  public AntlrTokenSource(ByteBuffer source) {
+    this(
+        new MJLexer(
+            CharStreams.fromString(StandardCharsets.UTF_8.decode(source.duplicate()).toString())));
+  }
+
+  @Override
+  public int nextToken() {
+    token = lexer.nextToken();
+    return token.getType();
+  }
+
+  @Override
+  public int getLine() {
+    return token.getLine();
+  }
+
+  @Override
+  public int getStart() {
+    return token.getStartIndex();
+  }
+
+  @Override
+  public int getEnd() {
+    // ANTLR's stop index is inclusive, and start - 1 for EOF
+    return token.getStopIndex() + 1;
+  }
+
+  @Override
+  public String getText(int start, int end) {
+    return start < end ? lexer.getInputStream().getText(Interval.of(start, end - 1)) : "<EOF>";
+  }
+}
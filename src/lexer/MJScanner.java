@@ -0,0 +1,323 @@
+package lexer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import antlr_lexer.MJLexer;
+
+/**
+ * Hand-written scanner for the grammar of MJLexer.g4, reading bytes straight from a ByteBuffer
+ * (heap or memory mapped) without decoding the source. It follows ANTLR's longest match rule, so
+ * "int[]" and "System.out.println" are single tokens and keywords are only recognized when the
+ * identifier has no other characters. Scanning doesn't allocate; only getText creates a String.
+ */
+public class MJScanner implements TokenSource {
+
+  private static final byte LETTER = 1;
+  private static final byte DIGIT = 2;
+  private static final byte UNDERSCORE = 3;
+  private static final byte SPACE = 4;
+  private static final byte NEWLINE = 5;
+
+  private static final byte[] charClass = new byte[256];
+  // type of the tokens made of a single character, 0 for other characters
+  private static final int[] singleCharType = new int[256];
+
+  private static final byte[] intArraySuffix = "[]".getBytes(StandardCharsets.US_ASCII);
+  private static final byte[] printlnSuffix = ".out.println".getBytes(StandardCharsets.US_ASCII);
+
+  static {
+    for (int c = 'a'; c <= 'z'; ++c) {
+      charClass[c] = LETTER;
+      charClass[c - 'a' + 'A'] = LETTER;
+    }
+    for (int c = '0'; c <= '9'; ++c) {
+      charClass[c] = DIGIT;
+    }
+    charClass['_'] = UNDERSCORE;
+    charClass[' '] = SPACE;
+    charClass['\t'] = SPACE;
+    charClass['\r'] = SPACE;
+    charClass['\n'] = NEWLINE;
+    singleCharType['('] = MJLexer.LPARENS;
+    singleCharType[')'] = MJLexer.RPARENS;
+    singleCharType['['] = MJLexer.LBRACKET;
+    singleCharType[']'] = MJLexer.RBRACKET;
+    singleCharType['{'] = MJLexer.CURLY_LBRACKET;
+    singleCharType['}'] = MJLexer.CURLY_RBRACKET;
+    singleCharType['='] = MJLexer.EQUALS;
+    singleCharType['!'] = MJLexer.NOT;
+    singleCharType['<'] = MJLexer.LT;
+    singleCharType['+'] = MJLexer.PLUS;
+    singleCharType['-'] = MJLexer.MINUS;
+    singleCharType['*'] = MJLexer.MULT;
+    singleCharType['.'] = MJLexer.DOT;
+    singleCharType[','] = MJLexer.COMMA;
+    singleCharType[';'] = MJLexer.SEMI_COLON;
+  }
+
+  private final ByteBuffer source;
+  private final int limit;
+  private int position;
+  private int line;
+  private int tokenStart;
+  private int tokenEnd;
+  private int tokenLine;
+
+  /** Scans the bytes of the buffer between its position and its limit. */
+  public MJScanner(ByteBuffer source) {
+    this.source = source;
+    this.limit = source.limit();
+    this.position = source.position();
+    this.line = 1;
+    this.tokenStart = position;
+    this.tokenEnd = position;
+    this.tokenLine = 1;
+  }
+
+  public MJScanner(byte[] source) {
+    this(ByteBuffer.wrap(source));
+  }
+
+  /**
+   * Scans a file through a read-only memory mapping, so its contents are never copied to the heap
+   * (only the text of identifiers and literals is). The mapping stays valid after the channel is
+   * closed, until the buffer is garbage collected.
+   */
+  public static MJScanner mapFile(Path path) throws IOException {
+    return new MJScanner(map(path));
+  }
+
+  /** A read-only mapping of the file, for callers that also hash or decode the source. */
+  public static ByteBuffer map(Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      assert channel.size() <= Integer.MAX_VALUE
+          : String.format("%s is too large to be mapped", path);
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  /** Scans the rest of the source into a compact token stream. */
+  public Tokens scanAll() {
+    // generated and hand-written sources average 3 to 5 bytes per token
+    return Tokens.scanAll(this, (limit - position) / 4);
+  }
+
+  private int byteAt(int index) {
+    return source.get(index) & 0xff;
+  }
+
+  private static boolean isIdentifierPart(int c) {
+    return charClass[c] == LETTER || charClass[c] == DIGIT || charClass[c] == UNDERSCORE;
+  }
+
+  private boolean followedBy(byte[] suffix) {
+    if (position + suffix.length > limit) {
+      return false;
+    }
+    for (int i = 0; i < suffix.length; ++i) {
+      if (source.get(position + i) != suffix[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean identifierIs(String keyword) {
+    if (position - tokenStart != keyword.length()) {
+      return false;
+    }
+    for (int i = 1; i < keyword.length(); ++i) {
+      if (byteAt(tokenStart + i) != keyword.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Type of the identifier between tokenStart and position, dispatching on its first letter. */
+  private int identifierType() {
+    switch (byteAt(tokenStart)) {
+      case 'S':
+        if (identifierIs("String")) {
+          return MJLexer.STRING_KW;
+        } else if (identifierIs("System") && followedBy(printlnSuffix)) {
+          position += printlnSuffix.length;
+          return MJLexer.PRINTLN;
+        }
+        break;
+      case 'b':
+        if (identifierIs("boolean")) {
+          return MJLexer.BOOLEAN_KW;
+        }
+        break;
+      case 'c':
+        if (identifierIs("class")) {
+          return MJLexer.CLASS_KW;
+        }
+        break;
+      case 'e':
+        if (identifierIs("else")) {
+          return MJLexer.ELSE;
+        } else if (identifierIs("extends")) {
+          return MJLexer.EXTENDS_KW;
+        }
+        break;
+      case 'f':
+        if (identifierIs("false")) {
+          return MJLexer.FALSE;
+        }
+        break;
+      case 'i':
+        if (identifierIs("if")) {
+          return MJLexer.IF;
+        } else if (identifierIs("int")) {
+          if (followedBy(intArraySuffix)) {
+            position += intArraySuffix.length;
+            return MJLexer.INT_ARRAY;
+          }
+          return MJLexer.INT_KW;
+        }
+        break;
+      case 'l':
+        if (identifierIs("length")) {
+          return MJLexer.LENGTH_KW;
+        }
+        break;
+      case 'm':
+        if (identifierIs("main")) {
+          return MJLexer.MAIN_KW;
+        }
+        break;
+      case 'n':
+        if (identifierIs("new")) {
+          return MJLexer.NEW;
+        }
+        break;
+      case 'p':
+        if (identifierIs("public")) {
+          return MJLexer.PUBLIC_KW;
+        }
+        break;
+      case 'r':
+        if (identifierIs("return")) {
+          return MJLexer.RETURN;
+        }
+        break;
+      case 's':
+        if (identifierIs("static")) {
+          return MJLexer.STATIC_KW;
+        }
+        break;
+      case 't':
+        if (identifierIs("this")) {
+          return MJLexer.THIS;
+        } else if (identifierIs("true")) {
+          return MJLexer.TRUE;
+        }
+        break;
+      case 'v':
+        if (identifierIs("void")) {
+          return MJLexer.VOID_KW;
+        }
+        break;
+      case 'w':
+        if (identifierIs("while")) {
+          return MJLexer.WHILE;
+        }
+        break;
+    }
+    return MJLexer.ID;
+  }
+
+  private void skipWhitespaceAndComments() {
+    while (position < limit) {
+      int c = byteAt(position);
+      if (charClass[c] == SPACE) {
+        ++position;
+      } else if (charClass[c] == NEWLINE) {
+        ++position;
+        ++line;
+      } else if (c == '/' && position + 1 < limit && byteAt(position + 1) == '/') {
+        // the line break isn't part of the comment
+        position += 2;
+        while (position < limit && byteAt(position) != '\n' && byteAt(position) != '\r') {
+          ++position;
+        }
+      } else {
+        return;
+      }
+    }
+  }
+
+  @Override
+  public int nextToken() {
+    skipWhitespaceAndComments();
+    tokenStart = position;
+    tokenLine = line;
+    if (position == limit) {
+      tokenEnd = position;
+      return MJLexer.EOF;
+    }
+    int c = byteAt(position++);
+    int type;
+    switch (charClass[c]) {
+      case LETTER:
+        while (position < limit && isIdentifierPart(byteAt(position))) {
+          ++position;
+        }
+        type = identifierType();
+        break;
+      case DIGIT:
+        while (position < limit && charClass[byteAt(position)] == DIGIT) {
+          ++position;
+        }
+        type = MJLexer.INT_LITERAL;
+        break;
+      default:
+        if (c == '&' && position < limit && byteAt(position) == '&') {
+          ++position;
+          type = MJLexer.AND;
+        } else if (singleCharType[c] != 0) {
+          type = singleCharType[c];
+        } else {
+          throw new AssertionError(
+              String.format("Unexpected character '%c' in line %d", (char) c, line));
+        }
+    }
+    tokenEnd = position;
+    return type;
+  }
+
+  @Override
+  public int getLine() {
+    return tokenLine;
+  }
+
+  @Override
+  public int getStart() {
+    return tokenStart;
+  }
+
+  @Override
+  public int getEnd() {
+    return tokenEnd;
+  }
+
+  @Override
+  public String getText(int start, int end) {
+    if (start == end) {
+      return "<EOF>";
+    } else if (source.hasArray()) {
+      return new String(
+          source.array(), source.arrayOffset() + start, end - start, StandardCharsets.ISO_8859_1);
+    }
+    byte[] text = new byte[end - start];
+    source.get(start, text);
+    return new String(text, StandardCharsets.ISO_8859_1);
+  }
+}
@@ -0,0 +1,21 @@
+package lexer;
+
+/**
+ * Stream of MiniJava tokens, using the token types of antlr_lexer.MJLexer. The attributes of the
+ * last scanned token are read through the getters instead of being wrapped in a token object;
+ * start and end are offsets into the source (end exclusive).
+ */
+public interface TokenSource {
+
+  /** Scans the next token and returns its type, MJLexer.EOF once the source is exhausted. */
+  int nextToken();
+
+  int getLine();
+
+  int getStart();
+
+  int getEnd();
+
+  /** Text of the source between the given offsets of a token scanned by this source. */
+  String getText(int start, int end);
+}
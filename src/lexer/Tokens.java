@@ -0,0 +1,124 @@
+package lexer;
+
+import java.util.Arrays;
+
+import antlr_lexer.MJLexer;
+
+/**
+ * Compact token stream: the type, source offsets and line of every token in parallel int arrays.
+ * Replays the tokens through the TokenSource interface, taking their text from the source that
+ * scanned them.
+ */
+public class Tokens implements TokenSource {
+
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final TokenSource scanner;
+  private int[] types;
+  private int[] starts;
+  private int[] ends;
+  private int[] lines;
+  private int size;
+  // index of the last token handed out by nextToken
+  private int current;
+
+  public Tokens(TokenSource scanner, int expectedSize) {
+    int capacity = Math.max(expectedSize, INITIAL_CAPACITY);
+    this.scanner = scanner;
+    this.types = new int[capacity];
+    this.starts = new int[capacity];
+    this.ends = new int[capacity];
+    this.lines = new int[capacity];
+    this.size = 0;
+    this.current = -1;
+  }
+
+  /** Scans every remaining token of the source. */
+  public static Tokens scanAll(TokenSource scanner) {
+    return scanAll(scanner, INITIAL_CAPACITY);
+  }
+
+  /** Scans every remaining token of the source, sizing the arrays for expectedSize tokens. */
+  public static Tokens scanAll(TokenSource scanner, int expectedSize) {
+    Tokens tokens = new Tokens(scanner, expectedSize);
+    int type;
+    do {
+      type = scanner.nextToken();
+      tokens.add(type, scanner.getStart(), scanner.getEnd(), scanner.getLine());
+    } while (type != MJLexer.EOF);
+    return tokens;
+  }
+
+  private void add(int type, int start, int end, int line) {
+    if (size == types.length) {
+      int capacity = 2 * size;
+      types = Arrays.copyOf(types, capacity);
+      starts = Arrays.copyOf(starts, capacity);
+      ends = Arrays.copyOf(ends, capacity);
+      lines = Arrays.copyOf(lines, capacity);
+    }
+    types[size] = type;
+    starts[size] = start;
+    ends[size] = end;
+    lines[size] = line;
+    ++size;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int getType(int index) {
+    return types[index];
+  }
+
+  public int getStart(int index) {
+    return starts[index];
+  }
+
+  public int getEnd(int index) {
+    return ends[index];
+  }
+
+  public int getLine(int index) {
+    return lines[index];
+  }
+
+  public String getText(int index) {
+    return scanner.getText(starts[index], ends[index]);
+  }
+
+  /** Replays the tokens from the first one again. */
+  public void rewind() {
+    current = -1;
+  }
+
+  @Override
+  public int nextToken() {
+    // keep returning EOF at the end
+    if (current < size - 1) {
+      ++current;
+    }
+    return types[current];
+  }
+
+  @Override
+  public int getLine() {
+    return lines[current];
+  }
+
+  @Override
+  public int getStart() {
+    return starts[current];
+  }
+
+  @Override
+  public int getEnd() {
+    return ends[current];
+  }
+
+  @Override
+  public String getText(int start, int end) {
+    return scanner.getText(start, end);
+  }
+}
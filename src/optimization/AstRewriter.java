@@ -0,0 +1,273 @@
+package optimization;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import parser.ast.ClassNode;
+import parser.ast.GoalNode;
+import parser.ast.MethodDeclNode;
+import parser.ast.base_abs_classes.ExprNode;
+import parser.ast.base_abs_classes.StatementNode;
+import parser.ast.expression.ArrayAccessExpr;
+import parser.ast.expression.LengthExpr;
+import parser.ast.expression.MethodCallExpr;
+import parser.ast.expression.NewArrayDeclExpr;
+import parser.ast.expression.NewObjectDeclExpr;
+import parser.ast.expression.NotExpr;
+import parser.ast.expression.binary_expr.AddExpr;
+import parser.ast.expression.binary_expr.AndExpr;
+import parser.ast.expression.binary_expr.DotExpr;
+import parser.ast.expression.binary_expr.LtExpr;
+import parser.ast.expression.binary_expr.MultExpr;
+import parser.ast.expression.binary_expr.ShiftLeftExpr;
+import parser.ast.expression.binary_expr.SubExpr;
+import parser.ast.expression.literals.IdentifierExpr;
+import parser.ast.expression.literals.IntExpr;
+import parser.ast.expression.singletons.FalseExpr;
+import parser.ast.expression.singletons.ThisExpr;
+import parser.ast.expression.singletons.TrueExpr;
+import parser.ast.statement.BlockStatement;
+import parser.ast.statement.IfStatement;
+import parser.ast.statement.PrintStatement;
+import parser.ast.statement.SetArrayIndexStatement;
+import parser.ast.statement.SetVariableStatement;
+import parser.ast.statement.WhileStatement;
+
+/**
+ * Base class of the AST to AST optimization passes. The AST is immutable, so every visit returns
+ * the node that replaces the visited one; by default children are rewritten bottom-up and a node is
+ * only rebuilt when one of its children changed. Passes override the visits they are interested in.
+ */
+public abstract class AstRewriter {
+
+  protected List<ExprNode> rewriteAll(List<ExprNode> exprs) {
+    List<ExprNode> rewritten = new ArrayList<>();
+    boolean changed = false;
+    for (ExprNode expr : exprs) {
+      ExprNode newExpr = expr.accept(this);
+      changed |= newExpr != expr;
+      rewritten.add(newExpr);
+    }
+    return changed ? rewritten : exprs;
+  }
+
+  protected List<StatementNode> rewriteStatements(List<StatementNode> statements) {
+    List<StatementNode> rewritten = new ArrayList<>();
+    boolean changed = false;
+    for (StatementNode statement : statements) {
+      StatementNode newStatement = statement.accept(this);
+      changed |= newStatement != statement;
+      rewritten.add(newStatement);
+    }
+    return changed ? rewritten : statements;
+  }
+
+  public ExprNode visit(IdentifierExpr expr) {
+    return expr;
+  }
+
+  public ExprNode visit(IntExpr expr) {
+    return expr;
+  }
+
+  public ExprNode visit(FalseExpr expr) {
+    return expr;
+  }
+
+  public ExprNode visit(TrueExpr expr) {
+    return expr;
+  }
+
+  public ExprNode visit(ThisExpr expr) {
+    return expr;
+  }
+
+  public ExprNode visit(AddExpr expr) {
+    ExprNode leftHandSide = expr.getLeftHandSide().accept(this);
+    ExprNode rightHandSide = expr.getRightHandSide().accept(this);
+    return leftHandSide == expr.getLeftHandSide() && rightHandSide == expr.getRightHandSide()
+        ? expr
+        : new AddExpr(expr.getLine(), leftHandSide, rightHandSide);
+  }
+
+  public ExprNode visit(AndExpr expr) {
+    ExprNode leftHandSide = expr.getLeftHandSide().accept(this);
+    ExprNode rightHandSide = expr.getRightHandSide().accept(this);
+    return leftHandSide == expr.getLeftHandSide() && rightHandSide == expr.getRightHandSide()
+        ? expr
+        : new AndExpr(expr.getLine(), leftHandSide, rightHandSide);
+  }
+
+  public ExprNode visit(DotExpr expr) {
+    ExprNode leftHandSide = expr.getLeftHandSide().accept(this);
+    return leftHandSide == expr.getLeftHandSide()
+        ? expr
+        : new DotExpr(expr.getLine(), leftHandSide, expr.getRightHandSide());
+  }
+
+  public ExprNode visit(LtExpr expr) {
+    ExprNode leftHandSide = expr.getLeftHandSide().accept(this);
+    ExprNode rightHandSide = expr.getRightHandSide().accept(this);
+    return leftHandSide == expr.getLeftHandSide() && rightHandSide == expr.getRightHandSide()
+        ? expr
+        : new LtExpr(expr.getLine(), leftHandSide, rightHandSide);
+  }
+
+  public ExprNode visit(MultExpr expr) {
+    ExprNode leftHandSide = expr.getLeftHandSide().accept(this);
+    ExprNode rightHandSide = expr.getRightHandSide().accept(this);
+    return leftHandSide == expr.getLeftHandSide() && rightHandSide == expr.getRightHandSide()
+        ? expr
+        : new MultExpr(expr.getLine(), leftHandSide, rightHandSide);
+  }
+
+  public ExprNode visit(ShiftLeftExpr expr) {
+    ExprNode leftHandSide = expr.getLeftHandSide().accept(this);
+    return leftHandSide == expr.getLeftHandSide()
+        ? expr
+        : new ShiftLeftExpr(expr.getLine(), leftHandSide, expr.getShiftAmount());
+  }
+
+  public ExprNode visit(SubExpr expr) {
+    ExprNode leftHandSide = expr.getLeftHandSide().accept(this);
+    ExprNode rightHandSide = expr.getRightHandSide().accept(this);
+    return leftHandSide == expr.getLeftHandSide() && rightHandSide == expr.getRightHandSide()
+        ? expr
+        : new SubExpr(expr.getLine(), leftHandSide, rightHandSide);
+  }
+
+  public ExprNode visit(ArrayAccessExpr expr) {
+    ExprNode array = expr.getArray().accept(this);
+    ExprNode index = expr.getIndex().accept(this);
+    return array == expr.getArray() && index == expr.getIndex()
+        ? expr
+        : new ArrayAccessExpr(expr.getLine(), array, index);
+  }
+
+  public ExprNode visit(LengthExpr expr) {
+    ExprNode lenExpr = expr.getLenExpr().accept(this);
+    return lenExpr == expr.getLenExpr() ? expr : new LengthExpr(expr.getLine(), lenExpr);
+  }
+
+  public ExprNode visit(MethodCallExpr expr) {
+    ExprNode objectSeqExpr = expr.getObjectSeqExpr().accept(this);
+    // getArgs returns a copy
+    List<ExprNode> originalArgs = expr.getArgs();
+    List<ExprNode> args = rewriteAll(originalArgs);
+    return objectSeqExpr == expr.getObjectSeqExpr() && args == originalArgs
+        ? expr
+        : new MethodCallExpr(expr.getLine(), objectSeqExpr, expr.getMethodNameExpr(), args);
+  }
+
+  public ExprNode visit(NewArrayDeclExpr expr) {
+    ExprNode size = expr.getSize().accept(this);
+    return size == expr.getSize() ? expr : new NewArrayDeclExpr(expr.getLine(), size);
+  }
+
+  public ExprNode visit(NewObjectDeclExpr expr) {
+    return expr;
+  }
+
+  public ExprNode visit(NotExpr expr) {
+    ExprNode argument = expr.getArgument().accept(this);
+    return argument == expr.getArgument() ? expr : new NotExpr(expr.getLine(), argument);
+  }
+
+  public StatementNode visit(BlockStatement statement) {
+    List<StatementNode> statements = rewriteStatements(statement.getStatements());
+    return statements == statement.getStatements()
+        ? statement
+        : new BlockStatement(statement.getLine(), statements);
+  }
+
+  public StatementNode visit(IfStatement statement) {
+    ExprNode ifCondition = statement.getIfCondition().accept(this);
+    StatementNode ifBlock = statement.getIfBlock().accept(this);
+    StatementNode elseBlock = statement.getElseBlock().accept(this);
+    return ifCondition == statement.getIfCondition()
+            && ifBlock == statement.getIfBlock()
+            && elseBlock == statement.getElseBlock()
+        ? statement
+        : new IfStatement(statement.getLine(), ifCondition, ifBlock, elseBlock);
+  }
+
+  public StatementNode visit(PrintStatement statement) {
+    ExprNode printExpr = statement.getPrintExpr().accept(this);
+    return printExpr == statement.getPrintExpr()
+        ? statement
+        : new PrintStatement(statement.getLine(), printExpr);
+  }
+
+  public StatementNode visit(SetArrayIndexStatement statement) {
+    ExprNode index = statement.getIndex().accept(this);
+    ExprNode rightHandSide = statement.getRightHandSide().accept(this);
+    return index == statement.getIndex() && rightHandSide == statement.getRightHandSide()
+        ? statement
+        : new SetArrayIndexStatement(
+            statement.getLine(), statement.getVarAssigned(), index, rightHandSide);
+  }
+
+  public StatementNode visit(SetVariableStatement statement) {
+    ExprNode rightHandSide = statement.getRightHandSide().accept(this);
+    return rightHandSide == statement.getRightHandSide()
+        ? statement
+        : new SetVariableStatement(statement.getLine(), statement.getVarAssigned(), rightHandSide);
+  }
+
+  public StatementNode visit(WhileStatement statement) {
+    ExprNode whileCondition = statement.getWhileCondition().accept(this);
+    StatementNode whileBlock = statement.getWhileBlock().accept(this);
+    return whileCondition == statement.getWhileCondition()
+            && whileBlock == statement.getWhileBlock()
+        ? statement
+        : new WhileStatement(statement.getLine(), whileCondition, whileBlock);
+  }
+
+  public ClassNode visit(ClassNode node) {
+    List<MethodDeclNode> methodDecls = new ArrayList<>();
+    boolean changed = false;
+    for (MethodDeclNode methodDecl : node.getMethodDecls()) {
+      MethodDeclNode newMethodDecl = methodDecl.accept(this);
+      changed |= newMethodDecl != methodDecl;
+      methodDecls.add(newMethodDecl);
+    }
+    return changed
+        ? new ClassNode(
+            node.getLine(),
+            node.getClassName(),
+            node.getExtendsFrom(),
+            node.getVarDecls(),
+            methodDecls)
+        : node;
+  }
+
+  public GoalNode visit(GoalNode node) {
+    StatementNode statement = node.getStatement().accept(this);
+    List<ClassNode> classes = new ArrayList<>();
+    boolean changed = statement != node.getStatement();
+    for (ClassNode classNode : node.getClasses()) {
+      ClassNode newClassNode = classNode.accept(this);
+      changed |= newClassNode != classNode;
+      classes.add(newClassNode);
+    }
+    return changed
+        ? new GoalNode(
+            node.getLine(), node.getMainClassName(), node.getArgName(), statement, classes)
+        : node;
+  }
+
+  public MethodDeclNode visit(MethodDeclNode node) {
+    List<StatementNode> statements = rewriteStatements(node.getStatements());
+    ExprNode returnExpr = node.getReturnExpr().accept(this);
+    return statements == node.getStatements() && returnExpr == node.getReturnExpr()
+        ? node
+        : new MethodDeclNode(
+            node.getLine(),
+            node.getMethodType(),
+            node.getMethodName(),
+            node.getMethodArgs(),
+            node.getVarDecls(),
+            statements,
+            returnExpr);
+  }
+}
@@ -0,0 +1,82 @@
+package optimization;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import codegen_common.ObjectLayout;
+import semantics.types.ClassType;
+import utils.Pair;
+
+/**
+ * Class hierarchy analysis over the class symbol table. A call of method m on a receiver whose
+ * static type is C is monomorphic when C and all of its subclasses share the same implementation
+ * of m; such a call site can jump straight to the "Class$method" label instead of going through the
+ * vTable. Keeps track of how many call sites were devirtualized.
+ */
+public class ClassHierarchyAnalysis {
+
+  private final Map<String, ClassType> classSymbolTable;
+  private final Map<String, ObjectLayout> objsLayout;
+  private final Map<Pair<String, String>, Optional<String>> resolved;
+  // the backends may compile classes in parallel
+  private final AtomicInteger devirtualizedCallSites;
+  private final AtomicInteger virtualCallSites;
+
+  public ClassHierarchyAnalysis(Map<String, ClassType> classSymbolTable) {
+    this.classSymbolTable = classSymbolTable;
+    this.objsLayout = new HashMap<>();
+    for (ClassType classType : classSymbolTable.values()) {
+      objsLayout.put(classType.getClassName(), new ObjectLayout(classType));
+    }
+    this.resolved = new ConcurrentHashMap<>();
+    this.devirtualizedCallSites = new AtomicInteger();
+    this.virtualCallSites = new AtomicInteger();
+  }
+
+  /**
+   * Returns the label of the only implementation of the method that a receiver of the given static
+   * type can dispatch to, or empty if the call site is polymorphic.
+   */
+  public Optional<String> getUniqueTarget(String className, String methodName) {
+    return resolved.computeIfAbsent(
+        new Pair<>(className, methodName), key -> resolve(className, methodName));
+  }
+
+  private Optional<String> resolve(String className, String methodName) {
+    ClassType receiverClass = classSymbolTable.get(className);
+    Set<String> targets = new HashSet<>();
+    for (ClassType classType : classSymbolTable.values()) {
+      if (!classType.containsClassAsParent(receiverClass)) {
+        continue;
+      }
+      ObjectLayout layout = objsLayout.get(classType.getClassName());
+      assert layout.getVTableIndex(methodName) != -1 : "This should have failed semantic checks";
+      targets.add(layout.getVTableEntry(methodName).toString());
+    }
+    return targets.size() == 1 ? Optional.of(targets.iterator().next()) : Optional.empty();
+  }
+
+  /** Same as getUniqueTarget, also counting the call site in the devirtualization report. */
+  public Optional<String> devirtualize(String className, String methodName) {
+    Optional<String> target = getUniqueTarget(className, methodName);
+    if (target.isPresent()) {
+      devirtualizedCallSites.incrementAndGet();
+    } else {
+      virtualCallSites.incrementAndGet();
+    }
+    return target;
+  }
+
+  public int getDevirtualizedCallSites() {
+    return devirtualizedCallSites.get();
+  }
+
+  public int getVirtualCallSites() {
+    return virtualCallSites.get();
+  }
+}
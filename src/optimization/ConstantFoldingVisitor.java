@@ -0,0 +1,189 @@
+package optimization;
+
+import parser.ast.base_abs_classes.ExprNode;
+import parser.ast.expression.NotExpr;
+import parser.ast.expression.binary_expr.AddExpr;
+import parser.ast.expression.binary_expr.AndExpr;
+import parser.ast.expression.binary_expr.BinaryExpr;
+import parser.ast.expression.binary_expr.DotExpr;
+import parser.ast.expression.binary_expr.LtExpr;
+import parser.ast.expression.binary_expr.MultExpr;
+import parser.ast.expression.binary_expr.ShiftLeftExpr;
+import parser.ast.expression.binary_expr.SubExpr;
+import parser.ast.expression.literals.IdentifierExpr;
+import parser.ast.expression.literals.IntExpr;
+import parser.ast.expression.singletons.FalseExpr;
+import parser.ast.expression.singletons.ThisExpr;
+import parser.ast.expression.singletons.TrueExpr;
+
+/**
+ * Folds constant subtrees, applies algebraic identities (x + 0, x - 0, x * 1, x * 0, !!b, true &&
+ * e, ...) and strength-reduces multiplications by a power of two into left shifts. Folding uses the
+ * 64-bit arithmetic of the generated code and is only done when the result still fits an int
+ * literal. Subtrees are only dropped when evaluating them can't have side effects.
+ */
+public class ConstantFoldingVisitor extends AstRewriter {
+
+  private int rewriteCount;
+
+  public ConstantFoldingVisitor() {
+    this.rewriteCount = 0;
+  }
+
+  /** Number of nodes replaced by a simpler one. */
+  public int getRewriteCount() {
+    return rewriteCount;
+  }
+
+  private ExprNode rewritten(ExprNode expr) {
+    ++rewriteCount;
+    return expr;
+  }
+
+  private static boolean isIntLiteral(ExprNode expr) {
+    return expr instanceof IntExpr;
+  }
+
+  private static long intValue(ExprNode expr) {
+    return Long.parseLong(((IntExpr) expr).getIntegerVal());
+  }
+
+  private static boolean isIntLiteral(ExprNode expr, long value) {
+    return isIntLiteral(expr) && intValue(expr) == value;
+  }
+
+  private static boolean fitsInt(long value) {
+    return value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE;
+  }
+
+  private static ExprNode booleanLiteral(int line, boolean value) {
+    return value ? new TrueExpr(line) : new FalseExpr(line);
+  }
+
+  /** True if evaluating the expression has no side effects and can't fault. */
+  static boolean isPure(ExprNode expr) {
+    if (expr instanceof IntExpr
+        || expr instanceof TrueExpr
+        || expr instanceof FalseExpr
+        || expr instanceof ThisExpr
+        || expr instanceof IdentifierExpr) {
+      return true;
+    } else if (expr instanceof BinaryExpr && !(expr instanceof DotExpr)) {
+      return isPure(((BinaryExpr) expr).getLeftHandSide())
+          && isPure(((BinaryExpr) expr).getRightHandSide());
+    } else if (expr instanceof NotExpr) {
+      return isPure(((NotExpr) expr).getArgument());
+    }
+    // method calls and allocations have side effects, field and array accesses may fault
+    return false;
+  }
+
+  @Override
+  public ExprNode visit(AddExpr expr) {
+    AddExpr folded = (AddExpr) super.visit(expr);
+    ExprNode leftHandSide = folded.getLeftHandSide();
+    ExprNode rightHandSide = folded.getRightHandSide();
+    if (isIntLiteral(leftHandSide) && isIntLiteral(rightHandSide)) {
+      long value = intValue(leftHandSide) + intValue(rightHandSide);
+      if (fitsInt(value)) {
+        return rewritten(new IntExpr(expr.getLine(), Long.toString(value)));
+      }
+    } else if (isIntLiteral(leftHandSide, 0)) {
+      return rewritten(rightHandSide);
+    } else if (isIntLiteral(rightHandSide, 0)) {
+      return rewritten(leftHandSide);
+    }
+    return folded;
+  }
+
+  @Override
+  public ExprNode visit(SubExpr expr) {
+    SubExpr folded = (SubExpr) super.visit(expr);
+    ExprNode leftHandSide = folded.getLeftHandSide();
+    ExprNode rightHandSide = folded.getRightHandSide();
+    if (isIntLiteral(leftHandSide) && isIntLiteral(rightHandSide)) {
+      long value = intValue(leftHandSide) - intValue(rightHandSide);
+      if (fitsInt(value)) {
+        return rewritten(new IntExpr(expr.getLine(), Long.toString(value)));
+      }
+    } else if (isIntLiteral(rightHandSide, 0)) {
+      return rewritten(leftHandSide);
+    }
+    return folded;
+  }
+
+  @Override
+  public ExprNode visit(MultExpr expr) {
+    MultExpr folded = (MultExpr) super.visit(expr);
+    ExprNode leftHandSide = folded.getLeftHandSide();
+    ExprNode rightHandSide = folded.getRightHandSide();
+    if (isIntLiteral(leftHandSide) && isIntLiteral(rightHandSide)) {
+      long value = intValue(leftHandSide) * intValue(rightHandSide);
+      if (fitsInt(value)) {
+        return rewritten(new IntExpr(expr.getLine(), Long.toString(value)));
+      }
+      return folded;
+    }
+    // keep the constant on the right
+    if (isIntLiteral(leftHandSide)) {
+      ExprNode constant = leftHandSide;
+      leftHandSide = rightHandSide;
+      rightHandSide = constant;
+    }
+    if (!isIntLiteral(rightHandSide)) {
+      return folded;
+    }
+    long constant = intValue(rightHandSide);
+    if (constant == 1) {
+      return rewritten(leftHandSide);
+    } else if (constant == 0 && isPure(leftHandSide)) {
+      return rewritten(new IntExpr(expr.getLine(), "0"));
+    } else if (constant > 1 && (constant & (constant - 1)) == 0) {
+      return rewritten(
+          new ShiftLeftExpr(expr.getLine(), leftHandSide, Long.numberOfTrailingZeros(constant)));
+    }
+    return folded;
+  }
+
+  @Override
+  public ExprNode visit(LtExpr expr) {
+    LtExpr folded = (LtExpr) super.visit(expr);
+    ExprNode leftHandSide = folded.getLeftHandSide();
+    ExprNode rightHandSide = folded.getRightHandSide();
+    if (isIntLiteral(leftHandSide) && isIntLiteral(rightHandSide)) {
+      return rewritten(
+          booleanLiteral(expr.getLine(), intValue(leftHandSide) < intValue(rightHandSide)));
+    }
+    return folded;
+  }
+
+  @Override
+  public ExprNode visit(AndExpr expr) {
+    AndExpr folded = (AndExpr) super.visit(expr);
+    ExprNode leftHandSide = folded.getLeftHandSide();
+    ExprNode rightHandSide = folded.getRightHandSide();
+    if (leftHandSide instanceof TrueExpr) {
+      return rewritten(rightHandSide);
+    } else if (leftHandSide instanceof FalseExpr) {
+      // the right hand side is never evaluated
+      return rewritten(leftHandSide);
+    } else if (rightHandSide instanceof TrueExpr) {
+      return rewritten(leftHandSide);
+    } else if (rightHandSide instanceof FalseExpr && isPure(leftHandSide)) {
+      return rewritten(rightHandSide);
+    }
+    return folded;
+  }
+
+  @Override
+  public ExprNode visit(NotExpr expr) {
+    NotExpr folded = (NotExpr) super.visit(expr);
+    ExprNode argument = folded.getArgument();
+    if (argument instanceof TrueExpr || argument instanceof FalseExpr) {
+      return rewritten(booleanLiteral(expr.getLine(), argument instanceof FalseExpr));
+    } else if (argument instanceof NotExpr) {
+      return rewritten(((NotExpr) argument).getArgument());
+    }
+    return folded;
+  }
+}
@@ -0,0 +1,96 @@
+package optimization;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import parser.ast.base_abs_classes.StatementNode;
+import parser.ast.expression.singletons.FalseExpr;
+import parser.ast.expression.singletons.TrueExpr;
+import parser.ast.statement.BlockStatement;
+import parser.ast.statement.IfStatement;
+import parser.ast.statement.WhileStatement;
+
+/**
+ * Removes statically dead code: the arm of an IfStatement whose condition is a boolean literal that
+ * can't be taken, WhileStatements whose condition is false and IfStatements with two empty arms and
+ * a condition without side effects. Nested BlockStatements are flattened into the enclosing list of
+ * statements (MiniJava blocks don't open a scope). Meant to run after ConstantFoldingVisitor, which
+ * turns constant conditions into literals.
+ */
+public class ControlFlowSimplifier extends AstRewriter {
+
+  private int rewriteCount;
+
+  public ControlFlowSimplifier() {
+    this.rewriteCount = 0;
+  }
+
+  /** Number of statements removed or replaced. */
+  public int getRewriteCount() {
+    return rewriteCount;
+  }
+
+  private static boolean isEmpty(StatementNode statement) {
+    return statement instanceof BlockStatement
+        && ((BlockStatement) statement).getStatements().isEmpty();
+  }
+
+  @Override
+  protected List<StatementNode> rewriteStatements(List<StatementNode> statements) {
+    List<StatementNode> rewritten = new ArrayList<>();
+    boolean changed = false;
+    for (StatementNode statement : statements) {
+      StatementNode newStatement = statement.accept(this);
+      if (newStatement instanceof BlockStatement) {
+        // already flattened by visit(BlockStatement)
+        rewritten.addAll(((BlockStatement) newStatement).getStatements());
+        ++rewriteCount;
+        changed = true;
+      } else {
+        changed |= newStatement != statement;
+        rewritten.add(newStatement);
+      }
+    }
+    return changed ? rewritten : statements;
+  }
+
+  @Override
+  public StatementNode visit(BlockStatement statement) {
+    List<StatementNode> statements = rewriteStatements(statement.getStatements());
+    if (statements.size() == 1) {
+      ++rewriteCount;
+      return statements.get(0);
+    }
+    return statements == statement.getStatements()
+        ? statement
+        : new BlockStatement(statement.getLine(), statements);
+  }
+
+  @Override
+  public StatementNode visit(IfStatement statement) {
+    IfStatement simplified = (IfStatement) super.visit(statement);
+    if (simplified.getIfCondition() instanceof TrueExpr) {
+      ++rewriteCount;
+      return simplified.getIfBlock();
+    } else if (simplified.getIfCondition() instanceof FalseExpr) {
+      ++rewriteCount;
+      return simplified.getElseBlock();
+    } else if (isEmpty(simplified.getIfBlock())
+        && isEmpty(simplified.getElseBlock())
+        && ConstantFoldingVisitor.isPure(simplified.getIfCondition())) {
+      ++rewriteCount;
+      return simplified.getIfBlock();
+    }
+    return simplified;
+  }
+
+  @Override
+  public StatementNode visit(WhileStatement statement) {
+    if (statement.getWhileCondition() instanceof FalseExpr) {
+      // the body is never entered
+      ++rewriteCount;
+      return new BlockStatement(statement.getLine(), new ArrayList<>());
+    }
+    return super.visit(statement);
+  }
+}
@@ -0,0 +1,69 @@
+package optimization;
+
+import java.util.Map;
+
+import parser.ast.base_abs_classes.ExprNode;
+import parser.ast.base_abs_classes.StatementNode;
+import parser.ast.expression.binary_expr.DotExpr;
+import parser.ast.expression.literals.IdentifierExpr;
+import parser.ast.expression.singletons.ThisExpr;
+import parser.ast.statement.SetArrayIndexStatement;
+import parser.ast.statement.SetVariableStatement;
+
+/**
+ * Moves the body of a callee into its caller: arguments and locals of the callee are replaced by
+ * the given expressions (the caller's temporaries or the argument values themselves), "this" by the
+ * receiver and field reads by accesses through the receiver. Field stores are kept as they are, so
+ * they are only valid when the receiver is the caller's "this".
+ */
+class InlineRenamer extends AstRewriter {
+
+  private final Map<String, ExprNode> variables;
+  private final ExprNode receiver;
+
+  InlineRenamer(Map<String, ExprNode> variables, ExprNode receiver) {
+    this.variables = variables;
+    this.receiver = receiver;
+  }
+
+  private IdentifierExpr renameTarget(IdentifierExpr target) {
+    ExprNode replacement = variables.get(target.getIdentifierName());
+    if (replacement == null) {
+      // field of the caller's "this"
+      return target;
+    }
+    assert replacement instanceof IdentifierExpr : "Assigned arguments must have a temporary";
+    return (IdentifierExpr) replacement;
+  }
+
+  @Override
+  public ExprNode visit(IdentifierExpr expr) {
+    ExprNode replacement = variables.get(expr.getIdentifierName());
+    if (replacement != null) {
+      return replacement;
+    }
+    return new DotExpr(expr.getLine(), receiver, expr);
+  }
+
+  @Override
+  public ExprNode visit(ThisExpr expr) {
+    return receiver;
+  }
+
+  @Override
+  public StatementNode visit(SetArrayIndexStatement statement) {
+    return new SetArrayIndexStatement(
+        statement.getLine(),
+        renameTarget(statement.getVarAssigned()),
+        statement.getIndex().accept(this),
+        statement.getRightHandSide().accept(this));
+  }
+
+  @Override
+  public StatementNode visit(SetVariableStatement statement) {
+    return new SetVariableStatement(
+        statement.getLine(),
+        renameTarget(statement.getVarAssigned()),
+        statement.getRightHandSide().accept(this));
+  }
+}
@@ -0,0 +1,518 @@
+package optimization;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+import parser.ast.ClassNode;
+import parser.ast.GoalNode;
+import parser.ast.MethodDeclNode;
+import parser.ast.VarDeclNode;
+import parser.ast.base_abs_classes.ExprNode;
+import parser.ast.base_abs_classes.StatementNode;
+import parser.ast.expression.ArrayAccessExpr;
+import parser.ast.expression.LengthExpr;
+import parser.ast.expression.MethodCallExpr;
+import parser.ast.expression.NewArrayDeclExpr;
+import parser.ast.expression.NotExpr;
+import parser.ast.expression.binary_expr.BinaryExpr;
+import parser.ast.expression.literals.IdentifierExpr;
+import parser.ast.expression.literals.IntExpr;
+import parser.ast.expression.singletons.FalseExpr;
+import parser.ast.expression.singletons.ThisExpr;
+import parser.ast.expression.singletons.TrueExpr;
+import parser.ast.statement.BlockStatement;
+import parser.ast.statement.IfStatement;
+import parser.ast.statement.PrintStatement;
+import parser.ast.statement.SetArrayIndexStatement;
+import parser.ast.statement.SetVariableStatement;
+import parser.ast.statement.WhileStatement;
+import semantics.TypesVisitor;
+import semantics.types.ClassType;
+import utils.Pair;
+
+/**
+ * Inlines the bodies of small methods at the call sites that class hierarchy analysis proves
+ * monomorphic. A call whose callee is a single return expression is replaced in place when the
+ * receiver and the arguments can be duplicated (literals, "this" and the caller's variables). Calls
+ * that are the right hand side of an assignment, the argument of a print or the returned value are
+ * also inlined when the callee has statements: the receiver, the arguments and the callee's locals
+ * become fresh locals of the caller, assigned before the callee's statements.
+ *
+ * <p>A callee is only inlined if its (already inlined) body has at most sizeBudget AST nodes. Calls
+ * are inlined transitively up to maxDepth levels, never re-entering a method that is already being
+ * inlined, so recursive methods are left alone. The AST changes the declared locals, so the symbol
+ * tables have to be built again afterwards.
+ */
+public class InliningVisitor extends AstRewriter {
+
+  public static final int DEFAULT_SIZE_BUDGET = 24;
+  public static final int DEFAULT_MAX_DEPTH = 2;
+  private static final String TEMPORARY_SEPARATOR = "$inl";
+
+  /** Method whose body is being rewritten. */
+  private static class Frame {
+
+    private final ClassNode classNode;
+    private final MethodDeclNode methodDecl;
+    private final String label;
+    private final Set<String> variableNames;
+    private final List<VarDeclNode> temporaries;
+    private int inlinedCallSites;
+
+    private Frame(ClassNode classNode, MethodDeclNode methodDecl) {
+      this.classNode = classNode;
+      this.methodDecl = methodDecl;
+      this.label = classNode == null ? "main" : classNode.getClassName() + "$" + methodDecl.getMethodName();
+      this.variableNames = new HashSet<>();
+      this.temporaries = new ArrayList<>();
+      this.inlinedCallSites = 0;
+      if (methodDecl != null) {
+        for (Pair<String, String> argument : methodDecl.getMethodArgs()) {
+          variableNames.add(argument.second());
+        }
+        for (VarDeclNode varDecl : methodDecl.getVarDecls()) {
+          variableNames.add(varDecl.getVarName());
+        }
+      }
+    }
+  }
+
+  private final TypesVisitor typesVis;
+  private final ClassHierarchyAnalysis hierarchyAnalysis;
+  private final int sizeBudget;
+  private final int maxDepth;
+  private final Map<String, Pair<ClassNode, MethodDeclNode>> methodsByLabel;
+  private final Deque<Frame> frames;
+  private int inlinedCallSites;
+  private int nextTemporaryId;
+
+  public InliningVisitor(
+      TypesVisitor typesVis,
+      ClassHierarchyAnalysis hierarchyAnalysis,
+      int sizeBudget,
+      int maxDepth) {
+    this.typesVis = typesVis;
+    this.hierarchyAnalysis = hierarchyAnalysis;
+    this.sizeBudget = sizeBudget;
+    this.maxDepth = maxDepth;
+    this.methodsByLabel = new HashMap<>();
+    this.frames = new ArrayDeque<>();
+    this.inlinedCallSites = 0;
+    this.nextTemporaryId = 0;
+  }
+
+  /** Number of call sites replaced by the body of their callee, counting nested inlining. */
+  public int getInlinedCallSites() {
+    return inlinedCallSites;
+  }
+
+  /** Number of AST nodes, used as an estimate of the code size of a method body. */
+  static int size(ExprNode expr) {
+    if (expr instanceof BinaryExpr) {
+      return 1
+          + size(((BinaryExpr) expr).getLeftHandSide())
+          + size(((BinaryExpr) expr).getRightHandSide());
+    } else if (expr instanceof NotExpr) {
+      return 1 + size(((NotExpr) expr).getArgument());
+    } else if (expr instanceof LengthExpr) {
+      return 1 + size(((LengthExpr) expr).getLenExpr());
+    } else if (expr instanceof NewArrayDeclExpr) {
+      return 1 + size(((NewArrayDeclExpr) expr).getSize());
+    } else if (expr instanceof ArrayAccessExpr) {
+      return 1 + size(((ArrayAccessExpr) expr).getArray()) + size(((ArrayAccessExpr) expr).getIndex());
+    } else if (expr instanceof MethodCallExpr) {
+      int size = 1 + size(((MethodCallExpr) expr).getObjectSeqExpr());
+      for (ExprNode arg : ((MethodCallExpr) expr).getArgs()) {
+        size += size(arg);
+      }
+      return size;
+    }
+    return 1;
+  }
+
+  static int size(StatementNode statement) {
+    if (statement instanceof BlockStatement) {
+      int size = 1;
+      for (StatementNode statementNode : ((BlockStatement) statement).getStatements()) {
+        size += size(statementNode);
+      }
+      return size;
+    } else if (statement instanceof IfStatement) {
+      return 1
+          + size(((IfStatement) statement).getIfCondition())
+          + size(((IfStatement) statement).getIfBlock())
+          + size(((IfStatement) statement).getElseBlock());
+    } else if (statement instanceof WhileStatement) {
+      return 1
+          + size(((WhileStatement) statement).getWhileCondition())
+          + size(((WhileStatement) statement).getWhileBlock());
+    } else if (statement instanceof PrintStatement) {
+      return 1 + size(((PrintStatement) statement).getPrintExpr());
+    } else if (statement instanceof SetArrayIndexStatement) {
+      return 1
+          + size(((SetArrayIndexStatement) statement).getIndex())
+          + size(((SetArrayIndexStatement) statement).getRightHandSide());
+    }
+    return 1 + size(((SetVariableStatement) statement).getRightHandSide());
+  }
+
+  private static int size(MethodDeclNode methodDecl) {
+    int size = size(methodDecl.getReturnExpr());
+    for (StatementNode statement : methodDecl.getStatements()) {
+      size += size(statement);
+    }
+    return size;
+  }
+
+  /**
+   * Class declaring the field that an access to the given name resolves to from the given class,
+   * or null if there's no such field.
+   */
+  private String declaringClass(String className, String fieldName) {
+    ClassType owner = typesVis.getClassSymbolTable().get(className).getFieldOwner(fieldName);
+    return owner == null ? null : owner.getClassName();
+  }
+
+  private boolean isCallerVariable(ExprNode expr) {
+    return expr instanceof IdentifierExpr
+        && frames.peek().variableNames.contains(((IdentifierExpr) expr).getIdentifierName());
+  }
+
+  /** True for expressions that can be evaluated any number of times, at any point of the callee. */
+  private boolean isDuplicable(ExprNode expr) {
+    return expr instanceof IntExpr
+        || expr instanceof TrueExpr
+        || expr instanceof FalseExpr
+        || expr instanceof ThisExpr
+        || isCallerVariable(expr);
+  }
+
+  private IdentifierExpr newTemporary(int line, String varType, String name) {
+    Frame frame = frames.peek();
+    String temporaryName;
+    do {
+      temporaryName = name + TEMPORARY_SEPARATOR + nextTemporaryId++;
+    } while (frame.variableNames.contains(temporaryName));
+    frame.variableNames.add(temporaryName);
+    frame.temporaries.add(new VarDeclNode(line, varType, temporaryName));
+    return new IdentifierExpr(line, temporaryName);
+  }
+
+  private void setTypesContext(Frame frame) {
+    if (frame.classNode != null) {
+      typesVis.setCurrentClass(frame.classNode);
+      typesVis.setCurrentMethod(frame.methodDecl);
+    }
+  }
+
+  /** Rewrites the body of a method, declaring the temporaries introduced by inlining. */
+  private Pair<MethodDeclNode, Integer> inlineInto(ClassNode classNode, MethodDeclNode methodDecl) {
+    Frame frame = new Frame(classNode, methodDecl);
+    frames.push(frame);
+    setTypesContext(frame);
+    List<StatementNode> statements = new ArrayList<>(rewriteStatements(methodDecl.getStatements()));
+    Pair<List<StatementNode>, ExprNode> returned =
+        inlineCall(methodDecl.getReturnExpr(), true);
+    statements.addAll(returned.first());
+    frames.pop();
+    if (!frames.isEmpty()) {
+      setTypesContext(frames.peek());
+    }
+    if (frame.inlinedCallSites == 0) {
+      return new Pair<>(methodDecl, 0);
+    }
+    List<VarDeclNode> varDecls = new ArrayList<>(methodDecl.getVarDecls());
+    varDecls.addAll(frame.temporaries);
+    return new Pair<>(
+        new MethodDeclNode(
+            methodDecl.getLine(),
+            methodDecl.getMethodType(),
+            methodDecl.getMethodName(),
+            methodDecl.getMethodArgs(),
+            varDecls,
+            statements,
+            returned.second()),
+        frame.inlinedCallSites);
+  }
+
+  /**
+   * Rewrites an expression, inlining it if it's a call that can be inlined. Statements that must be
+   * executed before the returned expression are only produced if allowStatements is true.
+   */
+  private Pair<List<StatementNode>, ExprNode> inlineCall(ExprNode expr, boolean allowStatements) {
+    if (!(expr instanceof MethodCallExpr)) {
+      return new Pair<>(List.of(), expr.accept(this));
+    }
+    MethodCallExpr call = (MethodCallExpr) expr;
+    ExprNode receiver = call.getObjectSeqExpr().accept(this);
+    // getArgs returns a copy
+    List<ExprNode> originalArgs = call.getArgs();
+    List<ExprNode> args = rewriteAll(originalArgs);
+    ExprNode rewritten =
+        receiver == call.getObjectSeqExpr() && args == originalArgs
+            ? call
+            : new MethodCallExpr(call.getLine(), receiver, call.getMethodNameExpr(), args);
+    if (sizeBudget <= 0 || frames.size() > maxDepth) {
+      return new Pair<>(List.of(), rewritten);
+    }
+    // annotated by the type checking pass; checking it on demand is safe (doesn't change
+    // typesVis' currentClass/Method) because a MethodCallExpr has no ClassNode/MethodDeclNode
+    String receiverClass = ((ClassType) typesVis.typeOf(call.getObjectSeqExpr())).getClassName();
+    Optional<String> target =
+        hierarchyAnalysis.getUniqueTarget(
+            receiverClass, call.getMethodNameExpr().getIdentifierName());
+    if (target.isEmpty()) {
+      return new Pair<>(List.of(), rewritten);
+    }
+    for (Frame frame : frames) {
+      if (frame.label.equals(target.get())) {
+        // recursive call
+        return new Pair<>(List.of(), rewritten);
+      }
+    }
+    Pair<ClassNode, MethodDeclNode> callee = methodsByLabel.get(target.get());
+    Pair<MethodDeclNode, Integer> inlinedCallee = inlineInto(callee.first(), callee.second());
+    MethodDeclNode body = inlinedCallee.first();
+    if (size(body) > sizeBudget) {
+      return new Pair<>(List.of(), rewritten);
+    }
+    Optional<Pair<List<StatementNode>, ExprNode>> inlined =
+        inlineBody(call, receiverClass, receiver, args, callee.first(), body, allowStatements);
+    if (inlined.isEmpty()) {
+      return new Pair<>(List.of(), rewritten);
+    }
+    frames.peek().inlinedCallSites += 1 + inlinedCallee.second();
+    return inlined.get();
+  }
+
+  private Optional<Pair<List<StatementNode>, ExprNode>> inlineBody(
+      MethodCallExpr call,
+      String receiverClass,
+      ExprNode receiver,
+      List<ExprNode> args,
+      ClassNode calleeClass,
+      MethodDeclNode body,
+      boolean allowStatements) {
+    int line = call.getLine();
+    Frame caller = frames.peek();
+    Set<String> parameters = new HashSet<>();
+    for (Pair<String, String> argument : body.getMethodArgs()) {
+      parameters.add(argument.second());
+    }
+    Set<String> locals = new HashSet<>();
+    for (VarDeclNode varDecl : body.getVarDecls()) {
+      locals.add(varDecl.getVarName());
+    }
+    VariableUsageCollector usage = new VariableUsageCollector();
+    for (StatementNode statement : body.getStatements()) {
+      statement.accept(usage);
+    }
+    body.getReturnExpr().accept(usage);
+    // fields have to resolve to the same declaration from the receiver's static type, and can only
+    // be assigned if the receiver is the caller's "this" and the caller doesn't shadow them
+    for (String name : usage.getRead()) {
+      if (!parameters.contains(name)
+          && !locals.contains(name)
+          && !Objects.equals(
+              declaringClass(calleeClass.getClassName(), name),
+              declaringClass(receiverClass, name))) {
+        return Optional.empty();
+      }
+    }
+    for (String name : usage.getAssigned()) {
+      if (parameters.contains(name) || locals.contains(name)) {
+        continue;
+      }
+      if (!(receiver instanceof ThisExpr)
+          || caller.variableNames.contains(name)
+          || !Objects.equals(
+              declaringClass(calleeClass.getClassName(), name),
+              declaringClass(caller.classNode.getClassName(), name))) {
+        return Optional.empty();
+      }
+    }
+    Map<String, ExprNode> variables = new HashMap<>();
+    if (body.getStatements().isEmpty() && !hasAny(usage.getRead(), locals)) {
+      // single expression: substitute the arguments if they can be duplicated
+      boolean duplicable = isDuplicable(receiver);
+      for (ExprNode arg : args) {
+        duplicable &= isDuplicable(arg);
+      }
+      if (duplicable) {
+        for (int i = 0; i < args.size(); ++i) {
+          variables.put(body.getMethodArgs().get(i).second(), args.get(i));
+        }
+        return Optional.of(
+            new Pair<>(List.of(), body.getReturnExpr().accept(new InlineRenamer(variables, receiver))));
+      }
+    }
+    if (!allowStatements || caller.methodDecl == null) {
+      // no place to declare the temporaries
+      return Optional.empty();
+    }
+    List<StatementNode> prelude = new ArrayList<>();
+    Set<String> uninitialized = readBeforeAssigned(body, locals);
+    for (VarDeclNode varDecl : body.getVarDecls()) {
+      if (uninitialized.contains(varDecl.getVarName())
+          && !varDecl.getVarType().equals("int")
+          && !varDecl.getVarType().equals("boolean")) {
+        // can't express the null reference it implicitly starts with
+        return Optional.empty();
+      }
+    }
+    ExprNode inlinedReceiver = receiver;
+    if (!(receiver instanceof ThisExpr) && !isCallerVariable(receiver)) {
+      inlinedReceiver = newTemporary(line, receiverClass, "this");
+      prelude.add(new SetVariableStatement(line, (IdentifierExpr) inlinedReceiver, receiver));
+    }
+    for (int i = 0; i < args.size(); ++i) {
+      Pair<String, String> argument = body.getMethodArgs().get(i);
+      if (isDuplicable(args.get(i)) && !usage.getAssigned().contains(argument.second())) {
+        variables.put(argument.second(), args.get(i));
+      } else {
+        IdentifierExpr temporary = newTemporary(line, argument.first(), argument.second());
+        prelude.add(new SetVariableStatement(line, temporary, args.get(i)));
+        variables.put(argument.second(), temporary);
+      }
+    }
+    for (VarDeclNode varDecl : body.getVarDecls()) {
+      IdentifierExpr temporary = newTemporary(line, varDecl.getVarType(), varDecl.getVarName());
+      variables.put(varDecl.getVarName(), temporary);
+      if (uninitialized.contains(varDecl.getVarName())) {
+        // locals start as 0 or false on every call
+        ExprNode zero =
+            varDecl.getVarType().equals("int") ? new IntExpr(line, "0") : new FalseExpr(line);
+        prelude.add(new SetVariableStatement(line, temporary, zero));
+      }
+    }
+    InlineRenamer renamer = new InlineRenamer(variables, inlinedReceiver);
+    for (StatementNode statement : body.getStatements()) {
+      prelude.add(statement.accept(renamer));
+    }
+    return Optional.of(new Pair<>(prelude, body.getReturnExpr().accept(renamer)));
+  }
+
+  private static boolean hasAny(Set<String> names, Set<String> candidates) {
+    for (String candidate : candidates) {
+      if (names.contains(candidate)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Locals that may be read before the body assigns them unconditionally. */
+  private static Set<String> readBeforeAssigned(MethodDeclNode body, Set<String> locals) {
+    Set<String> uninitialized = new HashSet<>();
+    Set<String> assigned = new HashSet<>();
+    for (StatementNode statement : body.getStatements()) {
+      VariableUsageCollector usage = new VariableUsageCollector();
+      statement.accept(usage);
+      for (String name : usage.getRead()) {
+        if (locals.contains(name) && !assigned.contains(name)) {
+          uninitialized.add(name);
+        }
+      }
+      if (statement instanceof SetVariableStatement) {
+        assigned.add(((SetVariableStatement) statement).getVarAssigned().getIdentifierName());
+      }
+    }
+    VariableUsageCollector usage = new VariableUsageCollector();
+    body.getReturnExpr().accept(usage);
+    for (String name : usage.getRead()) {
+      if (locals.contains(name) && !assigned.contains(name)) {
+        uninitialized.add(name);
+      }
+    }
+    return uninitialized;
+  }
+
+  private StatementNode withPrelude(List<StatementNode> prelude, StatementNode statement) {
+    if (prelude.isEmpty()) {
+      return statement;
+    }
+    List<StatementNode> statements = new ArrayList<>(prelude);
+    statements.add(statement);
+    return new BlockStatement(statement.getLine(), statements);
+  }
+
+  @Override
+  public ExprNode visit(MethodCallExpr expr) {
+    return inlineCall(expr, false).second();
+  }
+
+  @Override
+  public StatementNode visit(PrintStatement statement) {
+    Pair<List<StatementNode>, ExprNode> inlined = inlineCall(statement.getPrintExpr(), true);
+    if (inlined.first().isEmpty() && inlined.second() == statement.getPrintExpr()) {
+      return statement;
+    }
+    return withPrelude(inlined.first(), new PrintStatement(statement.getLine(), inlined.second()));
+  }
+
+  @Override
+  public StatementNode visit(SetVariableStatement statement) {
+    Pair<List<StatementNode>, ExprNode> inlined = inlineCall(statement.getRightHandSide(), true);
+    if (inlined.first().isEmpty() && inlined.second() == statement.getRightHandSide()) {
+      return statement;
+    }
+    return withPrelude(
+        inlined.first(),
+        new SetVariableStatement(statement.getLine(), statement.getVarAssigned(), inlined.second()));
+  }
+
+  @Override
+  public ClassNode visit(ClassNode node) {
+    List<MethodDeclNode> methodDecls = new ArrayList<>();
+    boolean changed = false;
+    for (MethodDeclNode methodDecl : node.getMethodDecls()) {
+      Pair<MethodDeclNode, Integer> inlined = inlineInto(node, methodDecl);
+      inlinedCallSites += inlined.second();
+      changed |= inlined.first() != methodDecl;
+      methodDecls.add(inlined.first());
+    }
+    return changed
+        ? new ClassNode(
+            node.getLine(),
+            node.getClassName(),
+            node.getExtendsFrom(),
+            node.getVarDecls(),
+            methodDecls)
+        : node;
+  }
+
+  @Override
+  public GoalNode visit(GoalNode node) {
+    for (ClassNode classNode : node.getClasses()) {
+      for (MethodDeclNode methodDecl : classNode.getMethodDecls()) {
+        methodsByLabel.put(
+            classNode.getClassName() + "$" + methodDecl.getMethodName(),
+            new Pair<>(classNode, methodDecl));
+      }
+    }
+    Frame main = new Frame(null, null);
+    frames.push(main);
+    StatementNode statement = node.getStatement().accept(this);
+    frames.pop();
+    inlinedCallSites += main.inlinedCallSites;
+    List<ClassNode> classes = new ArrayList<>();
+    boolean changed = statement != node.getStatement();
+    for (ClassNode classNode : node.getClasses()) {
+      ClassNode newClassNode = classNode.accept(this);
+      changed |= newClassNode != classNode;
+      classes.add(newClassNode);
+    }
+    return changed
+        ? new GoalNode(
+            node.getLine(), node.getMainClassName(), node.getArgName(), statement, classes)
+        : node;
+  }
+}
@@ -0,0 +1,54 @@
+package optimization;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import parser.ast.base_abs_classes.ExprNode;
+import parser.ast.expression.literals.IdentifierExpr;
+import parser.ast.statement.SetArrayIndexStatement;
+import parser.ast.statement.SetVariableStatement;
+
+/**
+ * Collects the names of the variables (locals, arguments or fields) that a piece of AST reads and
+ * assigns to. Storing into an array element counts as an assignment of the array variable. The AST
+ * is returned unchanged.
+ */
+class VariableUsageCollector extends AstRewriter {
+
+  private final Set<String> read;
+  private final Set<String> assigned;
+
+  VariableUsageCollector() {
+    this.read = new HashSet<>();
+    this.assigned = new HashSet<>();
+  }
+
+  Set<String> getRead() {
+    return read;
+  }
+
+  Set<String> getAssigned() {
+    return assigned;
+  }
+
+  @Override
+  public ExprNode visit(IdentifierExpr expr) {
+    read.add(expr.getIdentifierName());
+    return expr;
+  }
+
+  @Override
+  public SetArrayIndexStatement visit(SetArrayIndexStatement statement) {
+    assigned.add(statement.getVarAssigned().getIdentifierName());
+    statement.getIndex().accept(this);
+    statement.getRightHandSide().accept(this);
+    return statement;
+  }
+
+  @Override
+  public SetVariableStatement visit(SetVariableStatement statement) {
+    assigned.add(statement.getVarAssigned().getIdentifierName());
+    statement.getRightHandSide().accept(this);
+    return statement;
+  }
+}
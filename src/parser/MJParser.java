@@ -1,14 +1,12 @@
 package parser;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Optional;
-import java.util.Set;
-
-import org.antlr.v4.runtime.Token;
 
 import antlr_lexer.MJLexer;
+import lexer.AntlrTokenSource;
+import lexer.TokenSource;
 import parser.ast.ClassNode;
 import parser.ast.GoalNode;
 import parser.ast.MethodDeclNode;
@@ -42,22 +40,71 @@ import utils.Pair;
 
 public class MJParser {
 
+  /**
+   * Fixed-capacity ring buffer of the upcoming tokens, whose attributes are kept in parallel int
+   * arrays. The attributes of the last consumed token are kept aside, since its slot is refilled.
+   */
   public class TokenBuffer {
 
-    private final LinkedList<Token> buffer;
+    private final int[] types;
+    private final int[] lines;
+    private final int[] starts;
+    private final int[] ends;
+    // index of the next token and number of buffered tokens
+    private int head;
+    private int size;
     private boolean hasReachedEnd;
+    private int previousType;
+    private int previousLine;
+    private int previousStart;
+    private int previousEnd;
 
-    public TokenBuffer(LinkedList<Token> buffer) {
-      this.buffer = buffer;
+    public TokenBuffer() {
+      this.types = new int[BUFFER_SIZE];
+      this.lines = new int[BUFFER_SIZE];
+      this.starts = new int[BUFFER_SIZE];
+      this.ends = new int[BUFFER_SIZE];
+      this.head = 0;
+      this.size = 0;
       this.hasReachedEnd = false;
     }
+
+    private void fill() {
+      while (!hasReachedEnd && size < BUFFER_SIZE) {
+        int type = scanner.nextToken();
+        int tail = (head + size) & BUFFER_MASK;
+        types[tail] = type;
+        lines[tail] = scanner.getLine();
+        starts[tail] = scanner.getStart();
+        ends[tail] = scanner.getEnd();
+        ++size;
+        hasReachedEnd = (type == MJLexer.EOF);
+      }
+    }
+
+    private int index(int stepsAhead) {
+      assert stepsAhead >= 1 && stepsAhead <= size
+          : String.format("Can't look %d tokens ahead", stepsAhead);
+      return (head + stepsAhead - 1) & BUFFER_MASK;
+    }
+
+    private int poll() {
+      previousType = types[head];
+      previousLine = lines[head];
+      previousStart = starts[head];
+      previousEnd = ends[head];
+      head = (head + 1) & BUFFER_MASK;
+      --size;
+      fill();
+      return previousType;
+    }
   }
 
   private final TokenBuffer tokenBuffer;
-  private final MJLexer scanner;
-  private static final int BUFFER_SIZE = 10;
-  private static final Set<Integer> types =
-      Set.of(MJLexer.INT_KW, MJLexer.BOOLEAN_KW, MJLexer.INT_ARRAY, MJLexer.ID);
+  private final TokenSource scanner;
+  // must be a power of two, indices into the ring buffer are masked
+  private static final int BUFFER_SIZE = 16;
+  private static final int BUFFER_MASK = BUFFER_SIZE - 1;
   private static final String[] ruleNames = {
     "CLASS_KW",
     "PUBLIC_KW",
@@ -101,70 +148,111 @@ public class MJParser {
     "COMMENT"
   };
 
-  public MJParser(MJLexer scanner) {
-    LinkedList<Token> buffer = new LinkedList<>(List.of(scanner.nextToken()));
-    this.tokenBuffer = new TokenBuffer(buffer);
+  // indexed by token type: whether the token can start a type, and the binding power of binary
+  // operators (0 for tokens that aren't one), following Java's && < '<' < '+', '-' < '*'
+  private static final boolean[] isTypeToken = new boolean[ruleNames.length + 1];
+  private static final int[] bindingPower = new int[ruleNames.length + 1];
+
+  static {
+    isTypeToken[MJLexer.INT_KW] = true;
+    isTypeToken[MJLexer.BOOLEAN_KW] = true;
+    isTypeToken[MJLexer.INT_ARRAY] = true;
+    isTypeToken[MJLexer.ID] = true;
+    bindingPower[MJLexer.AND] = 1;
+    bindingPower[MJLexer.LT] = 2;
+    bindingPower[MJLexer.PLUS] = 3;
+    bindingPower[MJLexer.MINUS] = 3;
+    bindingPower[MJLexer.MULT] = 4;
+  }
+
+  public MJParser(TokenSource scanner) {
     this.scanner = scanner;
+    this.tokenBuffer = new TokenBuffer();
+    tokenBuffer.fill();
   }
 
-  private Token lookahead(int stepsAhead) {
-    return tokenBuffer.buffer.get(stepsAhead - 1);
+  public MJParser(MJLexer scanner) {
+    this(new AntlrTokenSource(scanner));
   }
 
-  private Token nextToken() {
-    if (!tokenBuffer.hasReachedEnd) {
-      Token firstToken = tokenBuffer.buffer.remove(0);
-      while (!tokenBuffer.hasReachedEnd && tokenBuffer.buffer.size() < BUFFER_SIZE) {
-        Token nextToken = scanner.nextToken();
-        tokenBuffer.buffer.add(nextToken);
-        tokenBuffer.hasReachedEnd = (nextToken.getType() == MJLexer.EOF);
-      }
-      return firstToken;
-    }
-    return tokenBuffer.buffer.remove(0);
+  private int lookaheadType(int stepsAhead) {
+    return tokenBuffer.types[tokenBuffer.index(stepsAhead)];
+  }
+
+  /** Consumes the next token and returns its type. */
+  private int nextToken() {
+    return tokenBuffer.poll();
+  }
+
+  /** Line of the last consumed token. */
+  private int previousLine() {
+    return tokenBuffer.previousLine;
+  }
+
+  /** Text of the last consumed token. */
+  private String previousText() {
+    return scanner.getText(tokenBuffer.previousStart, tokenBuffer.previousEnd);
+  }
+
+  private static String ruleName(int tokenType) {
+    return tokenType == MJLexer.EOF ? "EOF" : ruleNames[tokenType - 1];
+  }
+
+  private static boolean isType(int tokenType) {
+    // EOF is negative
+    return tokenType >= 0 && isTypeToken[tokenType];
+  }
+
+  private static int bindingPower(int tokenType) {
+    return tokenType >= 0 ? bindingPower[tokenType] : 0;
   }
 
   private boolean canFormVarDecl() {
-    Token oneAhead = lookahead(1);
-    Token twoAhead = lookahead(2);
-    return types.contains(oneAhead.getType()) && twoAhead.getType() == MJLexer.ID;
+    return isType(lookaheadType(1)) && lookaheadType(2) == MJLexer.ID;
   }
 
   private boolean canFormMethodDecl() {
-    return lookahead(1).getType() == MJLexer.PUBLIC_KW;
+    return lookaheadType(1) == MJLexer.PUBLIC_KW;
   }
 
   private boolean canFormStatement() {
-    Token oneAhead = lookahead(1);
-    switch (oneAhead.getType()) {
+    switch (lookaheadType(1)) {
       case MJLexer.CURLY_LBRACKET:
       case MJLexer.IF:
       case MJLexer.WHILE:
       case MJLexer.PRINTLN:
         return true;
       case MJLexer.ID:
-        int twoAheadType = lookahead(2).getType();
+        int twoAheadType = lookaheadType(2);
         return twoAheadType == MJLexer.EQUALS || twoAheadType == MJLexer.LBRACKET;
       default:
         return false;
     }
   }
 
-  private Token handleTokenTypeCheck(int expectedTypeInt) {
-    Token token = nextToken();
-    assert token.getType() == expectedTypeInt
+  private void handleTokenTypeCheck(int expectedTypeInt) {
+    int tokenType = nextToken();
+    assert tokenType == expectedTypeInt
         : String.format(
             "Expected \"%s\" in line %d but got \"%s\" with text \"%s\"",
             ruleNames[expectedTypeInt - 1],
-            token.getLine(),
-            ruleNames[token.getType() - 1],
-            token.getText());
-    return token;
+            previousLine(),
+            ruleName(tokenType),
+            previousText());
+  }
+
+  private void handleTypeCheck() {
+    int tokenType = nextToken();
+    assert isType(tokenType)
+        : String.format(
+            "Expected \"int\", \"boolean\" or some identifier in line %d", previousLine());
   }
 
   public GoalNode parseGoal() {
     handleTokenTypeCheck(MJLexer.CLASS_KW);
-    Token mainClassName = handleTokenTypeCheck(MJLexer.ID);
+    handleTokenTypeCheck(MJLexer.ID);
+    int mainClassLine = previousLine();
+    String mainClassName = previousText();
     handleTokenTypeCheck(MJLexer.CURLY_LBRACKET);
     handleTokenTypeCheck(MJLexer.PUBLIC_KW);
     handleTokenTypeCheck(MJLexer.STATIC_KW);
@@ -174,32 +262,35 @@ public class MJParser {
     handleTokenTypeCheck(MJLexer.STRING_KW);
     handleTokenTypeCheck(MJLexer.LBRACKET);
     handleTokenTypeCheck(MJLexer.RBRACKET);
-    String argName = handleTokenTypeCheck(MJLexer.ID).getText();
+    handleTokenTypeCheck(MJLexer.ID);
+    String argName = previousText();
     handleTokenTypeCheck(MJLexer.RPARENS);
     handleTokenTypeCheck(MJLexer.CURLY_LBRACKET);
     StatementNode statement = parseStatement();
     handleTokenTypeCheck(MJLexer.CURLY_RBRACKET);
     handleTokenTypeCheck(MJLexer.CURLY_RBRACKET);
     List<ClassNode> classes = new ArrayList<>();
-    while (lookahead(1).getType() == MJLexer.CLASS_KW) {
+    while (lookaheadType(1) == MJLexer.CLASS_KW) {
       classes.add(parseClass());
     }
-    Token shouldBeEOF = nextToken();
-    assert shouldBeEOF.getType() == MJLexer.EOF
+    int shouldBeEOF = nextToken();
+    assert shouldBeEOF == MJLexer.EOF
         : String.format(
             "Expected end of file but got token \"%s\" with text \"%s\"",
-            shouldBeEOF.getText(), ruleNames[shouldBeEOF.getType() - 1]);
-    return new GoalNode(
-        mainClassName.getLine(), mainClassName.getText(), argName, statement, classes);
+            ruleName(shouldBeEOF), previousText());
+    return new GoalNode(mainClassLine, mainClassName, argName, statement, classes);
   }
 
   public ClassNode parseClass() {
     handleTokenTypeCheck(MJLexer.CLASS_KW);
-    Token className = handleTokenTypeCheck(MJLexer.ID);
+    handleTokenTypeCheck(MJLexer.ID);
+    int classLine = previousLine();
+    String className = previousText();
     Optional<String> extendsFrom = Optional.empty();
-    if (lookahead(1).getType() == MJLexer.EXTENDS_KW) {
+    if (lookaheadType(1) == MJLexer.EXTENDS_KW) {
       handleTokenTypeCheck(MJLexer.EXTENDS_KW);
-      extendsFrom = Optional.of(handleTokenTypeCheck(MJLexer.ID).getText());
+      handleTokenTypeCheck(MJLexer.ID);
+      extendsFrom = Optional.of(previousText());
     }
     handleTokenTypeCheck(MJLexer.CURLY_LBRACKET);
     List<VarDeclNode> varDecls = new ArrayList<>();
@@ -211,44 +302,39 @@ public class MJParser {
       methodDecls.add(parseMethodDecl());
     }
     handleTokenTypeCheck(MJLexer.CURLY_RBRACKET);
-    return new ClassNode(
-        className.getLine(), className.getText(), extendsFrom, varDecls, methodDecls);
+    return new ClassNode(classLine, className, extendsFrom, varDecls, methodDecls);
   }
 
   public VarDeclNode parseVarDecl() {
-    Token type = nextToken();
-    assert types.contains(type.getType())
-        : String.format(
-            "Expected \"int\", \"boolean\" or some identifier in line %d", type.getLine());
-    Token varName = handleTokenTypeCheck(MJLexer.ID);
+    handleTypeCheck();
+    int typeLine = previousLine();
+    String type = previousText();
+    handleTokenTypeCheck(MJLexer.ID);
+    String varName = previousText();
     handleTokenTypeCheck(MJLexer.SEMI_COLON);
-    return new VarDeclNode(type.getLine(), type.getText(), varName.getText());
+    return new VarDeclNode(typeLine, type, varName);
   }
 
   public MethodDeclNode parseMethodDecl() {
     handleTokenTypeCheck(MJLexer.PUBLIC_KW);
-    Token methodType = nextToken();
-    assert types.contains(methodType.getType())
-        : String.format(
-            "Expected \"int\", \"boolean\" or some identifier in line %d", methodType.getLine());
-    Token methodName = handleTokenTypeCheck(MJLexer.ID);
+    handleTypeCheck();
+    int methodLine = previousLine();
+    String methodType = previousText();
+    handleTokenTypeCheck(MJLexer.ID);
+    String methodName = previousText();
     handleTokenTypeCheck(MJLexer.LPARENS);
     List<Pair<String, String>> methodArgs = new ArrayList<>();
-    if (types.contains(lookahead(1).getType())) {
-      Token argType = nextToken();
-      assert types.contains(argType.getType())
-          : String.format(
-              "Expected \"int\", \"boolean\" or some identifier in line %d", argType.getLine());
-      Token argName = handleTokenTypeCheck(MJLexer.ID);
-      methodArgs.add(new Pair<>(argType.getText(), argName.getText()));
-      while (lookahead(1).getType() == MJLexer.COMMA) {
+    if (isType(lookaheadType(1))) {
+      handleTypeCheck();
+      String argType = previousText();
+      handleTokenTypeCheck(MJLexer.ID);
+      methodArgs.add(new Pair<>(argType, previousText()));
+      while (lookaheadType(1) == MJLexer.COMMA) {
         handleTokenTypeCheck(MJLexer.COMMA);
-        argType = nextToken();
-        assert types.contains(argType.getType())
-            : String.format(
-                "Expected \"int\", \"boolean\" or some identifier in line %d", argType.getLine());
-        argName = handleTokenTypeCheck(MJLexer.ID);
-        methodArgs.add(new Pair<>(argType.getText(), argName.getText()));
+        handleTypeCheck();
+        argType = previousText();
+        handleTokenTypeCheck(MJLexer.ID);
+        methodArgs.add(new Pair<>(argType, previousText()));
       }
     }
     handleTokenTypeCheck(MJLexer.RPARENS);
@@ -266,25 +352,20 @@ public class MJParser {
     handleTokenTypeCheck(MJLexer.SEMI_COLON);
     handleTokenTypeCheck(MJLexer.CURLY_RBRACKET);
     return new MethodDeclNode(
-        methodType.getLine(),
-        methodType.getText(),
-        methodName.getText(),
-        methodArgs,
-        varDecls,
-        statements,
-        returnExpr);
+        methodLine, methodType, methodName, methodArgs, varDecls, statements, returnExpr);
   }
 
   public StatementNode parseStatement() {
-    Token oneAhead = nextToken();
-    switch (oneAhead.getType()) {
+    int oneAhead = nextToken();
+    int line = previousLine();
+    switch (oneAhead) {
       case MJLexer.CURLY_LBRACKET:
         List<StatementNode> statements = new ArrayList<>();
         while (canFormStatement()) {
           statements.add(parseStatement());
         }
         handleTokenTypeCheck(MJLexer.CURLY_RBRACKET);
-        return new BlockStatement(oneAhead.getLine(), statements);
+        return new BlockStatement(line, statements);
       case MJLexer.IF:
         handleTokenTypeCheck(MJLexer.LPARENS);
         ExprNode ifCondition = parseExpr();
@@ -292,87 +373,82 @@ public class MJParser {
         StatementNode ifBlock = parseStatement();
         handleTokenTypeCheck(MJLexer.ELSE);
         StatementNode elseBlock = parseStatement();
-        return new IfStatement(oneAhead.getLine(), ifCondition, ifBlock, elseBlock);
+        return new IfStatement(line, ifCondition, ifBlock, elseBlock);
       case MJLexer.WHILE:
         handleTokenTypeCheck(MJLexer.LPARENS);
         ExprNode whileCondition = parseExpr();
         handleTokenTypeCheck(MJLexer.RPARENS);
         StatementNode whileBlock = parseStatement();
-        return new WhileStatement(oneAhead.getLine(), whileCondition, whileBlock);
+        return new WhileStatement(line, whileCondition, whileBlock);
       case MJLexer.PRINTLN:
         handleTokenTypeCheck(MJLexer.LPARENS);
         ExprNode printExpr = parseExpr();
         handleTokenTypeCheck(MJLexer.RPARENS);
         handleTokenTypeCheck(MJLexer.SEMI_COLON);
-        return new PrintStatement(oneAhead.getLine(), printExpr);
+        return new PrintStatement(line, printExpr);
       case MJLexer.ID:
-        Token twoAhead = nextToken();
-        if (twoAhead.getType() == MJLexer.EQUALS) {
+        IdentifierExpr varAssigned = new IdentifierExpr(line, previousText());
+        int twoAhead = nextToken();
+        if (twoAhead == MJLexer.EQUALS) {
           ExprNode rightHandSide = parseExpr();
           handleTokenTypeCheck(MJLexer.SEMI_COLON);
-          return new SetVariableStatement(
-              oneAhead.getLine(),
-              new IdentifierExpr(oneAhead.getLine(), oneAhead.getText()),
-              rightHandSide);
-        } else if (twoAhead.getType() == MJLexer.LBRACKET) {
+          return new SetVariableStatement(line, varAssigned, rightHandSide);
+        } else if (twoAhead == MJLexer.LBRACKET) {
           ExprNode arrayExpr = parseExpr();
           handleTokenTypeCheck(MJLexer.RBRACKET);
           handleTokenTypeCheck(MJLexer.EQUALS);
           ExprNode index = parseExpr();
           handleTokenTypeCheck(MJLexer.SEMI_COLON);
-          return new SetArrayIndexStatement(
-              oneAhead.getLine(),
-              new IdentifierExpr(oneAhead.getLine(), oneAhead.getText()),
-              arrayExpr,
-              index);
+          return new SetArrayIndexStatement(line, varAssigned, arrayExpr, index);
         }
       default:
         throw new AssertionError(
             String.format(
                 "Error while trying to parse \"%s\" symbol in line %d",
-                oneAhead.getText(), oneAhead.getLine()));
+                previousText(), previousLine()));
     }
   }
 
   public ExprNode parseFactor() {
-    Token oneAhead = nextToken();
+    int oneAhead = nextToken();
+    int line = previousLine();
     ExprNode head = null;
-    switch (oneAhead.getType()) {
+    switch (oneAhead) {
       case MJLexer.INT_LITERAL:
-        head = new IntExpr(oneAhead.getLine(), oneAhead.getText());
+        head = new IntExpr(line, previousText());
         break;
       case MJLexer.TRUE:
-        head = new TrueExpr(oneAhead.getLine());
+        head = new TrueExpr(line);
         break;
       case MJLexer.FALSE:
-        head = new FalseExpr(oneAhead.getLine());
+        head = new FalseExpr(line);
         break;
       case MJLexer.ID:
-        head = new IdentifierExpr(oneAhead.getLine(), oneAhead.getText());
+        head = new IdentifierExpr(line, previousText());
         break;
       case MJLexer.THIS:
-        head = new ThisExpr(oneAhead.getLine());
+        head = new ThisExpr(line);
         break;
       case MJLexer.NEW:
-        Token twoAhead = nextToken();
-        if (twoAhead.getType() == MJLexer.INT_KW) {
+        int twoAhead = nextToken();
+        if (twoAhead == MJLexer.INT_KW) {
           handleTokenTypeCheck(MJLexer.LBRACKET);
           ExprNode size = parseExpr();
           handleTokenTypeCheck(MJLexer.RBRACKET);
-          head = new NewArrayDeclExpr(oneAhead.getLine(), size);
-        } else if (twoAhead.getType() == MJLexer.ID) {
+          head = new NewArrayDeclExpr(line, size);
+        } else if (twoAhead == MJLexer.ID) {
+          String className = previousText();
           handleTokenTypeCheck(MJLexer.LPARENS);
           handleTokenTypeCheck(MJLexer.RPARENS);
-          head = new NewObjectDeclExpr(oneAhead.getLine(), twoAhead.getText());
+          head = new NewObjectDeclExpr(line, className);
         } else {
           throw new AssertionError(
-              String.format(
-                  "Failed while trying to parse \"new ...\" in line %d", oneAhead.getLine()));
+              String.format("Failed while trying to parse \"new ...\" in line %d", line));
         }
         break;
       case MJLexer.NOT:
         ExprNode argument = parseFactor();
-        head = new NotExpr(oneAhead.getLine(), argument);
+        head = new NotExpr(line, argument);
         break;
       case MJLexer.LPARENS:
         head = parseExpr();
@@ -382,84 +458,83 @@ public class MJParser {
         throw new AssertionError(
             String.format(
                 "Failed while trying to parse \"factor\" in line %d. Got \"%s\" instead\"",
-                oneAhead.getLine(), oneAhead.getText()));
+                line, previousText()));
     }
-    switch (lookahead(1).getType()) {
+    switch (lookaheadType(1)) {
       case MJLexer.LBRACKET:
         handleTokenTypeCheck(MJLexer.LBRACKET);
         ExprNode index = parseExpr();
         handleTokenTypeCheck(MJLexer.RBRACKET);
-        head = new ArrayAccessExpr(oneAhead.getLine(), head, index);
+        head = new ArrayAccessExpr(line, head, index);
         break;
       case MJLexer.DOT:
         handleTokenTypeCheck(MJLexer.DOT);
-        if (lookahead(1).getType() == MJLexer.LENGTH_KW) {
-          head = new LengthExpr(handleTokenTypeCheck(MJLexer.LENGTH_KW).getLine(), head);
-        } else if (lookahead(1).getType() == MJLexer.ID) {
-          while (lookahead(2).getType() == MJLexer.DOT) {
-            IdentifierExpr fieldId =
-                new IdentifierExpr(
-                    lookahead(1).getLine(), handleTokenTypeCheck(MJLexer.ID).getText());
+        if (lookaheadType(1) == MJLexer.LENGTH_KW) {
+          handleTokenTypeCheck(MJLexer.LENGTH_KW);
+          head = new LengthExpr(previousLine(), head);
+        } else if (lookaheadType(1) == MJLexer.ID) {
+          while (lookaheadType(2) == MJLexer.DOT) {
+            handleTokenTypeCheck(MJLexer.ID);
+            IdentifierExpr fieldId = new IdentifierExpr(previousLine(), previousText());
             handleTokenTypeCheck(MJLexer.DOT);
-            head = new DotExpr(oneAhead.getLine(), head, fieldId);
+            head = new DotExpr(line, head, fieldId);
           }
 
-          IdentifierExpr methodName =
-              new IdentifierExpr(
-                  lookahead(1).getLine(), handleTokenTypeCheck(MJLexer.ID).getText());
+          handleTokenTypeCheck(MJLexer.ID);
+          IdentifierExpr methodName = new IdentifierExpr(previousLine(), previousText());
           handleTokenTypeCheck(MJLexer.LPARENS);
           List<ExprNode> args = new ArrayList<>();
-          if (!(lookahead(1).getType() == MJLexer.RPARENS)) {
+          if (!(lookaheadType(1) == MJLexer.RPARENS)) {
             args.add(parseExpr());
-            while (lookahead(1).getType() == MJLexer.COMMA) {
+            while (lookaheadType(1) == MJLexer.COMMA) {
               handleTokenTypeCheck(MJLexer.COMMA);
               args.add(parseExpr());
             }
           }
           handleTokenTypeCheck(MJLexer.RPARENS);
-          head = new MethodCallExpr(oneAhead.getLine(), head, methodName, args);
+          head = new MethodCallExpr(line, head, methodName, args);
         } else {
           throw new AssertionError(
               String.format(
-                  "Failed while trying to parse expression of form \"A.B\" in line %d",
-                  oneAhead.getLine()));
+                  "Failed while trying to parse expression of form \"A.B\" in line %d", line));
         }
         break;
     }
     return head;
   }
 
-  public ExprNode parseTerm() {
+  /**
+   * Precedence climbing: parses a factor followed by any binary operators that bind tighter than
+   * minBindingPower. All operators are left associative.
+   */
+  private ExprNode parseBinaryExpr(int minBindingPower) {
     ExprNode head = parseFactor();
-    while (lookahead(1).getType() == MJLexer.MULT) {
-      handleTokenTypeCheck(MJLexer.MULT);
-      ExprNode rightOperand = parseFactor();
-      head = new MultExpr(lookahead(1).getLine(), head, rightOperand);
-    }
-    return head;
-  }
-
-  public ExprNode parseExpr() {
-    ExprNode head = parseTerm();
-    while (Set.of(MJLexer.PLUS, MJLexer.MINUS, MJLexer.AND, MJLexer.LT)
-        .contains(lookahead(1).getType())) {
-      Token op = nextToken();
-      ExprNode rightOperand = parseTerm();
-      switch (op.getType()) {
+    while (bindingPower(lookaheadType(1)) > minBindingPower) {
+      int op = nextToken();
+      int line = previousLine();
+      ExprNode rightOperand = parseBinaryExpr(bindingPower(op));
+      switch (op) {
+        case MJLexer.AND:
+          head = new AndExpr(line, head, rightOperand);
+          break;
+        case MJLexer.LT:
+          head = new LtExpr(line, head, rightOperand);
+          break;
         case MJLexer.PLUS:
-          head = new AddExpr(op.getLine(), head, rightOperand);
+          head = new AddExpr(line, head, rightOperand);
           break;
         case MJLexer.MINUS:
-          head = new SubExpr(op.getLine(), head, rightOperand);
+          head = new SubExpr(line, head, rightOperand);
           break;
-        case MJLexer.AND:
-          head = new AndExpr(op.getLine(), head, rightOperand);
-          break;
-        case MJLexer.LT:
-          head = new LtExpr(op.getLine(), head, rightOperand);
+        case MJLexer.MULT:
+          head = new MultExpr(line, head, rightOperand);
           break;
       }
     }
     return head;
   }
+
+  public ExprNode parseExpr() {
+    return parseBinaryExpr(0);
+  }
 }
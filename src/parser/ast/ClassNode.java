@@ -3,7 +3,10 @@ package parser.ast;
 import java.util.List;
 import java.util.Optional;
 
+import codegen_regalloc.RegAllocCodegenVisitor;
 import codegen_simple.SimpleCodegenVisitor;
+import ir.IrBuilderVisitor;
+import optimization.AstRewriter;
 import semantics.BuilderVisitor;
 import semantics.TypesVisitor;
 
@@ -68,4 +71,16 @@ public class ClassNode {
         vis.visit(this);
     }
 
+    public void accept(RegAllocCodegenVisitor vis) {
+        vis.visit(this);
+    }
+
+    public void accept(IrBuilderVisitor vis) {
+        vis.visit(this);
+    }
+
+    public ClassNode accept(AstRewriter vis) {
+        return vis.visit(this);
+    }
+
 }
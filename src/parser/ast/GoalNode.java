@@ -2,7 +2,10 @@ package parser.ast;
 
 import java.util.List;
 
+import codegen_regalloc.RegAllocCodegenVisitor;
 import codegen_simple.SimpleCodegenVisitor;
+import ir.IrBuilderVisitor;
+import optimization.AstRewriter;
 import parser.ast.base_abs_classes.StatementNode;
 import semantics.BuilderVisitor;
 import semantics.TypesVisitor;
@@ -27,6 +30,14 @@ public class GoalNode {
         return line;
     }
 
+    public String getMainClassName() {
+        return mainClassName;
+    }
+
+    public String getArgName() {
+        return argName;
+    }
+
     public StatementNode getStatement() {
         return statement;
     }
@@ -57,4 +68,16 @@ public class GoalNode {
         vis.visit(this);
     }
 
+    public void accept(RegAllocCodegenVisitor vis) {
+        vis.visit(this);
+    }
+
+    public void accept(IrBuilderVisitor vis) {
+        vis.visit(this);
+    }
+
+    public GoalNode accept(AstRewriter vis) {
+        return vis.visit(this);
+    }
+
 }
@@ -2,7 +2,11 @@ package parser.ast;
 
 import java.util.List;
 
+import codegen_regalloc.LiveIntervalVisitor;
+import codegen_regalloc.RegAllocCodegenVisitor;
 import codegen_simple.SimpleCodegenVisitor;
+import ir.IrBuilderVisitor;
+import optimization.AstRewriter;
 import parser.ast.base_abs_classes.ExprNode;
 import parser.ast.base_abs_classes.StatementNode;
 import semantics.BuilderVisitor;
@@ -87,4 +91,20 @@ public class MethodDeclNode {
         vis.visit(this);
     }
 
+    public void accept(RegAllocCodegenVisitor vis) {
+        vis.visit(this);
+    }
+
+    public void accept(LiveIntervalVisitor vis) {
+        vis.visit(this);
+    }
+
+    public void accept(IrBuilderVisitor vis) {
+        vis.visit(this);
+    }
+
+    public MethodDeclNode accept(AstRewriter vis) {
+        return vis.visit(this);
+    }
+
 }
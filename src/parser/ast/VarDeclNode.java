@@ -1,6 +1,8 @@
 package parser.ast;
 
+import codegen_regalloc.RegAllocCodegenVisitor;
 import codegen_simple.SimpleCodegenVisitor;
+import ir.IrBuilderVisitor;
 import semantics.BuilderVisitor;
 import semantics.TypesVisitor;
 import semantics.types.Type;
@@ -46,4 +48,12 @@ public class VarDeclNode {
         vis.visit(this);
     }
 
+    public void accept(RegAllocCodegenVisitor vis) {
+        vis.visit(this);
+    }
+
+    public void accept(IrBuilderVisitor vis) {
+        vis.visit(this);
+    }
+
 }
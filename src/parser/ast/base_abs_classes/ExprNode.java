@@ -1,25 +1,49 @@
 package parser.ast.base_abs_classes;
 
+import codegen_regalloc.LiveIntervalVisitor;
+import codegen_regalloc.RegAllocCodegenVisitor;
 import codegen_simple.SimpleCodegenVisitor;
+import ir.IrBuilderVisitor;
+import ir.Value;
+import optimization.AstRewriter;
 import semantics.TypesVisitor;
 import semantics.types.Type;
 
 public abstract class ExprNode {
 
     protected int line;
+    // type annotated by TypesVisitor, null until the expression is type checked
+    protected Type type;
 
     public ExprNode(int line) {
         this.line = line;
+        this.type = null;
     }
 
     public int getLine() {
         return line;
     }
 
+    public Type getType() {
+        return type;
+    }
+
+    public void setType(Type type) {
+        this.type = type;
+    }
+
     public abstract String prettyString(String string);
 
     public abstract Type accept(TypesVisitor vis);
 
     public abstract void accept(SimpleCodegenVisitor vis);
 
+    public abstract void accept(RegAllocCodegenVisitor vis);
+
+    public abstract void accept(LiveIntervalVisitor vis);
+
+    public abstract Value accept(IrBuilderVisitor vis);
+
+    public abstract ExprNode accept(AstRewriter vis);
+
 }
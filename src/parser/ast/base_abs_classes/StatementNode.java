@@ -1,6 +1,10 @@
 package parser.ast.base_abs_classes;
 
+import codegen_regalloc.LiveIntervalVisitor;
+import codegen_regalloc.RegAllocCodegenVisitor;
 import codegen_simple.SimpleCodegenVisitor;
+import ir.IrBuilderVisitor;
+import optimization.AstRewriter;
 import semantics.TypesVisitor;
 
 public abstract class StatementNode {
@@ -21,4 +25,12 @@ public abstract class StatementNode {
 
     public abstract void accept(SimpleCodegenVisitor vis);
 
+    public abstract void accept(RegAllocCodegenVisitor vis);
+
+    public abstract void accept(LiveIntervalVisitor vis);
+
+    public abstract void accept(IrBuilderVisitor vis);
+
+    public abstract StatementNode accept(AstRewriter vis);
+
 }
@@ -3,7 +3,12 @@ package parser.ast.expression;
 import java.util.ArrayList;
 import java.util.List;
 
+import codegen_regalloc.LiveIntervalVisitor;
+import codegen_regalloc.RegAllocCodegenVisitor;
 import codegen_simple.SimpleCodegenVisitor;
+import ir.IrBuilderVisitor;
+import ir.Value;
+import optimization.AstRewriter;
 import parser.ast.base_abs_classes.ExprNode;
 import parser.ast.expression.literals.IdentifierExpr;
 import semantics.TypesVisitor;
@@ -51,4 +56,20 @@ public class MethodCallExpr extends ExprNode {
         vis.visit(this);
     }
 
+    @Override public void accept(RegAllocCodegenVisitor vis) {
+        vis.visit(this);
+    }
+
+    @Override public void accept(LiveIntervalVisitor vis) {
+        vis.visit(this);
+    }
+
+    @Override public Value accept(IrBuilderVisitor vis) {
+        return vis.visit(this);
+    }
+
+    @Override public ExprNode accept(AstRewriter vis) {
+        return vis.visit(this);
+    }
+
 }
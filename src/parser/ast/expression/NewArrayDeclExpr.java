@@ -1,6 +1,11 @@
 package parser.ast.expression;
 
+import codegen_regalloc.LiveIntervalVisitor;
+import codegen_regalloc.RegAllocCodegenVisitor;
 import codegen_simple.SimpleCodegenVisitor;
+import ir.IrBuilderVisitor;
+import ir.Value;
+import optimization.AstRewriter;
 import parser.ast.base_abs_classes.ExprNode;
 import semantics.TypesVisitor;
 import semantics.types.Type;
@@ -30,4 +35,20 @@ public class NewArrayDeclExpr extends ExprNode {
         vis.visit(this);
     }
 
+    @Override public void accept(RegAllocCodegenVisitor vis) {
+        vis.visit(this);
+    }
+
+    @Override public void accept(LiveIntervalVisitor vis) {
+        vis.visit(this);
+    }
+
+    @Override public Value accept(IrBuilderVisitor vis) {
+        return vis.visit(this);
+    }
+
+    @Override public ExprNode accept(AstRewriter vis) {
+        return vis.visit(this);
+    }
+
 }
@@ -0,0 +1,60 @@
+package parser.ast.expression.binary_expr;
+
+import codegen_regalloc.LiveIntervalVisitor;
+import codegen_regalloc.RegAllocCodegenVisitor;
+import codegen_simple.SimpleCodegenVisitor;
+import ir.IrBuilderVisitor;
+import ir.Value;
+import optimization.AstRewriter;
+import parser.ast.base_abs_classes.ExprNode;
+import parser.ast.expression.literals.IntExpr;
+import semantics.TypesVisitor;
+import semantics.types.Type;
+
+/**
+ * Left shift by a constant amount. It has no MiniJava syntax: the optimizer introduces it when
+ * strength-reducing a multiplication by a power of two.
+ */
+public class ShiftLeftExpr extends BinaryExpr {
+
+    private final int shiftAmount;
+
+    public ShiftLeftExpr(int line, ExprNode leftHandSide, int shiftAmount) {
+        super(line, leftHandSide, new IntExpr(line, Integer.toString(shiftAmount)));
+        this.shiftAmount = shiftAmount;
+    }
+
+    public int getShiftAmount() {
+        return shiftAmount;
+    }
+
+    @Override public String prettyString(String identation) {
+        return identation + "ShiftLeftExpr:" + "\n" + leftHandSide.prettyString(identation + "\t") + "\n"
+                + rightHandSide.prettyString(identation + "\t");
+    }
+
+    @Override public Type accept(TypesVisitor vis) {
+        return vis.visit(this);
+    }
+
+    @Override public void accept(SimpleCodegenVisitor vis) {
+        vis.visit(this);
+    }
+
+    @Override public void accept(RegAllocCodegenVisitor vis) {
+        vis.visit(this);
+    }
+
+    @Override public void accept(LiveIntervalVisitor vis) {
+        vis.visit(this);
+    }
+
+    @Override public Value accept(IrBuilderVisitor vis) {
+        return vis.visit(this);
+    }
+
+    @Override public ExprNode accept(AstRewriter vis) {
+        return vis.visit(this);
+    }
+
+}
@@ -3,7 +3,11 @@ package parser.ast.statement;
 import java.util.ArrayList;
 import java.util.List;
 
+import codegen_regalloc.LiveIntervalVisitor;
+import codegen_regalloc.RegAllocCodegenVisitor;
 import codegen_simple.SimpleCodegenVisitor;
+import ir.IrBuilderVisitor;
+import optimization.AstRewriter;
 import parser.ast.base_abs_classes.StatementNode;
 import semantics.TypesVisitor;
 
@@ -36,4 +40,20 @@ public class BlockStatement extends StatementNode {
         vis.visit(this);
     }
 
+    @Override public void accept(RegAllocCodegenVisitor vis) {
+        vis.visit(this);
+    }
+
+    @Override public void accept(LiveIntervalVisitor vis) {
+        vis.visit(this);
+    }
+
+    @Override public void accept(IrBuilderVisitor vis) {
+        vis.visit(this);
+    }
+
+    @Override public StatementNode accept(AstRewriter vis) {
+        return vis.visit(this);
+    }
+
 }
@@ -1,6 +1,10 @@
 package parser.ast.statement;
 
+import codegen_regalloc.LiveIntervalVisitor;
+import codegen_regalloc.RegAllocCodegenVisitor;
 import codegen_simple.SimpleCodegenVisitor;
+import ir.IrBuilderVisitor;
+import optimization.AstRewriter;
 import parser.ast.base_abs_classes.ExprNode;
 import parser.ast.base_abs_classes.StatementNode;
 import parser.ast.expression.literals.IdentifierExpr;
@@ -45,4 +49,20 @@ public class SetArrayIndexStatement extends StatementNode {
         vis.visit(this);
     }
 
+    @Override public void accept(RegAllocCodegenVisitor vis) {
+        vis.visit(this);
+    }
+
+    @Override public void accept(LiveIntervalVisitor vis) {
+        vis.visit(this);
+    }
+
+    @Override public void accept(IrBuilderVisitor vis) {
+        vis.visit(this);
+    }
+
+    @Override public StatementNode accept(AstRewriter vis) {
+        return vis.visit(this);
+    }
+
 }
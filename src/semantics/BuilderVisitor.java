@@ -52,11 +52,11 @@ public class BuilderVisitor {
 
   public Type getType(String className, int line) {
     if (className.equals("boolean")) {
-      return new BooleanType();
+      return BooleanType.INSTANCE;
     } else if (className.equals("int")) {
-      return new IntType();
+      return IntType.INSTANCE;
     } else if (className.equals("int[]")) {
-      return new IntArrayType();
+      return IntArrayType.INSTANCE;
     } else {
       return getClassType(className, line);
     }
@@ -85,13 +85,15 @@ public class BuilderVisitor {
               "Class \"%s\" used in line %d was not defined",
               className, pendingClasses.get(className).first()));
     }
+    ClassType.numberHierarchy(classSymbolTable.values());
+    for (ClassNode classNode : node.getClasses()) {
+      checkOverrides(classNode);
+    }
   }
 
   public void visit(ClassNode node) {
-    List<ClassType> allParents = new ArrayList<>();
     Optional<ClassType> extendsFrom = Optional.empty();
     if (node.getExtendsFrom().isPresent()) {
-      allParents = getClassType(node.getExtendsFrom().get(), node.getLine()).getAllParents();
       extendsFrom = Optional.of(getClassType(node.getExtendsFrom().get(), node.getLine()));
     }
     List<Pair<String, Type>> fieldsSorted = new ArrayList<>();
@@ -103,39 +105,48 @@ public class BuilderVisitor {
       fieldsSorted.add(varDecl.accept(this));
     }
     for (MethodDeclNode methodDecl : node.getMethodDecls()) {
-      Pair<String, MethodType> methodPair = methodDecl.accept(this);
+      methodsSorted.add(methodDecl.accept(this));
+    }
+    thisClass.update();
+  }
+
+  /**
+   * Checks the methods of the class against the methods they override. Checking against the
+   * closest overridden method is enough, as that one was checked against the methods it overrides.
+   */
+  private void checkOverrides(ClassNode node) {
+    ClassType thisClass = classSymbolTable.get(node.getClassName());
+    if (!thisClass.getExtendsFrom().isPresent()) {
+      return;
+    }
+    ClassType parent = thisClass.getExtendsFrom().get();
+    for (Pair<String, MethodType> methodPair : thisClass.getMethodsSorted()) {
       MethodType currentMethod = methodPair.second();
-      methodsSorted.add(methodPair);
-      for (ClassType parent : allParents) {
-        String methodName = methodDecl.getMethodName();
-        Map<String, MethodType> parentMethods = parent.getMethods();
-        if (parentMethods.containsKey(methodDecl.getMethodName())) {
-          MethodType methodFromParent = parentMethods.get(methodName);
-          assert methodFromParent.getReturnType().equals(currentMethod.getReturnType())
-              : String.format(
-                  "Overwritten method in %d should have the same return type as the method in parent class",
-                  node.getLine());
-          Iterator<Pair<String, Type>> argumentsCurrentMethodIter =
-              currentMethod.getArgumentsSorted().iterator();
-          Iterator<Pair<String, Type>> argumentsMethodFromParentIter =
-              methodFromParent.getArgumentsSorted().iterator();
-          while (argumentsCurrentMethodIter.hasNext()) {
-            assert argumentsCurrentMethodIter
-                    .next()
-                    .second()
-                    .equals(argumentsMethodFromParentIter.next().second())
-                : String.format(
-                    "Overwritten method in %d should be called with the same parameter types as the method in parent class",
-                    node.getLine());
-          }
-          assert !(argumentsMethodFromParentIter.hasNext())
-              : String.format(
-                  "Number of arguments mismatch in overwritten method from line %d",
-                  node.getLine());
-        }
+      MethodType methodFromParent = parent.lookupMethod(methodPair.first());
+      if (methodFromParent == null) {
+        continue;
       }
+      assert methodFromParent.getReturnType().equals(currentMethod.getReturnType())
+          : String.format(
+              "Overwritten method in %d should have the same return type as the method in parent class",
+              node.getLine());
+      Iterator<Pair<String, Type>> argumentsCurrentMethodIter =
+          currentMethod.getArgumentsSorted().iterator();
+      Iterator<Pair<String, Type>> argumentsMethodFromParentIter =
+          methodFromParent.getArgumentsSorted().iterator();
+      while (argumentsCurrentMethodIter.hasNext()) {
+        // advanced outside of the assert, which isn't evaluated when assertions are disabled
+        Type argumentType = argumentsCurrentMethodIter.next().second();
+        assert argumentsMethodFromParentIter.hasNext()
+                && argumentType.equals(argumentsMethodFromParentIter.next().second())
+            : String.format(
+                "Overwritten method in %d should be called with the same parameter types as the method in parent class",
+                node.getLine());
+      }
+      assert !(argumentsMethodFromParentIter.hasNext())
+          : String.format(
+              "Number of arguments mismatch in overwritten method from line %d", node.getLine());
     }
-    thisClass.update();
   }
 
   public Pair<String, Type> visit(VarDeclNode node) {
@@ -3,6 +3,8 @@ package semantics;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
 
 import parser.ast.ClassNode;
 import parser.ast.GoalNode;
@@ -21,6 +23,7 @@ import parser.ast.expression.binary_expr.AndExpr;
 import parser.ast.expression.binary_expr.DotExpr;
 import parser.ast.expression.binary_expr.LtExpr;
 import parser.ast.expression.binary_expr.MultExpr;
+import parser.ast.expression.binary_expr.ShiftLeftExpr;
 import parser.ast.expression.binary_expr.SubExpr;
 import parser.ast.expression.literals.IdentifierExpr;
 import parser.ast.expression.literals.IntExpr;
@@ -39,6 +42,7 @@ import semantics.types.Type;
 import semantics.types.base_types.BooleanType;
 import semantics.types.base_types.IntArrayType;
 import semantics.types.base_types.IntType;
+import utils.OrderedTasks;
 import utils.Pair;
 
 public class TypesVisitor {
@@ -46,19 +50,51 @@ public class TypesVisitor {
   private Optional<ClassType> currentClass;
   private Optional<MethodType> currentMethod;
   private BuilderVisitor builderVis;
+  private Optional<ForkJoinPool> pool;
+  private Predicate<ClassNode> unchanged;
 
   public TypesVisitor(BuilderVisitor builderVis) {
+    this(builderVis, Optional.empty());
+  }
+
+  /**
+   * With a pool, the classes are checked in parallel, each by its own visitor (the symbol table
+   * is only read once BuilderVisitor is done).
+   */
+  public TypesVisitor(BuilderVisitor builderVis, Optional<ForkJoinPool> pool) {
+    this(builderVis, pool, classNode -> false);
+  }
+
+  /**
+   * The classes that are unchanged since an earlier compilation checked them (neither their body
+   * nor the declarations they depend on) aren't checked again.
+   */
+  public TypesVisitor(
+      BuilderVisitor builderVis, Optional<ForkJoinPool> pool, Predicate<ClassNode> unchanged) {
     this.currentClass = Optional.empty();
     this.currentMethod = Optional.empty();
     this.builderVis = builderVis;
+    this.pool = pool;
+    this.unchanged = unchanged;
+  }
+
+  /** A visitor over the same symbol table with its own current class and method. */
+  public TypesVisitor fork() {
+    return new TypesVisitor(builderVis);
   }
 
   public Map<String, ClassType> getClassSymbolTable() {
     return builderVis.getClassSymbolTable();
   }
 
+  /** The class declared with this name (unlike BuilderVisitor's, never declares a pending one). */
   public ClassType getClassType(String className, int line) {
-    return builderVis.getClassType(className, line);
+    ClassType classType = builderVis.getClassSymbolTable().get(className);
+    if (classType == null) {
+      throw new AssertionError(
+          String.format("Class \"%s\" used in line %d was not defined", className, line));
+    }
+    return classType;
   }
 
   private Type getVarType(String name, int line) {
@@ -70,10 +106,9 @@ public class TypesVisitor {
       }
     }
     if (currentClass.isPresent()) {
-      for (ClassType classType : currentClass.get().getAllParents()) {
-        if (classType.getFields().containsKey(name)) {
-          return classType.getFields().get(name);
-        }
+      Type fieldType = currentClass.get().lookupField(name);
+      if (fieldType != null) {
+        return fieldType;
       }
     }
     throw new AssertionError(
@@ -81,7 +116,7 @@ public class TypesVisitor {
   }
 
   public void setCurrentClass(ClassNode node) {
-    currentClass = Optional.of(builderVis.getClassType(node.getClassName(), node.getLine()));
+    currentClass = Optional.of(getClassType(node.getClassName(), node.getLine()));
   }
 
   public Optional<ClassType> getCurrentClass() {
@@ -89,11 +124,10 @@ public class TypesVisitor {
   }
 
   public void setCurrentMethod(MethodDeclNode node) {
-    for (ClassType classType : currentClass.get().getAllParents()) {
-      if (classType.getMethods().containsKey(node.getMethodName())) {
-        currentMethod = Optional.of(classType.getMethods().get(node.getMethodName()));
-        return;
-      }
+    MethodType method = currentClass.get().lookupMethod(node.getMethodName());
+    if (method != null) {
+      currentMethod = Optional.of(method);
+      return;
     }
     throw new AssertionError(
         String.format(
@@ -105,24 +139,38 @@ public class TypesVisitor {
     return currentMethod;
   }
 
+  private static Type annotate(ExprNode expr, Type type) {
+    expr.setType(type);
+    return type;
+  }
+
+  /**
+   * Returns the type of an expression, as annotated by the type checking pass. Expressions created
+   * after it (e.g. by an optimization) are type checked on demand, in the current class and method.
+   */
+  public Type typeOf(ExprNode expr) {
+    Type type = expr.getType();
+    return type != null ? type : expr.accept(this);
+  }
+
   public Type visit(IdentifierExpr expr) {
-    return getVarType(expr.getIdentifierName(), expr.getLine());
+    return annotate(expr, getVarType(expr.getIdentifierName(), expr.getLine()));
   }
 
   public Type visit(IntExpr expr) {
-    return new IntType();
+    return annotate(expr, IntType.INSTANCE);
   }
 
   public Type visit(FalseExpr expr) {
-    return new BooleanType();
+    return annotate(expr, BooleanType.INSTANCE);
   }
 
   public Type visit(TrueExpr expr) {
-    return new BooleanType();
+    return annotate(expr, BooleanType.INSTANCE);
   }
 
   public Type visit(ThisExpr expr) {
-    return currentClass.get();
+    return annotate(expr, currentClass.get());
   }
 
   public Type visit(AddExpr expr) {
@@ -130,7 +178,7 @@ public class TypesVisitor {
     Type rightHandSide = expr.getRightHandSide().accept(this);
     assert leftHandSide.isIntType() && rightHandSide.isIntType()
         : String.format("Type mismatch in line %d", expr.getLine());
-    return new IntType();
+    return annotate(expr, IntType.INSTANCE);
   }
 
   public Type visit(AndExpr expr) {
@@ -138,7 +186,7 @@ public class TypesVisitor {
     Type rightHandSide = expr.getRightHandSide().accept(this);
     assert leftHandSide.isBooleanType() && rightHandSide.isBooleanType()
         : String.format("Type mismatch in line %d", expr.getLine());
-    return new BooleanType();
+    return annotate(expr, BooleanType.INSTANCE);
   }
 
   public Type visit(DotExpr expr) {
@@ -147,12 +195,14 @@ public class TypesVisitor {
     String rightHandSideName = rightHandSide.getIdentifierName();
     Type leftHandSideType = leftHandSide.accept(this);
     assert leftHandSideType.isClassType() : "Internal error in DotExpr";
-    ClassType classType = (ClassType) leftHandSideType;
-    assert classType.getFields().containsKey(rightHandSideName)
-        : String.format(
-            "Method \"%s\" from line %d not defined in its class",
-            rightHandSideName, expr.getLine());
-    return classType.getFields().get(rightHandSideName);
+    Type fieldType = ((ClassType) leftHandSideType).lookupField(rightHandSideName);
+    if (fieldType != null) {
+      return annotate(expr, fieldType);
+    }
+    throw new AssertionError(
+        String.format(
+            "Field \"%s\" from line %d not defined in its class",
+            rightHandSideName, expr.getLine()));
   }
 
   public Type visit(LtExpr expr) {
@@ -160,7 +210,7 @@ public class TypesVisitor {
     Type rightHandSide = expr.getRightHandSide().accept(this);
     assert leftHandSide.isIntType() && rightHandSide.isIntType()
         : String.format("Type mismatch in line %d", expr.getLine());
-    return new BooleanType();
+    return annotate(expr, BooleanType.INSTANCE);
   }
 
   public Type visit(MultExpr expr) {
@@ -168,7 +218,13 @@ public class TypesVisitor {
     Type rightHandSide = expr.getRightHandSide().accept(this);
     assert leftHandSide.isIntType() && rightHandSide.isIntType()
         : String.format("Type mismatch in line %d", expr.getLine());
-    return new IntType();
+    return annotate(expr, IntType.INSTANCE);
+  }
+
+  public Type visit(ShiftLeftExpr expr) {
+    Type leftHandSide = expr.getLeftHandSide().accept(this);
+    assert leftHandSide.isIntType() : String.format("Type mismatch in line %d", expr.getLine());
+    return annotate(expr, IntType.INSTANCE);
   }
 
   public Type visit(SubExpr expr) {
@@ -176,7 +232,7 @@ public class TypesVisitor {
     Type rightHandSide = expr.getRightHandSide().accept(this);
     assert leftHandSide.isIntType() && rightHandSide.isIntType()
         : String.format("Type mismatch in line %d", expr.getLine());
-    return new IntType();
+    return annotate(expr, IntType.INSTANCE);
   }
 
   public Type visit(ArrayAccessExpr expr) {
@@ -184,14 +240,14 @@ public class TypesVisitor {
     Type index = expr.getIndex().accept(this);
     assert arrayType.isIntArrayType() && index.isIntType()
         : String.format("Expression in line %d does not define an array", expr.getLine());
-    return new IntType();
+    return annotate(expr, IntType.INSTANCE);
   }
 
   public Type visit(LengthExpr expr) {
     Type arrayType = expr.getLenExpr().accept(this);
     assert arrayType.isIntArrayType()
         : String.format("Expression in line %d does not define an array", expr.getLine());
-    return new IntType();
+    return annotate(expr, IntType.INSTANCE);
   }
 
   public Type visit(MethodCallExpr expr) {
@@ -199,12 +255,8 @@ public class TypesVisitor {
     assert objectSeqExpr.isClassType()
         : String.format("Predicate defined in line %d doesn't define a class", expr.getLine());
     String methodName = expr.getMethodNameExpr().getIdentifierName();
-    Optional<MethodType> method = Optional.empty();
-    for (ClassType classType : ((ClassType) objectSeqExpr).getAllParents()) {
-      if (classType.getMethods().containsKey(methodName)) {
-        method = Optional.of(classType.getMethods().get(methodName));
-      }
-    }
+    Optional<MethodType> method =
+        Optional.ofNullable(((ClassType) objectSeqExpr).lookupMethod(methodName));
     assert method.isPresent()
         : String.format(
             "Method \"%s\" used in line %d was not defined in its class or parent classes",
@@ -228,23 +280,23 @@ public class TypesVisitor {
     }
     assert !(argListIter.hasNext())
         : String.format("Number of arguments mismatch in method call in line", expr.getLine());
-    return method.get().getReturnType();
+    return annotate(expr, method.get().getReturnType());
   }
 
   public Type visit(NewArrayDeclExpr expr) {
     Type sizeType = expr.getSize().accept(this);
     assert sizeType.isIntType() : String.format("Type mismatch in line %d", expr.getLine());
-    return new IntArrayType();
+    return annotate(expr, IntArrayType.INSTANCE);
   }
 
   public Type visit(NewObjectDeclExpr expr) {
-    return builderVis.getClassType(expr.getObjectName(), expr.getLine());
+    return annotate(expr, getClassType(expr.getObjectName(), expr.getLine()));
   }
 
   public Type visit(NotExpr expr) {
     Type argument = expr.getArgument().accept(this);
     assert argument.isBooleanType() : String.format("Type mismatch in line %d", expr.getLine());
-    return new BooleanType();
+    return annotate(expr, BooleanType.INSTANCE);
   }
 
   public void visit(BlockStatement statement) {
@@ -270,9 +322,12 @@ public class TypesVisitor {
     Type arrayVariableType = statement.getVarAssigned().accept(this);
     assert arrayVariableType.isIntArrayType()
         : String.format("Type mismatch in line %d", statement.getLine());
-    assert statement.getIndex().accept(this).isIntType()
-        : String.format("Type mismatch in line %d", statement.getLine());
-    assert statement.getRightHandSide().accept(this).isIntType()
+    // the operands are checked outside of the asserts, so they're annotated even when assertions
+    // are disabled
+    Type indexType = statement.getIndex().accept(this);
+    assert indexType.isIntType() : String.format("Type mismatch in line %d", statement.getLine());
+    Type rightHandSideType = statement.getRightHandSide().accept(this);
+    assert rightHandSideType.isIntType()
         : String.format("Type mismatch in line %d", statement.getLine());
   }
 
@@ -310,9 +365,16 @@ public class TypesVisitor {
 
   public void visit(GoalNode node) {
     node.getStatement().accept(this);
-    for (ClassNode classNode : node.getClasses()) {
-      classNode.accept(this);
-    }
+    OrderedTasks.forEachInOrder(
+        pool,
+        node.getClasses(),
+        classNode -> {
+          if (!unchanged.test(classNode)) {
+            classNode.accept(pool.isPresent() ? fork() : this);
+          }
+          return classNode;
+        },
+        classNode -> {});
   }
 
   public void visit(MethodDeclNode node) {
@@ -323,9 +385,8 @@ public class TypesVisitor {
     for (StatementNode statement : node.getStatements()) {
       statement.accept(this);
     }
-    assert builderVis
-            .getType(node.getMethodType(), node.getLine())
-            .equals(node.getReturnExpr().accept(this))
+    Type returnType = node.getReturnExpr().accept(this);
+    assert currentMethod.get().getReturnType().equals(returnType)
         : String.format("Type mismatch in line %d", node.getLine());
   }
 
@@ -1,10 +1,15 @@
 package semantics.types;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 import utils.Pair;
 
@@ -16,6 +21,14 @@ public class ClassType extends Type {
     private Map<String, Type> fields;
     private List<Pair<String, MethodType>> methodsSorted;
     private Map<String, MethodType> methods;
+    // interval of the class in a preorder numbering of the class forest: a class is a subclass of
+    // another iff its interval is nested in the other's, -1 until numberHierarchy runs
+    private int preorder;
+    private int lastDescendant;
+    // fields and methods looked up by name (with the class declaring them), own or inherited;
+    // concurrent as classes are type checked and compiled in parallel
+    private Map<String, Optional<ClassType>> fieldOwners;
+    private Map<String, Optional<ClassType>> methodOwners;
 
     public ClassType(String className, Optional<ClassType> extendsFrom, List<Pair<String, Type>> fieldsSorted,
             List<Pair<String, MethodType>> methodsSorted) {
@@ -31,6 +44,14 @@ public class ClassType extends Type {
         for (Pair<String, MethodType> methodPair : methodsSorted) {
             methods.put(methodPair.first(), methodPair.second());
         }
+        resetHierarchy();
+    }
+
+    private void resetHierarchy() {
+        preorder = -1;
+        lastDescendant = -1;
+        fieldOwners = new ConcurrentHashMap<>();
+        methodOwners = new ConcurrentHashMap<>();
     }
 
     public String getClassName() {
@@ -68,8 +89,99 @@ public class ClassType extends Type {
         return allParents;
     }
 
+    /**
+     * Whether otherClassType is this class or one of its parents. Constant time once the
+     * hierarchy is numbered.
+     */
     public boolean containsClassAsParent(ClassType otherClassType) {
-        return getAllParents().contains(otherClassType);
+        if (preorder == -1 || otherClassType.preorder == -1) {
+            return getAllParents().contains(otherClassType);
+        }
+        return otherClassType.preorder <= preorder && lastDescendant <= otherClassType.lastDescendant;
+    }
+
+    /**
+     * The class declaring the field visible by this name from this class (a field shadows the
+     * fields of its parents), or null. The result is remembered in every class walked through, so
+     * a name is only looked up once per class.
+     */
+    public ClassType getFieldOwner(String fieldName) {
+        return getOwner(fieldName, true).orElse(null);
+    }
+
+    /** The class declaring the method called by this name on this class, or null. */
+    public ClassType getMethodOwner(String methodName) {
+        return getOwner(methodName, false).orElse(null);
+    }
+
+    /** The type of the field visible by this name from this class, or null. */
+    public Type lookupField(String fieldName) {
+        ClassType owner = getFieldOwner(fieldName);
+        return owner == null ? null : owner.fields.get(fieldName);
+    }
+
+    /** The method called by this name on this class, or null. */
+    public MethodType lookupMethod(String methodName) {
+        ClassType owner = getMethodOwner(methodName);
+        return owner == null ? null : owner.methods.get(methodName);
+    }
+
+    private Optional<ClassType> getOwner(String name, boolean isField) {
+        List<ClassType> walked = new ArrayList<>();
+        Optional<ClassType> owner = Optional.empty();
+        ClassType currentClass = this;
+        while (currentClass != null) {
+            Map<String, Optional<ClassType>> owners =
+                    isField ? currentClass.fieldOwners : currentClass.methodOwners;
+            if (owners.containsKey(name)) {
+                owner = owners.get(name);
+                break;
+            }
+            walked.add(currentClass);
+            if ((isField ? currentClass.fields : currentClass.methods).containsKey(name)) {
+                owner = Optional.of(currentClass);
+                break;
+            }
+            currentClass = currentClass.extendsFrom.orElse(null);
+        }
+        for (ClassType walkedClass : walked) {
+            (isField ? walkedClass.fieldOwners : walkedClass.methodOwners).put(name, owner);
+        }
+        return owner;
+    }
+
+    /**
+     * Numbers the classes (all of them, as parents must be in the collection) in preorder, so
+     * that subclass checks are constant time. Must be called once the classes are complete.
+     */
+    public static void numberHierarchy(Collection<ClassType> classTypes) {
+        Map<ClassType, List<ClassType>> children = new HashMap<>();
+        List<ClassType> roots = new ArrayList<>();
+        for (ClassType classType : classTypes) {
+            classType.resetHierarchy();
+            if (classType.extendsFrom.isPresent()) {
+                children.computeIfAbsent(classType.extendsFrom.get(), key -> new ArrayList<>()).add(classType);
+            } else {
+                roots.add(classType);
+            }
+        }
+        int counter = 0;
+        // explicit stack: hierarchies can be deeper than the call stack
+        Deque<Pair<ClassType, Iterator<ClassType>>> stack = new ArrayDeque<>();
+        for (ClassType root : roots) {
+            root.preorder = counter++;
+            stack.push(new Pair<>(root, children.getOrDefault(root, List.of()).iterator()));
+            while (!stack.isEmpty()) {
+                Iterator<ClassType> childrenIter = stack.peek().second();
+                if (childrenIter.hasNext()) {
+                    ClassType child = childrenIter.next();
+                    child.preorder = counter++;
+                    stack.push(new Pair<>(child, children.getOrDefault(child, List.of()).iterator()));
+                } else {
+                    stack.pop().first().lastDescendant = counter - 1;
+                }
+            }
+        }
     }
 
     public void copy(ClassType otherClassType) {
@@ -78,6 +190,7 @@ public class ClassType extends Type {
         fields = otherClassType.fields;
         methodsSorted = otherClassType.methodsSorted;
         methods = otherClassType.methods;
+        resetHierarchy();
     }
 
     public void update() {
@@ -87,6 +200,7 @@ public class ClassType extends Type {
         for (Pair<String, MethodType> methodPair : methodsSorted) {
             methods.put(methodPair.first(), methodPair.second());
         }
+        resetHierarchy();
     }
 
     @Override public boolean isClassType() {
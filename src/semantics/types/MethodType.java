@@ -13,19 +13,28 @@ public class MethodType extends Type {
     private final Map<String, Type> arguments;
     private List<Pair<String, Type>> varsDeclSorted;
     private final Map<String, Type> varsDecl;
+    // positions in argumentsSorted and varsDeclSorted
+    private final Map<String, Integer> argumentIndices;
+    private final Map<String, Integer> varDeclIndices;
 
     public MethodType(Type returnType, List<Pair<String, Type>> argumentsSorted,
             List<Pair<String, Type>> varsDeclSorted) {
         this.returnType = returnType;
         this.argumentsSorted = argumentsSorted;
         arguments = new HashMap<>();
-        for (Pair<String, Type> fieldPair : argumentsSorted) {
+        argumentIndices = new HashMap<>();
+        for (int i = 0; i < argumentsSorted.size(); ++i) {
+            Pair<String, Type> fieldPair = argumentsSorted.get(i);
             arguments.put(fieldPair.first(), fieldPair.second());
+            argumentIndices.putIfAbsent(fieldPair.first(), i);
         }
         this.varsDeclSorted = varsDeclSorted;
         varsDecl = new HashMap<>();
-        for (Pair<String, Type> methodPair : varsDeclSorted) {
+        varDeclIndices = new HashMap<>();
+        for (int i = 0; i < varsDeclSorted.size(); ++i) {
+            Pair<String, Type> methodPair = varsDeclSorted.get(i);
             varsDecl.put(methodPair.first(), methodPair.second());
+            varDeclIndices.putIfAbsent(methodPair.first(), i);
         }
     }
 
@@ -59,6 +68,16 @@ public class MethodType extends Type {
         return varsDecl;
     }
 
+    /** Position of the argument in getArgumentsSorted(), -1 if there's no such argument. */
+    public int getArgumentIndex(String name) {
+        return argumentIndices.getOrDefault(name, -1);
+    }
+
+    /** Position of the local variable in getVarsDeclSorted(), -1 if there's no such variable. */
+    public int getVarDeclIndex(String name) {
+        return varDeclIndices.getOrDefault(name, -1);
+    }
+
     @Override public boolean isMethodType() {
         return true;
     }
@@ -4,6 +4,11 @@ import semantics.types.Type;
 
 public class BooleanType extends Type {
 
+    public static final BooleanType INSTANCE = new BooleanType();
+
+    private BooleanType() {
+    }
+
     @Override public boolean equals(Object otherType) {
         return otherType instanceof BooleanType;
     }
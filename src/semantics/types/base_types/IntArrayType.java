@@ -4,6 +4,11 @@ import semantics.types.Type;
 
 public class IntArrayType extends Type {
 
+    public static final IntArrayType INSTANCE = new IntArrayType();
+
+    private IntArrayType() {
+    }
+
     @Override public boolean equals(Object otherType) {
         return otherType instanceof IntArrayType;
     }
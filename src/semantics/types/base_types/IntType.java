@@ -4,6 +4,11 @@ import semantics.types.Type;
 
 public class IntType extends Type {
 
+    public static final IntType INSTANCE = new IntType();
+
+    private IntType() {
+    }
+
     @Override public boolean equals(Object otherType) {
         return otherType instanceof IntType;
     }
@@ -0,0 +1,51 @@
+package utils;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs independent work items (e.g. one per class) on a pool, handing the results to a consumer in
+ * the order of the items, so the output doesn't depend on the scheduling. Without a pool, the
+ * items run one after the other on the calling thread.
+ *
+ * <p>At most TASKS_PER_THREAD times the parallelism of the pool items are submitted and not
+ * consumed yet, so that the results waiting for a slow item don't pile up (e.g. the assembly of
+ * every class after it).
+ */
+public class OrderedTasks {
+
+  public static final int TASKS_PER_THREAD = 2;
+
+  private OrderedTasks() {}
+
+  /**
+   * Applies work to every item and passes the results to consumer, in order, on the calling
+   * thread. An exception thrown by the work for an item is rethrown once its turn comes.
+   */
+  public static <T, R> void forEachInOrder(
+      Optional<ForkJoinPool> pool, List<T> items, Function<T, R> work, Consumer<R> consumer) {
+    if (!pool.isPresent()) {
+      for (T item : items) {
+        consumer.accept(work.apply(item));
+      }
+      return;
+    }
+    int window = TASKS_PER_THREAD * pool.get().getParallelism();
+    Deque<ForkJoinTask<R>> tasks = new ArrayDeque<>(window);
+    for (T item : items) {
+      if (tasks.size() == window) {
+        consumer.accept(tasks.removeFirst().join());
+      }
+      tasks.addLast(pool.get().submit(() -> work.apply(item)));
+    }
+    while (!tasks.isEmpty()) {
+      consumer.accept(tasks.removeFirst().join());
+    }
+  }
+}
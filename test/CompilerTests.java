@@ -1,18 +1,70 @@
+import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 import org.antlr.v4.runtime.CharStreams;
+import org.junit.Assert;
 import org.junit.Test;
 
 import antlr_lexer.MJLexer;
+import codegen_common.AllocationSites;
+import codegen_common.AssemblyWriter;
+import codegen_common.CodegenOptions;
+import codegen_common.NativeRuntime;
+import codegen_common.ObjectLayout;
+import codegen_regalloc.RegAllocCodegenVisitor;
 import codegen_simple.SimpleCodegenVisitor;
+import driver.BatchCompiler;
+import driver.CompileCache;
+import driver.CompileClient;
+import driver.CompileOptions;
+import driver.CompileServer;
+import driver.Compiler;
+import driver.NativeBuilder;
+import ir.IrBuilderVisitor;
+import ir.IrVerifier;
+import lexer.AntlrTokenSource;
+import lexer.MJScanner;
+import lexer.Tokens;
+import optimization.ClassHierarchyAnalysis;
+import optimization.ConstantFoldingVisitor;
+import optimization.ControlFlowSimplifier;
+import optimization.InliningVisitor;
 import parser.MJParser;
 import parser.ast.GoalNode;
+import parser.ast.base_abs_classes.ExprNode;
+import parser.ast.base_abs_classes.StatementNode;
+import parser.ast.expression.binary_expr.AddExpr;
+import parser.ast.expression.binary_expr.AndExpr;
+import parser.ast.expression.binary_expr.LtExpr;
+import parser.ast.expression.binary_expr.MultExpr;
+import parser.ast.expression.literals.IntExpr;
+import parser.ast.statement.SetVariableStatement;
 import semantics.BuilderVisitor;
 import semantics.TypesVisitor;
+import semantics.types.ClassType;
+import semantics.types.MethodType;
+import semantics.types.base_types.IntType;
+import utils.OrderedTasks;
+import utils.Pair;
 
 public class CompilerTests {
   // All of the following test files were taken form
@@ -145,4 +197,1009 @@ public class CompilerTests {
     SimpleCodegenVisitor codegenVis = new SimpleCodegenVisitor(typesVis);
     goal.accept(codegenVis);
   }
+
+  @Test
+  public void TestRegAllocBackend() throws IOException {
+    String simpleProgram =
+        new String(Files.readAllBytes(Paths.get("test/test_files/tree_visitor.mjava")));
+    InputStream targetStream = new ByteArrayInputStream(simpleProgram.getBytes());
+    MJLexer mjLexer = new MJLexer(CharStreams.fromStream(targetStream));
+    MJParser mjParser = new MJParser(mjLexer);
+    GoalNode goal = mjParser.parseGoal();
+    BuilderVisitor builderVis = new BuilderVisitor();
+    goal.accept(builderVis);
+    TypesVisitor typesVis = new TypesVisitor(builderVis);
+    goal.accept(typesVis);
+    RegAllocCodegenVisitor codegenVis = new RegAllocCodegenVisitor(typesVis);
+    goal.accept(codegenVis);
+  }
+
+  @Test
+  public void TestSsaIr() throws IOException {
+    String simpleProgram =
+        new String(Files.readAllBytes(Paths.get("test/test_files/binary_tree.mjava")));
+    InputStream targetStream = new ByteArrayInputStream(simpleProgram.getBytes());
+    MJLexer mjLexer = new MJLexer(CharStreams.fromStream(targetStream));
+    MJParser mjParser = new MJParser(mjLexer);
+    GoalNode goal = mjParser.parseGoal();
+    BuilderVisitor builderVis = new BuilderVisitor();
+    goal.accept(builderVis);
+    TypesVisitor typesVis = new TypesVisitor(builderVis);
+    goal.accept(typesVis);
+    IrBuilderVisitor irBuilderVis = new IrBuilderVisitor(typesVis);
+    goal.accept(irBuilderVis);
+    IrVerifier.verify(irBuilderVis.getProgram());
+  }
+
+  @Test
+  public void TestConstantFolding() throws IOException {
+    String simpleProgram =
+        new String(Files.readAllBytes(Paths.get("test/test_files/constant_folding.mjava")));
+    InputStream targetStream = new ByteArrayInputStream(simpleProgram.getBytes());
+    MJLexer mjLexer = new MJLexer(CharStreams.fromStream(targetStream));
+    MJParser mjParser = new MJParser(mjLexer);
+    GoalNode goal = mjParser.parseGoal();
+    BuilderVisitor builderVis = new BuilderVisitor();
+    goal.accept(builderVis);
+    TypesVisitor typesVis = new TypesVisitor(builderVis);
+    goal.accept(typesVis);
+    ConstantFoldingVisitor foldingVis = new ConstantFoldingVisitor();
+    goal = goal.accept(foldingVis);
+    Assert.assertEquals(19, foldingVis.getRewriteCount());
+    // a second run has nothing left to simplify
+    ConstantFoldingVisitor secondFoldingVis = new ConstantFoldingVisitor();
+    goal.accept(secondFoldingVis);
+    Assert.assertEquals(0, secondFoldingVis.getRewriteCount());
+    SimpleCodegenVisitor codegenVis = new SimpleCodegenVisitor(typesVis);
+    goal.accept(codegenVis);
+  }
+
+  @Test
+  public void TestControlFlowSimplification() throws IOException {
+    String simpleProgram =
+        new String(Files.readAllBytes(Paths.get("test/test_files/dead_code.mjava")));
+    InputStream targetStream = new ByteArrayInputStream(simpleProgram.getBytes());
+    MJLexer mjLexer = new MJLexer(CharStreams.fromStream(targetStream));
+    MJParser mjParser = new MJParser(mjLexer);
+    GoalNode goal = mjParser.parseGoal();
+    BuilderVisitor builderVis = new BuilderVisitor();
+    goal.accept(builderVis);
+    TypesVisitor typesVis = new TypesVisitor(builderVis);
+    goal.accept(typesVis);
+    goal = goal.accept(new ConstantFoldingVisitor());
+    ControlFlowSimplifier simplifierVis = new ControlFlowSimplifier();
+    goal = goal.accept(simplifierVis);
+    Assert.assertEquals(13, simplifierVis.getRewriteCount());
+    // the dead loop, the constant ifs, the empty if and all nested blocks are gone
+    Assert.assertEquals(
+        7, goal.getClasses().get(0).getMethodDecls().get(0).getStatements().size());
+    SimpleCodegenVisitor codegenVis = new SimpleCodegenVisitor(typesVis);
+    goal.accept(codegenVis);
+  }
+
+  @Test
+  public void TestDevirtualization() throws IOException {
+    String simpleProgram =
+        new String(Files.readAllBytes(Paths.get("test/test_files/tree_visitor.mjava")));
+    InputStream targetStream = new ByteArrayInputStream(simpleProgram.getBytes());
+    MJLexer mjLexer = new MJLexer(CharStreams.fromStream(targetStream));
+    MJParser mjParser = new MJParser(mjLexer);
+    GoalNode goal = mjParser.parseGoal();
+    BuilderVisitor builderVis = new BuilderVisitor();
+    goal.accept(builderVis);
+    TypesVisitor typesVis = new TypesVisitor(builderVis);
+    goal.accept(typesVis);
+    ClassHierarchyAnalysis hierarchyAnalysis =
+        new ClassHierarchyAnalysis(builderVis.getClassSymbolTable());
+    // MyVisitor overrides Visitor's visit
+    Assert.assertEquals(Optional.empty(), hierarchyAnalysis.getUniqueTarget("Visitor", "visit"));
+    Assert.assertEquals(
+        Optional.of("MyVisitor$visit"), hierarchyAnalysis.getUniqueTarget("MyVisitor", "visit"));
+    SimpleCodegenVisitor codegenVis =
+        new SimpleCodegenVisitor(
+            typesVis,
+            new AssemblyWriter(new StringWriter()),
+            CodegenOptions.DEFAULTS.withHierarchyAnalysis(Optional.of(hierarchyAnalysis)));
+    goal.accept(codegenVis);
+    Assert.assertEquals(91, hierarchyAnalysis.getDevirtualizedCallSites());
+    Assert.assertEquals(1, hierarchyAnalysis.getVirtualCallSites());
+  }
+
+  @Test
+  public void TestInlining() throws IOException {
+    String simpleProgram =
+        new String(Files.readAllBytes(Paths.get("test/test_files/linked_list.mjava")));
+    InputStream targetStream = new ByteArrayInputStream(simpleProgram.getBytes());
+    MJLexer mjLexer = new MJLexer(CharStreams.fromStream(targetStream));
+    MJParser mjParser = new MJParser(mjLexer);
+    GoalNode goal = mjParser.parseGoal();
+    BuilderVisitor builderVis = new BuilderVisitor();
+    goal.accept(builderVis);
+    TypesVisitor typesVis = new TypesVisitor(builderVis);
+    goal.accept(typesVis);
+    ClassHierarchyAnalysis hierarchyAnalysis =
+        new ClassHierarchyAnalysis(builderVis.getClassSymbolTable());
+    // a budget of 0 disables inlining
+    InliningVisitor disabledVis = new InliningVisitor(typesVis, hierarchyAnalysis, 0, 2);
+    Assert.assertSame(goal, goal.accept(disabledVis));
+    InliningVisitor inliningVis =
+        new InliningVisitor(
+            typesVis,
+            hierarchyAnalysis,
+            InliningVisitor.DEFAULT_SIZE_BUDGET,
+            InliningVisitor.DEFAULT_MAX_DEPTH);
+    goal = goal.accept(inliningVis);
+    Assert.assertEquals(55, inliningVis.getInlinedCallSites());
+    // the inlined program declares new locals
+    builderVis = new BuilderVisitor();
+    goal.accept(builderVis);
+    typesVis = new TypesVisitor(builderVis);
+    goal.accept(typesVis);
+    SimpleCodegenVisitor codegenVis = new SimpleCodegenVisitor(typesVis);
+    goal.accept(codegenVis);
+  }
+
+  @Test
+  public void TestOperatorPrecedence() throws IOException {
+    String simpleProgram =
+        new String(Files.readAllBytes(Paths.get("test/test_files/operator_precedence.mjava")));
+    InputStream targetStream = new ByteArrayInputStream(simpleProgram.getBytes());
+    MJLexer mjLexer = new MJLexer(CharStreams.fromStream(targetStream));
+    MJParser mjParser = new MJParser(mjLexer);
+    GoalNode goal = mjParser.parseGoal();
+    // b = n < n + 1 && n * 2 < 11;
+    StatementNode statement =
+        goal.getClasses().get(0).getMethodDecls().get(0).getStatements().get(3);
+    ExprNode condition = ((SetVariableStatement) statement).getRightHandSide();
+    Assert.assertTrue(condition instanceof AndExpr);
+    LtExpr leftHandSide = (LtExpr) ((AndExpr) condition).getLeftHandSide();
+    Assert.assertTrue(leftHandSide.getRightHandSide() instanceof AddExpr);
+    LtExpr rightHandSide = (LtExpr) ((AndExpr) condition).getRightHandSide();
+    Assert.assertTrue(rightHandSide.getLeftHandSide() instanceof MultExpr);
+    BuilderVisitor builderVis = new BuilderVisitor();
+    goal.accept(builderVis);
+    TypesVisitor typesVis = new TypesVisitor(builderVis);
+    goal.accept(typesVis);
+    SimpleCodegenVisitor codegenVis = new SimpleCodegenVisitor(typesVis);
+    goal.accept(codegenVis);
+  }
+
+  @Test
+  public void TestScannerMatchesAntlrLexer() throws IOException {
+    File[] testFiles = new File("test/test_files").listFiles();
+    Assert.assertTrue(testFiles.length > 0);
+    for (File testFile : testFiles) {
+      byte[] simpleProgram = Files.readAllBytes(testFile.toPath());
+      InputStream targetStream = new ByteArrayInputStream(simpleProgram);
+      MJLexer mjLexer = new MJLexer(CharStreams.fromStream(targetStream));
+      Tokens expected = Tokens.scanAll(new AntlrTokenSource(mjLexer));
+      Tokens actual = new MJScanner(simpleProgram).scanAll();
+      Assert.assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); ++i) {
+        Assert.assertEquals(expected.getType(i), actual.getType(i));
+        Assert.assertEquals(expected.getLine(i), actual.getLine(i));
+        Assert.assertEquals(expected.getText(i), actual.getText(i));
+      }
+    }
+    byte[] simpleProgram = Files.readAllBytes(Paths.get("test/test_files/binary_tree.mjava"));
+    MJParser mjParser = new MJParser(new MJScanner(simpleProgram));
+    GoalNode goal = mjParser.parseGoal();
+    BuilderVisitor builderVis = new BuilderVisitor();
+    goal.accept(builderVis);
+    TypesVisitor typesVis = new TypesVisitor(builderVis);
+    goal.accept(typesVis);
+    SimpleCodegenVisitor codegenVis = new SimpleCodegenVisitor(typesVis);
+    goal.accept(codegenVis);
+  }
+
+  @Test
+  public void TestMappedSource() throws IOException {
+    for (File testFile : new File("test/test_files").listFiles()) {
+      // the driver maps the source once, hashes the mapping and lexes it
+      ByteBuffer source = MJScanner.map(testFile.toPath());
+      Assert.assertEquals(
+          CompileCache.key(List.of("key"), Files.readAllBytes(testFile.toPath())),
+          CompileCache.key(List.of("key"), source));
+      MJParser[] parsers = {
+        new MJParser(new MJLexer(CharStreams.fromPath(testFile.toPath()))),
+        new MJParser(MJScanner.mapFile(testFile.toPath())),
+        new MJParser(new AntlrTokenSource(source)),
+        new MJParser(new MJScanner(source))
+      };
+      String[] assembly = new String[parsers.length];
+      for (int i = 0; i < parsers.length; ++i) {
+        GoalNode goal = parsers[i].parseGoal();
+        BuilderVisitor builderVis = new BuilderVisitor();
+        goal.accept(builderVis);
+        TypesVisitor typesVis = new TypesVisitor(builderVis);
+        goal.accept(typesVis);
+        StringWriter output = new StringWriter();
+        SimpleCodegenVisitor codegenVis =
+            new SimpleCodegenVisitor(
+                typesVis, new AssemblyWriter(output), CodegenOptions.DEFAULTS);
+        goal.accept(codegenVis);
+        assembly[i] = output.toString();
+      }
+      for (int i = 1; i < assembly.length; ++i) {
+        Assert.assertEquals(assembly[0], assembly[i]);
+      }
+    }
+  }
+
+  @Test
+  public void TestObjectLayoutIndices() throws IOException {
+    String simpleProgram =
+        new String(Files.readAllBytes(Paths.get("test/test_files/tree_visitor.mjava")));
+    InputStream targetStream = new ByteArrayInputStream(simpleProgram.getBytes());
+    MJLexer mjLexer = new MJLexer(CharStreams.fromStream(targetStream));
+    MJParser mjParser = new MJParser(mjLexer);
+    GoalNode goal = mjParser.parseGoal();
+    BuilderVisitor builderVis = new BuilderVisitor();
+    goal.accept(builderVis);
+    TypesVisitor typesVis = new TypesVisitor(builderVis);
+    goal.accept(typesVis);
+    for (ClassType classType : typesVis.getClassSymbolTable().values()) {
+      ObjectLayout layout = new ObjectLayout(classType);
+      // a field shadows the fields of the same name in its parents
+      for (String field : layout.getFields()) {
+        Assert.assertEquals(layout.getFields().lastIndexOf(field), layout.getFieldIndex(field));
+      }
+      for (int i = 0; i < layout.getVTable().size(); ++i) {
+        String methodName = layout.getVTable().get(i).first();
+        Assert.assertEquals(i, layout.getVTableIndex(methodName));
+        Assert.assertSame(layout.getVTable().get(i), layout.getVTableEntry(methodName));
+      }
+      Assert.assertEquals(-1, layout.getFieldIndex("noSuchField"));
+      Assert.assertEquals(-1, layout.getVTableIndex("noSuchMethod"));
+      for (MethodType method : classType.getMethods().values()) {
+        for (int i = 0; i < method.getArgumentsSorted().size(); ++i) {
+          String argument = method.getArgumentsSorted().get(i).first();
+          Assert.assertEquals(i, method.getArgumentIndex(argument));
+        }
+        for (int i = 0; i < method.getVarsDeclSorted().size(); ++i) {
+          String local = method.getVarsDeclSorted().get(i).first();
+          Assert.assertEquals(i, method.getVarDeclIndex(local));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void TestTypeAnnotations() throws IOException {
+    String simpleProgram =
+        new String(Files.readAllBytes(Paths.get("test/test_files/operator_precedence.mjava")));
+    InputStream targetStream = new ByteArrayInputStream(simpleProgram.getBytes());
+    MJLexer mjLexer = new MJLexer(CharStreams.fromStream(targetStream));
+    MJParser mjParser = new MJParser(mjLexer);
+    GoalNode goal = mjParser.parseGoal();
+    // b = n < n + 1 && n * 2 < 11;
+    StatementNode statement =
+        goal.getClasses().get(0).getMethodDecls().get(0).getStatements().get(3);
+    AndExpr condition = (AndExpr) ((SetVariableStatement) statement).getRightHandSide();
+    Assert.assertNull(condition.getType());
+    BuilderVisitor builderVis = new BuilderVisitor();
+    goal.accept(builderVis);
+    TypesVisitor typesVis = new TypesVisitor(builderVis);
+    goal.accept(typesVis);
+    Assert.assertTrue(condition.getType().isBooleanType());
+    Assert.assertSame(condition.getType(), typesVis.typeOf(condition));
+    LtExpr leftHandSide = (LtExpr) condition.getLeftHandSide();
+    Assert.assertTrue(leftHandSide.getRightHandSide().getType().isIntType());
+    // an expression created after the type checking pass is checked on demand
+    AddExpr created = new AddExpr(0, new IntExpr(0, "1"), new IntExpr(0, "2"));
+    Assert.assertTrue(typesVis.typeOf(created).isIntType());
+    Assert.assertTrue(created.getType().isIntType());
+  }
+
+  @Test
+  public void TestClassHierarchy() throws IOException {
+    String simpleProgram =
+        new String(Files.readAllBytes(Paths.get("test/test_files/tree_visitor.mjava")));
+    InputStream targetStream = new ByteArrayInputStream(simpleProgram.getBytes());
+    MJLexer mjLexer = new MJLexer(CharStreams.fromStream(targetStream));
+    MJParser mjParser = new MJParser(mjLexer);
+    GoalNode goal = mjParser.parseGoal();
+    BuilderVisitor builderVis = new BuilderVisitor();
+    goal.accept(builderVis);
+    TypesVisitor typesVis = new TypesVisitor(builderVis);
+    goal.accept(typesVis);
+    Assert.assertSame(IntType.INSTANCE, builderVis.getType("int", 0));
+    for (ClassType classType : typesVis.getClassSymbolTable().values()) {
+      // the numbering agrees with walking the parents
+      for (ClassType otherClassType : typesVis.getClassSymbolTable().values()) {
+        Assert.assertEquals(
+            classType.getAllParents().contains(otherClassType),
+            classType.containsClassAsParent(otherClassType));
+      }
+      for (ClassType parent : classType.getAllParents()) {
+        for (String field : parent.getFields().keySet()) {
+          ClassType owner = classType.getFieldOwner(field);
+          Assert.assertTrue(classType.containsClassAsParent(owner));
+          Assert.assertTrue(owner.containsClassAsParent(parent));
+        }
+        for (String method : parent.getMethods().keySet()) {
+          Assert.assertNotNull(classType.lookupMethod(method));
+        }
+      }
+      Assert.assertNull(classType.lookupField("noSuchField"));
+    }
+  }
+
+  @Test
+  public void TestParallelCompilation() throws IOException {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    for (File testFile : new File("test/test_files").listFiles()) {
+      String[] assembly = new String[4];
+      for (int i = 0; i < assembly.length; ++i) {
+        // even runs are serial, odd runs check and compile the classes on the pool
+        Optional<ForkJoinPool> runPool = i % 2 == 0 ? Optional.empty() : Optional.of(pool);
+        GoalNode goal = new MJParser(MJScanner.mapFile(testFile.toPath())).parseGoal();
+        BuilderVisitor builderVis = new BuilderVisitor();
+        goal.accept(builderVis);
+        TypesVisitor typesVis = new TypesVisitor(builderVis, runPool);
+        goal.accept(typesVis);
+        StringWriter output = new StringWriter();
+        if (i < 2) {
+          goal.accept(
+              new SimpleCodegenVisitor(
+                  typesVis, new AssemblyWriter(output), CodegenOptions.DEFAULTS.withPool(runPool)));
+        } else {
+          goal.accept(
+              new RegAllocCodegenVisitor(
+                  typesVis, new AssemblyWriter(output), CodegenOptions.DEFAULTS.withPool(runPool)));
+        }
+        assembly[i] = output.toString();
+      }
+      Assert.assertEquals(assembly[0], assembly[1]);
+      Assert.assertEquals(assembly[2], assembly[3]);
+    }
+    // results are consumed in order, with a bounded number of items started ahead of them
+    List<Integer> items = new ArrayList<>();
+    for (int i = 0; i < 100; ++i) {
+      items.add(i);
+    }
+    AtomicInteger started = new AtomicInteger();
+    List<Integer> consumed = new ArrayList<>();
+    OrderedTasks.forEachInOrder(
+        Optional.of(pool),
+        items,
+        item -> {
+          started.incrementAndGet();
+          return item;
+        },
+        item -> {
+          Assert.assertTrue(
+              started.get() - consumed.size()
+                  <= OrderedTasks.TASKS_PER_THREAD * pool.getParallelism());
+          consumed.add(item);
+        });
+    Assert.assertEquals(items, consumed);
+    pool.shutdown();
+  }
+
+  @Test
+  public void TestCompileServer() throws IOException, InterruptedException {
+    Path directory = Files.createTempDirectory("compile_server");
+    Path assembly = directory.resolve("factorial.s");
+    String cwd = Paths.get("").toAbsolutePath().toString();
+    PrintStream log = new PrintStream(OutputStream.nullOutputStream());
+    // line protocol on streams (Main --daemon)
+    String requests =
+        String.join(
+            "\n",
+            cwd + "\ttest/test_files/factorial.mjava\t" + assembly,
+            cwd + "\t-O\t--opt-report\ttest/test_files/factorial.mjava\t" + assembly,
+            cwd + "\ttest/test_files/missing.mjava\t" + assembly,
+            CompileServer.SHUTDOWN,
+            cwd + "\ttest/test_files/factorial.mjava\t" + assembly);
+    StringWriter responses = new StringWriter();
+    Assert.assertTrue(
+        new CompileServer(new Compiler(), log)
+            .serve(new BufferedReader(new StringReader(requests)), responses));
+    String[] lines = responses.toString().split("\n");
+    Assert.assertTrue(lines[0].startsWith(CompileServer.OK + "\t"));
+    Assert.assertTrue(lines[1].startsWith(CompileServer.REPORT + "\tconstant folding"));
+    Assert.assertTrue(lines[lines.length - 2].startsWith(CompileServer.OK + "\t"));
+    Assert.assertTrue(lines[lines.length - 1].startsWith(CompileServer.ERROR + "\t"));
+    Assert.assertTrue(Files.size(assembly) > 0);
+    // the same over a Unix domain socket, through the client
+    Path socket = directory.resolve("server.sock");
+    Assert.assertEquals(
+        CompileClient.UNAVAILABLE, CompileClient.request(socket, List.of("--shutdown"), log));
+    Thread server =
+        new Thread(
+            () -> {
+              try {
+                new CompileServer(new Compiler(), log).serve(socket);
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+            });
+    server.start();
+    while (!Files.exists(socket)) {
+      Thread.sleep(10);
+    }
+    Files.delete(assembly);
+    Assert.assertEquals(
+        0,
+        CompileClient.request(
+            socket, List.of("test/test_files/factorial.mjava", assembly.toString()), log));
+    Assert.assertTrue(Files.size(assembly) > 0);
+    Assert.assertEquals(
+        1,
+        CompileClient.request(
+            socket, List.of("test/test_files/missing.mjava", assembly.toString()), log));
+    Assert.assertEquals(0, CompileClient.request(socket, List.of("--shutdown"), log));
+    server.join();
+    Assert.assertFalse(Files.exists(socket));
+    Files.delete(assembly);
+    Files.delete(directory);
+  }
+
+  @Test
+  public void TestBatchCompilation() throws IOException, InterruptedException {
+    Path directory = Files.createTempDirectory("batch");
+    Path nested = Files.createDirectory(directory.resolve("nested"));
+    Files.copy(Paths.get("test/test_files/factorial.mjava"), directory.resolve("a.mjava"));
+    Files.copy(Paths.get("test/test_files/factorial.mjava"), nested.resolve("b.mjava"));
+    Files.writeString(directory.resolve("broken.mjava"), "class Broken { int x; }");
+    Files.writeString(directory.resolve("manifest"), "# inputs\na.mjava\n\nnested/b.mjava\n");
+    Assert.assertEquals(
+        List.of(
+            directory.resolve("a.mjava"),
+            directory.resolve("broken.mjava"),
+            nested.resolve("b.mjava")),
+        BatchCompiler.collectInputs(directory.toString()));
+    Assert.assertEquals(
+        List.of(nested.resolve("b.mjava")),
+        BatchCompiler.collectInputs(directory + "/*/*.mjava"));
+    Assert.assertEquals(
+        List.of(directory.resolve("a.mjava"), directory.resolve("nested/b.mjava")),
+        BatchCompiler.collectInputs("@" + directory.resolve("manifest")));
+    PrintStream report = new PrintStream(OutputStream.nullOutputStream());
+    BatchCompiler.Summary summary =
+        new BatchCompiler(new Compiler(), List.of("-O"), 2)
+            .compile(BatchCompiler.collectInputs(directory.toString()), report);
+    Assert.assertEquals(3, summary.getFiles());
+    Assert.assertEquals(1, summary.getFailures().size());
+    Assert.assertEquals(directory.resolve("broken.mjava"), summary.getFailures().get(0).first());
+    Assert.assertTrue(summary.getLatencyPercentile(50) <= summary.getLatencyPercentile(99));
+    Assert.assertTrue(Files.size(directory.resolve("a.s")) > 0);
+    Assert.assertTrue(Files.size(nested.resolve("b.s")) > 0);
+    for (String file : List.of("a.mjava", "a.s", "broken.mjava", "manifest")) {
+      Files.delete(directory.resolve(file));
+    }
+    Files.deleteIfExists(directory.resolve("broken.s"));
+    Files.delete(nested.resolve("b.mjava"));
+    Files.delete(nested.resolve("b.s"));
+    Files.delete(nested);
+    Files.delete(directory);
+  }
+
+  @Test
+  public void TestCompileCache() throws IOException {
+    Path directory = Files.createTempDirectory("compile_cache");
+    Path cacheDirectory = directory.resolve("cache");
+    Path first = directory.resolve("first.s");
+    Path second = directory.resolve("second.s");
+    String cache = "--cache=" + cacheDirectory;
+    Compiler compiler = new Compiler();
+    PrintStream report = new PrintStream(OutputStream.nullOutputStream());
+    compiler.compile(
+        CompileOptions.parse(
+            List.of(cache, "test/test_files/factorial.mjava", first.toString()), Paths.get("")),
+        report);
+    compiler.compile(
+        CompileOptions.parse(
+            List.of(cache, "test/test_files/factorial.mjava", second.toString()), Paths.get("")),
+        report);
+    CompileCache compileCache = compiler.getCaches().iterator().next();
+    Assert.assertEquals(1, compileCache.getHits());
+    Assert.assertEquals(1, compileCache.getMisses());
+    Assert.assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+    // other flags are another entry, which evicts the first one
+    compiler.compile(
+        CompileOptions.parse(
+            List.of(
+                cache,
+                "--cache-size=0",
+                "-O",
+                "test/test_files/factorial.mjava",
+                second.toString()),
+            Paths.get("")),
+        report);
+    Assert.assertEquals(2, compileCache.getMisses());
+    Assert.assertEquals(2, compileCache.getEvictions());
+    Assert.assertEquals(0, Files.list(cacheDirectory).count());
+    Files.delete(cacheDirectory);
+    Files.delete(first);
+    Files.delete(second);
+    Files.delete(directory);
+  }
+
+  @Test
+  public void TestIncrementalCompilation() throws IOException {
+    Path directory = Files.createTempDirectory("incremental");
+    Path cacheDirectory = directory.resolve("cache");
+    Path source = directory.resolve("program.mjava");
+    Path incremental = directory.resolve("incremental.s");
+    Path full = directory.resolve("full.s");
+    String program =
+        "class Main {\n"
+            + "  public static void main(String[] a) {\n"
+            + "    System.out.println(new B().run(3));\n"
+            + "  }\n"
+            + "}\n"
+            + "class A {\n"
+            + "  int x;\n"
+            + "  public int get() { return 1; }\n"
+            + "}\n"
+            + "class B extends A {\n"
+            + "  public int run(int n) { return n + (this.get()); }\n"
+            + "}\n"
+            + "class C {\n"
+            + "  public int leaf() { return 5; }\n"
+            + "}\n";
+    Files.writeString(source, program);
+    Compiler compiler = new Compiler();
+    PrintStream report = new PrintStream(OutputStream.nullOutputStream());
+    List<String> args =
+        List.of(
+            "--cache=" + cacheDirectory,
+            "--incremental",
+            source.toString(),
+            incremental.toString());
+    compiler.compile(CompileOptions.parse(args, Paths.get("")), report);
+    // editing a leaf method only regenerates its class
+    Files.writeString(source, program.replace("return 5;", "return 6;"));
+    compiler.compile(CompileOptions.parse(args, Paths.get("")), report);
+    CompileCache classesCache = null;
+    for (CompileCache cache : compiler.getCaches()) {
+      if (cache.getDirectory().equals(cacheDirectory.resolve(Compiler.CLASSES_CACHE))) {
+        classesCache = cache;
+      }
+    }
+    Assert.assertEquals(2, classesCache.getHits());
+    Assert.assertEquals(4, classesCache.getMisses());
+    new Compiler()
+        .compile(
+            CompileOptions.parse(List.of(source.toString(), full.toString()), Paths.get("")),
+            report);
+    Assert.assertEquals(Files.readString(full), Files.readString(incremental));
+    // changing a signature regenerates the classes that depend on it
+    Files.writeString(source, program.replace("int x;", "int x; int y;"));
+    compiler.compile(CompileOptions.parse(args, Paths.get("")), report);
+    Assert.assertEquals(3, classesCache.getHits());
+    Assert.assertEquals(6, classesCache.getMisses());
+    for (Path path : List.of(cacheDirectory.resolve(Compiler.CLASSES_CACHE), cacheDirectory)) {
+      try (Stream<Path> entries = Files.list(path)) {
+        for (Path entry : (Iterable<Path>) entries::iterator) {
+          if (!Files.isDirectory(entry)) {
+            Files.delete(entry);
+          }
+        }
+      }
+    }
+    Files.delete(cacheDirectory.resolve(Compiler.CLASSES_CACHE));
+    Files.delete(cacheDirectory);
+    Files.delete(source);
+    Files.delete(incremental);
+    Files.delete(full);
+    Files.delete(directory);
+  }
+
+  @Test
+  public void TestIncrementalHeapProfile() throws IOException {
+    Path directory = Files.createTempDirectory("incremental_heap_profile");
+    Path cacheDirectory = directory.resolve("cache");
+    Path source = directory.resolve("program.mjava");
+    Path incremental = directory.resolve("incremental.s");
+    Path full = directory.resolve("full.s");
+    String program =
+        "class Main {\n"
+            + "  public static void main(String[] a) {\n"
+            + "    System.out.println(new A().run(3));\n"
+            + "  }\n"
+            + "}\n"
+            + "class A {\n"
+            + "  public int run(int n) {\n"
+            + "    int[] values;\n"
+            + "    values = new int[n];\n"
+            + "    return values.length;\n"
+            + "  }\n"
+            + "}\n";
+    Files.writeString(source, program);
+    Compiler compiler = new Compiler();
+    PrintStream report = new PrintStream(OutputStream.nullOutputStream());
+    List<String> args =
+        List.of(
+            "--cache=" + cacheDirectory,
+            "--incremental",
+            "--heap-profile",
+            source.toString(),
+            incremental.toString());
+    compiler.compile(CompileOptions.parse(args, Paths.get("")), report);
+    // moving A down changes the lines of its allocation sites, not its source
+    Files.writeString(source, program.replace("}\nclass A", "}\n\n\nclass A"));
+    compiler.compile(CompileOptions.parse(args, Paths.get("")), report);
+    CompileCache classesCache = null;
+    for (CompileCache cache : compiler.getCaches()) {
+      if (cache.getDirectory().equals(cacheDirectory.resolve(Compiler.CLASSES_CACHE))) {
+        classesCache = cache;
+      }
+    }
+    Assert.assertEquals(0, classesCache.getHits());
+    Assert.assertEquals(2, classesCache.getMisses());
+    new Compiler()
+        .compile(
+            CompileOptions.parse(
+                List.of("--heap-profile", source.toString(), full.toString()), Paths.get("")),
+            report);
+    Assert.assertEquals(Files.readString(full), Files.readString(incremental));
+    for (Path path : List.of(cacheDirectory.resolve(Compiler.CLASSES_CACHE), cacheDirectory)) {
+      try (Stream<Path> entries = Files.list(path)) {
+        for (Path entry : (Iterable<Path>) entries::iterator) {
+          if (!Files.isDirectory(entry)) {
+            Files.delete(entry);
+          }
+        }
+      }
+    }
+    Files.delete(cacheDirectory.resolve(Compiler.CLASSES_CACHE));
+    Files.delete(cacheDirectory);
+    Files.delete(source);
+    Files.delete(incremental);
+    Files.delete(full);
+    Files.delete(directory);
+  }
+
+  @Test
+  public void TestNativeBuild() throws IOException, InterruptedException {
+    Path directory = Files.createTempDirectory("native_build");
+    Files.copy(Paths.get("test/test_files/factorial.mjava"), directory.resolve("a.mjava"));
+    Files.copy(Paths.get("test/test_files/factorial.mjava"), directory.resolve("b.mjava"));
+    Files.writeString(directory.resolve("broken.mjava"), "class Broken { int x; }");
+    PrintStream report = new PrintStream(OutputStream.nullOutputStream());
+    List<Pair<Path, String>> failures =
+        new NativeBuilder(
+                new Compiler(),
+                List.of("--backend=regalloc"),
+                NativeBuilder.DEFAULT_ASSEMBLER,
+                NativeBuilder.DEFAULT_LINKER,
+                NativeBuilder.DEFAULT_LINK_FLAGS,
+                2)
+            .build(BatchCompiler.collectInputs(directory.toString()), report);
+    Assert.assertEquals(1, failures.size());
+    Assert.assertEquals(directory.resolve("broken.mjava"), failures.get(0).first());
+    Assert.assertFalse(Files.exists(directory.resolve("broken")));
+    for (String name : List.of("a", "b")) {
+      Process program = new ProcessBuilder(directory.resolve(name).toString()).start();
+      Assert.assertEquals(
+          "3628800\n", new String(program.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+      Assert.assertEquals(0, program.waitFor());
+      Files.delete(directory.resolve(name));
+      Files.delete(directory.resolve(name + ".mjava"));
+    }
+    Files.delete(directory.resolve("broken.mjava"));
+    Files.delete(directory);
+  }
+
+  @Test
+  public void TestBumpAllocation() throws IOException, InterruptedException {
+    Path directory = Files.createTempDirectory("bump_allocation");
+    String program =
+        "class Main {\n"
+            + "  public static void main(String[] a) {\n"
+            + "    System.out.println(new Lists().run(LENGTH));\n"
+            + "  }\n"
+            + "}\n"
+            + "class Node {\n"
+            + "  Node next;\n"
+            + "  int[] values;\n"
+            + "  public int init(Node n, int v) {\n"
+            + "    next = n;\n"
+            + "    values = new int[v + 1];\n"
+            + "    values[v] = v;\n"
+            + "    return values[values.length - 1];\n"
+            + "  }\n"
+            + "}\n"
+            + "class Lists {\n"
+            + "  public int run(int n) {\n"
+            + "    int i;\n"
+            + "    int s;\n"
+            + "    Node head;\n"
+            + "    Node node;\n"
+            + "    i = 0;\n"
+            + "    s = 0;\n"
+            + "    head = new Node();\n"
+            + "    while (i < n) {\n"
+            + "      node = new Node();\n"
+            + "      s = s + (node.init(head, i));\n"
+            + "      head = node;\n"
+            + "      i = i + 1;\n"
+            + "    }\n"
+            + "    return s;\n"
+            + "  }\n"
+            + "}\n";
+    Files.writeString(directory.resolve("lists.mjava"), program.replace("LENGTH", "1000"));
+    Files.writeString(
+        directory.resolve("negative.mjava"),
+        program.replace("LENGTH", "1000").replace("new int[v + 1]", "new int[v - 2]"));
+    PrintStream report = new PrintStream(OutputStream.nullOutputStream());
+    for (String backend : List.of("simple", "regalloc")) {
+      List<Pair<Path, String>> failures =
+          new NativeBuilder(
+                  new Compiler(),
+                  List.of("--backend=" + backend),
+                  NativeBuilder.DEFAULT_ASSEMBLER,
+                  NativeBuilder.DEFAULT_LINKER,
+                  NativeBuilder.DEFAULT_LINK_FLAGS,
+                  2)
+              .build(BatchCompiler.collectInputs(directory.toString()), report);
+      Assert.assertEquals(List.of(), failures);
+      Process lists = new ProcessBuilder(directory.resolve("lists").toString()).start();
+      Assert.assertEquals(
+          "499500\n", new String(lists.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+      Assert.assertEquals(0, lists.waitFor());
+      Process negative = new ProcessBuilder(directory.resolve("negative").toString()).start();
+      Assert.assertEquals(
+          "minijava: allocation failed\n",
+          new String(negative.getErrorStream().readAllBytes(), StandardCharsets.UTF_8));
+      Assert.assertEquals(1, negative.waitFor());
+    }
+    for (String file : List.of("lists", "lists.mjava", "negative", "negative.mjava")) {
+      Files.delete(directory.resolve(file));
+    }
+    Files.delete(directory);
+  }
+
+  @Test
+  public void TestGarbageCollection() throws IOException, InterruptedException {
+    Path directory = Files.createTempDirectory("garbage_collection");
+    // every iteration allocates a tree of 127 nodes (with an array each), which is garbage by the
+    // next one, while another one is kept alive
+    String program =
+        "class Main {\n"
+            + "  public static void main(String[] a) {\n"
+            + "    System.out.println(new Churn().run(300));\n"
+            + "  }\n"
+            + "}\n"
+            + "class Tree {\n"
+            + "  Tree left;\n"
+            + "  int key;\n"
+            + "  Tree right;\n"
+            + "  int[] keys;\n"
+            + "  public Tree build(int depth, int k) {\n"
+            + "    key = k;\n"
+            + "    keys = new int[2];\n"
+            + "    keys[1] = k;\n"
+            + "    if (0 < depth) {\n"
+            + "      left = new Tree().build(depth - 1, k * 2);\n"
+            + "      right = new Tree().build(depth - 1, k * 2 + 1);\n"
+            + "    } else {\n"
+            + "    }\n"
+            + "    return this;\n"
+            + "  }\n"
+            + "  public int sum(int depth) {\n"
+            + "    int s;\n"
+            + "    s = keys[1];\n"
+            + "    if (0 < depth) {\n"
+            + "      s = s + left.sum(depth - 1) + right.sum(depth - 1);\n"
+            + "    } else {\n"
+            + "    }\n"
+            + "    return s;\n"
+            + "  }\n"
+            + "}\n"
+            + "class Churn {\n"
+            + "  public int run(int n) {\n"
+            + "    int i;\n"
+            + "    int s;\n"
+            + "    Tree kept;\n"
+            + "    Tree t;\n"
+            + "    i = 0;\n"
+            + "    s = 0;\n"
+            + "    kept = new Tree().build(5, 1);\n"
+            + "    while (i < n) {\n"
+            + "      t = new Tree().build(6, i);\n"
+            + "      s = s + t.sum(6) + kept.sum(5);\n"
+            + "      i = i + 1;\n"
+            + "    }\n"
+            + "    return s;\n"
+            + "  }\n"
+            + "}\n";
+    Files.writeString(directory.resolve("churn.mjava"), program);
+    PrintStream report = new PrintStream(OutputStream.nullOutputStream());
+    for (String backend : List.of("simple", "regalloc")) {
+      List<Pair<Path, String>> failures =
+          new NativeBuilder(
+                  new Compiler(),
+                  List.of("--backend=" + backend),
+                  NativeBuilder.DEFAULT_ASSEMBLER,
+                  NativeBuilder.DEFAULT_LINKER,
+                  NativeBuilder.DEFAULT_LINK_FLAGS,
+                  1)
+              .build(BatchCompiler.collectInputs(directory.toString()), report);
+      Assert.assertEquals(List.of(), failures);
+      for (String heapSize : List.of("", "16K")) {
+        ProcessBuilder builder = new ProcessBuilder(directory.resolve("churn").toString());
+        builder.environment().put(NativeRuntime.GC_STATS_VARIABLE, "1");
+        builder.environment().put(NativeRuntime.HEAP_SIZE_VARIABLE, heapSize);
+        Process churn = builder.start();
+        Assert.assertEquals(
+            "246330750\n",
+            new String(churn.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+        String stats = new String(churn.getErrorStream().readAllBytes(), StandardCharsets.UTF_8);
+        Assert.assertEquals(0, churn.waitFor());
+        // the default heap is never full, a 16 KiB heap is collected (and grown) many times
+        Assert.assertTrue(
+            stats,
+            stats.matches(
+                heapSize.isEmpty()
+                    ? "minijava: 0 collections, 0 bytes copied, heap of 67108864 bytes\n"
+                    : "minijava: [1-9][0-9]+ collections, [0-9]+ bytes copied, heap of [0-9]+ bytes\n"));
+      }
+    }
+    for (String file : List.of("churn", "churn.mjava")) {
+      Files.delete(directory.resolve(file));
+    }
+    Files.delete(directory);
+  }
+
+  @Test
+  public void TestHeapProfile() throws IOException, InterruptedException {
+    Path directory = Files.createTempDirectory("heap_profile");
+    String program =
+        "class Main {\n"
+            + "  public static void main(String[] a) {\n"
+            + "    System.out.println(new Lists().run(10));\n"
+            + "  }\n"
+            + "}\n"
+            + "class Node {\n"
+            + "  Node next;\n"
+            + "  int[] values;\n"
+            + "  public int init(Node n, int v) {\n"
+            + "    next = n;\n"
+            + "    values = new int[v];\n"
+            + "    return v;\n"
+            + "  }\n"
+            + "}\n"
+            + "class Lists {\n"
+            + "  public int run(int n) {\n"
+            + "    int i;\n"
+            + "    int s;\n"
+            + "    Node head;\n"
+            + "    Node node;\n"
+            + "    i = 0;\n"
+            + "    s = 0;\n"
+            + "    head = new Node();\n"
+            + "    while (i < n) {\n"
+            + "      node = new Node();\n"
+            + "      s = s + (node.init(head, i));\n"
+            + "      head = node;\n"
+            + "      i = i + 1;\n"
+            + "    }\n"
+            + "    return s;\n"
+            + "  }\n"
+            + "}\n";
+    Files.writeString(directory.resolve("lists.mjava"), program);
+    Path profile = directory.resolve("lists.tsv");
+    PrintStream report = new PrintStream(OutputStream.nullOutputStream());
+    for (String backend : List.of("simple", "regalloc")) {
+      List<Pair<Path, String>> failures =
+          new NativeBuilder(
+                  new Compiler(),
+                  List.of("--backend=" + backend, "--heap-profile"),
+                  NativeBuilder.DEFAULT_ASSEMBLER,
+                  NativeBuilder.DEFAULT_LINKER,
+                  NativeBuilder.DEFAULT_LINK_FLAGS,
+                  1)
+              .build(BatchCompiler.collectInputs(directory.toString()), report);
+      Assert.assertEquals(List.of(), failures);
+      ProcessBuilder builder = new ProcessBuilder(directory.resolve("lists").toString());
+      builder.environment().put(AllocationSites.PROFILE_VARIABLE, profile.toString());
+      Process lists = builder.start();
+      Assert.assertEquals(
+          "45\n", new String(lists.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+      // most bytes first: the headers and lengths of the arrays count too
+      Assert.assertEquals(
+          "minijava: heap profile, 888 bytes in 22 allocations\n"
+              + "           520 bytes         10 allocations  Node.init:11  new int[]\n"
+              + "           320 bytes         10 allocations  Lists.run:25  new Node\n"
+              + "            32 bytes          1 allocations  Lists.run:23  new Node\n"
+              + "            16 bytes          1 allocations  Main.main:3  new Lists\n",
+          new String(lists.getErrorStream().readAllBytes(), StandardCharsets.UTF_8));
+      Assert.assertEquals(0, lists.waitFor());
+      Assert.assertEquals(
+          "bytes\tallocations\tmethod\tline\ttype\n"
+              + "520\t10\tNode.init\t11\tint[]\n"
+              + "320\t10\tLists.run\t25\tNode\n"
+              + "32\t1\tLists.run\t23\tNode\n"
+              + "16\t1\tMain.main\t3\tLists\n",
+          Files.readString(profile));
+    }
+    for (String file : List.of("lists", "lists.mjava", "lists.tsv")) {
+      Files.delete(directory.resolve(file));
+    }
+    Files.delete(directory);
+  }
+
+  @Test
+  public void TestBufferedOutput() throws IOException, InterruptedException {
+    Path directory = Files.createTempDirectory("buffered_output");
+    String program =
+        "class Main {\n"
+            + "  public static void main(String[] a) {\n"
+            + "    System.out.println(new Numbers().run(10000));\n"
+            + "  }\n"
+            + "}\n"
+            + "class Numbers {\n"
+            + "  public int run(int n) {\n"
+            + "    int i;\n"
+            + "    int x;\n"
+            + "    i = 0;\n"
+            + "    x = 1;\n"
+            + "    System.out.println(0);\n"
+            + "    System.out.println(2147483647 + 1);\n"
+            + "    System.out.println(2147483647 * 2147483647);\n"
+            + "    while (i < n) {\n"
+            + "      x = x * 31 + i;\n"
+            + "      System.out.println(x);\n"
+            + "      System.out.println(0 - i);\n"
+            + "      i = i + 1;\n"
+            + "    }\n"
+            + "    return x;\n"
+            + "  }\n"
+            + "  public int fail() {\n"
+            + "    int[] values;\n"
+            + "    values = new int[0 - 1];\n"
+            + "    return values.length;\n"
+            + "  }\n"
+            + "}\n";
+    Files.writeString(directory.resolve("numbers.mjava"), program);
+    Files.writeString(
+        directory.resolve("failing.mjava"),
+        program.replace("    return x;\n", "    x = this.fail();\n    return x;\n"));
+    // ints wrap around like Java's, and more lines than the buffer holds
+    StringBuilder expected = new StringBuilder();
+    expected.append(0).append('\n');
+    expected.append(Integer.MAX_VALUE + 1).append('\n');
+    expected.append(Integer.MAX_VALUE * Integer.MAX_VALUE).append('\n');
+    int x = 1;
+    for (int i = 0; i < 10000; ++i) {
+      x = x * 31 + i;
+      expected.append(x).append('\n').append(-i).append('\n');
+    }
+    Assert.assertTrue(expected.length() > NativeRuntime.OUTPUT_BUFFER_SIZE);
+    PrintStream report = new PrintStream(OutputStream.nullOutputStream());
+    for (String backend : List.of("simple", "regalloc")) {
+      List<Pair<Path, String>> failures =
+          new NativeBuilder(
+                  new Compiler(),
+                  List.of("--backend=" + backend),
+                  NativeBuilder.DEFAULT_ASSEMBLER,
+                  NativeBuilder.DEFAULT_LINKER,
+                  NativeBuilder.DEFAULT_LINK_FLAGS,
+                  2)
+              .build(BatchCompiler.collectInputs(directory.toString()), report);
+      Assert.assertEquals(List.of(), failures);
+      Process numbers = new ProcessBuilder(directory.resolve("numbers").toString()).start();
+      Assert.assertEquals(
+          expected.toString() + x + "\n",
+          new String(numbers.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+      Assert.assertEquals(0, numbers.waitFor());
+      // the output is flushed before the error, on exit
+      Process failing = new ProcessBuilder(directory.resolve("failing").toString()).start();
+      Assert.assertEquals(
+          expected.toString(),
+          new String(failing.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+      Assert.assertEquals(
+          "minijava: allocation failed\n",
+          new String(failing.getErrorStream().readAllBytes(), StandardCharsets.UTF_8));
+      Assert.assertEquals(1, failing.waitFor());
+    }
+    for (String file : List.of("numbers", "numbers.mjava", "failing", "failing.mjava")) {
+      Files.delete(directory.resolve(file));
+    }
+    Files.delete(directory);
+  }
 }